@@ -1,3 +1,6 @@
 @echo off
 cls
-JAVAC org\nerdybeans\antfarm\auxiliary\*.java org\nerdybeans\antfarm\controller\*.java org\nerdybeans\antfarm\model\*.java org\nerdybeans\antfarm\model\modelelements\*.java org\nerdybeans\antfarm\view\*.java org\nerdybeans\antfarm\view\viewelements\*.java
+REM JDK 11 or newer (the Flight Recorder events use the jdk.jfr module)
+JAVAC --release 11 org\nerdybeans\antfarm\auxiliary\*.java org\nerdybeans\antfarm\controller\*.java org\nerdybeans\antfarm\model\*.java org\nerdybeans\antfarm\model\modelelements\*.java org\nerdybeans\antfarm\view\*.java org\nerdybeans\antfarm\view\viewelements\*.java org\nerdybeans\antfarm\benchmark\*.java
+REM optional vectorized odour kernels (JDK 16 or newer), the game runs without them
+JAVAC --add-modules jdk.incubator.vector org\nerdybeans\antfarm\model\simd\*.java
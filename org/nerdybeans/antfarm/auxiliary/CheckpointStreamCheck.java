@@ -0,0 +1,166 @@
+package org.nerdybeans.antfarm.auxiliary;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.nerdybeans.antfarm.model.CheckpointStream;
+import org.nerdybeans.antfarm.model.Game;
+import org.nerdybeans.antfarm.model.WorldField;
+import org.nerdybeans.antfarm.model.modelelements.Warehouse;
+
+/**
+ * A runnable check of the autosave: a game is played with a CheckpointStream taking
+ * checkpoints often and starting the file over every few of them (weapons are fired
+ * meanwhile), then it is restored from the file into a new game, which must be in the
+ * same state as the game at the last checkpoint. Then the restored game is played on,
+ * and it must stay in the same state as the saved game played on from the checkpoint
+ * without interruption.
+ *
+ * Usage:
+ *   java org.nerdybeans.antfarm.auxiliary.CheckpointStreamCheck [ticks]
+ * The exit code is 0 if the check has passed (see RunnableCheck).
+ *
+ * @version 1.0
+ * @see CheckpointStream
+ **/
+public class CheckpointStreamCheck {
+	/**
+	 * Default number of ticks played.
+	 */
+	public static final int DEFAULT_TICKS = 1234;
+
+	/**
+	 * Seed of the game.
+	 */
+	public static final long SEED = 7;
+
+	/**
+	 * Number of ticks played on after the last checkpoint.
+	 */
+	public static final int CONTINUED_TICKS = 600;
+
+	/**
+	 * Describes the state of a game which is saved: every attribute of every field,
+	 * the loads of the weapons and the number of warehouses.
+	 *
+	 * @param game the game
+	 * @return the description, the same for the same states
+	 */
+	static String describe(Game game) {
+		StringBuilder state = new StringBuilder();
+		for (WorldField[] row : game.getMap().getMap()) {
+			for (WorldField field : row) {
+				state.append(field.getAntList().size()).append(',')
+						.append((field.getAntEater() != null) ? field.getAntEater().getConsumed() : -1).append(',')
+						.append(Float.floatToIntBits(field.getAntOdour())).append(',')
+						.append(Float.floatToIntBits(field.getFoodOdour())).append(',')
+						.append(Float.floatToIntBits(field.getPoison())).append(',')
+						.append(field.isPassable()).append(',')
+						.append((field.getPermanentElement() != null) ? field.getPermanentElement().getClass().getSimpleName() : "-").append(',')
+						.append((field.getDynamicElement() != null) ? field.getDynamicElement().getClass().getSimpleName() : "-");
+				if (field.getPermanentElement() instanceof Warehouse) {
+					state.append(',').append(((Warehouse)field.getPermanentElement()).getFoodAmount());
+				}
+				state.append('|');
+			}
+		}
+		return state.append(game.getAntKiller().getLoad()).append(',').append(game.getAntOdourKiller().getLoad())
+				.append(',').append(Warehouse.NUM_OF_WAREHOUSES).toString();
+	}
+
+	/**
+	 * Prints the first field which differs between two descriptions.
+	 */
+	static void printDifference(String expected, String actual) {
+		String[] before = expected.split("\\|"), after = actual.split("\\|");
+		for (int i = 0; i < Math.min(before.length, after.length); ++i) {
+			if (!before[i].equals(after[i])) {
+				System.out.println("[DEBUG#CheckpointStreamCheck.printDifference] Field " + i + ": " + before[i] + " expected, " + after[i] + " restored");
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Plays a game for some ticks, firing the weapons now and then. The commands
+	 * submitted to the Timer (e.g. the checkpoints) are run between the ticks, as
+	 * the model thread does.
+	 */
+	static void play(Game game, Timer timer, int ticks) {
+		WorldField[][] map = game.getMap().getMap();
+		for (int t = 1; t <= ticks; ++t) {
+			if (t % 500 == 0) {
+				game.getAntKiller().triggerAt(map[(t / 37) % map.length][(t / 13) % map[0].length]);
+			}
+			if (t % 700 == 0) {
+				game.getAntOdourKiller().triggerAt(map[(t / 41) % map.length][(t / 17) % map[0].length]);
+			}
+			timer.runCommands();
+			timer.tick();
+		}
+		timer.runCommands();
+	}
+
+	/**
+	 * Runs the check.
+	 *
+	 * @param ticks number of ticks played
+	 * @return true if the restored game is the same
+	 * @throws IOException
+	 */
+	public static boolean run(int ticks) throws IOException {
+		File file = File.createTempFile("AntFarmCheckpoint", ".dat");
+		file.deleteOnExit();
+
+		Timer timer = new TimerObservable(30, 0);
+		Timer.setInstance(timer);
+		Game game = new Game();
+		game.initNew(SEED);
+		game.getMap().getEntryPoint().setSpawnRate(10);
+		game.getMap().getEntryPoint().setMaxAnts(5000);
+		// a checkpoint every tick, as the autosave of the game takes them, a keyframe every 50 checkpoints
+		CheckpointStream checkpoints = new CheckpointStream(game, file.getPath(), CheckpointStream.DEFAULT_PERIOD, 50);
+		play(game, timer, ticks);
+		checkpoints.checkpoint();
+		String expected = describe(game);
+		checkpoints.close();
+		play(game, timer, CONTINUED_TICKS);
+		String continued = describe(game);
+		game.dispose();
+
+		Timer restoredTimer = new TimerObservable(30, 0);
+		Timer.setInstance(restoredTimer);
+		Game restored = new Game();
+		boolean identical = restored.restoreCheckpoint(file.getPath()) && expected.equals(describe(restored));
+		if (!identical) {
+			printDifference(expected, describe(restored));
+		} else {
+			play(restored, restoredTimer, CONTINUED_TICKS);
+			identical = continued.equals(describe(restored));
+			if (!identical) {
+				System.out.println("[DEBUG#CheckpointStreamCheck.run] The restored game differs after " + CONTINUED_TICKS + " more ticks");
+				printDifference(continued, describe(restored));
+			}
+		}
+		restored.dispose();
+		identical &= !new File(file.getPath() + ".tmp").exists();
+
+		System.out.println("[DEBUG#CheckpointStreamCheck.run] " + ticks + " ticks, " + file.length() + " bytes, "
+				+ (identical ? "passed" : "failed"));
+		return identical;
+	}
+
+	/**
+	 * Entry point.
+	 *
+	 * @param args [ticks]
+	 */
+	public static void main(String[] args) {
+		new RunnableCheck(CheckpointStreamCheck.class, DEFAULT_TICKS) {
+			@Override
+			protected int check(long ticks) throws IOException {
+				return run((int)ticks) ? 0 : 1;
+			}
+		}.main(args);
+	}
+}
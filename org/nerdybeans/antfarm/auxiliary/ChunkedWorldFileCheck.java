@@ -0,0 +1,128 @@
+package org.nerdybeans.antfarm.auxiliary;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.nerdybeans.antfarm.model.CheckpointStream;
+import org.nerdybeans.antfarm.model.ChunkedWorldFile;
+import org.nerdybeans.antfarm.model.Game;
+import org.nerdybeans.antfarm.model.SaveWriter;
+
+/**
+ * A runnable check of the chunked saves: a game is saved by a SaveWriter twice into the
+ * same file, some ticks apart, and after each save the file is restored into a new game,
+ * which must be in the same state as the saved one. The second save replaces the file
+ * which has just been read, so the restored file must not be left open.
+ *
+ * A temporary file is used, the save of the game (Game.SAVE_FILE) is not touched.
+ *
+ * Usage:
+ *   java org.nerdybeans.antfarm.auxiliary.ChunkedWorldFileCheck [ticks]
+ * The exit code is 0 if the check has passed (see RunnableCheck).
+ *
+ * @version 1.0
+ * @see ChunkedWorldFile
+ **/
+public class ChunkedWorldFileCheck {
+	/**
+	 * Default number of ticks played before each save.
+	 */
+	public static final int DEFAULT_TICKS = 1500;
+
+	/**
+	 * Seed of the game.
+	 */
+	public static final long SEED = 11;
+
+	/**
+	 * Saves a game into a file, then restores it into a new game.
+	 *
+	 * @param game the game
+	 * @param file the file
+	 * @return true if the restored game is the same
+	 * @throws IOException if the file can not be read
+	 */
+	private static boolean saveAndRestore(Game game, File file) throws IOException {
+		long tick = Timer.getInstance().getTick();
+		String expected = CheckpointStreamCheck.describe(game);
+		SaveWriter writer = new SaveWriter(CheckpointStream.capture(game), file.getPath());
+		writer.start();
+		if (!writer.await(0)) {
+			System.out.println("[DEBUG#ChunkedWorldFileCheck.saveAndRestore] Tick " + tick + " not saved: " + writer.getFailure());
+			return false;
+		}
+
+		Timer gameTimer = Timer.getInstance();
+		Timer.setInstance(new TimerObservable(30, 0));
+		Game restored = new Game();
+		ChunkedWorldFile save = ChunkedWorldFile.open(file);
+		long saved;
+		try {
+			saved = save.restore(restored);
+		} finally {
+			save.close();
+		}
+		String actual = CheckpointStreamCheck.describe(restored);
+		restored.dispose();
+		Timer.setInstance(gameTimer);
+
+		boolean identical = (saved == tick) && expected.equals(actual);
+		if (!identical) {
+			System.out.println("[DEBUG#ChunkedWorldFileCheck.saveAndRestore] Tick " + tick + " restored as tick " + saved);
+			CheckpointStreamCheck.printDifference(expected, actual);
+		}
+		return identical;
+	}
+
+	/**
+	 * Runs the check.
+	 *
+	 * @param ticks number of ticks played before each save
+	 * @return number of saves which have not been restored
+	 * @throws IOException
+	 */
+	public static int run(int ticks) throws IOException {
+		File file = File.createTempFile("AntFarmSave", ".dat");
+		file.deleteOnExit();
+
+		Timer timer = new TimerObservable(30, 0);
+		Timer.setInstance(timer);
+		Game game = new Game();
+		game.initNew(SEED);
+		game.getMap().getEntryPoint().setSpawnRate(10);
+		game.getMap().getEntryPoint().setMaxAnts(5000);
+		int failures = 0;
+		try {
+			for (int save = 0; save < 2; ++save) {
+				CheckpointStreamCheck.play(game, timer, ticks);
+				if (!saveAndRestore(game, file)) {
+					failures++;
+				}
+			}
+		} finally {
+			game.dispose();
+		}
+		if (new File(file.getPath() + ".tmp").exists()) {
+			failures++;
+			System.out.println("[DEBUG#ChunkedWorldFileCheck.run] The temporary file has been left behind");
+		}
+
+		System.out.println("[DEBUG#ChunkedWorldFileCheck.run] 2 saves of " + ticks + " ticks, " + file.length() + " bytes, "
+				+ ((failures == 0) ? "passed" : failures + " failed"));
+		return failures;
+	}
+
+	/**
+	 * Entry point.
+	 *
+	 * @param args [ticks]
+	 */
+	public static void main(String[] args) {
+		new RunnableCheck(ChunkedWorldFileCheck.class, DEFAULT_TICKS) {
+			@Override
+			protected int check(long ticks) throws IOException {
+				return run((int)ticks);
+			}
+		}.main(args);
+	}
+}
@@ -46,6 +46,8 @@ public class GameSerializer {
 	 * @return The serialized object (as a StringBuffer) 
 	 */
 	public static StringBuffer serialize(Game Target) {
+		SimulationEvents.Serialization event = new SimulationEvents.Serialization();
+		event.begin();
 		// TODO: Revise language and complete serialization + overload toString()s in model
 		Game WorkUnit = Target;
 		GameWorld World = WorkUnit.getMap();
@@ -107,6 +109,13 @@ public class GameSerializer {
 		
 		SerializedData.append(Target.getAntKiller().getLoad() + GameSerializer.ATOMIC_SEPARATOR + Target.getAntOdourKiller().getLoad() );
 		
+		if(event.shouldCommit()) {
+			event.direction = "serialize";
+			event.fields = MapData.length * MapData[0].length;
+			event.characters = SerializedData.length();
+			event.succeeded = true;
+			event.commit();
+		}
 		return SerializedData;
 	}
 	
@@ -118,6 +127,25 @@ public class GameSerializer {
 	 * @return A reference to the converted Game object
 	 */
 	public static Game unserialize(StringBuffer Target) {
+		SimulationEvents.Serialization event = new SimulationEvents.Serialization();
+		event.begin();
+		Game Unserialized = GameSerializer.parse(Target);
+		if(event.shouldCommit()) {
+			event.direction = "unserialize";
+			event.fields = (Unserialized != null) ? Unserialized.getMap().getHeight() * Unserialized.getMap().getWidth() : 0;
+			event.characters = Target.length();
+			event.succeeded = (Unserialized != null);
+			event.commit();
+		}
+		return Unserialized;
+	}
+	
+	/**
+	 * Does the work of unserialize().
+	 * @param Target The serialized Game object (as a StringBuffer)
+	 * @return A reference to the converted Game object, null on error
+	 */
+	private static Game parse(StringBuffer Target) {
 		//System.out.println("--- RAW TARGET ---");
 		//System.out.print(Target.toString());
 		//System.out.println("------------------");
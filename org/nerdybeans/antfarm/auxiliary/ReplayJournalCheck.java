@@ -0,0 +1,123 @@
+package org.nerdybeans.antfarm.auxiliary;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import org.nerdybeans.antfarm.controller.ModelController;
+import org.nerdybeans.antfarm.controller.ReplayJournal;
+import org.nerdybeans.antfarm.model.Game;
+import org.nerdybeans.antfarm.model.Weapon;
+import org.nerdybeans.antfarm.model.WorldField;
+
+/**
+ * A runnable check of the determinism of the simulation: a game is played with the
+ * ants moved by several threads and recorded in a ReplayJournal (weapons fired, a save,
+ * a pause and the end), then the journal is replayed with every parallelism level of
+ * PARALLELISM. Each replay must reproduce the digests recorded at the save and at the end.
+ *
+ * Usage:
+ *   java org.nerdybeans.antfarm.auxiliary.ReplayJournalCheck [ticks]
+ * The exit code is 0 if the check has passed (see RunnableCheck).
+ *
+ * @version 1.0
+ * @see ReplayJournal
+ **/
+public class ReplayJournalCheck {
+	/**
+	 * Default number of ticks recorded.
+	 */
+	public static final int DEFAULT_TICKS = 3000;
+
+	/**
+	 * Seed of the recorded game.
+	 */
+	public static final long SEED = 12345;
+
+	/**
+	 * Number of threads moving the ants while recording.
+	 */
+	public static final int RECORDED_PARALLELISM = 3;
+
+	/**
+	 * Numbers of threads moving the ants in the replays.
+	 */
+	public static final int[] PARALLELISM = { 1, 2, 4 };
+
+	/**
+	 * Plays and records a game.
+	 *
+	 * @param ticks number of ticks
+	 * @return the journal
+	 * @throws IOException
+	 */
+	private static byte[] record(int ticks) throws IOException {
+		Timer timer = new TimerObservable(ModelController.TIMER_SECTION_LENGTH, ModelController.TIMER_PRECISION);
+		Timer.setInstance(timer);
+		Game game = new Game();
+		game.initNew(SEED);
+		game.getMap().getEntryPoint().setSpawnRate(10);
+		game.getMap().getEntryPoint().setMaxAnts(5000);
+		game.getMap().getScheduler().setParallelism(RECORDED_PARALLELISM);
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ReplayJournal journal = new ReplayJournal(out, game, timer);
+		WorldField[][] map = game.getMap().getMap();
+		try {
+			for (int t = 1; t <= ticks; ++t) {
+				if (t % 400 == 0) {
+					Weapon weapon = (t % 800 == 0) ? game.getAntKiller() : game.getAntOdourKiller();
+					WorldField target = map[(t / 37) % map.length][(t / 13) % map[0].length];
+					journal.recordFire(game, weapon, target);
+					weapon.triggerAt(target);
+				}
+				if (t == ticks / 2) {
+					journal.recordState(ReplayJournal.SAVE, game);
+				}
+				if (t == ticks * 2 / 3) {
+					journal.record(ReplayJournal.PAUSE);
+				}
+				timer.tick();
+			}
+			journal.recordState(ReplayJournal.END, game);
+		} finally {
+			game.dispose();
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * Runs the check.
+	 *
+	 * @param ticks number of ticks recorded
+	 * @return number of replays which have not reproduced the game
+	 * @throws IOException
+	 */
+	public static int run(int ticks) throws IOException {
+		byte[] journal = record(ticks);
+		int failures = 0;
+		for (int parallelism : PARALLELISM) {
+			if (!ReplayJournal.replay(new ByteArrayInputStream(journal), parallelism)) {
+				failures++;
+				System.out.println("[DEBUG#ReplayJournalCheck.run] The replay with " + parallelism + " threads differs");
+			}
+		}
+		System.out.println("[DEBUG#ReplayJournalCheck.run] Recorded with " + RECORDED_PARALLELISM + " threads, "
+				+ PARALLELISM.length + " replays, " + ((failures == 0) ? "passed" : failures + " failed"));
+		return failures;
+	}
+
+	/**
+	 * Entry point.
+	 *
+	 * @param args [ticks]
+	 */
+	public static void main(String[] args) {
+		new RunnableCheck(ReplayJournalCheck.class, DEFAULT_TICKS) {
+			@Override
+			protected int check(long ticks) throws IOException {
+				return run((int)ticks);
+			}
+		}.main(args);
+	}
+}
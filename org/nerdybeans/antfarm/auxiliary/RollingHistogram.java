@@ -0,0 +1,106 @@
+package org.nerdybeans.antfarm.auxiliary;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Keeps the last few samples of a measurement (e.g. the duration of the ticks)
+ * and computes percentiles over them on request.
+ *
+ * Recording a sample is an ordered store into a ring buffer followed by an ordered
+ * increment of the count, without a lock, so it can be used on the hot path. The
+ * samples are sorted only when a percentile is read (e.g. by a report over JMX).
+ * The count, the sum and the maximum cover every sample since the creation.
+ *
+ * There is one writer per histogram (the model thread). Readers never block it:
+ * a percentile read concurrently with a record may see a window which is off by
+ * one sample, which is tolerated.
+ *
+ * @version 1.0
+ * @see TickStatistics
+**/
+public class RollingHistogram {
+	/**
+	 * The last samples (ring buffer).
+	 **/
+	private final AtomicLongArray Samples;
+
+	/**
+	 * Number of samples recorded so far.
+	 **/
+	private final AtomicLong Count = new AtomicLong();
+
+	/**
+	 * Sum of the samples recorded so far.
+	 **/
+	private final AtomicLong Sum = new AtomicLong();
+
+	/**
+	 * The largest sample recorded so far.
+	 **/
+	private final AtomicLong Max = new AtomicLong();
+
+	/**
+	 * Constructor.
+	 * @param window number of samples the percentiles are computed over
+	**/
+	public RollingHistogram(int window) {
+		assert window > 0;
+		this.Samples = new AtomicLongArray(window);
+	}
+
+	/**
+	 * Records a sample. Must be called by the single writer of the histogram.
+	 * @param value the sample
+	**/
+	public void record(long value) {
+		long count = this.Count.get();
+		this.Samples.lazySet((int)(count % this.Samples.length()), value);
+		this.Count.lazySet(count + 1);
+		this.Sum.lazySet(this.Sum.get() + value);
+		if(value > this.Max.get())
+			this.Max.lazySet(value);
+	}
+
+	/**
+	 * Returns a percentile of the samples in the window.
+	 * @param percentile the percentile [0, 100]
+	 * @return the smallest sample which is not less than the given percent of the samples, 0 if there are no samples
+	**/
+	public long getPercentile(double percentile) {
+		int n = (int)Math.min(this.Count.get(), this.Samples.length());
+		if(n == 0)
+			return 0;
+		long[] window = new long[n];
+		for(int i = 0; i < n; i++)
+			window[i] = this.Samples.get(i);
+		Arrays.sort(window);
+		int rank = (int)Math.ceil(percentile / 100.0 * window.length) - 1;
+		return window[Math.max(0, Math.min(rank, window.length - 1))];
+	}
+
+	/**
+	 * Returns the largest sample recorded so far.
+	 * @return Max the maximum
+	**/
+	public long getMax() {
+		return this.Max.get();
+	}
+
+	/**
+	 * Returns the number of samples recorded so far.
+	 * @return Count the number of samples
+	**/
+	public long getCount() {
+		return this.Count.get();
+	}
+
+	/**
+	 * Returns the sum of the samples recorded so far.
+	 * @return Sum the sum
+	**/
+	public long getSum() {
+		return this.Sum.get();
+	}
+}
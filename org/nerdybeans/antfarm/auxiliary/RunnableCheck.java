@@ -0,0 +1,75 @@
+package org.nerdybeans.antfarm.auxiliary;
+
+import java.io.IOException;
+
+/**
+ * The entry point shared by the runnable checks (e.g. TimingWheelCheck): a check plays
+ * the number of ticks given on the command line, and the exit code tells whether it
+ * has passed, so the checks can be run by a script.
+ *
+ * Exit codes: 0 if the check has passed, 1 if it has failed (or thrown an exception),
+ * 2 if the arguments are wrong.
+ *
+ * @version 1.0
+ **/
+public abstract class RunnableCheck {
+	/**
+	 * Name of the class of the check, for the messages.
+	 */
+	private final String Name;
+
+	/**
+	 * Number of ticks played if none is given.
+	 */
+	private final long DefaultTicks;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param check the class of the check
+	 * @param defaultTicks number of ticks played if none is given
+	 */
+	protected RunnableCheck(Class<?> check, long defaultTicks) {
+		this.Name = check.getName();
+		this.DefaultTicks = defaultTicks;
+	}
+
+	/**
+	 * Runs the check.
+	 *
+	 * @param ticks number of ticks to play
+	 * @return number of failures, 0 if the check has passed
+	 * @throws IOException
+	 */
+	protected abstract int check(long ticks) throws IOException;
+
+	/**
+	 * Runs the check with the arguments of the command line ([ticks]), then exits.
+	 *
+	 * @param args the arguments
+	 */
+	public void main(String[] args) {
+		long ticks = this.DefaultTicks;
+		try {
+			if (args.length > 0) {
+				ticks = Long.parseLong(args[0]);
+			}
+		} catch (NumberFormatException e) {
+			ticks = -1;
+		}
+		if (args.length > 1 || ticks < 0) {
+			System.out.println("Usage: java " + this.Name + " [ticks]");
+			System.exit(2);
+		}
+
+		int failures;
+		try {
+			failures = this.check(ticks);
+		} catch (Exception e) {
+			System.out.println("[DEBUG#RunnableCheck.main] " + this.Name + " stopped: " + e);
+			e.printStackTrace();
+			failures = 1;
+		}
+		System.exit((failures == 0) ? 0 : 1);
+	}
+}
@@ -0,0 +1,203 @@
+package org.nerdybeans.antfarm.auxiliary;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder events of the expensive operations of the simulation: the
+ * ticks and their phases, the food odour spreading, the weapons, saving and loading
+ * the game, the text serialization and the frames drawn by the main window.
+ *
+ * They are recorded with e.g. -XX:StartFlightRecording or jcmd JFR.start, and show
+ * up under AntFarm in JDK Mission Control. An event is used as follows:
+ *
+ *   SimulationEvents.Save event = new SimulationEvents.Save();
+ *   event.begin();
+ *   ... the operation ...
+ *   if(event.shouldCommit()) {
+ *       event.ants = ...;   // the attributes are computed only if the event is recorded
+ *       event.commit();
+ *   }
+ *
+ * While no recording is running, begin() and shouldCommit() are no-ops and the JIT
+ * removes the event object, so the events can stay in the production build.
+ *
+ * @version 1.0
+ * @see TimerObservable.tick()
+**/
+public final class SimulationEvents {
+	/**
+	 * Category of the events in the recordings.
+	 **/
+	public static final String CATEGORY = "AntFarm";
+
+	private SimulationEvents() {
+	}
+
+	/**
+	 * A tick of the Timer: notifying the subscribers which are due.
+	**/
+	@Name("org.nerdybeans.antfarm.Tick")
+	@Label("Tick")
+	@Category({CATEGORY, "Simulation"})
+	@StackTrace(false)
+	public static final class Tick extends Event {
+		@Label("Tick")
+		@Description("Ordinal number of the tick since the last reset")
+		public long tick;
+
+		@Label("Notified Subscribers")
+		public int notified;
+	}
+
+	/**
+	 * A phase of a tick (e.g. moving the ants of the tiles, diffusing the odours,
+	 * running the submitted commands, publishing the snapshot).
+	**/
+	@Name("org.nerdybeans.antfarm.TickPhase")
+	@Label("Tick Phase")
+	@Category({CATEGORY, "Simulation"})
+	@StackTrace(false)
+	public static final class TickPhase extends Event {
+		@Label("Tick")
+		public long tick;
+
+		@Label("Phase")
+		public String phase;
+
+		@Label("Ants")
+		@Description("Number of ants in the world, 0 if the phase does not concern the world")
+		public int ants;
+
+		@Label("Fields Touched")
+		@Description("Number of fields processed by the phase")
+		public int fields;
+	}
+
+	/**
+	 * A run of Warehouse.spreadFoodOdour().
+	**/
+	@Name("org.nerdybeans.antfarm.FoodOdourSpread")
+	@Label("Food Odour Spread")
+	@Category({CATEGORY, "Simulation"})
+	public static final class FoodOdourSpread extends Event {
+		@Label("Tick")
+		public long tick;
+
+		@Label("Inverted")
+		@Description("True if the odour of the warehouse has been removed")
+		public boolean inverted;
+
+		@Label("Sources")
+		@Description("Number of warehouses on the map")
+		public int sources;
+
+		@Label("Fields Touched")
+		public int fields;
+	}
+
+	/**
+	 * A weapon triggered at a field.
+	**/
+	@Name("org.nerdybeans.antfarm.WeaponTrigger")
+	@Label("Weapon Trigger")
+	@Category({CATEGORY, "Player"})
+	public static final class WeaponTrigger extends Event {
+		@Label("Tick")
+		public long tick;
+
+		@Label("Weapon")
+		public String weapon;
+
+		@Label("Target")
+		@Description("Index of the target field")
+		public int target;
+
+		@Label("Load")
+		@Description("Load of the weapon after triggering it")
+		public int load;
+
+		@Label("Fields Touched")
+		public int fields;
+	}
+
+	/**
+	 * Saving the game to a file.
+	**/
+	@Name("org.nerdybeans.antfarm.Save")
+	@Label("Game Save")
+	@Category({CATEGORY, "Persistence"})
+	public static final class Save extends Event {
+		@Label("Tick")
+		public long tick;
+
+		@Label("Ants")
+		public int ants;
+
+		@Label("Fields")
+		public int fields;
+	}
+
+	/**
+	 * Loading the game from a file.
+	**/
+	@Name("org.nerdybeans.antfarm.Load")
+	@Label("Game Load")
+	@Category({CATEGORY, "Persistence"})
+	public static final class Load extends Event {
+		@Label("Ants")
+		public int ants;
+
+		@Label("Fields")
+		public int fields;
+
+		@Label("Subscribers")
+		@Description("Number of Timer subscribers after loading")
+		public int subscribers;
+	}
+
+	/**
+	 * Converting a game to or from the text format (see GameSerializer).
+	**/
+	@Name("org.nerdybeans.antfarm.Serialization")
+	@Label("Text Serialization")
+	@Category({CATEGORY, "Persistence"})
+	public static final class Serialization extends Event {
+		@Label("Direction")
+		@Description("serialize or unserialize")
+		public String direction;
+
+		@Label("Fields")
+		public int fields;
+
+		@Label("Characters")
+		@Description("Length of the text")
+		public int characters;
+
+		@Label("Succeeded")
+		public boolean succeeded;
+	}
+
+	/**
+	 * A frame drawn by the main window from the published snapshot.
+	**/
+	@Name("org.nerdybeans.antfarm.Frame")
+	@Label("Frame")
+	@Category({CATEGORY, "View"})
+	@StackTrace(false)
+	public static final class Frame extends Event {
+		@Label("Tick")
+		@Description("Tick of the snapshot drawn")
+		public long tick;
+
+		@Label("Ants")
+		public int ants;
+
+		@Label("Fields Repainted")
+		public int fields;
+	}
+}
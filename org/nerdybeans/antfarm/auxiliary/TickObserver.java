@@ -21,6 +21,8 @@ public abstract class TickObserver implements Observer, TickSubscriber {
 	 * is the value of the current tick counter of the timer. This is,
 	 * because update() does the interval checks so that each subscriber
 	 * gets only those ticks that they were subscribed to (defined by getPeriod())
+	 * TimerObservable does not use it: it calls onTick() directly on the due ticks
+	 * (see its timing wheel).
 	 * @param observable The Timer which publishes the event
 	 * @param msg An event message passed by the Timer (TickObservable)
 	 * @see java.util.Observer, TickObservable, TickSubscriber
@@ -0,0 +1,193 @@
+package org.nerdybeans.antfarm.auxiliary;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Timing statistics of a Timer: the wall time of every tick, the time spent in
+ * the subscribers of every class during a tick (e.g. AntLion, AntEater, the
+ * TileScheduler moving the ants), and the ticks which took longer than the
+ * precision of the timer (overruns). A subscriber may record the elements it drives
+ * under their own classes too (the TileScheduler records Ant and AntOdour), so
+ * their time is counted both under it and under them.
+ *
+ * The durations are kept in rolling histograms (in nanoseconds), so the p50 / p99
+ * and the maximum can be read while the game is running, without a profiler.
+ * The times are measured by the timer with two System.nanoTime() calls per
+ * notified subscriber; profiling can be switched off with setEnabled(false) or
+ * with the antfarm.timer.profile=false system property.
+ *
+ * @version 1.0
+ * @see TimerObservable.tick()
+**/
+public class TickStatistics {
+	/**
+	 * Number of samples the percentiles are computed over.
+	 **/
+	public static final int WINDOW = 1024;
+
+	/**
+	 * The time spent in the subscribers of a class.
+	 * Updated by the thread running the ticks only.
+	**/
+	public static final class ClassTimer {
+		private final String Name;
+		private final RollingHistogram Histogram = new RollingHistogram(WINDOW);
+		/**
+		 * Time spent during the current tick
+		**/
+		private long Pending = 0;
+		private boolean Touched = false;
+
+		ClassTimer(String name) {
+			this.Name = name;
+		}
+
+		/**
+		 * @return Name the simple name of the subscriber class
+		**/
+		public String getName() {
+			return this.Name;
+		}
+
+		/**
+		 * @return the time spent during the ticks (one sample per tick in which a subscriber of the class was notified)
+		**/
+		public RollingHistogram getHistogram() {
+			return this.Histogram;
+		}
+	}
+
+	/**
+	 * Is profiling enabled?
+	 **/
+	private volatile boolean Enabled = !"false".equals(System.getProperty("antfarm.timer.profile"));
+
+	/**
+	 * Wall time of the ticks.
+	 **/
+	private final RollingHistogram Ticks = new RollingHistogram(WINDOW);
+
+	/**
+	 * The amount by which the overrunning ticks exceeded the precision.
+	 **/
+	private final RollingHistogram Overruns = new RollingHistogram(WINDOW);
+
+	/**
+	 * The timers of the subscriber classes, by name.
+	 **/
+	private final Map<String, ClassTimer> Classes = new LinkedHashMap<String, ClassTimer>();
+
+	/**
+	 * The class timers touched during the current tick.
+	 **/
+	private final ArrayList<ClassTimer> Touched = new ArrayList<ClassTimer>();
+
+	/**
+	 * Enables or disables profiling.
+	 * @param enabled true if the ticks should be measured
+	**/
+	public void setEnabled(boolean enabled) {
+		this.Enabled = enabled;
+	}
+
+	/**
+	 * Is profiling enabled?
+	 * @return Enabled true if the ticks are measured
+	**/
+	public boolean isEnabled() {
+		return this.Enabled;
+	}
+
+	/**
+	 * Returns the timer of a subscriber class, creating it if needed.
+	 * @param type the class of the subscriber
+	 * @return the timer of the class
+	**/
+	public synchronized ClassTimer forClass(Class<?> type) {
+		String name = type.getSimpleName();
+		ClassTimer timer = this.Classes.get(name);
+		if(timer == null) {
+			timer = new ClassTimer(name);
+			this.Classes.put(name, timer);
+		}
+		return timer;
+	}
+
+	/**
+	 * Adds the time spent in a subscriber (or in the elements driven by it) during the current tick.
+	 * Should be called by the thread running the ticks only.
+	 * @param timer the timer of the class, see forClass()
+	 * @param nanos the time spent
+	**/
+	public void addSubscriberTime(ClassTimer timer, long nanos) {
+		timer.Pending += nanos;
+		if(!timer.Touched) {
+			timer.Touched = true;
+			this.Touched.add(timer);
+		}
+	}
+
+	/**
+	 * Records the end of a tick: the time of every class touched during the tick,
+	 * the wall time of the tick and the overrun.
+	 * @param nanos the wall time of the tick
+	 * @param budget the precision of the timer (in nanoseconds), 0 if there is no budget
+	**/
+	void endTick(long nanos, long budget) {
+		for(int i = 0; i < this.Touched.size(); ++i) {
+			ClassTimer timer = this.Touched.get(i);
+			timer.Histogram.record(timer.Pending);
+			timer.Pending = 0;
+			timer.Touched = false;
+		}
+		this.Touched.clear();
+		this.Ticks.record(nanos);
+		if((budget > 0) && (nanos > budget))
+			this.Overruns.record(nanos - budget);
+	}
+
+	/**
+	 * @return the wall time of the ticks (in nanoseconds)
+	**/
+	public RollingHistogram getTicks() {
+		return this.Ticks;
+	}
+
+	/**
+	 * @return the amount by which the overrunning ticks exceeded the precision (in nanoseconds); its count is the number of overruns
+	**/
+	public RollingHistogram getOverruns() {
+		return this.Overruns;
+	}
+
+	/**
+	 * @return the timers of the subscriber classes seen so far
+	**/
+	public synchronized ArrayList<ClassTimer> getClasses() {
+		return new ArrayList<ClassTimer>(this.Classes.values());
+	}
+
+	/**
+	 * Formats a histogram as a line of the report (in microseconds).
+	**/
+	private static String format(String name, RollingHistogram histogram) {
+		return String.format("%-20s n=%-8d p50=%8.1f p99=%8.1f max=%8.1f us%n", name, histogram.getCount(),
+				histogram.getPercentile(50) / 1000.0, histogram.getPercentile(99) / 1000.0, histogram.getMax() / 1000.0);
+	}
+
+	/**
+	 * Returns a human readable summary of the statistics.
+	 * @return the report, one line per histogram
+	**/
+	public String report() {
+		StringBuilder report = new StringBuilder();
+		report.append(format("tick", this.Ticks));
+		report.append(format("overrun", this.Overruns));
+		for(ClassTimer timer : this.getClasses()) {
+			report.append(format(timer.getName(), timer.getHistogram()));
+		}
+		return report.toString();
+	}
+}
@@ -2,6 +2,7 @@ package org.nerdybeans.antfarm.auxiliary;
 
 
 import java.util.Observable;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 /**
  * An abstract ancestor class of different timer variants.
@@ -26,6 +27,16 @@ public abstract class Timer extends Observable implements Runnable {
 	
 	protected volatile boolean subscribe = true;
 	
+	/**
+	 * Commands submitted by other threads, run by the model thread between two ticks.
+	**/
+	private final ConcurrentLinkedQueue<Runnable> Commands = new ConcurrentLinkedQueue<Runnable>();
+	
+	/**
+	 * Called by the model thread after the commands and the tick (e.g. to publish a snapshot of the model).
+	**/
+	private volatile Runnable Publisher;
+	
 	protected Timer() {
 		
 	}
@@ -40,6 +51,39 @@ public abstract class Timer extends Observable implements Runnable {
 	**/
 	public abstract int getTick();
 	
+	/**
+	 * @return Number of ticks completed since the Timer was created (it is never reset)
+	**/
+	public abstract long getTickCount();
+	
+	/**
+	 * Sets the ordinal number of the last tick, e.g. when a saved game is restored:
+	 * the ordinal numbers go on from it, and the subscribers are armed again relative to it.
+	 * The tick count is not changed. Should be called between two ticks.
+	 * @param tick the ordinal number of the last tick
+	 * @see getTick
+	**/
+	public abstract void setTick(long tick);
+	
+	/**
+	 * Counts how many times a subscriber with the given period would have responded
+	 * between two tick counts. Used by the elements which compute their state
+	 * lazily instead of subscribing (e.g. odours).
+	 * @param period the period of the subscriber
+	 * @param from tick count of the last update (exclusive)
+	 * @param to current tick count (inclusive)
+	 * @return number of responses in (from, to]
+	 * @see getTickCount
+	**/
+	public abstract long countFirings(int period, long from, long to);
+	
+	/**
+	 * @return Timing statistics of the ticks and of the subscriber classes, null if the timer does not measure them
+	**/
+	public TickStatistics getStatistics() {
+		return null;
+	}
+	
 	
 	/**
 	 * Adds a subscriber.
@@ -78,6 +122,73 @@ public abstract class Timer extends Observable implements Runnable {
 		this.scheduling = true;
 	}
 	
+	/**
+	 * Submits a command to the model thread.
+	 * The model is modified by the model thread only (single writer): the other
+	 * threads (the GUI, the controller) should not call the model directly, they
+	 * submit commands instead, and read the snapshots published after every tick.
+	 * The command is run before the next tick, even if the timer is disabled.
+	 * @param Command the modification of the model
+	**/
+	public void submit(Runnable Command) {
+		this.Commands.add(Command);
+	}
+	
+	/**
+	 * Runs the submitted commands, in the order of submission.
+	 * Should be called by the model thread only.
+	 * @return true if any command was run
+	**/
+	public boolean runCommands() {
+		boolean any = false;
+		Runnable command;
+		while((command = this.Commands.poll()) != null) {
+			command.run();
+			any = true;
+		}
+		return any;
+	}
+	
+	/**
+	 * Sets the action which publishes the state of the model for the other threads.
+	 * @param Publisher the action (null: nothing is published)
+	**/
+	public void setPublisher(Runnable Publisher) {
+		this.Publisher = Publisher;
+	}
+	
+	/**
+	 * Calls the publisher, if there is any.
+	 * Should be called by the model thread only.
+	**/
+	public void publish() {
+		Runnable publisher = this.Publisher;
+		if(publisher != null) publisher.run();
+	}
+	
+	/**
+	 * Does one iteration of the model thread without waiting: runs the submitted
+	 * commands, ticks (if scheduling is enabled) and publishes the state of the model
+	 * if it has changed. Should be called by the model thread only (or by a headless
+	 * driver, e.g. a benchmark, instead of starting the thread).
+	 * @return true if the model has changed
+	**/
+	public boolean step() {
+		long span = TraceRecorder.begin();
+		boolean changed = this.runCommands();
+		if(changed) TraceRecorder.end("commands", span);
+		if(this.scheduling) {
+			this.tick();
+			changed = true;
+		}
+		if(changed) {
+			span = TraceRecorder.begin();
+			this.publish();
+			TraceRecorder.end("publish", span);
+		}
+		return changed;
+	}
+	
 	/**
 	 * Resets the timer to its initial state
 	 **/
@@ -98,4 +209,4 @@ public abstract class Timer extends Observable implements Runnable {
 	public static Timer getInstance() {
 		return InstanceObj;
 	}
-}
\ No newline at end of file
+}
\ No newline at end of file
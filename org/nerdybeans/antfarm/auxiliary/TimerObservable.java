@@ -1,33 +1,135 @@
 package org.nerdybeans.antfarm.auxiliary;
 
-import java.io.Serializable;
+import java.util.IdentityHashMap;
 
 
 /**
  * This class basically implements a Timer based on java.util.Observable.
  * For further information, read the method summaries.
+ *
+ * The subscribers are scheduled on a hierarchical timing wheel: every subscriber
+ * is put into the slot of the tick it is due next, and it is re-armed (put into the
+ * slot of its next due tick) after it has been notified. A subscriber with period p
+ * is notified on every tick whose ordinal number (counted from 1 after the last
+ * reset) is divisible by p, whatever the period is; the ticks are not wrapped around
+ * any more, so the periods need not divide the section length.
+ *
+ * Level L of the wheel has WHEEL_SLOTS slots of WHEEL_SLOTS^L ticks each. A subscriber
+ * due within WHEEL_SLOTS ticks is on level 0, the others are on the level matching
+ * the distance of their due tick, and they are moved down (cascaded) when the lower
+ * level wraps around. So a tick costs O(number of due subscribers), plus the
+ * occasional cascade, instead of a call to every subscriber.
+ *
+ * The subscribers due at the same tick are notified in the order of their subscription
+ * (a subscriber which has been removed and added again counts as a new one). The slot
+ * lists are kept in that order: an arm is inserted after the last arm subscribed before
+ * it, which is the tail of the list in most cases. So the order of the notifications
+ * depends only on the subscriptions, not on the history of the wheel, and a restored
+ * game whose elements subscribe in the original order goes on the same way.
+ *
  * @author Demarcsek, Szabo
 **/
-public class TimerObservable extends Timer {	
+public class TimerObservable extends Timer {
 	private boolean killed = false;
-	
-	
+
+	/**
+	 * Number of slots on each level of the wheel (a power of two)
+	 **/
+	public static final int WHEEL_SLOTS = 64;
+
+	/**
+	 * log2(WHEEL_SLOTS)
+	 **/
+	private static final int WHEEL_BITS = 6;
+
+	/**
+	 * Number of levels of the wheel, the subscribers due later than
+	 * WHEEL_SLOTS^WHEEL_LEVELS ticks are kept in the overflow list
+	 **/
+	public static final int WHEEL_LEVELS = 4;
+
+	/**
+	 * A subscriber armed on the wheel (an element of a doubly linked slot list)
+	 **/
+	private static final class Arm {
+		private final TickSubscriber subscriber;
+		private final int period;
+		/**
+		 * The time spent in the subscribers of the same class
+		 **/
+		private final TickStatistics.ClassTimer timer;
+		/**
+		 * The position of the subscription, the arms due at the same tick are notified in this order
+		 **/
+		private final long order;
+		private long due;
+		private Arm prev, next;
+		/**
+		 * The slot list containing the arm (null while it is being notified)
+		 **/
+		private Arm[] slots;
+		private int slot;
+
+		Arm(TickSubscriber subscriber, int period, TickStatistics.ClassTimer timer, long order) {
+			this.subscriber = subscriber;
+			this.period = period;
+			this.timer = timer;
+			this.order = order;
+		}
+	}
+
+	/**
+	 * Heads of the slot lists, by level
+	 **/
+	private final Arm[][] wheel = new Arm[WHEEL_LEVELS][WHEEL_SLOTS];
+
+	/**
+	 * Subscribers due later than the last level of the wheel can hold
+	 **/
+	private final Arm[] overflow = new Arm[1];
+
+	/**
+	 * The arms of the subscribers
+	 **/
+	private final IdentityHashMap<TickSubscriber, Arm> arms = new IdentityHashMap<TickSubscriber, Arm>();
+
+	/**
+	 * Number of subscriptions so far (the order of the next arm)
+	 **/
+	private long subscriptions = 0;
+
+	/**
+	 * Timing of the ticks and of the subscriber classes
+	 **/
+	private final TickStatistics statistics = new TickStatistics();
+
 	/**
-	 * Maximal length of a timer cycle (in ticks)
+	 * Length of a timer cycle (in ticks).
+	 * It does not limit the periods any more, it is kept for the callers of the constructors.
 	 **/
 	private int section_length;
 	/**
-	 * The current tick's ordinal number (phase)
+	 * The current tick's ordinal number (counted from 1 after the last reset)
 	 **/
-	private int current_tick;
-	
+	private volatile long current_tick;
+
+	/**
+	 * Number of ticks completed since the Timer was created
+	 **/
+	private volatile long tick_count = 0;
+
+	/**
+	 * Value of tick_count at the last reset (the ordinal numbers start from 1 there)
+	 **/
+	private long tick_base = 0;
+
 	/**
 	 * Resolution in ms.
-	 * 
+	 *
 	 * Default is 100 ms (0.1 sec)
 	 **/
 	private int precision;
-	
+
 	/**
 	 * Set resolution
 	 * @param pre
@@ -35,11 +137,11 @@ public class TimerObservable extends Timer {
 	public void setPrecision( int pre ) {
 		this.precision = pre;
 	}
-	
+
 	public int getPrecision() {
 		return this.precision;
 	}
-	
+
 	/**
 	 * Constructor
 	 * @param len_sec section legth parameter
@@ -48,86 +150,281 @@ public class TimerObservable extends Timer {
 		this.scheduling = true;
 		this.section_length = len_sec;
 		this.precision = 75; // msec
-		this.current_tick = 1;
+		this.current_tick = 0;
 	}
-	
+
 	public TimerObservable( int len_sec, int prec ) {
 		this(len_sec);
 		this.setPrecision(prec);
 	}
-	
+
 	/**
 	 * Default constructor. Default section length is 16.
 	 **/
 	private TimerObservable() {
 		this(16);
 	}
-	
+
 
 	/**
-	 * Method for calling the "tick", whick basically notifies all the subscribed Observers that they should carry out 
-	 * what is implemented in their onTick method.
+	 * Method for calling the "tick", whick basically notifies the subscribers which are due
+	 * that they should carry out what is implemented in their onTick method.
+	 * The subscribers are notified without holding the lock of the timer, so they
+	 * can subscribe and unsubscribe elements (from any thread).
+	 * The time spent in the subscribers is added to the statistics of their class,
+	 * and the tick is recorded as a SimulationEvents.Tick event.
+	 * The tick and the dispatch to every subscriber are recorded by the TraceRecorder (if it is enabled).
 	 **/
 	public void tick() {
-		//System.out.println("[Timer] TimerObservable.tick() current_tick = " + this.current_tick + " notifying " + this.countObservers() + " event handlers...");;
-		setChanged();
-		
-		notifyObservers(new Integer(this.getTick()));
-		if( this.current_tick == this.section_length ) {
-			// Turning
-			this.current_tick = 0;
-			
-			//System.out.println("[DEBUG#TimerObservable.tick] # = " + this.countObservers());
+		SimulationEvents.Tick event = new SimulationEvents.Tick();
+		event.begin();
+		long span = TraceRecorder.begin();
+		boolean profiling = this.statistics.isEnabled();
+		long start = profiling ? System.nanoTime() : 0;
+		int notified = 0;
+		long now;
+		synchronized(this) {
+			now = ++this.current_tick;
+			this.cascade(now);
+		}
+		Integer message = Integer.valueOf((int)now);
+
+		int slot = (int)(now & (WHEEL_SLOTS - 1));
+		while(true) {
+			Arm arm;
+			synchronized(this) {
+				arm = this.wheel[0][slot];
+				if(arm == null) break;
+				this.unlink(arm);
+			}
+			notified++;
+
+			long dispatch = TraceRecorder.begin();
+			if(profiling) {
+				long t0 = System.nanoTime();
+				arm.subscriber.onTick(message);
+				this.statistics.addSubscriberTime(arm.timer, System.nanoTime() - t0);
+			} else {
+				arm.subscriber.onTick(message);
+			}
+			TraceRecorder.end(arm.timer.getName(), dispatch);
+
+			synchronized(this) {
+				// re-arm, unless it has been unsubscribed meanwhile
+				if(this.arms.get(arm.subscriber) == arm) {
+					arm.due += arm.period;
+					this.place(arm, now);
+				}
+			}
+		}
+		if(profiling)
+			this.statistics.endTick(System.nanoTime() - start, this.precision * 1000000L);
+		this.tick_count++;
+		TraceRecorder.end("tick", span);
+		if(event.shouldCommit()) {
+			event.tick = now;
+			event.notified = notified;
+			event.commit();
+		}
+	}
+
+	/**
+	 * Moves the subscribers of the higher levels whose slot has come down to the lower levels.
+	 * Called at the beginning of every tick.
+	 **/
+	private void cascade(long now) {
+		int level = 0;
+		while((level + 1 < WHEEL_LEVELS) && (((now >>> (WHEEL_BITS * (level + 1))) << (WHEEL_BITS * (level + 1))) == now)) {
+			level++;
+		}
+		if((level == WHEEL_LEVELS - 1) && (((now >>> (WHEEL_BITS * WHEEL_LEVELS)) << (WHEEL_BITS * WHEEL_LEVELS)) == now)) {
+			this.replace(this.overflow, 0, now);
+		}
+		// from the top, so the subscribers cascaded down are cascaded further in the same tick
+		for(int l = level; l >= 1; --l) {
+			this.replace(this.wheel[l], (int)((now >>> (WHEEL_BITS * l)) & (WHEEL_SLOTS - 1)), now);
+		}
+	}
+
+	/**
+	 * Places every subscriber of a slot again, relative to the current tick.
+	 **/
+	private void replace(Arm[] slots, int slot, long now) {
+		Arm arm = slots[slot];
+		slots[slot] = null;
+		while(arm != null) {
+			Arm next = arm.next;
+			arm.prev = arm.next = null;
+			arm.slots = null;
+			this.place(arm, now);
+			arm = next;
+		}
+	}
+
+	/**
+	 * Puts a subscriber into the slot of its due tick.
+	 * @param arm the subscriber (due not before now)
+	 * @param now the current tick (ordinal number)
+	 **/
+	private void place(Arm arm, long now) {
+		long delta = arm.due - now;
+		Arm[] slots = this.overflow;
+		int slot = 0;
+		for(int level = 0; level < WHEEL_LEVELS; ++level) {
+			if(delta < (1L << (WHEEL_BITS * (level + 1)))) {
+				slots = this.wheel[level];
+				slot = (int)((arm.due >>> (WHEEL_BITS * level)) & (WHEEL_SLOTS - 1));
+				break;
+			}
+		}
+		// keep the list in the order of subscription, searching from the tail
+		arm.slots = slots;
+		arm.slot = slot;
+		Arm head = slots[slot];
+		if(head == null) {
+			arm.prev = arm;
+			arm.next = null;
+			slots[slot] = arm;
+			return;
+		}
+		Arm tail = head.prev;
+		if(tail.order < arm.order) {
+			tail.next = arm;
+			arm.prev = tail;
+			arm.next = null;
+			head.prev = arm;
+			return;
+		}
+		Arm successor = tail;
+		while((successor != head) && (successor.prev.order > arm.order)) {
+			successor = successor.prev;
+		}
+		arm.next = successor;
+		arm.prev = successor.prev;
+		if(successor == head) {
+			slots[slot] = arm;
 		} else {
-			// Advancing (increment)
-			this.current_tick++;
+			successor.prev.next = arm;
 		}
+		successor.prev = arm;
 	}
-	
+
+	/**
+	 * Removes a subscriber from its slot list.
+	 **/
+	private void unlink(Arm arm) {
+		Arm[] slots = arm.slots;
+		if(slots == null) return;
+		Arm head = slots[arm.slot];
+		if(arm == head) {
+			slots[arm.slot] = arm.next;
+			if(arm.next != null) arm.next.prev = arm.prev;
+		} else {
+			arm.prev.next = arm.next;
+			if(arm.next != null) arm.next.prev = arm.prev;
+			else head.prev = arm.prev;
+		}
+		arm.prev = arm.next = null;
+		arm.slots = null;
+	}
+
 	/**
-	 * Returns the current tick value (counter value).
+	 * Returns the current tick value (counter value): the ordinal number of the
+	 * last tick since the last reset.
 	 **/
 	public int getTick() {
-		return this.current_tick;
+		return (int)this.current_tick;
+	}
+
+	/**
+	 * Sets the ordinal number of the last tick: every subscriber is armed at the first
+	 * tick after it whose ordinal number is divisible by its period, as if it had been
+	 * subscribed all along. countFirings() counts from the new ordinal numbers.
+	 **/
+	@Override
+	public synchronized void setTick(long tick) {
+		for(Arm arm : this.arms.values()) {
+			this.unlink(arm);
+		}
+		this.current_tick = tick;
+		this.tick_base = this.tick_count - tick;
+		for(Arm arm : this.arms.values()) {
+			arm.due = (tick / arm.period + 1) * arm.period;
+			this.place(arm, tick);
+		}
+	}
+
+	/**
+	 * Returns the timing statistics of the ticks.
+	 **/
+	@Override
+	public TickStatistics getStatistics() {
+		return this.statistics;
 	}
-	
+
+	/**
+	 * Returns the number of ticks completed since the Timer was created.
+	 **/
+	public long getTickCount() {
+		return this.tick_count;
+	}
+
+	/**
+	 * Counts the responses of a subscriber with the given period in the tick count range (from, to].
+	 * The n-th tick after a reset has the ordinal number n, and the subscriber responds
+	 * when the ordinal number is divisible by its period.
+	 **/
+	public long countFirings(int period, long from, long to) {
+		from = Math.max(from, this.tick_base);
+		if (to <= from) {
+			return 0;
+		}
+		return (to - this.tick_base) / period - (from - this.tick_base) / period;
+	}
+
 	/**
 	 * Running the Timer while it is scheduled to operate.
+	 * This is the model thread: the submitted commands are run before every tick,
+	 * and the state of the model is published after them (see step()).
+	 * The phases of the loop are recorded by the TraceRecorder (if it is enabled).
 	 **/
 	@Override
 	public void run() {
 		while(true) {
 			try {
-				if(scheduling) this.tick();
+				this.step();
 				if(this.killed) break;
 				disable();
+				long span = TraceRecorder.begin();
 				synchronized(this.Lock) {
 					this.Lock.notifyAll();
 				}
+				TraceRecorder.end("notify", span);
+				span = TraceRecorder.begin();
 				Thread.sleep(this.precision);
+				TraceRecorder.end("sleep", span);
 			} catch( InterruptedException e ) {
 				System.out.println("[DEBUG#TimerObservable] Timer interrupted.");
 			}
 		}
 	}
-	
+
 	/**
 	 * Adding a Subscriber.
 	 * @param Observer The observer to be added.
 	 **/
-	public void addSubscriber(TickObserver Observer) {		
-		if(this.subscribe)
-			addObserver(Observer);
+	public void addSubscriber(TickObserver Observer) {
+		this.addSubscriber((TickSubscriber)Observer);
 	}
-	
+
 	/**
 	 * Removing a Subscriber.
 	 * @param Subscriber The observer to be removed.
 	 **/
 	public void removeSubscriber(TickObserver Subscriber) {
-			deleteObserver(Subscriber);
+		this.removeSubscriber((TickSubscriber)Subscriber);
 	}
-	
+
 	/**
 	 * Stopping the Timer.
 	 **/
@@ -135,7 +432,7 @@ public class TimerObservable extends Timer {
 		this.scheduling = false;
 		this.killed = true;
 	}
-	
+
 	/**
 	 * Check if Timer is in operation (scheduling)
 	 **/
@@ -143,23 +440,52 @@ public class TimerObservable extends Timer {
 		return this.scheduling;
 	}
 
-	
+
+	/**
+	 * Adding a Subscriber: it is armed at the first tick after the current one
+	 * whose ordinal number is divisible by its period. A subscriber is added only once.
+	 * @param Subscriber The subscriber to be added.
+	 **/
 	@Override
-	public void addSubscriber(TickSubscriber Subscriber) {
+	public synchronized void addSubscriber(TickSubscriber Subscriber) {
 		// System.out.println("TimerObservable.addSubscriber()");
-		if(this.subscribe)
-			addObserver(Subscriber);
+		if(!this.subscribe || this.arms.containsKey(Subscriber))
+			return;
+		int period = Math.max(Subscriber.getPeriod(), 1);
+		Arm arm = new Arm(Subscriber, period, this.statistics.forClass(Subscriber.getClass()), this.subscriptions++);
+		arm.due = (this.current_tick / period + 1) * period;
+		this.arms.put(Subscriber, arm);
+		this.place(arm, this.current_tick);
 	}
 
+	/**
+	 * Removing a Subscriber, it is not notified any more.
+	 * @param Subscriber The subscriber to be removed.
+	 **/
 	@Override
-	public void removeSubscriber(TickSubscriber Subscriber) {
-		deleteObserver(Subscriber);
+	public synchronized void removeSubscriber(TickSubscriber Subscriber) {
+		Arm arm = this.arms.remove(Subscriber);
+		if(arm != null)
+			this.unlink(arm);
 	}
 
+	/**
+	 * Returns the number of subscribers.
+	 **/
 	@Override
-	public void reset() {
-		this.deleteObservers();
-		this.current_tick = 1;
+	public synchronized int countObservers() {
+		return this.arms.size();
 	}
-	
+
+	@Override
+	public synchronized void reset() {
+		for(Arm[] slots : this.wheel) {
+			java.util.Arrays.fill(slots, null);
+		}
+		this.overflow[0] = null;
+		this.arms.clear();
+		this.current_tick = 0;
+		this.tick_base = this.tick_count;
+	}
+
 }
@@ -0,0 +1,157 @@
+package org.nerdybeans.antfarm.auxiliary;
+
+import java.util.ArrayList;
+
+/**
+ * A runnable check of the timing wheel of TimerObservable. Subscribers with periods on
+ * every level of the wheel (and beyond the last one) are ticked, some of them subscribed
+ * or unsubscribed half-way, and each of them must be notified exactly on the ticks whose
+ * ordinal number is divisible by its period, as many times as countFirings() tells, and
+ * after the subscribers due at the same tick which were subscribed before it.
+ *
+ * The default number of ticks covers the cascades from the first three levels; more than
+ * WHEEL_SLOTS^WHEEL_LEVELS ticks cover the overflow list as well (it takes a while).
+ *
+ * Usage:
+ *   java org.nerdybeans.antfarm.auxiliary.TimingWheelCheck [ticks]
+ * The exit code is 0 if the check has passed (see RunnableCheck).
+ *
+ * @version 1.0
+ * @see TimerObservable
+ **/
+public class TimingWheelCheck {
+	/**
+	 * Default number of ticks.
+	 */
+	public static final int DEFAULT_TICKS = 600000;
+
+	/**
+	 * Periods around the slot boundaries of the levels of the wheel.
+	 */
+	private static final int[] PERIODS = { 1, 2, 3, 63, 64, 65, 4095, 4096, 4097, 262143, 262144, 262145, 16777217 };
+
+	/**
+	 * A subscriber counting its notifications.
+	 */
+	private static class Probe extends TickObserver {
+		/**
+		 * The last probe notified (on the tick LastTick).
+		 */
+		private static Probe Last;
+		private static long LastTick;
+
+		private final int Period;
+
+		/**
+		 * Position of the subscription of the probe.
+		 */
+		private final int Order;
+
+		/**
+		 * Tick count when the probe was subscribed, and when it was unsubscribed (-1: never).
+		 */
+		private long Since, Until = -1;
+
+		/**
+		 * Number of notifications, and the ones on a wrong tick.
+		 */
+		private long Count = 0;
+		private long Wrong = 0;
+
+		private Probe(int period, int order) {
+			this.Period = period;
+			this.Order = order;
+		}
+
+		@Override
+		public void onTick(Object TickEventArgs) {
+			long now = Timer.getInstance().getTickCount() + 1;	// counted when the tick is over
+			if ((now % this.Period != 0) || (((Integer)TickEventArgs).intValue() != (int)now) || (this.Until >= 0)) {
+				this.Wrong++;
+			}
+			if ((Last != null) && (LastTick == now) && (Last.Order > this.Order)) {
+				this.Wrong++;		// notified before a probe subscribed earlier
+			}
+			Last = this;
+			LastTick = now;
+			this.Count++;
+		}
+
+		@Override
+		public int getPeriod() {
+			return this.Period;
+		}
+	}
+
+	/**
+	 * Subscribes a probe.
+	 */
+	private static Probe subscribe(Timer timer, ArrayList<Probe> probes, int period) {
+		Probe probe = new Probe(period, probes.size());
+		probe.Since = timer.getTickCount();
+		timer.addSubscriber(probe);
+		probes.add(probe);
+		return probe;
+	}
+
+	/**
+	 * Runs the check.
+	 *
+	 * @param ticks number of ticks
+	 * @return number of probes which have failed
+	 */
+	public static int run(long ticks) {
+		Timer timer = new TimerObservable(30, 0);
+		Timer.setInstance(timer);
+		ArrayList<Probe> probes = new ArrayList<Probe>();
+		for (int period : PERIODS) {
+			subscribe(timer, probes, period);
+		}
+		ArrayList<Probe> leaving = new ArrayList<Probe>();
+
+		for (long t = 1; t <= ticks; ++t) {
+			if (t == 1000) {
+				// joins between two firings of the shorter periods, and on a level 1 boundary
+				subscribe(timer, probes, 97);
+				subscribe(timer, probes, 5000);
+				leaving.add(subscribe(timer, probes, 7));
+				leaving.add(subscribe(timer, probes, 300000));
+			}
+			if (t == 200000) {
+				for (Probe probe : leaving) {
+					timer.removeSubscriber(probe);
+					probe.Until = timer.getTickCount();
+				}
+			}
+			timer.tick();
+		}
+
+		int failures = 0;
+		for (Probe probe : probes) {
+			long until = (probe.Until >= 0) ? probe.Until : timer.getTickCount();
+			long expected = timer.countFirings(probe.Period, probe.Since, until);
+			if (probe.Count != expected || probe.Wrong != 0) {
+				failures++;
+				System.out.println("[DEBUG#TimingWheelCheck.run] Period " + probe.Period + " from tick " + probe.Since
+						+ ": " + probe.Count + " notifications (" + probe.Wrong + " on a wrong tick or out of order), " + expected + " expected");
+			}
+		}
+		System.out.println("[DEBUG#TimingWheelCheck.run] " + probes.size() + " subscribers, " + ticks + " ticks, "
+				+ ((failures == 0) ? "passed" : failures + " failed"));
+		return failures;
+	}
+
+	/**
+	 * Entry point.
+	 *
+	 * @param args [ticks]
+	 */
+	public static void main(String[] args) {
+		new RunnableCheck(TimingWheelCheck.class, DEFAULT_TICKS) {
+			@Override
+			protected int check(long ticks) {
+				return run(ticks);
+			}
+		}.main(args);
+	}
+}
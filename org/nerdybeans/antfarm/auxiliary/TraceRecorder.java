@@ -0,0 +1,238 @@
+package org.nerdybeans.antfarm.auxiliary;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.invoke.VarHandle;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Records the spans of the threads of the game (the ticks and the subscriber classes
+ * on the model thread, the wait for the model thread and the frames on the control
+ * thread, the repaints on the event dispatch thread, saving the game) and writes
+ * them as a Chrome trace (trace-event JSON), which can be opened in chrome://tracing
+ * or ui.perfetto.dev to see how the threads interleave.
+ *
+ * Tracing is off by default. It is switched on with the system property
+ * antfarm.trace=file (the trace is written to the file when the JVM exits), or with
+ * setEnabled(true) and dump(). A span is recorded as follows:
+ *
+ *   long span = TraceRecorder.begin();
+ *   ... the operation ...
+ *   TraceRecorder.end("name", span);
+ *
+ * The spans are kept in a ring buffer of CAPACITY entries, the oldest ones are
+ * overwritten. Recording a span takes no lock: the writer claims an entry with an
+ * atomic increment, marks it as being written (-1), fills it and then publishes it
+ * by storing its sequence number with release semantics. A store-store fence keeps
+ * the fields from being written before the mark. The reader reads the sequence
+ * number, the fields and, after a load-load fence, the sequence number again; the
+ * entries which are being overwritten while the trace is written are skipped.
+ *
+ * @version 1.0
+ * @see TimerObservable.run()
+**/
+public final class TraceRecorder {
+	/**
+	 * Number of spans kept (a power of two).
+	 **/
+	public static final int CAPACITY = 1 << 16;
+
+	/**
+	 * The system property naming the file the trace is written to on exit.
+	 **/
+	public static final String PROPERTY = "antfarm.trace";
+
+	private static final int MASK = CAPACITY - 1;
+
+	/**
+	 * Is tracing enabled?
+	 **/
+	private static volatile boolean Enabled = false;
+
+	/**
+	 * The time the timestamps of the trace are relative to.
+	 **/
+	private static final long Origin = System.nanoTime();
+
+	/**
+	 * Sequence number of the next span.
+	 **/
+	private static final AtomicLong Cursor = new AtomicLong();
+
+	/**
+	 * Sequence number of the span stored in the entries, -1 while an entry is being written.
+	 **/
+	private static final AtomicLongArray Sequences = new AtomicLongArray(CAPACITY);
+
+	/**
+	 * The entries of the ring buffer.
+	 **/
+	private static final String[] Names = new String[CAPACITY];
+	private static final long[] Threads = new long[CAPACITY];
+	private static final long[] Starts = new long[CAPACITY];
+	private static final long[] Durations = new long[CAPACITY];
+
+	/**
+	 * Names of the threads seen, by thread id.
+	 **/
+	private static final Map<Long, String> ThreadNames = new ConcurrentHashMap<Long, String>();
+
+	static {
+		for(int i = 0; i < CAPACITY; ++i) {
+			Sequences.set(i, -1);
+		}
+		final String file = System.getProperty(PROPERTY);
+		if(file != null && !file.isEmpty()) {
+			Enabled = true;
+			Runtime.getRuntime().addShutdownHook(new Thread("TraceRecorder") {
+				public void run() {
+					dump(file);
+				}
+			});
+		}
+	}
+
+	private TraceRecorder() {
+	}
+
+	/**
+	 * Enables or disables tracing.
+	 * @param enabled true if the spans should be recorded
+	**/
+	public static void setEnabled(boolean enabled) {
+		Enabled = enabled;
+	}
+
+	/**
+	 * Is tracing enabled?
+	 * @return Enabled true if the spans are recorded
+	**/
+	public static boolean isEnabled() {
+		return Enabled;
+	}
+
+	/**
+	 * Starts a span.
+	 * @return the start of the span, 0 if tracing is disabled
+	**/
+	public static long begin() {
+		return Enabled ? System.nanoTime() : 0;
+	}
+
+	/**
+	 * Ends a span and records it (if it has been started while tracing was enabled).
+	 * @param name name of the span
+	 * @param start the value returned by begin()
+	**/
+	public static void end(String name, long start) {
+		if(start == 0)
+			return;
+		record(name, start, System.nanoTime() - start);
+	}
+
+	/**
+	 * Stores a span in the ring buffer.
+	**/
+	private static void record(String name, long start, long duration) {
+		Thread current = Thread.currentThread();
+		long thread = current.getId();
+		if(!ThreadNames.containsKey(thread))
+			ThreadNames.put(thread, current.getName());
+
+		long sequence = Cursor.getAndIncrement();
+		int slot = (int)(sequence & MASK);
+		Sequences.set(slot, -1);
+		VarHandle.storeStoreFence();	// the mark must be visible before the fields change
+		Names[slot] = name;
+		Threads[slot] = thread;
+		Starts[slot] = start;
+		Durations[slot] = duration;
+		Sequences.setRelease(slot, sequence);
+	}
+
+	/**
+	 * Writes the spans recorded so far to a file.
+	 * @param file name of the file
+	 * @return true if the trace has been written
+	**/
+	public static boolean dump(String file) {
+		try {
+			Writer out = new FileWriter(file);
+			try {
+				dump(out);
+			} finally {
+				out.close();
+			}
+			System.out.println("[DEBUG#TraceRecorder.dump] Trace written to " + file);
+			return true;
+		} catch(IOException e) {
+			System.out.println("[DEBUG#TraceRecorder.dump] " + e);
+			return false;
+		}
+	}
+
+	/**
+	 * Writes the spans recorded so far as a Chrome trace (trace-event JSON).
+	 * @param out where to write the trace
+	**/
+	public static synchronized void dump(Writer out) throws IOException {
+		long end = Cursor.get();
+		long first = Math.max(0, end - CAPACITY);
+
+		out.write("{\"displayTimeUnit\":\"ms\",\"traceEvents\":[");
+		boolean comma = false;
+		for(Map.Entry<Long, String> thread : ThreadNames.entrySet()) {
+			if(comma) out.write(",");
+			out.write("\n{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":" + thread.getKey()
+					+ ",\"args\":{\"name\":\"" + escape(thread.getValue()) + "\"}}");
+			comma = true;
+		}
+		for(long sequence = first; sequence < end; ++sequence) {
+			int slot = (int)(sequence & MASK);
+			if(Sequences.get(slot) != sequence)
+				continue;
+			String name = Names[slot];
+			long thread = Threads[slot];
+			long start = Starts[slot];
+			long duration = Durations[slot];
+			VarHandle.loadLoadFence();	// the fields must be read before the sequence number is checked again
+			if(Sequences.get(slot) != sequence)
+				continue;		// overwritten meanwhile
+
+			if(comma) out.write(",");
+			out.write("\n{\"name\":\"" + escape(name) + "\",\"ph\":\"X\",\"pid\":1,\"tid\":" + thread
+					+ ",\"ts\":" + micros(start - Origin) + ",\"dur\":" + micros(duration) + "}");
+			comma = true;
+		}
+		out.write("\n]}\n");
+	}
+
+	/**
+	 * Formats nanoseconds as microseconds (the time unit of the trace).
+	**/
+	private static String micros(long nanos) {
+		return (nanos / 1000) + "." + String.format("%03d", nanos % 1000);
+	}
+
+	/**
+	 * Escapes a string for JSON.
+	**/
+	private static String escape(String text) {
+		StringBuilder escaped = new StringBuilder(text.length());
+		for(int i = 0; i < text.length(); ++i) {
+			char c = text.charAt(i);
+			if(c == '"' || c == '\\') {
+				escaped.append('\\').append(c);
+			} else if(c < ' ') {
+				escaped.append(String.format("\\u%04x", (int)c));
+			} else {
+				escaped.append(c);
+			}
+		}
+		return escaped.toString();
+	}
+}
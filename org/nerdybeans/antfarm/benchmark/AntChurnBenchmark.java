@@ -0,0 +1,173 @@
+package org.nerdybeans.antfarm.benchmark;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+
+import org.nerdybeans.antfarm.auxiliary.Timer;
+import org.nerdybeans.antfarm.auxiliary.TimerObservable;
+import org.nerdybeans.antfarm.model.AntPool;
+import org.nerdybeans.antfarm.model.GameWorld;
+import org.nerdybeans.antfarm.model.WorldField;
+import org.nerdybeans.antfarm.model.modelelements.AntHill;
+import org.nerdybeans.antfarm.model.modelelements.AntLion;
+
+/**
+ * Measures the garbage produced by a colony at steady state, with and without
+ * the AntPool: an AntHill in the middle of the map spawns ants continuously, and
+ * a ring of AntLions around it eats them, so the ants are born and die all the time.
+ *
+ * The world is stepped on the calling thread, so the allocation counter of the
+ * thread covers the whole simulation.
+ *
+ * Usage:
+ *   java org.nerdybeans.antfarm.benchmark.AntChurnBenchmark [steps] [spawn rate]
+ *
+ * @version 1.0
+ * @see AntPool
+ **/
+public class AntChurnBenchmark {
+	/**
+	 * Default number of measured steps.
+	 */
+	public static final int DEFAULT_STEPS = 20000;
+
+	/**
+	 * Default number of ants spawned per step.
+	 */
+	public static final int DEFAULT_SPAWN_RATE = 20;
+
+	/**
+	 * Number of steps run before measuring (JIT warm-up, the colony reaching its size).
+	 */
+	public static final int WARMUP_STEPS = 2000;
+
+	/**
+	 * Height and width of the map.
+	 */
+	public static final int SIZE = 64;
+
+	/**
+	 * Distance of the AntLions from the AntHill (in rows).
+	 */
+	public static final int RADIUS = 2;
+
+	/**
+	 * The simulated world.
+	 */
+	private final GameWorld World;
+
+	/**
+	 * The AntHill of the world.
+	 */
+	private final AntHill Hill;
+
+	/**
+	 * Constructor, builds the world.
+	 *
+	 * @param pooled true if the dead ants should be reused
+	 * @param spawnRate number of ants spawned by a step
+	 */
+	public AntChurnBenchmark(boolean pooled, int spawnRate) {
+		this.World = new GameWorld(SIZE, SIZE, GameWorld.TILE_SIZE);
+		this.World.getScheduler().setParallelism(1);
+		this.World.getAntPool().setEnabled(pooled);
+		WorldField[][] map = this.World.getMap();
+
+		int middle = SIZE / 2;
+		this.Hill = new AntHill();
+		this.Hill.setSpawnRate(spawnRate);
+		this.Hill.setMaxAnts(Integer.MAX_VALUE);
+		map[middle][middle].setPermanentElement(this.Hill);
+		map[middle][middle].setPassable(false);
+		this.World.setEntryPoint(this.Hill);
+
+		// a ring of antlions: every field at the given distance in rows or columns
+		for (int i = middle - RADIUS; i <= middle + RADIUS; ++i) {
+			for (int j = middle - RADIUS; j <= middle + RADIUS; ++j) {
+				if (Math.abs(i - middle) == RADIUS || Math.abs(j - middle) == RADIUS) {
+					map[i][j].setPermanentElement(new AntLion());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Spawns and moves the ants once.
+	 */
+	private void step() {
+		this.Hill.interact();
+		this.World.getScheduler().stepAll();
+	}
+
+	/**
+	 * Returns the number of bytes allocated by the calling thread so far.
+	 *
+	 * @return the allocated bytes, -1 if the JVM does not count them
+	 */
+	private static long allocatedBytes() {
+		java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (threads instanceof com.sun.management.ThreadMXBean) {
+			return ((com.sun.management.ThreadMXBean)threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the number of collections and the time spent collecting so far.
+	 *
+	 * @return { collections, milliseconds }
+	 */
+	private static long[] collections() {
+		long[] total = new long[2];
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			total[0] += Math.max(gc.getCollectionCount(), 0);
+			total[1] += Math.max(gc.getCollectionTime(), 0);
+		}
+		return total;
+	}
+
+	/**
+	 * Runs the simulation and prints the measurements.
+	 *
+	 * @param name name of the configuration
+	 * @param steps number of measured steps
+	 */
+	private void measure(String name, int steps) {
+		for (int s = 0; s < WARMUP_STEPS; ++s) {
+			this.step();
+		}
+
+		AntPool pool = this.World.getAntPool();
+		long created = pool.getCreated();
+		long bytes = allocatedBytes();
+		long[] gc = collections();
+		long start = System.nanoTime();
+		for (int s = 0; s < steps; ++s) {
+			this.step();
+		}
+		long elapsed = System.nanoTime() - start;
+		bytes = allocatedBytes() - bytes;
+		long[] gcAfter = collections();
+
+		System.out.println(name + ": " + (elapsed / steps / 1000) + " us/step, "
+				+ (bytes / steps) + " bytes/step, "
+				+ (gcAfter[0] - gc[0]) + " collections (" + (gcAfter[1] - gc[1]) + " ms), "
+				+ (pool.getCreated() - created) + " ants created, "
+				+ this.World.getDensity().getTotal() + " alive");
+	}
+
+	/**
+	 * Entry point.
+	 *
+	 * @param args [steps] [spawn rate]
+	 */
+	public static void main(String[] args) {
+		int steps = (args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_STEPS;
+		int rate = (args.length > 1) ? Integer.parseInt(args[1]) : DEFAULT_SPAWN_RATE;
+
+		Timer.setInstance(new TimerObservable(30));
+
+		new AntChurnBenchmark(false, rate).measure("new ants", steps);
+		new AntChurnBenchmark(true, rate).measure("pooled ants", steps);
+	}
+}
@@ -0,0 +1,452 @@
+package org.nerdybeans.antfarm.benchmark;
+
+import java.lang.instrument.Instrumentation;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+import org.nerdybeans.antfarm.auxiliary.TickObserver;
+import org.nerdybeans.antfarm.auxiliary.Timer;
+import org.nerdybeans.antfarm.auxiliary.TimerObservable;
+import org.nerdybeans.antfarm.model.GameWorld;
+import org.nerdybeans.antfarm.model.WorldField;
+import org.nerdybeans.antfarm.model.modelelements.Ant;
+
+/**
+ * Measures the memory retained by the model: bytes per WorldField, per Ant and per
+ * Timer subscription, broken down by class.
+ *
+ * The object graph of a root (a GameWorld, the Timer) is walked by reflection and
+ * the size of every object reached is added up by class. The cost of a field is the
+ * difference between two worlds of different sizes divided by the difference of
+ * their number of fields, the cost of an ant is the difference made by adding ants
+ * to a world, and the cost of a subscription is the difference made by subscribing
+ * objects to the Timer (the subscribers themselves are not counted).
+ *
+ * The object sizes are taken from java.lang.instrument if the class is loaded as an
+ * agent (a jar with Premain-Class: org.nerdybeans.antfarm.benchmark.FootprintAnalyzer,
+ * given with -javaagent:), otherwise they are estimated from the fields, assuming the
+ * layout of a 64 bit HotSpot VM with compressed references (12 byte object headers,
+ * 16 byte array headers, 8 byte alignment).
+ * The internals of the JDK classes (e.g. the array of an ArrayList) can be read only if
+ * their packages are opened, e.g. --add-opens java.base/java.util=ALL-UNNAMED
+ * --add-opens java.base/java.lang=ALL-UNNAMED; otherwise the elements of the collections
+ * are walked, but the collections are counted without their internal arrays, and a
+ * warning lists these classes.
+ *
+ * Usage:
+ *   java [--add-opens ...] org.nerdybeans.antfarm.benchmark.FootprintAnalyzer [sizes] [ants] [subscribers]
+ * e.g. FootprintAnalyzer 20,40,80,160 10000 10000
+ *
+ * @version 1.0
+ * @see MacroBenchmark
+ **/
+public class FootprintAnalyzer {
+	/**
+	 * Default heights and widths of the worlds.
+	 */
+	public static final String DEFAULT_SIZES = "20,40,80,160";
+
+	/**
+	 * Default number of ants added to measure an ant.
+	 */
+	public static final int DEFAULT_ANTS = 10000;
+
+	/**
+	 * Default number of subscribers added to measure a subscription.
+	 */
+	public static final int DEFAULT_SUBSCRIBERS = 10000;
+
+	/**
+	 * Height and width of the world the ants are added to.
+	 */
+	public static final int ANT_WORLD_SIZE = 64;
+
+	/**
+	 * Object header and array header size, and alignment of the estimated layout.
+	 */
+	private static final int OBJECT_HEADER = 12, ARRAY_HEADER = 16, ALIGNMENT = 8, REFERENCE = 4;
+
+	/**
+	 * The instrumentation given to the agent, null if the class has not been loaded as an agent.
+	 */
+	private static volatile Instrumentation Instrument;
+
+	/**
+	 * The layout of a class: its estimated size and its reference fields.
+	 */
+	private static class Layout {
+		private long Size;
+		private final ArrayList<Field> References = new ArrayList<Field>();
+		/**
+		 * True if some reference fields cannot be read.
+		 */
+		private boolean Opaque = false;
+	}
+
+	/**
+	 * The bytes and the number of objects of the classes reached by a walk.
+	 */
+	public static class Footprint {
+		private final Map<String, long[]> Classes = new HashMap<String, long[]>();
+		private long Total = 0;
+
+		private void add(Class<?> type, long size) {
+			long[] entry = this.Classes.get(type.getName());
+			if (entry == null) {
+				entry = new long[2];
+				this.Classes.put(type.getName(), entry);
+			}
+			entry[0] += size;
+			entry[1]++;
+			this.Total += size;
+		}
+
+		/**
+		 * @return Total number of bytes reached
+		 */
+		public long getTotal() {
+			return this.Total;
+		}
+
+		/**
+		 * Returns the bytes of a class.
+		 *
+		 * @param name name of the class
+		 * @return { bytes, objects }, zeros if the class has not been reached
+		 */
+		public long[] get(String name) {
+			long[] entry = this.Classes.get(name);
+			return (entry != null) ? entry : new long[2];
+		}
+	}
+
+	/**
+	 * The layouts of the classes seen.
+	 */
+	private final Map<Class<?>, Layout> Layouts = new HashMap<Class<?>, Layout>();
+
+	/**
+	 * The classes whose internals could not be read.
+	 */
+	private final TreeSet<String> OpaqueClasses = new TreeSet<String>();
+
+	/**
+	 * Entry point of the agent (-javaagent:).
+	 *
+	 * @param args the agent arguments (ignored)
+	 * @param instrumentation the instrumentation of the VM
+	 */
+	public static void premain(String args, Instrumentation instrumentation) {
+		Instrument = instrumentation;
+	}
+
+	/**
+	 * Entry point of the agent when it is attached to a running VM.
+	 *
+	 * @param args the agent arguments (ignored)
+	 * @param instrumentation the instrumentation of the VM
+	 */
+	public static void agentmain(String args, Instrumentation instrumentation) {
+		Instrument = instrumentation;
+	}
+
+	/**
+	 * Rounds a size up to the alignment.
+	 */
+	private static long align(long size) {
+		return (size + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+	}
+
+	/**
+	 * Returns the size of a field or an array element of the given type.
+	 */
+	private static int sizeOf(Class<?> type) {
+		if (!type.isPrimitive()) {
+			return REFERENCE;
+		}
+		if (type == long.class || type == double.class) {
+			return 8;
+		}
+		if (type == int.class || type == float.class) {
+			return 4;
+		}
+		if (type == short.class || type == char.class) {
+			return 2;
+		}
+		return 1;
+	}
+
+	/**
+	 * Returns the layout of a class, computing it on first use.
+	 */
+	private Layout layoutOf(Class<?> type) {
+		Layout layout = this.Layouts.get(type);
+		if (layout != null) {
+			return layout;
+		}
+		layout = new Layout();
+		long size = OBJECT_HEADER;
+		for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+			for (Field field : c.getDeclaredFields()) {
+				if (Modifier.isStatic(field.getModifiers())) {
+					continue;
+				}
+				size += sizeOf(field.getType());
+				if (!field.getType().isPrimitive()) {
+					if (field.trySetAccessible()) {
+						layout.References.add(field);
+					} else {
+						layout.Opaque = true;
+					}
+				}
+			}
+		}
+		layout.Size = align(size);
+		if (layout.Opaque) {
+			this.OpaqueClasses.add(type.getName());
+		}
+		this.Layouts.put(type, layout);
+		return layout;
+	}
+
+	/**
+	 * Returns true if an object is shared by the whole program, so it is not part
+	 * of the footprint of the root (e.g. classes, threads, the Timer).
+	 */
+	private static boolean isShared(Object object) {
+		return (object instanceof Class) || (object instanceof Thread) || (object instanceof ThreadGroup)
+				|| (object instanceof ClassLoader) || (object instanceof Timer);
+	}
+
+	/**
+	 * Walks the objects reachable from a root and adds up their sizes by class.
+	 *
+	 * @param root the root of the walk
+	 * @param excluded objects not to count and not to walk through (besides the shared ones)
+	 * @return the footprint
+	 */
+	public Footprint walk(Object root, Collection<?> excluded) {
+		IdentityHashMap<Object, Boolean> visited = new IdentityHashMap<Object, Boolean>();
+		for (Object object : excluded) {
+			visited.put(object, Boolean.TRUE);
+		}
+		Footprint footprint = new Footprint();
+		ArrayDeque<Object> pending = new ArrayDeque<Object>();
+		pending.push(root);
+		visited.put(root, Boolean.TRUE);
+
+		while (!pending.isEmpty()) {
+			Object object = pending.pop();
+			Class<?> type = object.getClass();
+			ArrayList<Object> children = new ArrayList<Object>();
+
+			long size;
+			if (type.isArray()) {
+				int length = Array.getLength(object);
+				size = align(ARRAY_HEADER + (long)length * sizeOf(type.getComponentType()));
+				if (!type.getComponentType().isPrimitive()) {
+					for (int i = 0; i < length; ++i) {
+						children.add(Array.get(object, i));
+					}
+				}
+			} else {
+				Layout layout = this.layoutOf(type);
+				size = layout.Size;
+				for (Field field : layout.References) {
+					try {
+						children.add(field.get(object));
+					} catch (IllegalAccessException e) {
+						// trySetAccessible() has succeeded
+					}
+				}
+				if (layout.Opaque) {
+					// the elements are reachable through the public interface
+					if (object instanceof Collection) {
+						children.addAll((Collection<?>)object);
+					} else if (object instanceof Map) {
+						children.addAll(((Map<?, ?>)object).keySet());
+						children.addAll(((Map<?, ?>)object).values());
+					}
+				}
+			}
+			if (Instrument != null) {
+				size = Instrument.getObjectSize(object);
+			}
+			footprint.add(type, size);
+
+			for (Object child : children) {
+				if (child != null && !visited.containsKey(child) && !isShared(child)) {
+					visited.put(child, Boolean.TRUE);
+					pending.push(child);
+				}
+			}
+		}
+		return footprint;
+	}
+
+	/**
+	 * Prints the difference of two footprints by class, divided by a number of units.
+	 *
+	 * @param title title of the table
+	 * @param before the footprint without the units
+	 * @param after the footprint with the units
+	 * @param units number of units added
+	 */
+	private static void printDifference(String title, Footprint before, Footprint after, long units) {
+		ArrayList<String> names = new ArrayList<String>(after.Classes.keySet());
+		for (String name : before.Classes.keySet()) {
+			if (!after.Classes.containsKey(name)) {
+				names.add(name);
+			}
+		}
+		final Map<String, Long> bytes = new HashMap<String, Long>();
+		final Map<String, Long> objects = new HashMap<String, Long>();
+		for (String name : names) {
+			bytes.put(name, after.get(name)[0] - before.get(name)[0]);
+			objects.put(name, after.get(name)[1] - before.get(name)[1]);
+		}
+		Collections.sort(names, new Comparator<String>() {
+			public int compare(String a, String b) {
+				return Long.compare(bytes.get(b), bytes.get(a));
+			}
+		});
+
+		System.out.println(String.format("%s: %.1f bytes", title, (double)(after.getTotal() - before.getTotal()) / units));
+		for (String name : names) {
+			if (bytes.get(name) == 0) {
+				continue;
+			}
+			System.out.println(String.format("  %10.1f bytes %8.2f objects  %s",
+					(double)bytes.get(name) / units, (double)objects.get(name) / units, name));
+		}
+	}
+
+	/**
+	 * A subscriber which does nothing, used to measure a subscription.
+	 */
+	private static class Probe extends TickObserver {
+		@Override
+		public void onTick(Object TickEventArgs) {
+		}
+
+		@Override
+		public int getPeriod() {
+			return 7;
+		}
+	}
+
+	/**
+	 * Measures the worlds of the given sizes: the total bytes, the bytes per field
+	 * between consecutive sizes, and the breakdown between the smallest and the largest.
+	 *
+	 * @param sizes heights and widths of the worlds (increasing)
+	 */
+	public void measureFields(int[] sizes) {
+		System.out.println("size  fields       bytes   bytes/field");
+		Footprint first = null, last = null;
+		long firstFields = 0, lastFields = 0;
+		for (int size : sizes) {
+			Timer.setInstance(new TimerObservable(30, 0));
+			GameWorld world = new GameWorld(size, size, GameWorld.TILE_SIZE);
+			Footprint footprint = this.walk(world, Collections.emptyList());
+			long fields = (long)size * size;
+			String perField = (last != null)
+					? String.format("%13.1f", (double)(footprint.getTotal() - last.getTotal()) / (fields - lastFields))
+					: String.format("%13s", "-");
+			System.out.println(String.format("%4d %7d %11d %s", size, fields, footprint.getTotal(), perField));
+			if (first == null) {
+				first = footprint;
+				firstFields = fields;
+			}
+			last = footprint;
+			lastFields = fields;
+		}
+		if (sizes.length > 1) {
+			printDifference("WorldField", first, last, lastFields - firstFields);
+		}
+	}
+
+	/**
+	 * Measures an ant: the difference made by adding ants to a world.
+	 *
+	 * @param count number of ants to add
+	 */
+	public void measureAnts(int count) {
+		Timer.setInstance(new TimerObservable(30, 0));
+		GameWorld world = new GameWorld(ANT_WORLD_SIZE, ANT_WORLD_SIZE, GameWorld.TILE_SIZE);
+		Footprint before = this.walk(world, Collections.emptyList());
+
+		// deal the ants out evenly, the fields take them in batches
+		WorldField[][] map = world.getMap();
+		Ant[] ants = new Ant[count];
+		world.getAntPool().acquire(ants, count);
+		int fields = ANT_WORLD_SIZE * ANT_WORLD_SIZE;
+		for (int f = 0; f < fields; ++f) {
+			int from = (int)((long)count * f / fields);
+			int to = (int)((long)count * (f + 1) / fields);
+			map[f / ANT_WORLD_SIZE][f % ANT_WORLD_SIZE].addAnts(ants, from, to);
+		}
+		Footprint after = this.walk(world, Collections.emptyList());
+		printDifference("Ant (" + count + " ants on " + fields + " fields)", before, after, count);
+	}
+
+	/**
+	 * Measures a subscription: the difference made by subscribing objects to the Timer.
+	 *
+	 * @param count number of subscribers to add
+	 */
+	public void measureSubscriptions(int count) {
+		TimerObservable timer = new TimerObservable(30, 0);
+		Timer.setInstance(timer);
+		ArrayList<Probe> probes = new ArrayList<Probe>();
+		for (int i = 0; i < count; ++i) {
+			probes.add(new Probe());
+		}
+		Footprint before = this.walk(timer, probes);
+		for (Probe probe : probes) {
+			timer.addSubscriber(probe);
+		}
+		Footprint after = this.walk(timer, probes);
+		printDifference("Subscription (" + count + " subscribers)", before, after, count);
+	}
+
+	/**
+	 * Prints the classes whose internals could not be read.
+	 */
+	private void printWarnings() {
+		if (!this.OpaqueClasses.isEmpty()) {
+			System.out.println("Warning: the internals of these classes have not been walked (see --add-opens):");
+			for (String name : this.OpaqueClasses) {
+				System.out.println("  " + name);
+			}
+		}
+	}
+
+	/**
+	 * Entry point.
+	 *
+	 * @param args [sizes] [ants] [subscribers]
+	 */
+	public static void main(String[] args) {
+		int[] sizes = MacroBenchmark.parseList((args.length > 0) ? args[0] : DEFAULT_SIZES);
+		int ants = (args.length > 1) ? Integer.parseInt(args[1]) : DEFAULT_ANTS;
+		int subscribers = (args.length > 2) ? Integer.parseInt(args[2]) : DEFAULT_SUBSCRIBERS;
+
+		FootprintAnalyzer analyzer = new FootprintAnalyzer();
+		System.out.println("# object sizes " + ((Instrument != null) ? "measured by the agent" : "estimated (64 bit, compressed references)"));
+		analyzer.measureFields(sizes);
+		analyzer.measureAnts(ants);
+		analyzer.measureSubscriptions(subscribers);
+		analyzer.printWarnings();
+	}
+}
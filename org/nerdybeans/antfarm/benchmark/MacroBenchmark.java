@@ -0,0 +1,300 @@
+package org.nerdybeans.antfarm.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Locale;
+
+import org.nerdybeans.antfarm.auxiliary.Timer;
+import org.nerdybeans.antfarm.auxiliary.TimerObservable;
+import org.nerdybeans.antfarm.model.AntDensity;
+import org.nerdybeans.antfarm.model.Game;
+import org.nerdybeans.antfarm.model.TileScheduler;
+import org.nerdybeans.antfarm.model.modelelements.Ant;
+import org.nerdybeans.antfarm.model.modelelements.Warehouse;
+
+/**
+ * Runs whole games headless and measures the throughput of the simulation over a
+ * matrix of map sizes and colony sizes (the maximal number of ants of the AntHill).
+ *
+ * Every configuration gets a new Timer and a new game generated with the same seed,
+ * so the maps are the same from run to run (the ants still move randomly). Every
+ * tick is an iteration of the model thread without the sleep (see Timer.step()), so
+ * the submitted commands and the snapshots are measured too; the snapshots are read
+ * after every tick, as by a view which keeps up with the model. After WARMUP_TICKS
+ * ticks, the given number of ticks is measured, and the following are reported for
+ * every configuration:
+ *  - ticks per second,
+ *  - nanoseconds per ant move (the time of the ticks divided by the number of ants
+ *    alive when the TileScheduler moved them),
+ *  - allocation rate (bytes allocated by every thread of the JVM, including the
+ *    workers of the TileScheduler),
+ *  - peak heap (the sum of the peak usage of the heap memory pools).
+ * The game is not stopped when the warehouses are emptied: the column ended gives
+ * the tick at which that happened (-1 if it did not), the ants keep moving afterwards.
+ *
+ * Usage:
+ *   java org.nerdybeans.antfarm.benchmark.MacroBenchmark [ticks] [sizes] [ant caps] [spawn rate] [csv|json]
+ * e.g. MacroBenchmark 2000 20,64,128 1200,10000 10 json
+ *
+ * @version 1.0
+ * @see AntChurnBenchmark
+ **/
+public class MacroBenchmark {
+	/**
+	 * Default number of measured ticks.
+	 */
+	public static final int DEFAULT_TICKS = 2000;
+
+	/**
+	 * Default heights and widths of the maps.
+	 */
+	public static final String DEFAULT_SIZES = "20,64,128";
+
+	/**
+	 * Default maximal numbers of ants.
+	 */
+	public static final String DEFAULT_ANT_CAPS = "1200,10000";
+
+	/**
+	 * Default number of ants spawned at once.
+	 */
+	public static final int DEFAULT_SPAWN_RATE = 10;
+
+	/**
+	 * Number of ticks run before measuring (JIT warm-up, the colony growing).
+	 */
+	public static final int WARMUP_TICKS = 500;
+
+	/**
+	 * Seed of the map generator.
+	 */
+	public static final long SEED = 42;
+
+	/**
+	 * The measurements of a configuration.
+	 */
+	private static class Result {
+		private int Size;
+		private int AntCap;
+		private int Ticks;
+		private double TicksPerSecond;
+		private double NanosPerAntMove;
+		private double AllocationRate;
+		private long PeakHeap;
+		private int LiveAnts;
+		private long Ended = -1;
+	}
+
+	/**
+	 * Number of measured ticks.
+	 */
+	private final int Ticks;
+
+	/**
+	 * Number of ants spawned at once.
+	 */
+	private final int SpawnRate;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param ticks number of measured ticks
+	 * @param spawnRate number of ants spawned at once
+	 */
+	public MacroBenchmark(int ticks, int spawnRate) {
+		this.Ticks = ticks;
+		this.SpawnRate = spawnRate;
+	}
+
+	/**
+	 * Returns the number of bytes allocated by the live threads of the JVM so far.
+	 *
+	 * @return the allocated bytes, -1 if the JVM does not count them
+	 */
+	private static long allocatedBytes() {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+			return -1;
+		}
+		long total = 0;
+		for (long bytes : ((com.sun.management.ThreadMXBean)threads).getThreadAllocatedBytes(threads.getAllThreadIds())) {
+			total += Math.max(bytes, 0);
+		}
+		return total;
+	}
+
+	/**
+	 * Resets the peak usage of the heap memory pools.
+	 */
+	private static void resetPeakHeap() {
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				pool.resetPeakUsage();
+			}
+		}
+	}
+
+	/**
+	 * Returns the sum of the peak usage of the heap memory pools.
+	 *
+	 * @return the peak heap in bytes
+	 */
+	private static long peakHeap() {
+		long total = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null) {
+				total += pool.getPeakUsage().getUsed();
+			}
+		}
+		return total;
+	}
+
+	/**
+	 * Runs a configuration.
+	 *
+	 * @param size height and width of the map
+	 * @param antCap maximal number of ants
+	 * @return the measurements
+	 */
+	private Result measure(int size, int antCap) {
+		Timer timer = new TimerObservable(30, 0);
+		Timer.setInstance(timer);
+		final Game game = new Game();
+		game.initNew(SEED, size, size);
+		game.getMap().getEntryPoint().setMaxAnts(antCap);
+		game.getMap().getEntryPoint().setSpawnRate(this.SpawnRate);
+		timer.setPublisher(new Runnable() {
+			public void run() {
+				game.publishSnapshot();
+			}
+		});
+		AntDensity density = game.getMap().getDensity();
+
+		Result result = new Result();
+		result.Size = size;
+		result.AntCap = antCap;
+		result.Ticks = this.Ticks;
+
+		for (int t = 0; t < WARMUP_TICKS; ++t) {
+			timer.step();
+			game.getSnapshot();
+		}
+
+		System.gc();
+		resetPeakHeap();
+		long moves = 0;
+		long bytes = allocatedBytes();
+		long start = System.nanoTime();
+		for (int t = 0; t < this.Ticks; ++t) {
+			int ants = density.getTotal();
+			timer.step();
+			game.getSnapshot();
+			if (timer.getTick() % Ant.PERIOD == 0) {
+				moves += ants;		// the TileScheduler has moved the ants
+			}
+			if (result.Ended < 0 && Warehouse.isEndOfGame()) {
+				result.Ended = timer.getTick();
+			}
+		}
+		long elapsed = System.nanoTime() - start;
+		bytes = (bytes < 0) ? -1 : allocatedBytes() - bytes;
+
+		result.TicksPerSecond = this.Ticks * 1e9 / elapsed;
+		result.NanosPerAntMove = (moves > 0) ? (double)elapsed / moves : 0.0;
+		result.AllocationRate = (bytes < 0) ? -1 : bytes * 1e9 / elapsed;
+		result.PeakHeap = peakHeap();
+		result.LiveAnts = density.getTotal();
+
+		// stops the worker threads of the scheduler
+		game.dispose();
+		return result;
+	}
+
+	/**
+	 * Runs every configuration.
+	 *
+	 * @param sizes heights and widths of the maps
+	 * @param antCaps maximal numbers of ants
+	 * @return the measurements, by size then by ant cap
+	 */
+	private ArrayList<Result> run(int[] sizes, int[] antCaps) {
+		ArrayList<Result> results = new ArrayList<Result>();
+		for (int size : sizes) {
+			for (int antCap : antCaps) {
+				results.add(this.measure(size, antCap));
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * Formats the measurements as CSV.
+	 *
+	 * @param results the measurements
+	 * @return the table, with a header line
+	 */
+	private static String toCsv(ArrayList<Result> results) {
+		StringBuilder csv = new StringBuilder("size,ant_cap,ticks,ticks_per_sec,ns_per_ant_move,alloc_bytes_per_sec,peak_heap_bytes,live_ants,ended\n");
+		for (Result r : results) {
+			csv.append(String.format(Locale.ROOT, "%d,%d,%d,%.1f,%.1f,%.0f,%d,%d,%d%n", r.Size, r.AntCap, r.Ticks,
+					r.TicksPerSecond, r.NanosPerAntMove, r.AllocationRate, r.PeakHeap, r.LiveAnts, r.Ended));
+		}
+		return csv.toString();
+	}
+
+	/**
+	 * Formats the measurements as JSON.
+	 *
+	 * @param results the measurements
+	 * @return an array with one object per configuration
+	 */
+	private static String toJson(ArrayList<Result> results) {
+		StringBuilder json = new StringBuilder("[");
+		for (int i = 0; i < results.size(); ++i) {
+			Result r = results.get(i);
+			json.append(String.format(Locale.ROOT,
+					"%s%n  {\"size\": %d, \"ant_cap\": %d, \"ticks\": %d, \"ticks_per_sec\": %.1f, \"ns_per_ant_move\": %.1f, "
+					+ "\"alloc_bytes_per_sec\": %.0f, \"peak_heap_bytes\": %d, \"live_ants\": %d, \"ended\": %d}",
+					(i > 0) ? "," : "", r.Size, r.AntCap, r.Ticks, r.TicksPerSecond, r.NanosPerAntMove,
+					r.AllocationRate, r.PeakHeap, r.LiveAnts, r.Ended));
+		}
+		return json.append(String.format("%n]%n")).toString();
+	}
+
+	/**
+	 * Parses a comma separated list of numbers (the arguments of the benchmarks).
+	 *
+	 * @param list the list
+	 * @return the numbers
+	 */
+	static int[] parseList(String list) {
+		String[] items = list.split(",");
+		int[] numbers = new int[items.length];
+		for (int i = 0; i < items.length; ++i) {
+			numbers[i] = Integer.parseInt(items[i].trim());
+		}
+		return numbers;
+	}
+
+	/**
+	 * Entry point.
+	 *
+	 * @param args [ticks] [sizes] [ant caps] [spawn rate] [csv|json]
+	 */
+	public static void main(String[] args) {
+		int ticks = (args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_TICKS;
+		int[] sizes = parseList((args.length > 1) ? args[1] : DEFAULT_SIZES);
+		int[] antCaps = parseList((args.length > 2) ? args[2] : DEFAULT_ANT_CAPS);
+		int rate = (args.length > 3) ? Integer.parseInt(args[3]) : DEFAULT_SPAWN_RATE;
+		boolean json = (args.length > 4) && args[4].equalsIgnoreCase("json");
+
+		ArrayList<Result> results = new MacroBenchmark(ticks, rate).run(sizes, antCaps);
+
+		// the results are printed after the debug output of the runs
+		System.out.println("# " + TileScheduler.DEFAULT_PARALLELISM + " worker threads, seed " + SEED);
+		System.out.print(json ? toJson(results) : toCsv(results));
+	}
+}
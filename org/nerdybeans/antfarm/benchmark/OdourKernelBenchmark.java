@@ -0,0 +1,187 @@
+package org.nerdybeans.antfarm.benchmark;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.nerdybeans.antfarm.model.OdourKernels;
+
+/**
+ * Compares the scalar and the vectorized OdourKernels on a synthetic map:
+ * checks that they produce identical results, then measures both.
+ *
+ * Usage (the vector module has to be added to run the vectorized kernels):
+ *   java --add-modules jdk.incubator.vector org.nerdybeans.antfarm.benchmark.OdourKernelBenchmark [size] [rounds]
+ *
+ * @version 1.0
+ * @see OdourKernels
+ **/
+public class OdourKernelBenchmark {
+	/**
+	 * Default height and width of the map.
+	 */
+	public static final int DEFAULT_SIZE = 1000;
+
+	/**
+	 * Default number of measured rounds.
+	 */
+	public static final int DEFAULT_ROUNDS = 50;
+
+	/**
+	 * Number of rounds run before measuring (JIT warm-up).
+	 */
+	public static final int WARMUP_ROUNDS = 20;
+
+	/**
+	 * Row offsets of the neighbours (same as in GameWorld).
+	 */
+	private static final int[] ROW = { -1, -1, 0, 1, 1, 0 };
+
+	/**
+	 * Column offsets of the neighbours in even rows.
+	 */
+	private static final int[] COL_EVEN = { -1, 0, 1, 0, -1, -1 };
+
+	/**
+	 * Column offsets of the neighbours in odd rows.
+	 */
+	private static final int[] COL_ODD = { 0, 1, 1, 1, 0, -1 };
+
+	/**
+	 * Height and width of the map.
+	 */
+	private final int Size;
+
+	/**
+	 * Intensities of the map (about one tenth of the fields is non-zero).
+	 */
+	private final float[] Source;
+
+	/**
+	 * Open mask of the map (every field is open but the border and a few puddles).
+	 */
+	private final byte[] Open;
+
+	/**
+	 * Fully open runs of the map.
+	 */
+	private final int[] OpenRun;
+
+	/**
+	 * Constructor, generates the map.
+	 *
+	 * @param size height and width of the map
+	 */
+	public OdourKernelBenchmark(int size) {
+		this.Size = size;
+		this.Source = new float[size * size];
+		this.Open = new byte[size * size];
+		this.OpenRun = new int[size * size];
+
+		Random random = new Random(42);
+		for (int i = 0; i < this.Source.length; ++i) {
+			if (random.nextInt(10) == 0) {
+				this.Source[i] = random.nextFloat() * 25.0f;
+			}
+		}
+
+		// the border rows and columns have missing neighbours, 1% of the fields are puddles
+		boolean[] puddle = new boolean[size * size];
+		for (int i = 0; i < puddle.length; ++i) {
+			puddle[i] = (random.nextInt(100) == 0);
+		}
+		for (int i = 0; i < size; ++i) {
+			int[] columns = (i % 2 == 0) ? COL_EVEN : COL_ODD;
+			for (int j = 0; j < size; ++j) {
+				int index = i * size + j;
+				int mask = puddle[index] ? 0 : 0x40;
+				for (int k = 0; k < 6; ++k) {
+					int ni = i + ROW[k];
+					int nj = j + columns[k];
+					if (ni >= 0 && ni < size && nj >= 0 && nj < size && !puddle[ni * size + nj]) {
+						mask |= (1 << k);
+					}
+				}
+				this.Open[index] = (byte)mask;
+			}
+			for (int j = size - 1; j >= 0; --j) {
+				int index = i * size + j;
+				this.OpenRun[index] = (this.Open[index] != 0x7f) ? 0 : ((j == size - 1) ? 1 : this.OpenRun[index + 1] + 1);
+			}
+		}
+	}
+
+	/**
+	 * Returns the neighbour index offsets of a row of the map.
+	 *
+	 * @param row the row
+	 * @return the offsets, indexed by neighbour index
+	 */
+	private int[] offsets(int row) {
+		int[] columns = (row % 2 == 0) ? COL_EVEN : COL_ODD;
+		int[] offsets = new int[6];
+		for (int k = 0; k < 6; ++k) {
+			offsets[k] = ROW[k] * this.Size + columns[k];
+		}
+		return offsets;
+	}
+
+	/**
+	 * Runs one diffusion and decay pass over the map.
+	 *
+	 * @param kernels the kernels to use
+	 * @param target the array to write the result into
+	 */
+	private void pass(OdourKernels kernels, float[] target) {
+		for (int i = 0; i < this.Size; ++i) {
+			int from = i * this.Size;
+			kernels.diffuseRow(this.Source, target, this.Open, this.OpenRun, from, from + this.Size,
+					this.offsets(i), 0.784f, 0.0326667f, 0.001f);
+			kernels.decay(target, from, from + this.Size, 0.1f, 20.0f);
+		}
+	}
+
+	/**
+	 * Measures a kernel implementation.
+	 *
+	 * @param name name of the implementation
+	 * @param kernels the kernels to use
+	 * @param rounds number of measured rounds
+	 * @return the result of the last pass
+	 */
+	private float[] measure(String name, OdourKernels kernels, int rounds) {
+		float[] target = new float[this.Source.length];
+		for (int r = 0; r < WARMUP_ROUNDS; ++r) {
+			this.pass(kernels, target);
+		}
+
+		long start = System.nanoTime();
+		for (int r = 0; r < rounds; ++r) {
+			this.pass(kernels, target);
+		}
+		long elapsed = System.nanoTime() - start;
+
+		System.out.println(name + ": " + (elapsed / rounds / 1000) + " us/pass, "
+				+ ((double)elapsed / rounds / this.Source.length) + " ns/field");
+		return target;
+	}
+
+	/**
+	 * Entry point.
+	 *
+	 * @param args [size] [rounds]
+	 */
+	public static void main(String[] args) {
+		int size = (args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_SIZE;
+		int rounds = (args.length > 1) ? Integer.parseInt(args[1]) : DEFAULT_ROUNDS;
+		OdourKernelBenchmark benchmark = new OdourKernelBenchmark(size);
+
+		float[] scalar = benchmark.measure("scalar", new OdourKernels(), rounds);
+
+		if (!OdourKernels.setVectorized(true)) {
+			System.out.println("vector: not available (run with --add-modules jdk.incubator.vector)");
+			return;
+		}
+		float[] vector = benchmark.measure("vector", OdourKernels.getInstance(), rounds);
+		System.out.println("identical results: " + Arrays.equals(scalar, vector));
+	}
+}
@@ -1,7 +1,11 @@
 package org.nerdybeans.antfarm.controller;
 
+import java.awt.GraphicsEnvironment;
 import java.awt.event.MouseEvent;
+import java.io.IOException;
 import java.util.Hashtable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import javax.swing.JOptionPane;
 import javax.swing.SwingUtilities;
@@ -41,6 +45,31 @@ public class ModelController {
 	 * A reference to the view object (main window)
 	**/
 	private MainWindow GuiRef;
+	
+	/**
+	 * The JMX MBean of the current game
+	**/
+	private GameMonitor Monitor;
+	
+	/**
+	 * The replay journal of the current game, null if it is not recorded
+	**/
+	private ReplayJournal Journal;
+	
+	/**
+	 * The autosave of the current game, null if it is switched off
+	**/
+	private CheckpointStream Checkpoints;
+	
+	/**
+	 * The writer of the last save, null if nothing has been saved
+	**/
+	private volatile SaveWriter Saving;
+	
+	/**
+	 * Counted down when the model thread has captured the state of the last save, null if nothing has been saved
+	**/
+	private volatile CountDownLatch Capturing;
 
 	private volatile boolean controller_thread_running = true;
 	
@@ -102,6 +131,22 @@ public class ModelController {
 				Connections.ViewToModel.put(ViewElems[i][j], ModelElems[i][j]);
 			}
 		}
+		
+		// the model thread publishes the state of the game after every tick, the view reads only that
+		final Game published = this.EngineRef;
+		this.EngineRef.publishSnapshot();
+		Timer.getInstance().setPublisher(new Runnable() {
+			public void run() {
+				published.publishSnapshot();
+			}
+		});
+		
+		// expose the metrics of the new game (e.g. to jconsole) instead of the previous one
+		if(this.Monitor != null) {
+			this.Monitor.unregister();
+		}
+		this.Monitor = new GameMonitor(this.EngineRef);
+		this.Monitor.register();
 	}
 	
 	/**
@@ -109,35 +154,141 @@ public class ModelController {
 	 */
 	private void saveGame() {
 		
-		if(this.EngineRef != null && this.ControlThread != null) {
-			this.controller_thread_running = false;
+		if(this.EngineRef != null) {
 			if(!EngineRef.isInitialized()) {
 				System.out.println("[DEBUG#ModelController.saveGame] Nothing to save.");
 				return;
 			}
 			
-			System.out.println("[DEBUG#ModelController.saveGame] Called");
-			System.out.println("[DEBUG#ModelController.saveGame] Controller thread disabled");
-			System.out.println("[DEBUG#ModelController.saveGame] Waiting to stop...");
-			if(ControlThread.isAlive()) {
+			System.out.println("[DEBUG#ModelController.saveGame] Saving game state to file...");
+			this.journal(ReplayJournal.SAVE);
+			
+			// the model thread captures the state between two ticks, the file is written in the background
+			final Game game = this.EngineRef;
+			if(this.ModelThread != null && this.ModelThread.isAlive()) {
+				final CountDownLatch captured = new CountDownLatch(1);
+				this.Saving = null;
+				this.Capturing = captured;
+				Timer.getInstance().submit(new Runnable() {
+					public void run() {
+						Saving = game.saveAsync();
+						captured.countDown();
+					}
+				});
 				try {
-					this.ControlThread.join(1000);
+					if(!captured.await(1, TimeUnit.SECONDS))
+						this.reportSave("The game has not been saved yet, the simulation did not respond in time.", JOptionPane.WARNING_MESSAGE);
 				} catch (InterruptedException e) {
-					// TODO Auto-generated catch block
-					e.printStackTrace();
+					Thread.currentThread().interrupt();
 				}
+			} else {
+				this.Capturing = null;
+				this.Saving = game.saveAsync();
 			}
-			System.out.println("[DEBUG#ModelController.saveGame] Saving game state to file...");
-			this.EngineRef.save();
+			this.printStatistics();
 		}
 	}
 	
+	/**
+	 * Waits until the last save has been written to the disk (e.g. before exiting).
+	 */
+	private void awaitSave() {
+		CountDownLatch capturing = this.Capturing;
+		try {
+			if(capturing != null && !capturing.await(10, TimeUnit.SECONDS)) {
+				this.reportSave("The game has not been saved, the simulation did not capture its state.", JOptionPane.ERROR_MESSAGE);
+				return;
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return;
+		}
+		SaveWriter writer = this.Saving;
+		if(writer != null && !writer.await(10000)) {
+			IOException failure = writer.getFailure();
+			this.reportSave("The game has not been saved to " + Game.SAVE_FILE
+					+ ((failure != null) ? ": " + failure.getMessage() : " in time."), JOptionPane.ERROR_MESSAGE);
+		}
+	}
+	
+	/**
+	 * Tells the user that saving the game is late or has failed.
+	 * @param Message the message
+	 * @param Type the type of the message (see JOptionPane)
+	 */
+	private void reportSave(String Message, int Type) {
+		System.out.println("[DEBUG#ModelController.reportSave] " + Message);
+		if(!GraphicsEnvironment.isHeadless()) {
+			JOptionPane.showMessageDialog(null, Message, "Save (ModelController)", Type);
+		}
+	}
+	
+	/**
+	 * Records a command in the replay journal of the game (if it is recorded).
+	 * The record is written by the model thread, before its next tick, so its tick is exact.
+	 * @param type the type of the record, see ReplayJournal
+	 */
+	private void journal(final byte type) {
+		final ReplayJournal journal = this.Journal;
+		final Game game = this.EngineRef;
+		if(journal == null || game == null)
+			return;
+		Timer.getInstance().submit(new Runnable() {
+			public void run() {
+				if(type == ReplayJournal.SAVE || type == ReplayJournal.END)
+					journal.recordState(type, game);
+				else
+					journal.record(type);
+			}
+		});
+	}
+	
+	/**
+	 * Stops the autosave of the previous game.
+	 */
+	private void stopCheckpoints() {
+		if(this.Checkpoints != null) {
+			this.Checkpoints.close();
+			this.Checkpoints = null;
+		}
+	}
+	
+	/**
+	 * Starts autosaving the current game (to the file given by -Dantfarm.checkpoint).
+	 * Should be called after the Timer of the game has been set.
+	 */
+	private void startCheckpoints() {
+		this.stopCheckpoints();
+		String file = CheckpointStream.getConfiguredFile();
+		if(file != null) {
+			this.Checkpoints = new CheckpointStream(this.EngineRef, file,
+					CheckpointStream.DEFAULT_PERIOD, CheckpointStream.DEFAULT_KEYFRAME_INTERVAL);
+		}
+	}
+	
+	/**
+	 * Prints the timing statistics of the ticks (where the time of a tick goes).
+	 */
+	private void printStatistics() {
+		TickStatistics stats = Timer.getInstance().getStatistics();
+		if(stats != null && stats.isEnabled())
+			System.out.print("[DEBUG#ModelController.printStatistics] Tick timing:" + System.lineSeparator() + stats.report());
+	}
+	
 	/**
 	 * @author Szabo 
+	 * @param fromCheckpoint true: restore the last autosave checkpoint instead of the saved game
 	 */
-	private void loadGame() { 
+	private void loadGame(boolean fromCheckpoint) { 
 		
 		System.out.println("[DEBUG#ModelController.loadGame]");
+		this.stopCheckpoints();
+		
+		// the loaded game is not in the journal, the replay stops here
+		if(this.Journal != null) {
+			this.Journal.record(ReplayJournal.LOAD);
+			this.Journal = null;
+		}
 		
 		if(this.ModelThread != null) {
 			this.controller_thread_running = false;
@@ -159,19 +310,28 @@ public class ModelController {
 			System.out.println("[DEBUG#ModelController.loadGame] ModelThread killed.");
 		}
 		
+		if(this.EngineRef != null)
+			this.EngineRef.dispose();
 		TimerObservable T = new TimerObservable(ModelController.TIMER_SECTION_LENGTH, ModelController.TIMER_PRECISION);
 		Timer.setInstance(T);
 		
 		//Creating EngineRef for the first time
 		this.EngineRef = new Game();
 		System.out.println("[DEBUG#ModelController.loadGame] Game object created");
-		this.EngineRef.initNew();
-		
-		//Loading EngineRef
-		this.EngineRef.load(); //Loaded!
+		String checkpoint = CheckpointStream.getConfiguredFile();
+		if(fromCheckpoint && checkpoint != null && this.EngineRef.restoreCheckpoint(checkpoint)) {
+			System.out.println("[DEBUG#ModelController.loadGame] Autosave restored");
+		} else {
+			if(fromCheckpoint)
+				System.out.println("[DEBUG#ModelController.loadGame] No autosave, loading the saved game");
+			//Loading EngineRef, a new game if there is nothing to load
+			if(!this.EngineRef.load()) //Loaded!
+				this.EngineRef.initNew();
+		}
 		System.out.println("Number of WareHouses: " + Warehouse.NUM_OF_WAREHOUSES);
 		
 		this.init(this.EngineRef, this.GuiRef);
+		this.startCheckpoints();
 		System.out.println("[DEBUG#ModelController.loadGame] Model-view binds re-created");
 		
 		System.out.println("[DEBUG#ModelController.loadGame] Timer enabled");
@@ -204,6 +364,7 @@ public class ModelController {
 	 */
 	private void newGame() {
 		System.out.println("[DEBUG#ModelController.newGame]");
+		this.stopCheckpoints();
 		if(this.ModelThread != null) {
 			this.controller_thread_running = false;
 			System.out.println("[DEBUG#ModelController.newGame] Waiting for ContolThread to exit...");
@@ -235,6 +396,8 @@ public class ModelController {
 			System.out.println("[DEBUG#ModelController.newGame] ModelThread killed.");
 		}
 		
+		if(this.EngineRef != null)
+			this.EngineRef.dispose();
 		TimerObservable T = new TimerObservable(ModelController.TIMER_SECTION_LENGTH, ModelController.TIMER_PRECISION);
 		Timer.setInstance(T);
 		
@@ -246,7 +409,11 @@ public class ModelController {
 		System.out.println("[DEBUG#ModelController.newGame] Game object created");
 		this.EngineRef.initNew();
 		System.out.println("[DEBUG#ModelController.newGame] New game initialized");
+		if(this.Journal != null)
+			this.Journal.close();
+		this.Journal = ReplayJournal.start(this.EngineRef, T);
 		this.init(this.EngineRef, this.GuiRef);
+		this.startCheckpoints();
 		System.out.println("[DEBUG#ModelController.newGame] Model-view binds re-created");
 		
 		System.out.println("[DEBUG#ModelController.newGame] Timer enabled");
@@ -302,6 +469,15 @@ public class ModelController {
 		return ModelController.Connections.ModelToView.get(model);
 	}
 	
+	/**
+	 * Returns the state of the game last published by the model thread.
+	 * The view should read the game through it, not through the model objects.
+	 * @return the snapshot, null if there is no game
+	 */
+	public WorldSnapshot getSnapshot() {
+		return (this.EngineRef != null) ? this.EngineRef.getSnapshot() : null;
+	}
+	
 	/**
 	 * Returns the ModelController object instance
 	 * @author Demarcsek
@@ -316,29 +492,32 @@ public class ModelController {
 	
 	/**
 	 * Firing the different Sprays.
+	 * The weapon is triggered by the model thread (the only one modifying the model)
+	 * before its next tick.
 	 * @author Szabo
 	 * @return void
 	 */
 	private void fire(Object CommandArgs) {
 		
 		Object[] args = (Object[]) CommandArgs;
-		WorldField field = this.getModel((WorldFieldView)args[1]);
+		final WorldField field = this.getModel((WorldFieldView)args[1]);
 		
-		Weapon w = null;
+		final Weapon w;
 		
 		if ( ((MouseEvent) args[0]).getButton() == MouseEvent.BUTTON1 ) { 	//Use the AntKiller!
 			w = this.EngineRef.getAntKiller();
 		} else { 															//Use the AntOdourKiller!
 			w = this.EngineRef.getAntOdourKiller();
 		}
-		Timer.getInstance().disable();
-		try {
-			Thread.sleep(1);
-		} catch(InterruptedException e) {
-			e.printStackTrace();
-		}
-		w.triggerAt(field);
-		Timer.getInstance().enable();
+		final Game game = this.EngineRef;
+		final ReplayJournal journal = this.Journal;
+		Timer.getInstance().submit(new Runnable() {
+			public void run() {
+				if(journal != null)
+					journal.recordFire(game, w, field);
+				w.triggerAt(field);
+			}
+		});
 	}
 	
 	/**
@@ -346,8 +525,10 @@ public class ModelController {
 	 * 
 	 * Available commands:
 	 *  [*] saveGame		Saves the current game
+	 *  [*] awaitSave		Waits until the last save is written to the disk
 	 *  [*] newGame		Creates a new game
 	 *  [*] loadGame		Loads a saved game
+	 *  [*] restoreGame	Restores the last autosave checkpoint
 	 *  [*] fire			Fires at a WorldField[View] with a Weapon.
 	 *  					CommandArgs := <Object>[2], CommandArgs[0] := <MouseEvent>, CommandArgs[1] := <WorldFieldView>
 	 *  [*] pauseGame		Pauses the game (disables timer)
@@ -361,16 +542,22 @@ public class ModelController {
 	public void userCommand(String Command, Object CommandArgs) {
 		if("saveGame".equals(Command)) {
 			this.saveGame();
+		} else if("awaitSave".equals(Command)) {
+			this.awaitSave();
 		} else if("newGame".equals(Command)) {
 			this.newGame();
 		} else if("loadGame".equals(Command)) {
-			this.loadGame();
+			this.loadGame(false);
+		} else if("restoreGame".equals(Command)) {
+			this.loadGame(true);
 		} else if("fire".equals(Command)) {
 			this.fire(CommandArgs);
 		} else if("pauseGame".equals(Command)) {
 			Timer.getInstance().disable();
+			this.journal(ReplayJournal.PAUSE);
 		} else if("resumeGame".equals(Command)) {
 			Timer.getInstance().enable(); 
+			this.journal(ReplayJournal.RESUME);
 		} else if("killTimer".equals(Command)) {
 			Timer.getInstance().kill();
 		} else {
@@ -393,6 +580,7 @@ public class ModelController {
 				while(true) {
 					if((GuiRef != null) && (EngineRef != null) && (EngineRef.isInitialized())) {
 						//System.out.println("[DEBUG#ModelController.run] Waiting for ModelThread to finish...");
+						long span = TraceRecorder.begin();
 						try {
 							synchronized(Timer.getInstance().Lock) {
 								Timer.getInstance().Lock.wait();
@@ -401,6 +589,7 @@ public class ModelController {
 							// TODO Auto-generated catch block
 							e.printStackTrace();
 						}
+						TraceRecorder.end("wait", span);
 						//System.out.println("[DEBUG#ModelController.run] ModelThread finished");
 						if(!controller_thread_running) break;
 						//ModelThread = null;
@@ -410,6 +599,8 @@ public class ModelController {
 						Timer.getInstance().enable();
 						if((Warehouse.isEndOfGame())) {
 							System.out.println("!!!EndOfGame");
+							journal(ReplayJournal.END);
+							printStatistics();
 							Warehouse.reset();
 							Warehouse.NUM_OF_WAREHOUSES = 0;
 							EngineRef.end();
@@ -433,11 +624,13 @@ public class ModelController {
 							controller_thread_running = false;
 						}
 					}
+					long span = TraceRecorder.begin();
 					try {
 						Thread.sleep(10);
 					} catch(InterruptedException e) {
 						System.out.println("[DEBUG#ControlThread.run] Async interrupt in Timer thread");
 					}
+					TraceRecorder.end("sleep", span);
 				}
 			}
 		};
@@ -487,15 +680,17 @@ public class ModelController {
 	
 	
 	public int getAntKillerLoad() {
-		if(this.EngineRef != null)
-			return this.EngineRef.getAntKiller().getLoad();
+		WorldSnapshot snapshot = this.getSnapshot();
+		if(snapshot != null)
+			return snapshot.getAntKillerLoad();
 		else
 			return -1;
 	}
 	
 	public int getAntOdourKillerLoad() {
-		if(this.EngineRef != null)
-			return this.EngineRef.getAntOdourKiller().getLoad();
+		WorldSnapshot snapshot = this.getSnapshot();
+		if(snapshot != null)
+			return snapshot.getAntOdourKillerLoad();
 		else
 			return -1;
 	}
@@ -0,0 +1,416 @@
+package org.nerdybeans.antfarm.controller;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+
+import org.nerdybeans.antfarm.auxiliary.Timer;
+import org.nerdybeans.antfarm.auxiliary.TimerObservable;
+import org.nerdybeans.antfarm.model.Game;
+import org.nerdybeans.antfarm.model.GameWorld;
+import org.nerdybeans.antfarm.model.TileScheduler;
+import org.nerdybeans.antfarm.model.Weapon;
+import org.nerdybeans.antfarm.model.WorldField;
+import org.nerdybeans.antfarm.model.modelelements.AntHill;
+import org.nerdybeans.antfarm.model.modelelements.Warehouse;
+
+/**
+ * A compact binary journal of a game: the seed of the game and the user commands
+ * (fire, pause, resume, save, load), each with the tick it was run at. As the random
+ * generators of the world are derived from the seed (see GameWorld.setSeed()), the
+ * journal is enough to re-run the game headless, at full speed, through the same states.
+ *
+ * The ModelController writes the journal of every new game to the file given by the
+ * system property antfarm.journal (AntFarmJournal.afr by default, no journal if the
+ * property is empty). The records are written by the model thread, between two ticks,
+ * so the tick of a record is exact. A game is replayed with:
+ *
+ *   java org.nerdybeans.antfarm.controller.ReplayJournal [file] [parallelism]
+ *
+ * The replay checks the digest of the state recorded at every save and at the end
+ * of the game, and reports the ticks per second. A loaded game continues from a file
+ * which is not part of the journal, so the journal ends at the LOAD record.
+ *
+ * Format (big-endian, see DataOutputStream):
+ *   header:  int MAGIC, byte VERSION, long seed, int height, int width,
+ *            int spawn rate, int maximal number of ants
+ *   record:  byte type, varint ticks since the previous record, then by type:
+ *            FIRE_ANTKILLER, FIRE_ANTODOURKILLER: varint index of the target field
+ *            SAVE, END: long digest of the state
+ *            PAUSE, RESUME, LOAD: nothing
+ *
+ * @version 1.0
+ * @see ModelController
+ **/
+public class ReplayJournal {
+	/**
+	 * "AFRJ"
+	 */
+	public static final int MAGIC = 0x4146524A;
+
+	public static final byte VERSION = 1;
+
+	/**
+	 * The system property naming the journal file.
+	 */
+	public static final String PROPERTY = "antfarm.journal";
+
+	public static final String DEFAULT_FILE = "AntFarmJournal.afr";
+
+	/**
+	 * Types of the records.
+	 */
+	public static final byte FIRE_ANTKILLER = 1;
+	public static final byte FIRE_ANTODOURKILLER = 2;
+	public static final byte PAUSE = 3;
+	public static final byte RESUME = 4;
+	public static final byte SAVE = 5;
+	public static final byte LOAD = 6;
+	public static final byte END = 7;
+
+	private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	/**
+	 * Where the records are written, null once the journal is closed.
+	 */
+	private DataOutputStream Output;
+
+	/**
+	 * The Timer of the game (its tick count is recorded).
+	 */
+	private final Timer Clock;
+
+	/**
+	 * Tick count of the Timer when the journal was started.
+	 */
+	private final long Base;
+
+	/**
+	 * Tick of the last record, relative to Base.
+	 */
+	private long Last = 0;
+
+	/**
+	 * Starts the journal of a new game: writes the header.
+	 * Should be called before the model thread is started.
+	 *
+	 * @param out where the journal is written
+	 * @param game the new game
+	 * @param clock the Timer of the game
+	 * @throws IOException
+	 */
+	public ReplayJournal(OutputStream out, Game game, Timer clock) throws IOException {
+		this.Output = new DataOutputStream(new BufferedOutputStream(out));
+		this.Clock = clock;
+		this.Base = clock.getTickCount();
+
+		GameWorld world = game.getMap();
+		AntHill hill = world.getEntryPoint();
+		this.Output.writeInt(MAGIC);
+		this.Output.writeByte(VERSION);
+		this.Output.writeLong(world.getSeed());
+		this.Output.writeInt(world.getHeight());
+		this.Output.writeInt(world.getWidth());
+		this.Output.writeInt((hill != null) ? hill.getSpawnRate() : AntHill.DEFAULT_SPAWN_RATE);
+		this.Output.writeInt((hill != null) ? hill.getMaxAnts() : AntHill.MAX_ANTS);
+		this.Output.flush();
+	}
+
+	/**
+	 * Starts the journal of a new game in the file given by the system property
+	 * antfarm.journal (or in DEFAULT_FILE).
+	 *
+	 * @param game the new game
+	 * @param clock the Timer of the game
+	 * @return the journal, null if journaling is switched off or the file cannot be written
+	 */
+	public static ReplayJournal start(Game game, Timer clock) {
+		String file = System.getProperty(PROPERTY, DEFAULT_FILE);
+		if(file.isEmpty())
+			return null;
+		try {
+			ReplayJournal journal = new ReplayJournal(new FileOutputStream(file), game, clock);
+			System.out.println("[DEBUG#ReplayJournal.start] Recording to " + file + " (seed " + game.getMap().getSeed() + ")");
+			return journal;
+		} catch(IOException e) {
+			System.out.println("[DEBUG#ReplayJournal.start] " + e);
+			return null;
+		}
+	}
+
+	/**
+	 * Records a weapon triggered at a field.
+	 * Should be called by the model thread, just before triggering the weapon.
+	 *
+	 * @param game the game
+	 * @param weapon the weapon
+	 * @param target the target field
+	 */
+	public synchronized void recordFire(Game game, Weapon weapon, WorldField target) {
+		if(this.Output == null || target == null)
+			return;
+		try {
+			this.writeHead((weapon == game.getAntKiller()) ? FIRE_ANTKILLER : FIRE_ANTODOURKILLER);
+			writeVarint(this.Output, target.getIndex());
+			this.Output.flush();
+		} catch(IOException e) {
+			this.fail(e);
+		}
+	}
+
+	/**
+	 * Records a pause, a resume or a load (a record without data).
+	 * A LOAD record closes the journal.
+	 *
+	 * @param type PAUSE, RESUME or LOAD
+	 */
+	public synchronized void record(byte type) {
+		if(this.Output == null)
+			return;
+		try {
+			this.writeHead(type);
+			this.Output.flush();
+		} catch(IOException e) {
+			this.fail(e);
+		}
+		if(type == LOAD)
+			this.close();
+	}
+
+	/**
+	 * Records a save or the end of the game with the digest of the state.
+	 * Should be called by the model thread (between two ticks).
+	 * An END record closes the journal.
+	 *
+	 * @param type SAVE or END
+	 * @param game the game
+	 */
+	public synchronized void recordState(byte type, Game game) {
+		if(this.Output == null)
+			return;
+		try {
+			this.writeHead(type);
+			this.Output.writeLong(digest(game));
+			this.Output.flush();
+		} catch(IOException e) {
+			this.fail(e);
+		}
+		if(type == END)
+			this.close();
+	}
+
+	/**
+	 * Closes the journal (e.g. a new game has been started).
+	 */
+	public synchronized void close() {
+		if(this.Output == null)
+			return;
+		try {
+			this.Output.close();
+		} catch(IOException e) {
+			System.out.println("[DEBUG#ReplayJournal.close] " + e);
+		}
+		this.Output = null;
+	}
+
+	/**
+	 * Writes the type of a record and the ticks since the previous one.
+	 */
+	private void writeHead(byte type) throws IOException {
+		long tick = this.Clock.getTickCount() - this.Base;
+		this.Output.writeByte(type);
+		writeVarint(this.Output, tick - this.Last);
+		this.Last = tick;
+	}
+
+	/**
+	 * Stops recording after a write error (the journal is useless with a missing record).
+	 */
+	private void fail(IOException e) {
+		System.out.println("[DEBUG#ReplayJournal] Recording stopped: " + e);
+		this.close();
+	}
+
+	/**
+	 * Writes a non-negative number in 7-bit groups, the lowest group first.
+	 */
+	private static void writeVarint(DataOutputStream out, long value) throws IOException {
+		while((value & ~0x7FL) != 0) {
+			out.writeByte((int)((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		out.writeByte((int)value);
+	}
+
+	/**
+	 * Reads a number written by writeVarint().
+	 */
+	private static long readVarint(DataInputStream in) throws IOException {
+		long value = 0;
+		for(int shift = 0; shift < 64; shift += 7) {
+			int b = in.readUnsignedByte();
+			value |= (long)(b & 0x7F) << shift;
+			if((b & 0x80) == 0)
+				return value;
+		}
+		throw new IOException("Malformed varint");
+	}
+
+	/**
+	 * Computes a 64-bit digest (FNV-1a) of the state of the game: the ants, the AntEaters,
+	 * the odours (their exact bits), the passability and the classes of the elements of the fields,
+	 * the food of the warehouses and the loads of the weapons.
+	 * Should be called by the model thread (between two ticks).
+	 *
+	 * @param game the game
+	 * @return the digest
+	 */
+	public static long digest(Game game) {
+		GameWorld world = game.getMap();
+		WorldField[][] map = world.getMap();
+		long hash = FNV_OFFSET;
+		for(int i = 0; i < world.getHeight(); ++i) {
+			for(int j = 0; j < world.getWidth(); ++j) {
+				WorldField field = map[i][j];
+				hash = mix(hash, field.getAntList().size());
+				hash = mix(hash, (field.getAntEater() != null) ? field.getAntEater().getConsumed() + 1 : 0);
+				hash = mix(hash, Float.floatToIntBits(field.getFoodOdour()));
+				hash = mix(hash, Float.floatToIntBits(field.getAntOdour()));
+				hash = mix(hash, Float.floatToIntBits(field.getPoison()));
+				hash = mix(hash, field.isPassable() ? 1 : 0);
+				hash = mix(hash, (field.getPermanentElement() != null) ? field.getPermanentElement().getClass().getName().hashCode() : 0);
+				hash = mix(hash, (field.getDynamicElement() != null) ? field.getDynamicElement().getClass().getName().hashCode() : 0);
+			}
+		}
+		ArrayList<Warehouse> warehouses = world.getExitPoints();
+		for(int k = 0; k < warehouses.size(); ++k) {
+			hash = mix(hash, warehouses.get(k).getFoodAmount());
+		}
+		hash = mix(hash, game.getAntKiller().getLoad());
+		hash = mix(hash, game.getAntOdourKiller().getLoad());
+		return hash;
+	}
+
+	/**
+	 * Mixes the four bytes of a value into the digest.
+	 */
+	private static long mix(long hash, int value) {
+		for(int shift = 0; shift < 32; shift += 8) {
+			hash ^= (value >>> shift) & 0xFF;
+			hash *= FNV_PRIME;
+		}
+		return hash;
+	}
+
+	/**
+	 * Replays a journal headless, as fast as possible.
+	 *
+	 * @param in the journal
+	 * @param parallelism number of threads moving the ants (the result should not depend on it)
+	 * @return true if every recorded digest has been reproduced
+	 * @throws IOException if the journal is malformed
+	 */
+	public static boolean replay(InputStream in, int parallelism) throws IOException {
+		DataInputStream journal = new DataInputStream(new BufferedInputStream(in));
+		if(journal.readInt() != MAGIC)
+			throw new IOException("Not a replay journal");
+		if(journal.readByte() != VERSION)
+			throw new IOException("Unsupported journal version");
+		long seed = journal.readLong();
+		int height = journal.readInt();
+		int width = journal.readInt();
+		int spawnRate = journal.readInt();
+		int maxAnts = journal.readInt();
+
+		Timer timer = new TimerObservable(ModelController.TIMER_SECTION_LENGTH, ModelController.TIMER_PRECISION);
+		Timer.setInstance(timer);
+		Game game = new Game();
+		game.initNew(seed);
+		GameWorld world = game.getMap();
+		if(world.getHeight() != height || world.getWidth() != width)
+			throw new IOException("The journal was recorded on a " + height + "x" + width + " map");
+		if(world.getEntryPoint() != null) {
+			world.getEntryPoint().setSpawnRate(spawnRate);
+			world.getEntryPoint().setMaxAnts(maxAnts);
+		}
+		world.getScheduler().setParallelism(parallelism);
+		WorldField[][] map = world.getMap();
+
+		boolean identical = true;
+		int records = 0;
+		long tick = 0;
+		long start = System.nanoTime();
+		try {
+			while(true) {
+				int type;
+				try {
+					type = journal.readUnsignedByte();
+				} catch(EOFException e) {
+					System.out.println("[DEBUG#ReplayJournal.replay] The journal ends without END (the game was abandoned)");
+					break;
+				}
+				tick += readVarint(journal);
+				while(timer.getTickCount() < tick) {
+					timer.tick();
+				}
+				records++;
+
+				if(type == FIRE_ANTKILLER || type == FIRE_ANTODOURKILLER) {
+					int index = (int)readVarint(journal);
+					Weapon weapon = (type == FIRE_ANTKILLER) ? game.getAntKiller() : game.getAntOdourKiller();
+					weapon.triggerAt(map[index / width][index % width]);
+				} else if(type == SAVE || type == END) {
+					long expected = journal.readLong();
+					long actual = digest(game);
+					if(actual != expected) {
+						identical = false;
+						System.out.println("[DEBUG#ReplayJournal.replay] State differs at tick " + tick
+								+ String.format(": recorded %016x, replayed %016x", expected, actual));
+					}
+					if(type == END)
+						break;
+				} else if(type == LOAD) {
+					System.out.println("[DEBUG#ReplayJournal.replay] A game was loaded at tick " + tick + ", the rest is not in the journal");
+					break;
+				} else if(type != PAUSE && type != RESUME) {
+					throw new IOException("Unknown record type " + type + " at tick " + tick);
+				}
+			}
+		} finally {
+			// stops the worker threads of the scheduler
+			world.getScheduler().setParallelism(1);
+		}
+		long elapsed = System.nanoTime() - start;
+		System.out.println("[DEBUG#ReplayJournal.replay] " + records + " records, " + timer.getTickCount() + " ticks in "
+				+ (elapsed / 1000000) + " ms (" + Math.round(timer.getTickCount() * 1e9 / Math.max(elapsed, 1)) + " ticks/s), "
+				+ String.format("final digest %016x", digest(game)) + (identical ? ", identical" : ", DIFFERENT"));
+		return identical;
+	}
+
+	/**
+	 * Entry point of the headless replay.
+	 *
+	 * @param args [journal file] [parallelism]
+	 */
+	public static void main(String[] args) throws IOException {
+		String file = (args.length > 0) ? args[0] : DEFAULT_FILE;
+		int parallelism = (args.length > 1) ? Integer.parseInt(args[1]) : TileScheduler.DEFAULT_PARALLELISM;
+		InputStream in = new FileInputStream(file);
+		boolean identical;
+		try {
+			identical = replay(in, parallelism);
+		} finally {
+			in.close();
+		}
+		System.exit(identical ? 0 : 1);
+	}
+}
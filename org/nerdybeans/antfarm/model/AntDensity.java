@@ -0,0 +1,208 @@
+package org.nerdybeans.antfarm.model;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Number of ants on every field of a GameWorld, together with a pyramid of
+ * coarser grids: level L counts the ants of square blocks of BLOCK_EDGE^L fields
+ * (level 0 is the fields themselves).
+ *
+ * The counts are updated by the WorldFields whenever an ant arrives or leaves,
+ * in O(NUM_OF_LEVELS) time, so the density of any region of the pyramid can be read
+ * in constant time (e.g. by the AntEater looking for ants, or by the view) instead
+ * of scanning the ant lists of the fields. The ants of different tiles are moved in
+ * parallel and the blocks span several tiles, so the counters are atomic. The total is
+ * updated by every tile, so it is striped (LongAdder) instead of a single contended counter.
+ *
+ * Fields are indexed the same way as in the OccupancyMap, blocks are indexed in
+ * row-major order within their level.
+ *
+ * @version 1.0
+ * @see WorldField.addAnt()
+ **/
+public class AntDensity {
+	/**
+	 * Edge length of a block, in blocks of the level below.
+	 */
+	public static final int BLOCK_EDGE = 4;
+
+	/**
+	 * Number of levels above the fields.
+	 */
+	public static final int NUM_OF_LEVELS = 3;
+
+	/**
+	 * Width of the map (measured in # of fields).
+	 */
+	private final int Width;
+
+	/**
+	 * Number of block rows of every level.
+	 */
+	private final int[] Rows;
+
+	/**
+	 * Number of block columns of every level.
+	 */
+	private final int[] Cols;
+
+	/**
+	 * Ant counts of every level (index 0: fields).
+	 */
+	private final AtomicIntegerArray[] Counts;
+
+	/**
+	 * Number of ants in the world.
+	 */
+	private final LongAdder Total = new LongAdder();
+
+	/**
+	 * Constructor, every count is zero.
+	 *
+	 * @param height map height (measured in # of fields)
+	 * @param width map width (measured in # of fields)
+	 */
+	public AntDensity(int height, int width) {
+		this.Width = width;
+		this.Rows = new int[NUM_OF_LEVELS + 1];
+		this.Cols = new int[NUM_OF_LEVELS + 1];
+		this.Counts = new AtomicIntegerArray[NUM_OF_LEVELS + 1];
+
+		int edge = 1;
+		for (int level = 0; level <= NUM_OF_LEVELS; ++level) {
+			this.Rows[level] = (height + edge - 1) / edge;
+			this.Cols[level] = (width + edge - 1) / edge;
+			this.Counts[level] = new AtomicIntegerArray(this.Rows[level] * this.Cols[level]);
+			edge *= BLOCK_EDGE;
+		}
+	}
+
+	/**
+	 * Changes the number of ants on a field.
+	 *
+	 * @param index index of the field
+	 * @param delta the change (negative if ants have left)
+	 */
+	public void add(int index, int delta) {
+		if (delta == 0) {
+			return;
+		}
+		int row = index / this.Width;
+		int col = index % this.Width;
+		for (int level = 0; level <= NUM_OF_LEVELS; ++level) {
+			this.Counts[level].addAndGet(row * this.Cols[level] + col, delta);
+			row /= BLOCK_EDGE;
+			col /= BLOCK_EDGE;
+		}
+		this.Total.add(delta);
+	}
+
+	/**
+	 * Returns the number of ants on a field.
+	 *
+	 * @param index index of the field
+	 * @return the number of ants
+	 */
+	public int getCount(int index) {
+		return this.Counts[0].get(index);
+	}
+
+	/**
+	 * Returns the number of ants in a block.
+	 *
+	 * @param level the level of the block [0, NUM_OF_LEVELS]
+	 * @param row block row
+	 * @param col block column
+	 * @return the number of ants, 0 if the block is off the map
+	 */
+	public int getBlockCount(int level, int row, int col) {
+		if ((row < 0) || (row >= this.Rows[level]) || (col < 0) || (col >= this.Cols[level])) {
+			return 0;
+		}
+		return this.Counts[level].get(row * this.Cols[level] + col);
+	}
+
+	/**
+	 * Returns the number of block rows of a level.
+	 *
+	 * @param level the level [0, NUM_OF_LEVELS]
+	 * @return number of rows
+	 */
+	public int getRows(int level) {
+		return this.Rows[level];
+	}
+
+	/**
+	 * Returns the number of block columns of a level.
+	 *
+	 * @param level the level [0, NUM_OF_LEVELS]
+	 * @return number of columns
+	 */
+	public int getCols(int level) {
+		return this.Cols[level];
+	}
+
+	/**
+	 * Returns the edge length of the blocks of a level.
+	 *
+	 * @param level the level [0, NUM_OF_LEVELS]
+	 * @return the edge length (measured in # of fields)
+	 */
+	public static int getBlockEdge(int level) {
+		int edge = 1;
+		for (int i = 0; i < level; ++i) {
+			edge *= BLOCK_EDGE;
+		}
+		return edge;
+	}
+
+	/**
+	 * Returns the number of ants in the world. It is exact when the ants are not
+	 * being moved (e.g. on the model thread between two steps).
+	 *
+	 * @return the number of ants
+	 */
+	public int getTotal() {
+		return (int)this.Total.sum();
+	}
+
+	/**
+	 * Finds the block with the most ants among the block of a field and the 8 blocks
+	 * around it, on the lowest level which has any ants there.
+	 *
+	 * @param index index of the field
+	 * @return the index of the field in the middle of the densest block, -1 if there
+	 *         are no ants around the field on any level
+	 */
+	public int findDensest(int index) {
+		int row = index / this.Width;
+		int col = index % this.Width;
+
+		for (int level = 1; level <= NUM_OF_LEVELS; ++level) {
+			int edge = getBlockEdge(level);
+			int br = row / edge;
+			int bc = col / edge;
+
+			int best = 0, bestRow = 0, bestCol = 0;
+			for (int dr = -1; dr <= 1; ++dr) {
+				for (int dc = -1; dc <= 1; ++dc) {
+					int count = this.getBlockCount(level, br + dr, bc + dc);
+					if (count > best) {
+						best = count;
+						bestRow = br + dr;
+						bestCol = bc + dc;
+					}
+				}
+			}
+
+			if (best > 0) {
+				int height = this.Rows[0];
+				int r = Math.min(bestRow * edge + edge / 2, height - 1);
+				int c = Math.min(bestCol * edge + edge / 2, this.Width - 1);
+				return r * this.Width + c;
+			}
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,26 @@
+package org.nerdybeans.antfarm.model;
+
+import org.nerdybeans.antfarm.model.modelelements.Ant;
+
+/**
+ * Common interface for the elements which want to know when an Ant enters their field
+ * (traps, warehouses, anteaters).
+ * 
+ * WorldField.addAnt() notifies the PermanentElement and the AntEater of the field
+ * directly, so these elements do not have to poll the ant list of their field on every tick.
+ * 
+ * @version 1.0
+ **/
+public interface AntEnterListener {
+	
+	/**
+	 * Event handler, called right after the ant has been put onto the field of the listener.
+	 * 
+	 * Please note, that it may be called from a worker thread of the TileScheduler while
+	 * the tiles are being stepped: only the field of the listener may be modified here,
+	 * anything else should be done via TileScheduler.runAfterStep().
+	 * 
+	 * @param ant the ant which has entered the field
+	 */
+	public void onAntEntered(Ant ant);
+}
@@ -5,6 +5,9 @@ import java.util.HashSet;
 import java.util.ListIterator;
 import java.util.Set;
 
+import org.nerdybeans.antfarm.auxiliary.SimulationEvents;
+import org.nerdybeans.antfarm.auxiliary.Timer;
+
 /**
  * AntKiller represents a player weapon called ant killer in the game model.
  * 
@@ -78,12 +81,24 @@ public class AntKiller extends WeaponBase implements Weapon, Serializable {
 			return;
 		}
 		
+		SimulationEvents.WeaponTrigger event = new SimulationEvents.WeaponTrigger();
+		event.begin();
+		
 		int deepness = 0; // current deepness level of recursion (deepness = [0,3])
-		this.recursiveSetPoison(Target, deepness);
+		int touched = this.recursiveSetPoison(Target, deepness);
 	
 		// decrease the load of the AntKiller
 		int newLoad = this.getLoad() - 1;
 		this.setLoad(newLoad);
+		
+		if (event.shouldCommit()) {
+			event.tick = Timer.getInstance().getTick();
+			event.weapon = this.getClass().getSimpleName();
+			event.target = Target.getIndex();
+			event.load = newLoad;
+			event.fields = touched;
+			event.commit();
+		}
 
 	}
 	
@@ -93,10 +108,12 @@ public class AntKiller extends WeaponBase implements Weapon, Serializable {
 	 * @author Horvath
 	 * @param field on which field should the recursion be called
 	 * @param deepness how far away are we from the starting field
+	 * @return number of fields poisoned (a field reached on several paths is counted each time)
 	 */
-	private void recursiveSetPoison(WorldField field, int deepness){
+	private int recursiveSetPoison(WorldField field, int deepness){
 		if (deepness == 3)
-			return;
+			return 0;
+		int touched = 0;
 		
 		ListIterator<WorldField> neighboursIterator = field.getNeighbours().listIterator();
 		
@@ -104,12 +121,13 @@ public class AntKiller extends WeaponBase implements Weapon, Serializable {
 			WorldField nField = neighboursIterator.next();
 			if (nField != null){
 				deepness += 1;
-				this.recursiveSetPoison(nField, deepness);
+				touched += this.recursiveSetPoison(nField, deepness);
 				deepness -= 1;
 				nField.setPoison(MAX_POISON); // set the poison
+				touched++;
 			}
 		}
-		
+		return touched;
 	}
 	
 }
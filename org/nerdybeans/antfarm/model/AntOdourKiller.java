@@ -6,6 +6,9 @@ import java.util.HashSet;
 import java.util.ListIterator;
 import java.util.Set;
 
+import org.nerdybeans.antfarm.auxiliary.SimulationEvents;
+import org.nerdybeans.antfarm.auxiliary.Timer;
+
 /**
  * AntOdourKiller represents a player weapon called ant killer in the game
  * model.
@@ -75,12 +78,24 @@ public class AntOdourKiller extends WeaponBase implements Weapon, Serializable {
 			return;
 		}
 		
+		SimulationEvents.WeaponTrigger event = new SimulationEvents.WeaponTrigger();
+		event.begin();
+		
 		int deepness = 0; // current deepness level of recursion (deepness = [0,2])
-		this.recursiveSetAntOdour(Target, deepness);
+		int touched = this.recursiveSetAntOdour(Target, deepness);
 		
 		// decrease the load of the AntOdourKiller
 		int newLoad = this.getLoad() - 1;
 		this.setLoad(newLoad);
+		
+		if (event.shouldCommit()) {
+			event.tick = Timer.getInstance().getTick();
+			event.weapon = this.getClass().getSimpleName();
+			event.target = Target.getIndex();
+			event.load = newLoad;
+			event.fields = touched;
+			event.commit();
+		}
 	}
 	
 	/**
@@ -88,10 +103,12 @@ public class AntOdourKiller extends WeaponBase implements Weapon, Serializable {
 	 * @author Horvath
 	 * @param field on which field should the recursion be called
 	 * @param deepness how deep are we in the recursion = how far away are we from the algorithm's starting field.
+	 * @return number of fields whose ant odour has been cleared (a field reached on several paths is counted each time)
 	 */
-	private void recursiveSetAntOdour(WorldField field, int deepness){
+	private int recursiveSetAntOdour(WorldField field, int deepness){
 		if (deepness == 2)
-			return;
+			return 0;
+		int touched = 0;
 		
 		ListIterator<WorldField> neighboursIterator = field.getNeighbours().listIterator();
 		
@@ -100,12 +117,13 @@ public class AntOdourKiller extends WeaponBase implements Weapon, Serializable {
 			
 			if (nField != null){
 				deepness += 1;
-				this.recursiveSetAntOdour(nField, deepness);
+				touched += this.recursiveSetAntOdour(nField, deepness);
 				deepness -= 1;
 				nField.setAntOdour(0); // set the ant odour
+				touched++;
 			}
 		}
-		
+		return touched;
 	}
 
 }
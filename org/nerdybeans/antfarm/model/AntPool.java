@@ -0,0 +1,145 @@
+package org.nerdybeans.antfarm.model;
+
+import java.util.Arrays;
+
+import org.nerdybeans.antfarm.model.modelelements.Ant;
+
+/**
+ * Recycles the ants of a GameWorld: the dead ants (eaten, poisoned, taken in by a
+ * warehouse) are reset and kept, and the AntHill takes them instead of creating
+ * new ones. So once the colony has reached its size, the simulation does not
+ * allocate ants any more.
+ *
+ * The ants are not subscribed to the Timer (the tiles find them on the fields),
+ * so there is no subscription to remove or restore. A dead ant is released by
+ * WorldField.killAnt() and clearAnts(), from any tile, so the pool is synchronized.
+ * An ant is reused only when the AntHill spawns, which happens between the steps
+ * of the tiles, so the released ants still in the snapshot of a tile are not
+ * moved again (their field is null).
+ *
+ * @version 1.0
+ * @see AntHill.interact()
+ **/
+public class AntPool {
+	/**
+	 * The dead ants (the first Count elements are used).
+	 */
+	private Ant[] Free = new Ant[64];
+
+	/**
+	 * Number of ants in the pool.
+	 */
+	private int Count = 0;
+
+	/**
+	 * Is recycling enabled?
+	 */
+	private volatile boolean Enabled = true;
+
+	/**
+	 * Number of ants created by the pool.
+	 */
+	private long Created = 0;
+
+	/**
+	 * Number of ants reused by the pool.
+	 */
+	private long Reused = 0;
+
+	/**
+	 * Enables or disables recycling (e.g. to measure its effect). The ants kept
+	 * so far are dropped when it is disabled.
+	 *
+	 * @param enabled true if the dead ants should be reused
+	 */
+	public synchronized void setEnabled(boolean enabled) {
+		this.Enabled = enabled;
+		if (!enabled) {
+			Arrays.fill(this.Free, 0, this.Count, null);
+			this.Count = 0;
+		}
+	}
+
+	/**
+	 * Is recycling enabled?
+	 *
+	 * @return Enabled true if the dead ants are reused
+	 */
+	public boolean isEnabled() {
+		return this.Enabled;
+	}
+
+	/**
+	 * Returns an ant which is not on the map: a dead one if there is any, a new one otherwise.
+	 *
+	 * @return the ant
+	 */
+	public synchronized Ant acquire() {
+		if (this.Count > 0) {
+			Ant ant = this.Free[--this.Count];
+			this.Free[this.Count] = null;
+			this.Reused++;
+			return ant;
+		}
+		this.Created++;
+		return new Ant();
+	}
+
+	/**
+	 * Fills an array with ants which are not on the map.
+	 *
+	 * @param ants the array to fill
+	 * @param count number of ants needed (at most the length of the array)
+	 */
+	public synchronized void acquire(Ant[] ants, int count) {
+		for (int i = 0; i < count; ++i) {
+			ants[i] = this.acquire();
+		}
+	}
+
+	/**
+	 * Takes a dead ant (it must have been removed from its field already).
+	 *
+	 * @param ant the dead ant
+	 */
+	public void release(Ant ant) {
+		// reset outside the lock of the pool: the ant is locked by its own moves
+		ant.reset();
+		if (!this.Enabled) {
+			return;
+		}
+		synchronized(this) {
+			if (this.Count == this.Free.length) {
+				this.Free = Arrays.copyOf(this.Free, this.Free.length * 2);
+			}
+			this.Free[this.Count++] = ant;
+		}
+	}
+
+	/**
+	 * Returns the number of dead ants waiting to be reused.
+	 *
+	 * @return number of ants in the pool
+	 */
+	public synchronized int getSize() {
+		return this.Count;
+	}
+
+	/**
+	 * Returns the number of ants created by the pool.
+	 *
+	 * @return number of new ants
+	 */
+	public synchronized long getCreated() {
+		return this.Created;
+	}
+
+	/**
+	 * Returns the number of ants reused by the pool.
+	 *
+	 * @return number of recycled ants
+	 */
+	public synchronized long getReused() {
+		return this.Reused;
+	}
+}
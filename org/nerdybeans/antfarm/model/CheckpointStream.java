@@ -0,0 +1,1401 @@
+package org.nerdybeans.antfarm.model;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.nerdybeans.antfarm.auxiliary.TickObserver;
+import org.nerdybeans.antfarm.auxiliary.Timer;
+import org.nerdybeans.antfarm.auxiliary.TraceRecorder;
+import org.nerdybeans.antfarm.model.modelelements.Ant;
+import org.nerdybeans.antfarm.model.modelelements.AntEater;
+import org.nerdybeans.antfarm.model.modelelements.AntEaterSpawnPoint;
+import org.nerdybeans.antfarm.model.modelelements.AntHill;
+import org.nerdybeans.antfarm.model.modelelements.AntLion;
+import org.nerdybeans.antfarm.model.modelelements.Pebble;
+import org.nerdybeans.antfarm.model.modelelements.Puddle;
+import org.nerdybeans.antfarm.model.modelelements.Warehouse;
+
+/**
+ * Autosaves a game as a stream of checkpoints: a keyframe with the whole state of the
+ * world, followed by deltas which contain only the fields changed since the previous
+ * checkpoint. Every KEYFRAME_INTERVAL-th checkpoint is a keyframe again, and it starts
+ * the file over, so the file never holds more than one keyframe and its deltas.
+ *
+ * The state of a field is a few numbers (see the attributes below): the elements and the
+ * passability, the number of ants, the anteater, the food of the warehouse, and the
+ * stored bits of the odours with the tick of their last update (the decay since then is
+ * computed when they are read, see OdourChannel). Every checkpoint also holds the state
+ * of the world which does not belong to a field (see WorldState: the random generators,
+ * the counters of the elements, the switches of the routing), and the route of every ant
+ * (the field it came from and its target warehouse), unless they are the same as at the
+ * previous checkpoint. So a restored game goes on exactly as the saved one would have:
+ * the Timer goes on from the saved tick, and the elements driven by the Timer are
+ * subscribed in the order the saved game subscribed them.
+ *
+ * The stream keeps the state written by the last checkpoint. A delta compares it
+ * only on the fields which may have changed since: the ones with ants, an
+ * anteater or odours now (the ANTS and ANTEATER layers of the OccupancyMap, the active
+ * sets of the odour channels) or at the last checkpoint, the warehouses, and the fields
+ * marked on the CHANGED layer of the OccupancyMap (elements, passability, food odour).
+ * So a delta costs about the number of fields touched, not the size of the map.
+ *
+ * The checkpoints are taken by the model thread: the stream is a Timer subscriber, and it
+ * takes the checkpoint after the tick (as a command, see Timer.submit()), when every
+ * subscriber of the tick has finished. The model thread only collects the changed fields, a writer
+ * thread encodes them and writes the file. A keyframe is written to a temporary file
+ * which then replaces the checkpoint file (see SaveWriter), so the previous checkpoints
+ * are kept until the new keyframe is complete. The game is restored with restore(), the
+ * last complete checkpoint wins (a checkpoint cut off by a crash is ignored).
+ *
+ * Game.save() captures the state the same way, into a Frame, which is written as a
+ * ChunkedWorldFile by another thread. The saves of the earlier version are a single
+ * keyframe in this format, Game.load() still reads them.
+ *
+ * Format (big-endian, see DataOutputStream):
+ *   header:      int MAGIC, byte VERSION, int height, int width
+ *   checkpoint:  int length, then length bytes:
+ *                byte KEYFRAME or DELTA, varint tick, varint milliseconds elapsed in the game,
+ *                varint AntKiller load, varint AntOdourKiller load, the WorldState,
+ *                changed fields, varint 0, routes
+ *   field:       varint index - index of the previous changed field (the first one counts from -1),
+ *                varint mask of the changed attributes, their new values
+ *                (varint for the counts, int for the odour bits)
+ *   routes:      varint 0 if they have not changed since the previous checkpoint, otherwise
+ *                varint number of ants + 1, then a varint per ant (see route())
+ * A keyframe lists the fields which differ from the empty state, and it has the routes.
+ * The ticks are the ordinal numbers of the Timer (see Timer.getTick()). The checkpoints of
+ * VERSION_2 have no WorldState and no routes, and the odour bits are the decayed ones.
+ *
+ * @version 1.0
+ * @see Game.restoreCheckpoint()
+ **/
+public class CheckpointStream extends TickObserver {
+	/**
+	 * "AFCP"
+	 */
+	public static final int MAGIC = 0x41464350;
+
+	public static final byte VERSION = 3;
+
+	/**
+	 * The previous version of the format, still read by restore().
+	 */
+	private static final byte VERSION_2 = 2;
+
+	/**
+	 * The system property naming the checkpoint file (empty: no autosave).
+	 */
+	public static final String PROPERTY = "antfarm.checkpoint";
+
+	public static final String DEFAULT_FILE = "AntFarmCheckpoint.dat";
+
+	/**
+	 * Default number of ticks between two checkpoints: every tick, so a crash loses
+	 * the tick being computed only. A delta costs about the fields touched by the tick
+	 * (a fraction of a millisecond with a few thousand ants), and it is encoded and
+	 * written by the writer thread.
+	 */
+	public static final int DEFAULT_PERIOD = 1;
+
+	/**
+	 * Default number of checkpoints from a keyframe to the next one (about 3 seconds):
+	 * the file, and the deltas replayed by a restore, grow with it.
+	 */
+	public static final int DEFAULT_KEYFRAME_INTERVAL = 100;
+
+	/**
+	 * Types of the checkpoints.
+	 */
+	public static final byte KEYFRAME = 'K';
+	public static final byte DELTA = 'D';
+
+	/**
+	 * The attributes of a field: the first ones are counts, the last ones are odour bits.
+	 * ANT_ODOUR_TICK and POISON_TICK are the ticks of the last update of the stored
+	 * odours (0 if the odour is 0).
+	 */
+	static final int LAYOUT = 0, ANTS = 1, ANTEATER = 2, FOOD = 3, ANT_ODOUR_TICK = 4, POISON_TICK = 5;
+	static final int ANT_ODOUR = 6, FOOD_ODOUR = 7, POISON = 8;
+	static final int ATTRIBUTES = 9;
+
+	/**
+	 * The attributes of VERSION_2, in the order of their bits.
+	 */
+	private static final int[] VERSION_2_ATTRIBUTES = { LAYOUT, ANTS, ANTEATER, FOOD, ANT_ODOUR, FOOD_ODOUR, POISON };
+
+	/**
+	 * The ANTEATER attribute is the number of ants consumed + 1, and the direction
+	 * of the field the anteater came from (see direction()) shifted by CAME_FROM_SHIFT.
+	 */
+	private static final int CAME_FROM_SHIFT = 8;
+
+	/**
+	 * The route of an ant is the direction of the field it came from (see direction()),
+	 * and the index of the field of its target warehouse + 1 (0: none) shifted by TARGET_SHIFT.
+	 */
+	private static final int TARGET_SHIFT = 3;
+
+	/**
+	 * Bits of the LAYOUT attribute: the code of the permanent element, the code
+	 * of the dynamic element (shifted by DYNAMIC_SHIFT) and the passability.
+	 */
+	private static final int ELEMENT_MASK = 0xF;
+	private static final int DYNAMIC_SHIFT = 4;
+	static final int PASSABLE = 1 << 8;
+
+	/**
+	 * Codes of the elements.
+	 */
+	private static final int NONE = 0, ANTHILL = 1, ANTLION = 2, WAREHOUSE = 3, PUDDLE = 4, SPAWNPOINT = 5, PEBBLE = 6;
+
+	/**
+	 * The state of a game captured at a tick boundary, to be written by another thread.
+	 */
+	public static final class Frame {
+		// read by ChunkedWorldFile as well
+		final int Height, Width;
+		final int[][] State;
+		final int[] Routes;
+		final WorldState World;
+		final long Tick, Elapsed;
+		final int AntKillerLoad, AntOdourKillerLoad;
+
+		private Frame(Game game, long tick) {
+			GameWorld world = game.getMap();
+			this.Height = world.getHeight();
+			this.Width = world.getWidth();
+			this.State = new int[ATTRIBUTES][this.Height * this.Width];
+			capture(game, this.State, tick);
+			this.Routes = captureRoutes(world);
+			this.World = new WorldState(world, tick);
+			this.Tick = tick;
+			this.Elapsed = game.getTimeElapsed().getTime();
+			this.AntKillerLoad = game.getAntKiller().getLoad();
+			this.AntOdourKillerLoad = game.getAntOdourKiller().getLoad();
+		}
+
+		/**
+		 * Returns the tick when the state was captured.
+		 *
+		 * @return Tick the ordinal number of the tick, see Timer.getTick()
+		 */
+		public long getTick() {
+			return this.Tick;
+		}
+	}
+
+	/**
+	 * The state of a world which does not belong to a field: the seed, the number of
+	 * steps and the generator of the model thread (see GameWorld.setSeed()), the switches
+	 * of the informed ants and of the diffusion, the ticks of the last full updates of
+	 * the odour channels, the settings and the counter of the AntHill, and the counter
+	 * of the spawn points.
+	 */
+	static final class WorldState {
+		/**
+		 * Length in bytes, see write().
+		 */
+		static final int LENGTH = 5 * 8 + 5 * 4;
+
+		/**
+		 * Bits of Flags.
+		 */
+		private static final int INFORMED = 1, ANT_ODOUR_DIFFUSION = 2, POISON_DIFFUSION = 4;
+
+		private final long Seed, Steps, Random;
+		private final long AntOdourEpoch, PoisonEpoch;
+		private final int Flags;
+		private final int AntsCreated, SpawnRate, MaxAnts, AntEaters;
+
+		/**
+		 * Captures the state of a world.
+		 *
+		 * @param world the world
+		 * @param tick the current tick
+		 */
+		WorldState(GameWorld world, long tick) {
+			this.Seed = world.getSeed();
+			this.Steps = world.getSteps();
+			this.Random = world.getRandomState();
+			this.AntOdourEpoch = tick - world.getAntOdourChannel().getEpochAge();
+			this.PoisonEpoch = tick - world.getPoisonChannel().getEpochAge();
+			this.Flags = (world.getRouting().isInformed() ? INFORMED : 0)
+					| (world.getAntOdourDiffusion().isEnabled() ? ANT_ODOUR_DIFFUSION : 0)
+					| (world.getPoisonDiffusion().isEnabled() ? POISON_DIFFUSION : 0);
+			AntHill hill = world.getEntryPoint();
+			this.AntsCreated = (hill != null) ? hill.getAntsCreated() : 0;
+			this.SpawnRate = (hill != null) ? hill.getSpawnRate() : AntHill.DEFAULT_SPAWN_RATE;
+			this.MaxAnts = (hill != null) ? hill.getMaxAnts() : AntHill.MAX_ANTS;
+			this.AntEaters = AntEaterSpawnPoint.getAntEaters();
+		}
+
+		/**
+		 * Reads a state written by write().
+		 *
+		 * @param in the buffer, at least LENGTH bytes remaining
+		 */
+		WorldState(ByteBuffer in) {
+			this.Seed = in.getLong();
+			this.Steps = in.getLong();
+			this.Random = in.getLong();
+			this.AntOdourEpoch = in.getLong();
+			this.PoisonEpoch = in.getLong();
+			this.Flags = in.getInt();
+			this.AntsCreated = in.getInt();
+			this.SpawnRate = in.getInt();
+			this.MaxAnts = in.getInt();
+			this.AntEaters = in.getInt();
+		}
+
+		/**
+		 * Writes the state (LENGTH bytes).
+		 *
+		 * @param out the buffer
+		 */
+		void write(ByteBuffer out) {
+			out.putLong(this.Seed).putLong(this.Steps).putLong(this.Random);
+			out.putLong(this.AntOdourEpoch).putLong(this.PoisonEpoch);
+			out.putInt(this.Flags).putInt(this.AntsCreated).putInt(this.SpawnRate).putInt(this.MaxAnts).putInt(this.AntEaters);
+		}
+
+		/**
+		 * Applies the state to a new world, before its fields are restored (see build()).
+		 * The AntHill is restored with the fields, see restoreHill().
+		 *
+		 * @param world the world
+		 * @param tick the saved tick
+		 */
+		void apply(GameWorld world, long tick) {
+			world.setSeed(this.Seed);
+			world.restoreRandom(this.Steps, this.Random);
+			world.getRouting().setInformed((this.Flags & INFORMED) != 0);
+			world.getAntOdourDiffusion().setEnabled((this.Flags & ANT_ODOUR_DIFFUSION) != 0);
+			world.getPoisonDiffusion().setEnabled((this.Flags & POISON_DIFFUSION) != 0);
+			world.getAntOdourChannel().restoreEpoch(tick - this.AntOdourEpoch);
+			world.getPoisonChannel().restoreEpoch(tick - this.PoisonEpoch);
+			AntEaterSpawnPoint.setAntEaters(this.AntEaters);
+		}
+
+		/**
+		 * Restores the settings and the counter of the AntHill of a world built by build().
+		 *
+		 * @param hill the AntHill, null if the world has none
+		 */
+		void restoreHill(AntHill hill) {
+			if (hill != null) {
+				hill.setSpawnRate(this.SpawnRate);
+				hill.setMaxAnts(this.MaxAnts);
+				hill.setAntsCreated(this.AntsCreated);
+			}
+		}
+	}
+
+	/**
+	 * The game which is saved.
+	 */
+	private final Game Saved;
+
+	/**
+	 * The Timer of the game.
+	 */
+	private final Timer Clock;
+
+	/**
+	 * Name of the checkpoint file.
+	 */
+	private final String File;
+
+	/**
+	 * Number of ticks between two checkpoints.
+	 */
+	private final int Period;
+
+	/**
+	 * Number of checkpoints from a keyframe to the next one.
+	 */
+	private final int KeyframeInterval;
+
+	/**
+	 * The world the state belongs to, null before the first keyframe.
+	 */
+	private GameWorld World;
+
+	/**
+	 * State of the fields written by the last checkpoint.
+	 */
+	private int[][] State;
+
+	/**
+	 * The fields with ants, an anteater, ant odour or poison at the last checkpoint.
+	 */
+	private final BitSet Live = new BitSet();
+
+	/**
+	 * The fields compared by the current delta.
+	 */
+	private final BitSet Candidates = new BitSet();
+
+	/**
+	 * The state of the field being compared.
+	 */
+	private final int[][] Row = new int[ATTRIBUTES][1];
+
+	/**
+	 * The changed fields of the current delta: the index, the mask of the changed
+	 * attributes and their new values of every changed field, in the order of the indexes.
+	 */
+	private int[] Changes = new int[256];
+	private int ChangesLength = 0;
+
+	/**
+	 * The routes of the ants written by the last checkpoint, and the ones being captured.
+	 */
+	private int[] Routes;
+	private int[] RouteBuffer = new int[256];
+
+	/**
+	 * Number of checkpoints since the last keyframe.
+	 */
+	private int SinceKeyframe = 0;
+
+	/**
+	 * Takes the checkpoint due at a tick after the tick (see onTick()).
+	 */
+	private final Runnable Checkpoint = new Runnable() {
+		@Override
+		public void run() {
+			CheckpointStream.this.checkpoint();
+		}
+	};
+
+	/**
+	 * The thread writing the file.
+	 */
+	private final Writer Output;
+
+	/**
+	 * Is the stream closed?
+	 */
+	private volatile boolean Closed = false;
+
+	/**
+	 * A checkpoint handed over to the writer thread.
+	 */
+	private static final class Record {
+		final byte Type;
+		final long Tick, Elapsed;
+		final int AntKillerLoad, AntOdourKillerLoad;
+		final int Height, Width;
+		// the whole state (KEYFRAME) or the changed fields (DELTA, see Changes)
+		final int[][] State;
+		final int[] Changes;
+		final WorldState World;
+		// null if they are the same as at the previous checkpoint
+		final int[] Routes;
+
+		Record(byte type, long tick, long elapsed, int antKillerLoad, int antOdourKillerLoad,
+				int height, int width, int[][] state, int[] changes, WorldState world, int[] routes) {
+			this.Type = type;
+			this.Tick = tick;
+			this.Elapsed = elapsed;
+			this.AntKillerLoad = antKillerLoad;
+			this.AntOdourKillerLoad = antOdourKillerLoad;
+			this.Height = height;
+			this.Width = width;
+			this.State = state;
+			this.Changes = changes;
+			this.World = world;
+			this.Routes = routes;
+		}
+	}
+
+	/**
+	 * Tells the writer thread that the stream is closed.
+	 */
+	private static final Record END = new Record((byte)0, 0, 0, 0, 0, 0, 0, null, null, null, null);
+
+	/**
+	 * Encodes the checkpoints and writes them to the file, in the order they were taken.
+	 */
+	private final class Writer extends Thread {
+		/**
+		 * The checkpoints to write.
+		 */
+		private final BlockingQueue<Record> Queue = new LinkedBlockingQueue<Record>();
+
+		/**
+		 * The file, null before the first keyframe.
+		 */
+		private DataOutputStream Output;
+
+		/**
+		 * The checkpoint being encoded (written to the file at once, with its length).
+		 */
+		private final ByteArrayOutputStream Buffer = new ByteArrayOutputStream();
+		private final DataOutputStream Encoder = new DataOutputStream(this.Buffer);
+
+		/**
+		 * Has writing the file failed? The checkpoints are dropped afterwards.
+		 */
+		private volatile boolean Failed = false;
+
+		private Writer() {
+			super("CheckpointWriter");
+			this.setDaemon(true);
+		}
+
+		/**
+		 * Writes the checkpoints until the stream is closed.
+		 */
+		@Override
+		public void run() {
+			try {
+				Record record;
+				while ((record = this.Queue.take()) != END) {
+					if (!this.Failed) {
+						this.write(record);
+					}
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			this.closeFile();
+		}
+
+		/**
+		 * Encodes a checkpoint and writes it.
+		 */
+		private void write(Record record) {
+			long span = TraceRecorder.begin();
+			try {
+				this.Buffer.reset();
+				writeRecord(this.Encoder, record);
+				this.Encoder.flush();
+				if (record.Type == KEYFRAME) {
+					this.restart(record);
+				} else {
+					this.Output.writeInt(this.Buffer.size());
+					this.Buffer.writeTo(this.Output);
+					this.Output.flush();
+				}
+			} catch (IOException e) {
+				System.out.println("[DEBUG#CheckpointStream.Writer.write] Autosave stopped: " + e);
+				this.Failed = true;
+				this.closeFile();
+			}
+			TraceRecorder.end("checkpoint-write", span);
+		}
+
+		/**
+		 * Starts the file over with the encoded keyframe: it is written to a temporary
+		 * file first, which then replaces the checkpoint file, and the following deltas
+		 * are appended to it.
+		 */
+		private void restart(Record keyframe) throws IOException {
+			this.closeFile();
+			File target = new File(CheckpointStream.this.File);
+			File temporary = new File(CheckpointStream.this.File + ".tmp");
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)));
+			try {
+				writeHeader(out, keyframe.Height, keyframe.Width);
+				out.writeInt(this.Buffer.size());
+				this.Buffer.writeTo(out);
+			} finally {
+				out.close();
+			}
+			SaveWriter.replace(temporary, target);
+			this.Output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(target, true)));
+		}
+
+		/**
+		 * Closes the file, if it is open.
+		 */
+		private void closeFile() {
+			if (this.Output != null) {
+				try {
+					this.Output.close();
+				} catch (IOException e) {
+					System.out.println("[DEBUG#CheckpointStream.Writer.closeFile] " + e);
+				}
+				this.Output = null;
+			}
+		}
+	}
+
+	/**
+	 * Constructor, subscribes the stream to the Timer. The first checkpoint
+	 * (a keyframe) is taken on the first due tick.
+	 *
+	 * @param game the game to save
+	 * @param file name of the checkpoint file (it is overwritten)
+	 * @param period number of ticks between two checkpoints
+	 * @param keyframeInterval number of checkpoints from a keyframe to the next one
+	 */
+	public CheckpointStream(Game game, String file, int period, int keyframeInterval) {
+		assert period >= 1 && keyframeInterval >= 1;
+		this.Saved = game;
+		this.File = file;
+		this.Period = period;
+		this.KeyframeInterval = keyframeInterval;
+		this.Output = new Writer();
+		this.Output.start();
+		this.Clock = Timer.getInstance();
+		this.Clock.addSubscriber(this);
+	}
+
+	/**
+	 * Returns the name of the checkpoint file given by the system property antfarm.checkpoint.
+	 *
+	 * @return the name of the file, null if autosaving is switched off
+	 */
+	public static String getConfiguredFile() {
+		String file = System.getProperty(PROPERTY, DEFAULT_FILE);
+		return file.isEmpty() ? null : file;
+	}
+
+	/**
+	 * Takes a checkpoint when it is due: it is submitted to the Timer, so it is taken
+	 * after the tick, when the subscribers notified after the stream have finished too.
+	 *
+	 * @param TickEventArgs the event arguments of the tick
+	 */
+	@Override
+	public void onTick(Object TickEventArgs) {
+		this.Clock.submit(this.Checkpoint);
+	}
+
+	/**
+	 * The stream responds every Period ticks.
+	 *
+	 * @return how often should the object respond
+	 */
+	@Override
+	public int getPeriod() {
+		return this.Period;
+	}
+
+	/**
+	 * Takes a checkpoint: a keyframe if it is due (or the world has been replaced),
+	 * a delta otherwise, and hands it over to the writer thread.
+	 * Should be called by the model thread only, between two ticks.
+	 */
+	public synchronized void checkpoint() {
+		if (this.Closed) {
+			return;
+		}
+		if (this.Output.Failed) {
+			this.close();
+			return;
+		}
+		GameWorld world = this.Saved.getMap();
+		long tick = this.Clock.getTick();
+		boolean keyframe = (world != this.World) || (this.SinceKeyframe >= this.KeyframeInterval);
+		if (keyframe) {
+			this.captureKeyframe(world, tick);
+		} else {
+			this.captureDelta(world, tick);
+		}
+		int[] routes = this.captureRoutes(world, keyframe);
+		this.Output.Queue.add(new Record(keyframe ? KEYFRAME : DELTA, tick,
+				this.Saved.getTimeElapsed().getTime(), this.Saved.getAntKiller().getLoad(),
+				this.Saved.getAntOdourKiller().getLoad(), world.getHeight(), world.getWidth(),
+				keyframe ? copy(this.State) : null, keyframe ? null : Arrays.copyOf(this.Changes, this.ChangesLength),
+				new WorldState(world, tick), routes));
+		this.SinceKeyframe = keyframe ? 1 : this.SinceKeyframe + 1;
+	}
+
+	/**
+	 * Captures the routes of the ants.
+	 *
+	 * @param world the world
+	 * @param keyframe true if the routes are needed even if they have not changed
+	 * @return the routes, null if they are the same as at the previous checkpoint
+	 */
+	private int[] captureRoutes(GameWorld world, boolean keyframe) {
+		int size = world.getHeight() * world.getWidth();
+		OccupancyMap occupancy = world.getOccupancy();
+		WorldField[][] map = world.getMap();
+		int width = world.getWidth();
+		int count = 0;
+		for (int index = occupancy.nextSetBit(OccupancyMap.ANTS, 0, size); index >= 0;
+				index = occupancy.nextSetBit(OccupancyMap.ANTS, index + 1, size)) {
+			WorldField field = map[index / width][index % width];
+			for (Ant ant : field.getAntList()) {
+				if (count == this.RouteBuffer.length) {
+					this.RouteBuffer = Arrays.copyOf(this.RouteBuffer, 2 * count);
+				}
+				this.RouteBuffer[count++] = route(field, ant);
+			}
+		}
+		if (!keyframe && this.Routes != null && this.Routes.length == count
+				&& Arrays.equals(this.Routes, 0, count, this.RouteBuffer, 0, count)) {
+			return null;
+		}
+		this.Routes = Arrays.copyOf(this.RouteBuffer, count);
+		return this.Routes;
+	}
+
+	/**
+	 * Captures the whole state of the world, and starts tracking its changes.
+	 */
+	private void captureKeyframe(GameWorld world, long tick) {
+		int size = world.getHeight() * world.getWidth();
+		if (this.State == null || this.State[0].length != size) {
+			this.State = new int[ATTRIBUTES][size];
+		}
+		this.World = world;
+		capture(this.Saved, this.State, tick);
+		world.getOccupancy().clear(OccupancyMap.CHANGED);
+
+		this.Live.clear();
+		for (int index = 0; index < size; ++index) {
+			if (isLive(this.State, index)) {
+				this.Live.set(index);
+			}
+		}
+	}
+
+	/**
+	 * Compares the fields which may have changed since the last checkpoint with the
+	 * state written by it, and collects the changed ones into Changes.
+	 */
+	private void captureDelta(GameWorld world, long tick) {
+		OccupancyMap occupancy = world.getOccupancy();
+		int size = this.State[0].length;
+
+		BitSet candidates = this.Candidates;
+		candidates.clear();
+		candidates.or(this.Live);
+		collect(candidates, occupancy, OccupancyMap.ANTS, size);
+		collect(candidates, occupancy, OccupancyMap.ANTEATER, size);
+		collect(candidates, occupancy, OccupancyMap.CHANGED, size);
+		collect(candidates, world.getAntOdourChannel());
+		collect(candidates, world.getPoisonChannel());
+		for (Warehouse warehouse : world.getExitPoints()) {
+			if (warehouse.getField() != null) {
+				candidates.set(warehouse.getField().getIndex());
+			}
+		}
+		occupancy.clear(OccupancyMap.CHANGED);
+
+		WorldField[][] map = world.getMap();
+		int width = world.getWidth();
+		this.ChangesLength = 0;
+		for (int index = candidates.nextSetBit(0); index >= 0; index = candidates.nextSetBit(index + 1)) {
+			capture(map[index / width][index % width], this.Row, 0, tick);
+			int mask = 0;
+			for (int a = 0; a < ATTRIBUTES; ++a) {
+				if (this.Row[a][0] != this.State[a][index]) {
+					this.State[a][index] = this.Row[a][0];
+					mask |= 1 << a;
+				}
+			}
+			this.Live.set(index, isLive(this.State, index));
+			if (mask == 0) {
+				continue;
+			}
+			this.append(index);
+			this.append(mask);
+			for (int a = 0; a < ATTRIBUTES; ++a) {
+				if ((mask & (1 << a)) != 0) {
+					this.append(this.State[a][index]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Appends a number to Changes.
+	 */
+	private void append(int value) {
+		if (this.ChangesLength == this.Changes.length) {
+			this.Changes = Arrays.copyOf(this.Changes, 2 * this.Changes.length);
+		}
+		this.Changes[this.ChangesLength++] = value;
+	}
+
+	/**
+	 * Adds the fields with their bit set on a layer of the OccupancyMap to a set.
+	 */
+	private static void collect(BitSet fields, OccupancyMap occupancy, int layer, int size) {
+		for (int index = occupancy.nextSetBit(layer, 0, size); index >= 0; index = occupancy.nextSetBit(layer, index + 1, size)) {
+			fields.set(index);
+		}
+	}
+
+	/**
+	 * Adds the active set of an odour channel to a set.
+	 */
+	private static void collect(BitSet fields, OdourChannel channel) {
+		for (int k = 0; k < channel.getActiveCount(); ++k) {
+			fields.set(channel.getActiveIndex(k));
+		}
+	}
+
+	/**
+	 * Tells whether a field has ants, an anteater, ant odour or poison
+	 * (the attributes which change without marking the field as CHANGED).
+	 */
+	private static boolean isLive(int[][] state, int index) {
+		return (state[ANTS][index] | state[ANTEATER][index] | state[ANT_ODOUR][index] | state[POISON][index]) != 0;
+	}
+
+	/**
+	 * Copies the attribute arrays.
+	 */
+	private static int[][] copy(int[][] state) {
+		int[][] copy = new int[state.length][];
+		for (int a = 0; a < state.length; ++a) {
+			copy[a] = state[a].clone();
+		}
+		return copy;
+	}
+
+	/**
+	 * Captures the state of a game, to be written on another thread (see ChunkedWorldFile.write()).
+	 * Should be called by the model thread (between two ticks); it costs a copy of the
+	 * fields into a few int arrays.
+	 *
+	 * @param game the game
+	 * @return the captured state
+	 */
+	public static Frame capture(Game game) {
+		Timer timer = Timer.getInstance();
+		return new Frame(game, (timer != null) ? timer.getTick() : 0);
+	}
+
+	/**
+	 * Checks whether a stream starts like a checkpoint file, without consuming it.
+	 *
+	 * @param in the stream, it must support mark()
+	 * @return true if the stream starts with MAGIC
+	 * @throws IOException
+	 */
+	public static boolean isCheckpoint(InputStream in) throws IOException {
+		return peekInt(in) == MAGIC;
+	}
+
+	/**
+	 * Reads the first int of a stream (big-endian), without consuming it.
+	 *
+	 * @param in the stream, it must support mark()
+	 * @return the int, the bytes missing at the end of the stream are left out
+	 * @throws IOException
+	 */
+	static int peekInt(InputStream in) throws IOException {
+		in.mark(4);
+		int value = 0;
+		for (int i = 0; i < 4; ++i) {
+			int b = in.read();
+			if (b < 0) {
+				break;
+			}
+			value = (value << 8) | b;
+		}
+		in.reset();
+		return value;
+	}
+
+	/**
+	 * Writes the header of a checkpoint file.
+	 */
+	private static void writeHeader(DataOutputStream out, int height, int width) throws IOException {
+		out.writeInt(MAGIC);
+		out.writeByte(VERSION);
+		out.writeInt(height);
+		out.writeInt(width);
+	}
+
+	/**
+	 * Writes the body of a checkpoint (without its length).
+	 */
+	private static void writeRecord(DataOutputStream out, Record record) throws IOException {
+		out.writeByte(record.Type);
+		writeVarint(out, record.Tick);
+		writeVarint(out, Math.max(record.Elapsed, 0));
+		writeVarint(out, record.AntKillerLoad);
+		writeVarint(out, record.AntOdourKillerLoad);
+		ByteBuffer world = ByteBuffer.allocate(WorldState.LENGTH);
+		record.World.write(world);
+		out.write(world.array());
+		if (record.Type == KEYFRAME) {
+			encode(record.State, out);
+		} else {
+			encode(record.Changes, out);
+		}
+		if (record.Routes == null) {
+			writeVarint(out, 0);
+		} else {
+			writeVarint(out, record.Routes.length + 1);
+			for (int route : record.Routes) {
+				writeVarint(out, route);
+			}
+		}
+	}
+
+	/**
+	 * Stops autosaving: unsubscribes the stream, waits until the checkpoints
+	 * taken so far are written and closes the file.
+	 */
+	public void close() {
+		synchronized (this) {
+			if (this.Closed) {
+				return;
+			}
+			this.Closed = true;
+			this.Clock.removeSubscriber(this);
+			this.Output.Queue.add(END);
+		}
+		try {
+			this.Output.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Returns the code of an element.
+	 */
+	private static int code(WorldElement element) {
+		if (element == null) {
+			return NONE;
+		} else if (element instanceof AntHill) {
+			return ANTHILL;
+		} else if (element instanceof AntLion) {
+			return ANTLION;
+		} else if (element instanceof Warehouse) {
+			return WAREHOUSE;
+		} else if (element instanceof Puddle) {
+			return PUDDLE;
+		} else if (element instanceof AntEaterSpawnPoint) {
+			return SPAWNPOINT;
+		} else if (element instanceof Pebble) {
+			return PEBBLE;
+		}
+		return NONE;
+	}
+
+	/**
+	 * Copies the state of the fields of a game into the attribute arrays.
+	 */
+	private static void capture(Game game, int[][] state, long tick) {
+		GameWorld world = game.getMap();
+		WorldField[][] map = world.getMap();
+		for (int i = 0; i < world.getHeight(); ++i) {
+			for (int j = 0; j < world.getWidth(); ++j) {
+				capture(map[i][j], state, i * world.getWidth() + j, tick);
+			}
+		}
+	}
+
+	/**
+	 * Copies the state of a field into the attribute arrays.
+	 *
+	 * @param field the field
+	 * @param state the attribute arrays
+	 * @param index where to copy the state in the arrays
+	 * @param tick the current tick (the ticks of the odours count back from it)
+	 */
+	private static void capture(WorldField field, int[][] state, int index, long tick) {
+		Irreplaceable permanent = field.getPermanentElement();
+		AntEater antEater = field.getAntEater();
+		GameWorld world = field.getWorld();
+
+		state[LAYOUT][index] = code(permanent) | (code(field.getDynamicElement()) << DYNAMIC_SHIFT)
+				| (field.isPassable() ? PASSABLE : 0);
+		state[ANTS][index] = field.getAntList().size();
+		state[ANTEATER][index] = (antEater != null)
+				? (antEater.getConsumed() + 1) | (direction(field, antEater.getCameFrom()) << CAME_FROM_SHIFT) : 0;
+		state[FOOD][index] = (permanent instanceof Warehouse) ? ((Warehouse)permanent).getFoodAmount() : 0;
+		captureOdour(world.getAntOdourChannel(), field.getIndex(), state, ANT_ODOUR, ANT_ODOUR_TICK, index, tick);
+		state[FOOD_ODOUR][index] = Float.floatToIntBits(field.getFoodOdour());
+		captureOdour(world.getPoisonChannel(), field.getIndex(), state, POISON, POISON_TICK, index, tick);
+	}
+
+	/**
+	 * Copies the stored intensity of an odour and the tick of its last update
+	 * (0 if the intensity is 0) into the attribute arrays.
+	 */
+	private static void captureOdour(OdourChannel channel, int field, int[][] state, int value, int stamp, int index, long tick) {
+		float stored = channel.getStored(field);
+		state[value][index] = Float.floatToIntBits(stored);
+		state[stamp][index] = (stored != 0) ? (int)(tick - channel.getAge(field)) : 0;
+	}
+
+	/**
+	 * Captures the routes of the ants of a world, field by field (in the order of
+	 * their indices), ant by ant (in the order of the ant list of the field).
+	 *
+	 * @param world the world
+	 * @return the routes, see route()
+	 */
+	private static int[] captureRoutes(GameWorld world) {
+		int size = world.getHeight() * world.getWidth();
+		OccupancyMap occupancy = world.getOccupancy();
+		WorldField[][] map = world.getMap();
+		int width = world.getWidth();
+		int[] routes = new int[0];
+		int count = 0;
+		for (int index = occupancy.nextSetBit(OccupancyMap.ANTS, 0, size); index >= 0;
+				index = occupancy.nextSetBit(OccupancyMap.ANTS, index + 1, size)) {
+			WorldField field = map[index / width][index % width];
+			routes = Arrays.copyOf(routes, count + field.getAntList().size());
+			for (Ant ant : field.getAntList()) {
+				routes[count++] = route(field, ant);
+			}
+		}
+		return Arrays.copyOf(routes, count);
+	}
+
+	/**
+	 * Returns the route of an ant: the direction of the field it came from,
+	 * and the index of the field of its target warehouse + 1 (0: none) shifted by TARGET_SHIFT.
+	 */
+	static int route(WorldField field, Ant ant) {
+		Warehouse target = ant.getTarget();
+		WorldField warehouse = (target != null) ? target.getField() : null;
+		return direction(field, ant.getCameFrom()) | (((warehouse != null) ? warehouse.getIndex() + 1 : 0) << TARGET_SHIFT);
+	}
+
+	/**
+	 * Returns the direction of a field from another one: 0 if there is none,
+	 * the position in the neighbour list + 1 for a neighbour, 7 for the field itself
+	 * (0 for any other field, which the movables never come from).
+	 */
+	private static int direction(WorldField field, WorldField from) {
+		if (from == null) {
+			return 0;
+		} else if (from == field) {
+			return 7;
+		}
+		return field.getNeighbours().indexOf(from) + 1;
+	}
+
+	/**
+	 * Returns the field in a direction returned by direction().
+	 */
+	private static WorldField neighbour(WorldField field, int direction) {
+		if (direction == 7) {
+			return field;
+		} else if (direction < 1 || direction > field.getNeighbours().size()) {
+			return null;
+		}
+		return field.getNeighbours().get(direction - 1);
+	}
+
+	/**
+	 * Writes the fields which differ from the empty state (a keyframe).
+	 */
+	private static void encode(int[][] state, DataOutputStream out) throws IOException {
+		int size = state[0].length;
+		int last = -1;
+		for (int index = 0; index < size; ++index) {
+			int mask = 0;
+			for (int a = 0; a < ATTRIBUTES; ++a) {
+				if (state[a][index] != 0) {
+					mask |= 1 << a;
+				}
+			}
+			if (mask == 0) {
+				continue;
+			}
+			writeVarint(out, index - last);
+			writeVarint(out, mask);
+			for (int a = 0; a < ATTRIBUTES; ++a) {
+				if ((mask & (1 << a)) != 0) {
+					writeAttribute(out, a, state[a][index]);
+				}
+			}
+			last = index;
+		}
+		writeVarint(out, 0);
+	}
+
+	/**
+	 * Writes the changed fields collected by a delta (see Changes).
+	 */
+	private static void encode(int[] changes, DataOutputStream out) throws IOException {
+		int last = -1;
+		int k = 0;
+		while (k < changes.length) {
+			int index = changes[k++];
+			int mask = changes[k++];
+			writeVarint(out, index - last);
+			writeVarint(out, mask);
+			for (int a = 0; a < ATTRIBUTES; ++a) {
+				if ((mask & (1 << a)) != 0) {
+					writeAttribute(out, a, changes[k++]);
+				}
+			}
+			last = index;
+		}
+		writeVarint(out, 0);
+	}
+
+	/**
+	 * Writes the value of an attribute: a varint for the counts, an int for the odour bits.
+	 */
+	private static void writeAttribute(DataOutputStream out, int attribute, int value) throws IOException {
+		if (attribute < ANT_ODOUR) {
+			writeVarint(out, value);
+		} else {
+			out.writeInt(value);
+		}
+	}
+
+	/**
+	 * Applies the fields written by encode() to the attribute arrays.
+	 *
+	 * @param in the checkpoint
+	 * @param state the attribute arrays
+	 * @param version the version of the file
+	 * @param tick the tick of the checkpoint (the odours of VERSION_2 were updated then)
+	 * @throws IOException
+	 */
+	private static void decode(DataInputStream in, int[][] state, int version, long tick) throws IOException {
+		int size = state[0].length;
+		int index = -1;
+		long gap;
+		while ((gap = readVarint(in)) != 0) {
+			index += (int)gap;
+			if (index < 0 || index >= size) {
+				throw new IOException("Field index out of the map: " + index);
+			}
+			if (version == VERSION_2) {
+				int mask = in.readUnsignedByte();
+				for (int bit = 0; bit < VERSION_2_ATTRIBUTES.length; ++bit) {
+					if ((mask & (1 << bit)) != 0) {
+						int a = VERSION_2_ATTRIBUTES[bit];
+						state[a][index] = (a < ANT_ODOUR) ? (int)readVarint(in) : in.readInt();
+					}
+				}
+				state[ANT_ODOUR_TICK][index] = (state[ANT_ODOUR][index] != 0) ? (int)tick : 0;
+				state[POISON_TICK][index] = (state[POISON][index] != 0) ? (int)tick : 0;
+				continue;
+			}
+			int mask = (int)readVarint(in);
+			for (int a = 0; a < ATTRIBUTES; ++a) {
+				if ((mask & (1 << a)) == 0) {
+					continue;
+				}
+				state[a][index] = (a < ANT_ODOUR) ? (int)readVarint(in) : in.readInt();
+			}
+		}
+	}
+
+	/**
+	 * Reads the routes written by writeRecord().
+	 *
+	 * @param in the checkpoint
+	 * @param routes the routes of the previous checkpoint
+	 * @return the routes, the previous ones if they have not changed
+	 * @throws IOException
+	 */
+	private static int[] readRoutes(DataInputStream in, int[] routes) throws IOException {
+		long count = readVarint(in);
+		if (count == 0) {
+			return routes;
+		}
+		if (count - 1 > Integer.MAX_VALUE - 8) {
+			throw new IOException("Malformed routes");
+		}
+		routes = new int[(int)(count - 1)];
+		for (int k = 0; k < routes.length; ++k) {
+			routes[k] = (int)readVarint(in);
+		}
+		return routes;
+	}
+
+	/**
+	 * Restores the last complete checkpoint of a stream into a game (e.g. a new Game):
+	 * a world of the size of the checkpoints is created, and it replaces the world of
+	 * the game once the checkpoint is restored. If the stream can not be read, the game
+	 * is left as it was. The Timer of the game should be set, the elements subscribe
+	 * themselves to it.
+	 *
+	 * @param in the checkpoint stream
+	 * @param game the game to restore into
+	 * @return the tick of the restored checkpoint
+	 * @throws IOException if the stream is malformed or has no complete keyframe
+	 */
+	public static long restore(InputStream in, Game game) throws IOException {
+		DataInputStream input = new DataInputStream(new BufferedInputStream(in));
+		if (input.readInt() != MAGIC) {
+			throw new IOException("Not a checkpoint file");
+		}
+		byte version = input.readByte();
+		if (version != VERSION && version != VERSION_2) {
+			throw new IOException("Unsupported checkpoint version");
+		}
+		int height = input.readInt();
+		int width = input.readInt();
+		if (height <= 0 || width <= 0) {
+			throw new IOException("Malformed checkpoint header");
+		}
+
+		int[][] state = new int[ATTRIBUTES][height * width];
+		int[] routes = null;
+		WorldState worldState = null;
+		int antKillerLoad = 0, antOdourKillerLoad = 0;
+		long tick = -1, elapsed = 0;
+		byte[] frame = new byte[0];
+		while (true) {
+			int length;
+			try {
+				length = input.readInt();
+				if (length < 0) {
+					throw new IOException("Negative checkpoint length");
+				}
+				if (frame.length < length) {
+					frame = new byte[length];
+				}
+				input.readFully(frame, 0, length);
+			} catch (EOFException e) {
+				break;		// the end of the file, or a checkpoint cut off
+			}
+
+			DataInputStream record = new DataInputStream(new ByteArrayInputStream(frame, 0, length));
+			int type = record.readUnsignedByte();
+			if (type == KEYFRAME) {
+				for (int[] attribute : state) {
+					Arrays.fill(attribute, 0);
+				}
+			} else if (type != DELTA || tick < 0) {
+				throw new IOException("Unexpected checkpoint type " + type);
+			}
+			tick = readVarint(record);
+			elapsed = readVarint(record);
+			antKillerLoad = (int)readVarint(record);
+			antOdourKillerLoad = (int)readVarint(record);
+			if (version != VERSION_2) {
+				byte[] bytes = new byte[WorldState.LENGTH];
+				record.readFully(bytes);
+				worldState = new WorldState(ByteBuffer.wrap(bytes));
+			}
+			decode(record, state, version, tick);
+			if (version != VERSION_2) {
+				routes = readRoutes(record, (type == KEYFRAME) ? null : routes);
+			}
+		}
+		if (tick < 0) {
+			throw new IOException("No complete keyframe");
+		}
+
+		GameWorld world = new GameWorld(height, width, GameWorld.TILE_SIZE);
+		int warehouses;
+		try {
+			if (worldState != null) {
+				worldState.apply(world, tick);
+			}
+			Map<Ant, Integer> targets = new IdentityHashMap<Ant, Integer>();
+			warehouses = build(world, state, width, 0, 0, height, width, routes, 0, targets, tick);
+			finish(world, worldState, targets, tick);
+		} catch (RuntimeException e) {
+			world.dispose();
+			throw new IOException("Malformed checkpoint", e);
+		}
+		world.getRouting().invalidate();
+
+		game.replaceWorld(world);
+		Warehouse.NUM_OF_WAREHOUSES = warehouses;
+		game.setAntKiller(new AntKiller(antKillerLoad));
+		game.setAntOdourKiller(new AntOdourKiller(antOdourKillerLoad));
+		game.setTimeElapsed(elapsed);
+		return tick;
+	}
+
+	/**
+	 * Creates the elements, the ants and the odours of a rectangle of the fields of
+	 * a new world. The WorldState should be applied to the world first, and finish()
+	 * should be called when all the fields are built; the routing of the world should
+	 * be invalidated afterwards.
+	 *
+	 * @param world the world
+	 * @param state the attributes of the rectangle, row by row
+	 * @param stride the length of a row in state
+	 * @param top the first row of the rectangle
+	 * @param left the first column of the rectangle
+	 * @param height number of rows of the rectangle
+	 * @param width number of columns of the rectangle
+	 * @param routes the routes of the ants (see route()), null if they were not saved
+	 * @param route the route of the first ant of the rectangle, the following ones are
+	 *        in the order of the fields of the rectangle
+	 * @param targets collects the indices of the fields of the target warehouses of the ants
+	 * @param tick the saved tick (the ticks of the odours count back from it)
+	 * @return the number of warehouses created
+	 */
+	static int build(GameWorld world, int[][] state, int stride, int top, int left, int height, int width,
+			int[] routes, int route, Map<Ant, Integer> targets, long tick) {
+		WorldField[][] map = world.getMap();
+		OdourChannel antOdour = world.getAntOdourChannel();
+		OdourChannel poison = world.getPoisonChannel();
+		Ant[] batch = new Ant[0];
+		int warehouses = 0;
+
+		for (int row = 0; row < height; ++row) {
+			for (int column = 0; column < width; ++column) {
+				int index = row * stride + column;
+				WorldField field = map[top + row][left + column];
+				int layout = state[LAYOUT][index];
+
+				switch (layout & ELEMENT_MASK) {
+				case ANTHILL:
+					AntHill hill = new AntHill();
+					field.setPermanentElement(hill);
+					world.setEntryPoint(hill);
+					break;
+				case ANTLION:
+					field.setPermanentElement(new AntLion());
+					break;
+				case WAREHOUSE:
+					Warehouse warehouse = new Warehouse();
+					field.setPermanentElement(warehouse);
+					warehouse.setFoodAmount(state[FOOD][index]);
+					world.getExitPoints().add(warehouse);
+					warehouses++;
+					break;
+				case PUDDLE:
+					field.setPermanentElement(new Puddle());
+					break;
+				case SPAWNPOINT:
+					field.setPermanentElement(new AntEaterSpawnPoint());
+					break;
+				}
+				if (((layout >> DYNAMIC_SHIFT) & ELEMENT_MASK) == PEBBLE) {
+					field.setDynamicElement(new Pebble());
+				}
+				field.setPassable((layout & PASSABLE) != 0);
+
+				int ants = state[ANTS][index];
+				if (ants > 0) {
+					if (batch.length < ants) {
+						batch = new Ant[ants];
+					}
+					world.getAntPool().acquire(batch, ants);
+					// not addAnts(): a warehouse or a trap must not take the ants again
+					field.placeAnts(batch, 0, ants);
+					if (routes != null) {
+						for (int k = 0; k < ants; ++k) {
+							int ant = routes[route++];
+							batch[k].setCameFrom(neighbour(field, ant & ((1 << TARGET_SHIFT) - 1)));
+							if ((ant >>> TARGET_SHIFT) != 0) {
+								targets.put(batch[k], (ant >>> TARGET_SHIFT) - 1);
+							}
+						}
+					}
+					Arrays.fill(batch, 0, ants, null);
+				}
+				if (state[ANTEATER][index] > 0) {
+					AntEater antEater = new AntEater();
+					field.placeAntEater(antEater);
+					antEater.setConsumed((state[ANTEATER][index] & ((1 << CAME_FROM_SHIFT) - 1)) - 1);
+					antEater.setCameFrom(neighbour(field, state[ANTEATER][index] >>> CAME_FROM_SHIFT));
+				}
+				if (state[ANT_ODOUR][index] != 0) {
+					antOdour.restore(field.getIndex(), Float.intBitsToFloat(state[ANT_ODOUR][index]),
+							tick - state[ANT_ODOUR_TICK][index]);
+				}
+				if (state[FOOD_ODOUR][index] != 0) {
+					field.setFoodOdour(Float.intBitsToFloat(state[FOOD_ODOUR][index]));
+				}
+				if (state[POISON][index] != 0) {
+					poison.restore(field.getIndex(), Float.intBitsToFloat(state[POISON][index]),
+							tick - state[POISON_TICK][index]);
+				}
+			}
+		}
+		return warehouses;
+	}
+
+	/**
+	 * Completes a world built by build(): the AntHill gets its settings back, the ants
+	 * get their target warehouses, and the elements driven by the Timer are subscribed
+	 * again in the order a new game subscribes them (the AntHill, the spawn points, then the anteaters, which are created later),
+	 * so the ones due at the same tick draw from the generator of the world in the same
+	 * order as in the saved game (at most MAX_ANTEATERS anteaters live at a time, so
+	 * their own order is kept as well). Then the Timer goes on from the saved tick.
+	 *
+	 * @param world the world
+	 * @param state the state of the world which does not belong to a field, null if it was not saved
+	 * @param targets the indices of the fields of the target warehouses, see build()
+	 * @param tick the saved tick
+	 */
+	static void finish(GameWorld world, WorldState state, Map<Ant, Integer> targets, long tick) {
+		if (state != null) {
+			state.restoreHill(world.getEntryPoint());
+		}
+		WorldField[][] map = world.getMap();
+		int width = world.getWidth();
+		int size = world.getHeight() * width;
+		for (Map.Entry<Ant, Integer> target : targets.entrySet()) {
+			int index = target.getValue();
+			if (index < size && map[index / width][index % width].getPermanentElement() instanceof Warehouse) {
+				target.getKey().setTarget((Warehouse)map[index / width][index % width].getPermanentElement());
+			}
+		}
+
+		if (world.getEntryPoint() != null) {
+			world.getEntryPoint().onDispose();
+			world.getEntryPoint().onLoad();
+		}
+		for (WorldField[] row : map) {
+			for (WorldField field : row) {
+				if (field.getPermanentElement() instanceof AntEaterSpawnPoint) {
+					field.getPermanentElement().onDispose();
+					field.getPermanentElement().onLoad();
+				}
+			}
+		}
+		for (WorldField[] row : map) {
+			for (WorldField field : row) {
+				if (field.getAntEater() != null) {
+					field.getAntEater().onDispose();
+					field.getAntEater().onLoad();
+				}
+			}
+		}
+		Timer.getInstance().setTick(tick);
+	}
+
+	/**
+	 * Writes a non-negative number in 7-bit groups, the lowest group first.
+	 */
+	private static void writeVarint(DataOutputStream out, long value) throws IOException {
+		while ((value & ~0x7FL) != 0) {
+			out.writeByte((int)((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		out.writeByte((int)value);
+	}
+
+	/**
+	 * Reads a number written by writeVarint().
+	 */
+	private static long readVarint(DataInputStream in) throws IOException {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			int b = in.readUnsignedByte();
+			value |= (long)(b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IOException("Malformed varint");
+	}
+}
@@ -0,0 +1,569 @@
+package org.nerdybeans.antfarm.model;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.IdentityHashMap;
+
+import org.nerdybeans.antfarm.model.modelelements.Ant;
+import org.nerdybeans.antfarm.model.modelelements.Warehouse;
+
+/**
+ * A saved game cut into chunks of the same size: the map is divided into square tiles
+ * of TILE_SIZE x TILE_SIZE fields, and the chunk of a tile is at a position computed from
+ * the index of the tile, so any tile can be read without reading the ones before it.
+ *
+ * The file is memory-mapped by open(), so the pages of a chunk are read from the disk
+ * when the chunk is first touched. The index gives the number of the fields of every tile
+ * which are not plain (passable, without elements, ants or odours); the chunk of a plain
+ * tile is neither written (the file has a hole there) nor touched, fresh fields are plain
+ * already. So a load pages in the header, the index and the chunks of the tiles which are
+ * not plain only. These are restored at once: every tile is simulated on every tick, and
+ * the routing and the food odour of a warehouse span the whole map.
+ *
+ * A mapping is released by the garbage collector only, and on Windows the next save
+ * could not replace a file which is still mapped. So close() releases the mapping at
+ * once (see unmap()); where it can not be released, open() maps a temporary copy of the
+ * file instead, which is deleted when it is closed.
+ *
+ * Format (big-endian):
+ *   header:  int MAGIC, byte VERSION, int height, int width, int tile size, long tick,
+ *            long milliseconds elapsed in the game, int AntKiller load, int AntOdourKiller load,
+ *            the WorldState of CheckpointStream, int number of routes
+ *   index:   two ints per tile (the tiles row by row): the number of fields which are not
+ *            plain, and the position of the route of the first ant of the tile
+ *   chunks:  from the first multiple of ALIGNMENT after the index, a chunk per tile:
+ *            the attributes of CheckpointStream one after the other, each an int per field
+ *            of the tile (row by row, 0 out of the map)
+ *   routes:  after the last chunk, an int per ant (see CheckpointStream.route()), the ants
+ *            of a tile field by field, in the order of the fields in the chunk
+ * The passability bit of the layout attribute is inverted, so a plain field is all 0.
+ * The tick is the ordinal number of the Timer (see Timer.getTick()). The saves of
+ * VERSION_1 have no WorldState and no routes, an int per tile in the index, and the
+ * attributes of CheckpointStream VERSION_2 in the chunks.
+ *
+ * @version 1.0
+ * @see SaveWriter
+ **/
+public class ChunkedWorldFile implements Closeable {
+	/**
+	 * The first int of the file ("AFCW").
+	 */
+	public static final int MAGIC = 0x41464357;
+
+	/**
+	 * Version of the format.
+	 */
+	public static final byte VERSION = 2;
+
+	/**
+	 * The previous version of the format, still read by restore().
+	 */
+	private static final byte VERSION_1 = 1;
+
+	/**
+	 * The attributes in the chunks of VERSION_1.
+	 */
+	private static final int[] VERSION_1_ATTRIBUTES = {
+		CheckpointStream.LAYOUT, CheckpointStream.ANTS, CheckpointStream.ANTEATER, CheckpointStream.FOOD,
+		CheckpointStream.ANT_ODOUR, CheckpointStream.FOOD_ODOUR, CheckpointStream.POISON
+	};
+
+	/**
+	 * Height and width of the tiles written.
+	 */
+	public static final int TILE_SIZE = GameWorld.TILE_SIZE;
+
+	/**
+	 * The chunks start at a multiple of this (a page).
+	 */
+	public static final int ALIGNMENT = 4096;
+
+	/**
+	 * Length of the header in bytes (VERSION_1 ends before the WorldState).
+	 */
+	private static final int HEADER_1 = 4 + 1 + 4 + 4 + 4 + 8 + 8 + 4 + 4;
+	private static final int HEADER = HEADER_1 + CheckpointStream.WorldState.LENGTH + 4;
+
+	/**
+	 * sun.misc.Unsafe and its invokeCleaner() (Java 9 or newer), null if not available.
+	 */
+	private static final Object UNSAFE;
+	private static final Method INVOKE_CLEANER;
+
+	static {
+		Object unsafe;
+		Method invokeCleaner;
+		try {
+			Class<?> type = Class.forName("sun.misc.Unsafe");
+			Field instance = type.getDeclaredField("theUnsafe");
+			instance.setAccessible(true);
+			unsafe = instance.get(null);
+			invokeCleaner = type.getMethod("invokeCleaner", ByteBuffer.class);
+		} catch (Exception e) {
+			unsafe = null;
+			invokeCleaner = null;
+		}
+		UNSAFE = unsafe;
+		INVOKE_CLEANER = invokeCleaner;
+	}
+
+	/**
+	 * The mapped file, null once closed.
+	 */
+	private MappedByteBuffer Map;
+
+	/**
+	 * The temporary copy which is mapped, or null if the file itself is mapped.
+	 */
+	private final File Copy;
+
+	/**
+	 * Height and width of the map.
+	 */
+	private final int Height, Width;
+
+	/**
+	 * Height and width of the tiles, number of tiles in a row of the map.
+	 */
+	private final int TileSize, TileColumns;
+
+	/**
+	 * Version of the file.
+	 */
+	private final byte Version;
+
+	/**
+	 * The saved tick, and the milliseconds elapsed in the game.
+	 */
+	private final long Tick, Elapsed;
+
+	/**
+	 * The state of the world which does not belong to a field, null in VERSION_1.
+	 */
+	private final CheckpointStream.WorldState World;
+
+	/**
+	 * Loads of the weapons.
+	 */
+	private final int AntKillerLoad, AntOdourKillerLoad;
+
+	/**
+	 * Number of fields which are not plain, and the first route, per tile.
+	 */
+	private final int[] Index, FirstRoute;
+
+	/**
+	 * The routes of the ants, null in VERSION_1.
+	 */
+	private final int[] Routes;
+
+	/**
+	 * Position of the first chunk, and the length of a chunk in bytes.
+	 */
+	private final int DataOffset, ChunkLength;
+
+	/**
+	 * Reads the header and the index of a mapped file.
+	 *
+	 * @param map the mapped file
+	 * @param copy the temporary copy which is mapped, or null
+	 * @throws IOException if the file is not a chunked save, or it is cut off
+	 */
+	private ChunkedWorldFile(MappedByteBuffer map, File copy) throws IOException {
+		int size = map.capacity();
+		if (size < HEADER_1 || map.getInt(0) != MAGIC) {
+			throw new IOException("Not a chunked save file");
+		}
+		this.Version = map.get(4);
+		if (this.Version != VERSION && this.Version != VERSION_1) {
+			throw new IOException("Unsupported chunked save version");
+		}
+		int header = (this.Version == VERSION) ? HEADER : HEADER_1;
+		int entry = (this.Version == VERSION) ? 2 : 1;
+		if (size < header) {
+			throw new IOException("The chunked save is cut off");
+		}
+		this.Height = map.getInt(5);
+		this.Width = map.getInt(9);
+		this.TileSize = map.getInt(13);
+		this.Tick = map.getLong(17);
+		this.Elapsed = map.getLong(25);
+		this.AntKillerLoad = map.getInt(33);
+		this.AntOdourKillerLoad = map.getInt(37);
+		if (this.Height <= 0 || this.Width <= 0 || this.TileSize <= 0) {
+			throw new IOException("Malformed chunked save header");
+		}
+		int routes = 0;
+		if (this.Version == VERSION) {
+			ByteBuffer world = map.duplicate();
+			world.position(HEADER_1);
+			this.World = new CheckpointStream.WorldState(world);
+			routes = map.getInt(HEADER - 4);
+			if (routes < 0) {
+				throw new IOException("Malformed chunked save header");
+			}
+		} else {
+			this.World = null;
+		}
+
+		this.TileColumns = tiles(this.Width, this.TileSize);
+		this.Index = new int[tiles(this.Height, this.TileSize) * this.TileColumns];
+		this.FirstRoute = new int[this.Index.length];
+		this.DataOffset = dataOffset(header, entry * this.Index.length);
+		this.ChunkLength = chunkLength(this.TileSize, (this.Version == VERSION) ? CheckpointStream.ATTRIBUTES : VERSION_1_ATTRIBUTES.length);
+		if (size < header + 4L * entry * this.Index.length) {
+			throw new IOException("The chunked save is cut off");
+		}
+		for (int tile = 0; tile < this.Index.length; ++tile) {
+			this.Index[tile] = map.getInt(header + 4 * entry * tile);
+			if (this.Version == VERSION) {
+				this.FirstRoute[tile] = map.getInt(header + 4 * entry * tile + 4);
+				if (this.FirstRoute[tile] < 0 || this.FirstRoute[tile] > routes) {
+					throw new IOException("Malformed chunked save index at tile " + tile);
+				}
+			}
+			if (this.Index[tile] != 0 && size < this.DataOffset + (long)(tile + 1) * this.ChunkLength) {
+				throw new IOException("The chunked save is cut off at tile " + tile);
+			}
+		}
+		if (this.Version == VERSION) {
+			long offset = this.DataOffset + (long)this.Index.length * this.ChunkLength;
+			if (size < offset + 4L * routes) {
+				throw new IOException("The chunked save is cut off in the routes");
+			}
+			this.Routes = new int[routes];
+			ByteBuffer values = map.duplicate();
+			values.position((int)offset);
+			values.slice().asIntBuffer().get(this.Routes);
+		} else {
+			this.Routes = null;
+		}
+		this.Map = map;
+		this.Copy = copy;
+	}
+
+	/**
+	 * Maps a chunked save and reads its header and index, the tiles are read by
+	 * restore(). The file must be closed afterwards.
+	 *
+	 * @param file the file
+	 * @return the opened file
+	 * @throws IOException if the file can not be read or it is not a chunked save
+	 */
+	public static ChunkedWorldFile open(File file) throws IOException {
+		File copy = null;
+		if (INVOKE_CLEANER == null) {
+			copy = File.createTempFile("AntFarmSave", ".map");
+			copy.deleteOnExit();
+			Files.copy(file.toPath(), copy.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+
+		MappedByteBuffer map;
+		FileChannel channel = FileChannel.open(((copy != null) ? copy : file).toPath(), StandardOpenOption.READ);
+		try {
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("The chunked save is too large to be mapped");
+			}
+			map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} finally {
+			channel.close();	// the mapping stays valid
+		}
+		try {
+			return new ChunkedWorldFile(map, copy);
+		} catch (IOException e) {
+			unmap(map);
+			if (copy != null) {
+				copy.delete();
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Releases the mapping, so the file can be replaced (e.g. by the next save).
+	 * The restored world does not refer to the mapping.
+	 *
+	 * @throws IOException
+	 */
+	@Override
+	public void close() throws IOException {
+		if (this.Map == null) {
+			return;
+		}
+		MappedByteBuffer map = this.Map;
+		this.Map = null;
+		unmap(map);
+		if (this.Copy != null && !this.Copy.delete()) {
+			System.out.println("[DEBUG#ChunkedWorldFile.close] Could not delete " + this.Copy);
+		}
+	}
+
+	/**
+	 * Releases a mapping at once instead of leaving it to the garbage collector.
+	 * The buffer must not be used afterwards, it would crash the virtual machine.
+	 *
+	 * @param map the mapping
+	 */
+	private static void unmap(MappedByteBuffer map) {
+		if (INVOKE_CLEANER == null) {
+			return;
+		}
+		try {
+			INVOKE_CLEANER.invoke(UNSAFE, map);
+		} catch (Exception e) {
+			System.out.println("[DEBUG#ChunkedWorldFile.unmap] The mapping is left to the garbage collector: " + e);
+		}
+	}
+
+	/**
+	 * Checks whether a stream starts like a chunked save, without consuming it.
+	 *
+	 * @param in the stream, it must support mark()
+	 * @return true if the stream starts with MAGIC
+	 * @throws IOException
+	 */
+	public static boolean isChunkedWorld(InputStream in) throws IOException {
+		return CheckpointStream.peekInt(in) == MAGIC;
+	}
+
+	/**
+	 * Writes a captured state as a chunked save (the file is overwritten).
+	 *
+	 * @param frame the captured state, see CheckpointStream.capture()
+	 * @param file the file
+	 * @throws IOException
+	 */
+	public static void write(CheckpointStream.Frame frame, File file) throws IOException {
+		int tileColumns = tiles(frame.Width, TILE_SIZE);
+		int[] index = new int[tiles(frame.Height, TILE_SIZE) * tileColumns];
+		// the routes of a field start after the ones of the fields before it (see Frame.Routes)
+		int[] fieldRoute = new int[frame.Height * frame.Width];
+		int[] tileRoutes = new int[index.length];
+		int route = 0;
+		for (int row = 0; row < frame.Height; ++row) {
+			for (int column = 0; column < frame.Width; ++column) {
+				int field = row * frame.Width + column;
+				int tile = (row / TILE_SIZE) * tileColumns + column / TILE_SIZE;
+				if (!isPlain(frame.State, field)) {
+					index[tile]++;
+				}
+				fieldRoute[field] = route;
+				route += frame.State[CheckpointStream.ANTS][field];
+				tileRoutes[tile] += frame.State[CheckpointStream.ANTS][field];
+			}
+		}
+
+		// the routes are rearranged tile by tile
+		int[] firstRoute = new int[index.length];
+		for (int tile = 1; tile < index.length; ++tile) {
+			firstRoute[tile] = firstRoute[tile - 1] + tileRoutes[tile - 1];
+		}
+		ByteBuffer routes = ByteBuffer.allocate(4 * frame.Routes.length);
+		for (int tile = 0; tile < index.length; ++tile) {
+			int top = (tile / tileColumns) * TILE_SIZE;
+			int left = (tile % tileColumns) * TILE_SIZE;
+			for (int row = top; row < Math.min(top + TILE_SIZE, frame.Height); ++row) {
+				for (int column = left; column < Math.min(left + TILE_SIZE, frame.Width); ++column) {
+					int field = row * frame.Width + column;
+					for (int k = 0; k < frame.State[CheckpointStream.ANTS][field]; ++k) {
+						routes.putInt(frame.Routes[fieldRoute[field] + k]);
+					}
+				}
+			}
+		}
+		routes.flip();
+
+		ByteBuffer head = ByteBuffer.allocate(HEADER + 8 * index.length);
+		head.putInt(MAGIC).put(VERSION).putInt(frame.Height).putInt(frame.Width).putInt(TILE_SIZE);
+		head.putLong(frame.Tick).putLong(frame.Elapsed).putInt(frame.AntKillerLoad).putInt(frame.AntOdourKillerLoad);
+		frame.World.write(head);
+		head.putInt(frame.Routes.length);
+		for (int tile = 0; tile < index.length; ++tile) {
+			head.putInt(index[tile]).putInt(firstRoute[tile]);
+		}
+		head.flip();
+
+		// positional writes: the chunks of the plain tiles are skipped
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+		try {
+			writeFully(channel, head, 0);
+			ByteBuffer chunk = ByteBuffer.allocate(chunkLength(TILE_SIZE, CheckpointStream.ATTRIBUTES));
+			IntBuffer values = chunk.asIntBuffer();
+			long offset = dataOffset(HEADER, 2 * index.length);
+			for (int tile = 0; tile < index.length; ++tile, offset += chunk.capacity()) {
+				if (index[tile] == 0) {
+					continue;
+				}
+				int top = (tile / tileColumns) * TILE_SIZE;
+				int left = (tile % tileColumns) * TILE_SIZE;
+				values.clear();
+				for (int a = 0; a < CheckpointStream.ATTRIBUTES; ++a) {
+					for (int row = top; row < top + TILE_SIZE; ++row) {
+						for (int column = left; column < left + TILE_SIZE; ++column) {
+							int value = 0;
+							if (row < frame.Height && column < frame.Width) {
+								value = frame.State[a][row * frame.Width + column];
+								if (a == CheckpointStream.LAYOUT) {
+									value ^= CheckpointStream.PASSABLE;
+								}
+							}
+							values.put(value);
+						}
+					}
+				}
+				chunk.clear();
+				writeFully(channel, chunk, offset);
+			}
+			writeFully(channel, routes, offset);
+		} finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Restores the saved game into a game: a world of the saved size is created, the tiles
+	 * which are not plain are restored into it, and it replaces the world of the game. If
+	 * the file can not be read, the game is left as it was. The Timer of the game should
+	 * be set, the elements subscribe themselves to it.
+	 *
+	 * @param game the game to restore into
+	 * @return the saved tick
+	 * @throws IOException if the file is closed or malformed
+	 */
+	public long restore(Game game) throws IOException {
+		if (this.Map == null) {
+			throw new IOException("The chunked save is closed");
+		}
+		GameWorld world = new GameWorld(this.Height, this.Width, this.TileSize);
+		int warehouses = 0;
+		try {
+			if (this.World != null) {
+				this.World.apply(world, this.Tick);
+			}
+			java.util.Map<Ant, Integer> targets = new IdentityHashMap<Ant, Integer>();
+			for (int tile = 0; tile < this.Index.length; ++tile) {
+				if (this.Index[tile] != 0) {
+					warehouses += this.restoreTile(world, tile, targets);
+				}
+			}
+			CheckpointStream.finish(world, this.World, targets, this.Tick);
+		} catch (RuntimeException e) {
+			world.dispose();
+			throw new IOException("Malformed chunked save", e);
+		}
+		world.getRouting().invalidate();
+
+		game.replaceWorld(world);
+		Warehouse.NUM_OF_WAREHOUSES = warehouses;
+		game.setAntKiller(new AntKiller(this.AntKillerLoad));
+		game.setAntOdourKiller(new AntOdourKiller(this.AntOdourKillerLoad));
+		game.setTimeElapsed(this.Elapsed);
+		return this.Tick;
+	}
+
+	/**
+	 * Restores the fields of a tile into a new world, only the chunk of the tile is touched.
+	 *
+	 * @param world the world
+	 * @param tile the index of the tile (the tiles are numbered row by row)
+	 * @param targets collects the target warehouses of the ants, see CheckpointStream.build()
+	 * @return the number of warehouses created
+	 */
+	private int restoreTile(GameWorld world, int tile, java.util.Map<Ant, Integer> targets) {
+		int area = this.TileSize * this.TileSize;
+		int[][] state = new int[CheckpointStream.ATTRIBUTES][area];
+		ByteBuffer chunk = this.Map.duplicate();
+		chunk.position(this.DataOffset + tile * this.ChunkLength);
+		chunk.limit(chunk.position() + this.ChunkLength);
+		IntBuffer values = chunk.slice().asIntBuffer();
+		if (this.Version == VERSION) {
+			for (int[] attribute : state) {
+				values.get(attribute);
+			}
+		} else {
+			for (int attribute : VERSION_1_ATTRIBUTES) {
+				values.get(state[attribute]);
+			}
+			// the odours of VERSION_1 are the ones decayed until the saved tick
+			for (int i = 0; i < area; ++i) {
+				state[CheckpointStream.ANT_ODOUR_TICK][i] = (state[CheckpointStream.ANT_ODOUR][i] != 0) ? (int)this.Tick : 0;
+				state[CheckpointStream.POISON_TICK][i] = (state[CheckpointStream.POISON][i] != 0) ? (int)this.Tick : 0;
+			}
+		}
+		for (int i = 0; i < area; ++i) {
+			state[CheckpointStream.LAYOUT][i] ^= CheckpointStream.PASSABLE;
+		}
+
+		int top = (tile / this.TileColumns) * this.TileSize;
+		int left = (tile % this.TileColumns) * this.TileSize;
+		return CheckpointStream.build(world, state, this.TileSize, top, left,
+				Math.min(this.TileSize, this.Height - top), Math.min(this.TileSize, this.Width - left),
+				this.Routes, this.FirstRoute[tile], targets, this.Tick);
+	}
+
+	/**
+	 * Returns the saved tick.
+	 *
+	 * @return Tick the ordinal number of the tick, see Timer.getTick()
+	 */
+	public long getTick() {
+		return this.Tick;
+	}
+
+	/**
+	 * Is a field plain (passable, without elements, ants and odours)?
+	 */
+	private static boolean isPlain(int[][] state, int index) {
+		if (state[CheckpointStream.LAYOUT][index] != CheckpointStream.PASSABLE) {
+			return false;
+		}
+		for (int a = CheckpointStream.LAYOUT + 1; a < CheckpointStream.ATTRIBUTES; ++a) {
+			if (state[a][index] != 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Number of tiles needed to cover a length.
+	 */
+	private static int tiles(int length, int tileSize) {
+		return (length + tileSize - 1) / tileSize;
+	}
+
+	/**
+	 * Position of the first chunk, after the header and the index of the given number of ints.
+	 */
+	private static int dataOffset(int header, int entries) {
+		return (header + 4 * entries + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+	}
+
+	/**
+	 * Length of the chunk of a tile in bytes.
+	 */
+	private static int chunkLength(int tileSize, int attributes) {
+		return attributes * tileSize * tileSize * 4;
+	}
+
+	/**
+	 * Writes a whole buffer at a position of a channel.
+	 */
+	private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			position += channel.write(buffer, position);
+		}
+	}
+}
@@ -1,18 +1,19 @@
 package org.nerdybeans.antfarm.model;
 
+import java.io.BufferedInputStream;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.Date;
-import java.util.ListIterator;
+import java.util.Random;
 
+import org.nerdybeans.antfarm.auxiliary.SimulationEvents;
 import org.nerdybeans.antfarm.auxiliary.Timer;
-import org.nerdybeans.antfarm.model.modelelements.Ant;
-import org.nerdybeans.antfarm.model.modelelements.AntHill;
+import org.nerdybeans.antfarm.auxiliary.TraceRecorder;
+import org.nerdybeans.antfarm.model.modelelements.AntEaterSpawnPoint;
 import org.nerdybeans.antfarm.model.modelelements.Warehouse;
 import org.nerdybeans.antfarm.view.viewelements.AntHillView;
 
@@ -51,6 +52,11 @@ public class Game implements Serializable {
 	 **/
 	public static final String FILE_BANNER = "# org.nerdybeans.antfarm.model.Game";
 
+	/**
+	 * Name of the file of the saved game
+	 **/
+	public static final String SAVE_FILE = "AntFarmSave.dat";
+
 	/**
 	 * Time elapsed since the beginning of the game (in milliseconds)
 	 **/
@@ -79,6 +85,16 @@ public class Game implements Serializable {
 	 */
 	private AntOdourKiller AntOdourKillerState;
 
+	/**
+	 * The state of the game last published by the model thread (see publishSnapshot()).
+	 */
+	private transient volatile WorldSnapshot Snapshot;
+
+	/**
+	 * Has the last published snapshot been read? (true: a new one should be taken)
+	 */
+	private transient volatile boolean SnapshotRead = true;
+
 	/**
 	 * Default constructor
 	 * Initializes member variables with their default values.
@@ -94,7 +110,7 @@ public class Game implements Serializable {
 		this.GameWorldState = new GameWorld();
 		this.AntKillerState = new AntKiller();
 		this.AntOdourKillerState = new AntOdourKiller();
-		AntHill.reset();
+		AntEaterSpawnPoint.reset();
 		Warehouse.reset();
 		Warehouse.NUM_OF_WAREHOUSES = 0;
 	}
@@ -105,30 +121,81 @@ public class Game implements Serializable {
 	 * @author Horvath
 	 */
 	public void initNew() {
+		this.initNew(new Random().nextLong());
+	}
+
+	/**
+	 * Initiates a new game by creating a brand new game world from the given seed.
+	 * The same seed gives the same map, and (with the same commands at the same ticks)
+	 * the same game, see ReplayJournal.
+	 * 
+	 * @param seed the seed of the map and of the random generators of the world
+	 */
+	public void initNew(long seed) {
+		this.initNew(seed, GameWorld.SIZE_H, GameWorld.SIZE_W);
+	}
+
+	/**
+	 * Initiates a new game on a map of the given size (e.g. for the benchmarks).
+	 * 
+	 * @param seed the seed of the map and of the random generators of the world
+	 * @param height height of the map
+	 * @param width width of the map
+	 */
+	public void initNew(long seed, int height, int width) {
 		// for the sake of a new game start, to begin with a clean map.
-		this.GameWorldState = new GameWorld();
+		this.replaceWorld(new GameWorld(height, width, GameWorld.TILE_SIZE));
 		this.AntKillerState = new AntKiller();
 		this.AntOdourKillerState = new AntOdourKiller();
 		
 		// generate the random map.
-		GameWorldState.doGenesis();
+		GameWorldState.setSeed(seed);
+		GameWorldState.doGenesis(new Random(seed));
 		init_done = true;
 	}
 
 	/**
-	 * Loads a saved game from a file by deserializing the stored Game object
-	 * and copying the data.
+	 * Loads a saved game from a file. The file is either written by save() (see
+	 * ChunkedWorldFile), or a checkpoint keyframe (see CheckpointStream) or a serialized
+	 * Game object of the earlier versions.
 	 * 
 	 * @author Horvath, Szabo
+	 * @return true if the game has been loaded
 	 */
-	public void load() {
+	public boolean load() {
+		SimulationEvents.Load event = new SimulationEvents.Load();
+		event.begin();
 		try {
-			FileInputStream fis = new FileInputStream("AntFarmSave.dat");
+			BufferedInputStream fis = new BufferedInputStream(new FileInputStream(SAVE_FILE));
+			boolean chunked = ChunkedWorldFile.isChunkedWorld(fis);
+			if (chunked || CheckpointStream.isCheckpoint(fis)) {
+				// a world of the saved size replaces the current one once it is restored
+				try {
+					long tick;
+					if (chunked) {
+						// closed before returning, so the next save can replace the file
+						ChunkedWorldFile save = ChunkedWorldFile.open(new File(SAVE_FILE));
+						try {
+							tick = save.restore(this);
+						} finally {
+							save.close();
+						}
+					} else {
+						tick = CheckpointStream.restore(fis, this);
+					}
+					System.out.println("[DEBUG#Game.load] Loaded the save of tick " + tick);
+				} finally {
+					fis.close();
+				}
+				init_done = true;
+				this.commitLoad(event);
+				return true;
+			}
 			ObjectInputStream ois = new ObjectInputStream(fis);
 
 			this.time_elapsed = (Long) ois.readObject();
 			this.start_time = (Long) ois.readObject();
-			this.GameWorldState = (GameWorld) ois.readObject();
+			this.replaceWorld((GameWorld) ois.readObject());
 			this.AntKillerState = (AntKiller) ois.readObject();
 			this.AntOdourKillerState = (AntOdourKiller) ois.readObject();
 			Warehouse.NUM_OF_WAREHOUSES = ois.readInt();
@@ -140,42 +207,34 @@ public class Game implements Serializable {
 			ois.close();
 
 			
-			for (int i = 0; i < SIZE_H; ++i) {
-				for (int j = 0; j < SIZE_W; ++j) {
-						if ( this.GameWorldState.getMap()[i][j].getPermanentElement() != null ) {
-							Timer.getInstance().addSubscriber( this.GameWorldState.getMap()[i][j].getPermanentElement() );
+			WorldField[][] map = this.GameWorldState.getMap();
+			for (int i = 0; i < this.GameWorldState.getHeight(); ++i) {
+				for (int j = 0; j < this.GameWorldState.getWidth(); ++j) {
+						if ( map[i][j].getPermanentElement() != null ) {
+							// traps and warehouses are not subscribed, they are driven by the ants entering their field
+							map[i][j].getPermanentElement().onLoad();
 						}
-						if ( this.GameWorldState.getMap()[i][j].getDynamicElement() != null ) {
-							Timer.getInstance().addSubscriber( this.GameWorldState.getMap()[i][j].getDynamicElement() );
+						// passive elements (e.g. pebbles) are not subscribed by onLoad()
+						if ( map[i][j].getDynamicElement() != null ) {
+							map[i][j].getDynamicElement().onLoad();
 						}
-						if ( this.GameWorldState.getMap()[i][j].getAntOdourObj() != null ) {
-							Timer.getInstance().addSubscriber( this.GameWorldState.getMap()[i][j].getAntOdourObj() );
+						if ( map[i][j].getAntOdourObj() != null ) {
+							map[i][j].getAntOdourObj().onLoad();
 						}
-						if ( this.GameWorldState.getMap()[i][j].getPosionObj() != null ) {
-							Timer.getInstance().addSubscriber( this.GameWorldState.getMap()[i][j].getPosionObj() );
+						if ( map[i][j].getPosionObj() != null ) {
+							map[i][j].getPosionObj().onLoad();
 						}
-						if ( this.GameWorldState.getMap()[i][j].getAntEater() != null ) {
-							Timer.getInstance().addSubscriber( this.GameWorldState.getMap()[i][j].getAntEater() );
+						if ( map[i][j].getAntEater() != null ) {
+							map[i][j].getAntEater().onLoad();
 						}
-						if ( this.GameWorldState.getMap()[i][j].getAntIterator() != null ) {
-							ListIterator<Ant> iter = this.GameWorldState.getMap()[i][j].getAntIterator();
-							
-							while( iter.hasNext() ) {
-								Ant current = iter.next();
-								//System.out.println(current.toString());
-								//System.out.println("DEBUG: " + Timer.getInstance().countObservers());
-								Timer.getInstance().addSubscriber( current );
-							}
-							
-						}
-						
-					
+						// the ants are moved by the TileScheduler of the world, they need no subscription
 				}
 			}
+			this.GameWorldState.onLoad();
 			//Timer.setInstance((Timer)ois.readObject());
 			System.out.println("Number of Observers: " + Timer.getInstance().countObservers());
 
-			
+			init_done = true;
 
 		} catch (FileNotFoundException e) {
 			e.printStackTrace();
@@ -184,33 +243,125 @@ public class Game implements Serializable {
 		} catch (ClassNotFoundException e) {
 			e.printStackTrace();
 		}
+		this.commitLoad(event);
+		return init_done;
 	}
 
 	/**
-	 * Saves the current game object to a file via serialization.
-	 * @author Horvath
+	 * Replaces the world of the game, the previous one is disposed
+	 * (its TileScheduler would keep moving its ants otherwise).
+	 * 
+	 * @param world the new world
 	 */
-	public void save() {
-		try {
-			FileOutputStream fos = new FileOutputStream("AntFarmSave.dat");
-			ObjectOutputStream oos = new ObjectOutputStream(fos);
+	void replaceWorld(GameWorld world) {
+		if (this.GameWorldState != null) {
+			this.GameWorldState.dispose();
+		}
+		this.GameWorldState = world;
+	}
 
-			this.getTimeElapsed(); // set the time_elapsed variable
+	/**
+	 * Stops the simulation of the game (e.g. it is replaced by another one).
+	 * 
+	 * @see GameWorld.dispose()
+	 */
+	public void dispose() {
+		this.GameWorldState.dispose();
+	}
 
-			oos.writeObject(this.time_elapsed);
-			oos.writeObject(this.start_time);
-			oos.writeObject(this.GameWorldState);
-			oos.writeObject(this.AntKillerState);
-			oos.writeObject(this.AntOdourKillerState);
-			oos.writeInt(Warehouse.NUM_OF_WAREHOUSES);
-			//oos.writeObject(Timer.getInstance());
-			oos.close();
+	/**
+	 * Commits the Load event of load().
+	 * 
+	 * @param event the event
+	 */
+	private void commitLoad(SimulationEvents.Load event) {
+		if (event.shouldCommit()) {
+			event.ants = this.GameWorldState.getDensity().getTotal();
+			event.fields = this.GameWorldState.getHeight() * this.GameWorldState.getWidth();
+			event.subscribers = Timer.getInstance().countObservers();
+			event.commit();
+		}
+	}
 
-		} catch (FileNotFoundException e) {
-			e.printStackTrace();
+	/**
+	 * Restores the game from the last autosave checkpoint (see CheckpointStream).
+	 * Should be called on a new Game, instead of initNew() and load().
+	 * 
+	 * @param file name of the checkpoint file
+	 * @return true if the game has been restored
+	 */
+	public boolean restoreCheckpoint(String file) {
+		SimulationEvents.Load event = new SimulationEvents.Load();
+		event.begin();
+		try {
+			FileInputStream fis = new FileInputStream(file);
+			try {
+				long tick = CheckpointStream.restore(fis, this);
+				System.out.println("[DEBUG#Game.restoreCheckpoint] Restored the checkpoint of tick " + tick);
+			} finally {
+				fis.close();
+			}
 		} catch (IOException e) {
-			e.printStackTrace();
+			System.out.println("[DEBUG#Game.restoreCheckpoint] " + e);
+			return false;
+		}
+		init_done = true;
+		if (event.shouldCommit()) {
+			event.ants = this.GameWorldState.getDensity().getTotal();
+			event.fields = this.GameWorldState.getHeight() * this.GameWorldState.getWidth();
+			event.subscribers = Timer.getInstance().countObservers();
+			event.commit();
+		}
+		return true;
+	}
+
+	/**
+	 * Saves the current game to a file, and waits until it is written.
+	 * The model should not be running (see saveAsync()).
+	 * @author Horvath
+	 * @return true if the game has been saved (see SaveWriter.getFailure() otherwise)
+	 */
+	public boolean save() {
+		return this.saveAsync().await(0);
+	}
+
+	/**
+	 * Saves the current game to a file in the background: only the state of the
+	 * fields is captured here, the file is written by a SaveWriter thread. Should be
+	 * called between two ticks (e.g. by a command submitted to the Timer), the time
+	 * spent here is all the model waits for.
+	 * 
+	 * @return the started writer
+	 */
+	public SaveWriter saveAsync() {
+		SimulationEvents.Save event = new SimulationEvents.Save();
+		event.begin();
+		long start = System.nanoTime();
+		long span = TraceRecorder.begin();
+		CheckpointStream.Frame frame = CheckpointStream.capture(this);
+		this.GameWorldState.getMetrics().gameSaved(System.nanoTime() - start);
+		TraceRecorder.end("save", span);
+		if (event.shouldCommit()) {
+			event.tick = frame.getTick();
+			event.ants = this.GameWorldState.getDensity().getTotal();
+			event.fields = this.GameWorldState.getHeight() * this.GameWorldState.getWidth();
+			event.commit();
 		}
+
+		SaveWriter writer = new SaveWriter(frame, SAVE_FILE);
+		writer.start();
+		return writer;
+	}
+
+	/**
+	 * Sets the amount of time elapsed since the beginning of the current game
+	 * (the game is continued from a save).
+	 * 
+	 * @param elapsed the elapsed time in milliseconds
+	 */
+	void setTimeElapsed(long elapsed) {
+		this.time_elapsed = elapsed;
+		this.start_time = new Date().getTime() - elapsed;
 	}
 
 	/**
@@ -291,6 +442,43 @@ public class Game implements Serializable {
 		return this.init_done;
 	}
 	
+	/**
+	 * Takes a snapshot of the game and publishes it for the other threads, if the
+	 * previous one has been read (see getSnapshot()): copying the map costs O(fields),
+	 * so the model copies it once per frame of the view instead of after every tick,
+	 * and not at all when nobody reads the snapshots (e.g. headless runs).
+	 * Should be called by the model thread only (see Timer.setPublisher()).
+	 */
+	public void publishSnapshot() {
+		if (!this.SnapshotRead) {
+			return;
+		}
+		this.SnapshotRead = false;
+		SimulationEvents.TickPhase event = new SimulationEvents.TickPhase();
+		event.begin();
+		long start = System.nanoTime();
+		this.Snapshot = new WorldSnapshot(this);
+		this.GameWorldState.getMetrics().snapshotTaken(System.nanoTime() - start);
+		if (event.shouldCommit()) {
+			event.tick = this.Snapshot.getTick();
+			event.phase = "publish";
+			event.ants = this.GameWorldState.getDensity().getTotal();
+			event.fields = this.Snapshot.getHeight() * this.Snapshot.getWidth();
+			event.commit();
+		}
+	}
+	
+	/**
+	 * Returns the state of the game last published by the model thread,
+	 * and requests a new one.
+	 * 
+	 * @return Snapshot the snapshot, null if none has been published yet
+	 */
+	public WorldSnapshot getSnapshot() {
+		this.SnapshotRead = true;
+		return this.Snapshot;
+	}
+	
 	/**
 	 * Sets the init_done false, when the game comes to an end. GameOver
 	 */
@@ -0,0 +1,152 @@
+package org.nerdybeans.antfarm.model;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import org.nerdybeans.antfarm.auxiliary.RollingHistogram;
+
+/**
+ * Counters of the events of a GameWorld which are not visible from its state:
+ * the ants spawned, the ants killed (by cause), the time taken by the snapshots
+ * and the saves.
+ *
+ * The counters are LongAdders, so the tiles moving the ants in parallel record
+ * the deaths without contending on a shared counter; they are summed only when
+ * they are read (e.g. by the GameMonitor MBean).
+ *
+ * @version 1.0
+ * @see GameMonitor
+ **/
+public class GameMetrics {
+	/**
+	 * Cause of death: taken in by a warehouse (the ant has eaten).
+	 */
+	public static final int KILLED_BY_WAREHOUSE = 0;
+
+	/**
+	 * Cause of death: eaten by an antlion.
+	 */
+	public static final int KILLED_BY_ANTLION = 1;
+
+	/**
+	 * Cause of death: eaten by an anteater.
+	 */
+	public static final int KILLED_BY_ANTEATER = 2;
+
+	/**
+	 * Cause of death: poisoned.
+	 */
+	public static final int KILLED_BY_POISON = 3;
+
+	/**
+	 * Cause of death: anything else (e.g. the ant could not move anywhere).
+	 */
+	public static final int KILLED_OTHER = 4;
+
+	/**
+	 * Number of causes of death.
+	 */
+	public static final int NUM_OF_CAUSES = 5;
+
+	/**
+	 * Number of ants spawned.
+	 */
+	private final LongAdder Spawned = new LongAdder();
+
+	/**
+	 * Number of ants killed, by cause.
+	 */
+	private final LongAdder[] Killed = new LongAdder[NUM_OF_CAUSES];
+
+	/**
+	 * Time taken to build the published snapshots (in nanoseconds).
+	 */
+	private final RollingHistogram Snapshots = new RollingHistogram(256);
+
+	/**
+	 * Time taken to save the game (in nanoseconds).
+	 */
+	private final RollingHistogram Saves = new RollingHistogram(16);
+
+	/**
+	 * Constructor, every counter is zero.
+	 */
+	public GameMetrics() {
+		for (int cause = 0; cause < NUM_OF_CAUSES; ++cause) {
+			this.Killed[cause] = new LongAdder();
+		}
+	}
+
+	/**
+	 * Records spawned ants.
+	 *
+	 * @param count number of ants
+	 */
+	public void antsSpawned(int count) {
+		this.Spawned.add(count);
+	}
+
+	/**
+	 * Records killed ants.
+	 *
+	 * @param cause the cause of death (KILLED_BY_WAREHOUSE, ...)
+	 * @param count number of ants
+	 */
+	public void antsKilled(int cause, int count) {
+		this.Killed[cause].add(count);
+	}
+
+	/**
+	 * Records the time taken to build a snapshot.
+	 *
+	 * @param nanos the duration
+	 */
+	public void snapshotTaken(long nanos) {
+		this.Snapshots.record(nanos);
+	}
+
+	/**
+	 * Records the time taken to save the game.
+	 *
+	 * @param nanos the duration
+	 */
+	public void gameSaved(long nanos) {
+		this.Saves.record(nanos);
+	}
+
+	/**
+	 * Returns the number of ants spawned.
+	 *
+	 * @return number of ants
+	 */
+	public long getSpawned() {
+		return this.Spawned.sum();
+	}
+
+	/**
+	 * Returns the number of ants killed by a cause.
+	 *
+	 * @param cause the cause of death (KILLED_BY_WAREHOUSE, ...)
+	 * @return number of ants
+	 */
+	public long getKilled(int cause) {
+		return this.Killed[cause].sum();
+	}
+
+	/**
+	 * Returns the time taken to build the snapshots.
+	 *
+	 * @return the durations (in nanoseconds)
+	 */
+	public RollingHistogram getSnapshots() {
+		return this.Snapshots;
+	}
+
+	/**
+	 * Returns the time taken to save the game.
+	 *
+	 * @return the durations (in nanoseconds)
+	 */
+	public RollingHistogram getSaves() {
+		return this.Saves;
+	}
+}
@@ -0,0 +1,266 @@
+package org.nerdybeans.antfarm.model;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.nerdybeans.antfarm.auxiliary.RollingHistogram;
+import org.nerdybeans.antfarm.auxiliary.TickStatistics;
+import org.nerdybeans.antfarm.auxiliary.Timer;
+import org.nerdybeans.antfarm.model.modelelements.Warehouse;
+
+/**
+ * Exposes the live metrics of a Game over JMX (e.g. to jconsole), under the name
+ * org.nerdybeans.antfarm:type=Game,name=Game-n.
+ *
+ * The values are read from the published snapshot, the GameMetrics counters and
+ * the TickStatistics of the Timer, so reading them does not stop the model thread.
+ * The food of the warehouses is read directly (a plain int per warehouse), it may
+ * be a tick behind.
+ *
+ * @version 1.0
+ * @see GameMetrics
+ **/
+public class GameMonitor implements GameMonitorMBean {
+	/**
+	 * Domain of the MBeans.
+	 */
+	public static final String DOMAIN = "org.nerdybeans.antfarm";
+
+	/**
+	 * Sequence number of the registered games.
+	 */
+	private static final AtomicInteger Sequence = new AtomicInteger();
+
+	/**
+	 * The monitored game.
+	 */
+	private final Game Monitored;
+
+	/**
+	 * Name of the registered MBean, null if it is not registered.
+	 */
+	private ObjectName Name;
+
+	/**
+	 * Tick count and time of the last rate measurement.
+	 */
+	private long RateTicks, RateNanos;
+
+	/**
+	 * The last measured rate.
+	 */
+	private double Rate = 0.0;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param game the game to monitor
+	 */
+	public GameMonitor(Game game) {
+		this.Monitored = game;
+		this.RateNanos = System.nanoTime();
+		Timer timer = Timer.getInstance();
+		this.RateTicks = (timer != null) ? timer.getTickCount() : 0;
+	}
+
+	/**
+	 * Registers the MBean with the platform MBean server.
+	 *
+	 * @return true if it has been registered
+	 */
+	public synchronized boolean register() {
+		if (this.Name != null) {
+			return true;
+		}
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(DOMAIN + ":type=Game,name=Game-" + Sequence.incrementAndGet());
+			server.registerMBean(this, name);
+			this.Name = name;
+			return true;
+		} catch (JMException e) {
+			System.out.println("[DEBUG#GameMonitor.register] " + e);
+			return false;
+		}
+	}
+
+	/**
+	 * Unregisters the MBean (e.g. a new game has been started).
+	 */
+	public synchronized void unregister() {
+		if (this.Name == null) {
+			return;
+		}
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(this.Name);
+		} catch (JMException e) {
+			System.out.println("[DEBUG#GameMonitor.unregister] " + e);
+		}
+		this.Name = null;
+	}
+
+	/**
+	 * Returns the name of the MBean.
+	 *
+	 * @return Name the name, null if the MBean is not registered
+	 */
+	public synchronized ObjectName getName() {
+		return this.Name;
+	}
+
+	/**
+	 * Returns the metrics of the world of the game.
+	 */
+	private GameMetrics metrics() {
+		return this.Monitored.getMap().getMetrics();
+	}
+
+	/**
+	 * Returns the tick statistics of the Timer (null if it does not measure the ticks).
+	 */
+	private static TickStatistics statistics() {
+		Timer timer = Timer.getInstance();
+		return (timer != null) ? timer.getStatistics() : null;
+	}
+
+	/**
+	 * Converts nanoseconds to microseconds.
+	 */
+	private static double micros(long nanos) {
+		return nanos / 1000.0;
+	}
+
+	@Override
+	public synchronized double getTicksPerSecond() {
+		Timer timer = Timer.getInstance();
+		if (timer == null) {
+			return 0.0;
+		}
+		long now = System.nanoTime();
+		long ticks = timer.getTickCount();
+		if (now - this.RateNanos >= 1000000000L) {
+			this.Rate = (ticks - this.RateTicks) * 1e9 / (now - this.RateNanos);
+			this.RateTicks = ticks;
+			this.RateNanos = now;
+		}
+		return this.Rate;
+	}
+
+	@Override
+	public long getTickCount() {
+		Timer timer = Timer.getInstance();
+		return (timer != null) ? timer.getTickCount() : 0;
+	}
+
+	@Override
+	public double getTickP50Micros() {
+		TickStatistics stats = statistics();
+		return (stats != null) ? micros(stats.getTicks().getPercentile(50)) : 0.0;
+	}
+
+	@Override
+	public double getTickP99Micros() {
+		TickStatistics stats = statistics();
+		return (stats != null) ? micros(stats.getTicks().getPercentile(99)) : 0.0;
+	}
+
+	@Override
+	public double getTickMaxMicros() {
+		TickStatistics stats = statistics();
+		return (stats != null) ? micros(stats.getTicks().getMax()) : 0.0;
+	}
+
+	@Override
+	public long getTickOverruns() {
+		TickStatistics stats = statistics();
+		return (stats != null) ? stats.getOverruns().getCount() : 0;
+	}
+
+	@Override
+	public int getSubscriberCount() {
+		Timer timer = Timer.getInstance();
+		return (timer != null) ? timer.countObservers() : 0;
+	}
+
+	@Override
+	public int getLiveAnts() {
+		AntDensity density = this.Monitored.getMap().getDensity();
+		return (density != null) ? density.getTotal() : 0;
+	}
+
+	@Override
+	public long getAntsSpawned() {
+		return this.metrics().getSpawned();
+	}
+
+	@Override
+	public long getAntsKilledByWarehouse() {
+		return this.metrics().getKilled(GameMetrics.KILLED_BY_WAREHOUSE);
+	}
+
+	@Override
+	public long getAntsKilledByAntLion() {
+		return this.metrics().getKilled(GameMetrics.KILLED_BY_ANTLION);
+	}
+
+	@Override
+	public long getAntsKilledByAntEater() {
+		return this.metrics().getKilled(GameMetrics.KILLED_BY_ANTEATER);
+	}
+
+	@Override
+	public long getAntsKilledByPoison() {
+		return this.metrics().getKilled(GameMetrics.KILLED_BY_POISON);
+	}
+
+	@Override
+	public long getAntsKilledOther() {
+		return this.metrics().getKilled(GameMetrics.KILLED_OTHER);
+	}
+
+	@Override
+	public int[] getWarehouseFood() {
+		ArrayList<Warehouse> warehouses = this.Monitored.getMap().getExitPoints();
+		if (warehouses == null) {
+			return new int[0];
+		}
+		int[] food = new int[warehouses.size()];
+		for (int i = 0; i < food.length; ++i) {
+			food[i] = warehouses.get(i).getFoodAmount();
+		}
+		return food;
+	}
+
+	@Override
+	public int getAntKillerLoad() {
+		WorldSnapshot snapshot = this.Monitored.getSnapshot();
+		return (snapshot != null) ? snapshot.getAntKillerLoad() : this.Monitored.getAntKiller().getLoad();
+	}
+
+	@Override
+	public int getAntOdourKillerLoad() {
+		WorldSnapshot snapshot = this.Monitored.getSnapshot();
+		return (snapshot != null) ? snapshot.getAntOdourKillerLoad() : this.Monitored.getAntOdourKiller().getLoad();
+	}
+
+	@Override
+	public double getSnapshotP50Micros() {
+		return micros(this.metrics().getSnapshots().getPercentile(50));
+	}
+
+	@Override
+	public double getSnapshotMaxMicros() {
+		return micros(this.metrics().getSnapshots().getMax());
+	}
+
+	@Override
+	public double getSaveMaxMillis() {
+		RollingHistogram saves = this.metrics().getSaves();
+		return saves.getMax() / 1e6;
+	}
+}
@@ -0,0 +1,109 @@
+package org.nerdybeans.antfarm.model;
+
+/**
+ * The JMX management interface of a running Game (see GameMonitor).
+ * The durations are in microseconds unless the name says otherwise.
+ *
+ * @version 1.0
+ **/
+public interface GameMonitorMBean {
+	/**
+	 * @return ticks completed per second, measured since the previous read (at least one second earlier)
+	 */
+	public double getTicksPerSecond();
+
+	/**
+	 * @return number of ticks completed since the Timer was created
+	 */
+	public long getTickCount();
+
+	/**
+	 * @return median wall time of the recent ticks
+	 */
+	public double getTickP50Micros();
+
+	/**
+	 * @return 99th percentile of the wall time of the recent ticks
+	 */
+	public double getTickP99Micros();
+
+	/**
+	 * @return longest tick so far
+	 */
+	public double getTickMaxMicros();
+
+	/**
+	 * @return number of ticks which took longer than the precision of the Timer
+	 */
+	public long getTickOverruns();
+
+	/**
+	 * @return number of subscribers of the Timer
+	 */
+	public int getSubscriberCount();
+
+	/**
+	 * @return number of ants on the map
+	 */
+	public int getLiveAnts();
+
+	/**
+	 * @return number of ants spawned by the anthill
+	 */
+	public long getAntsSpawned();
+
+	/**
+	 * @return number of ants taken in by the warehouses
+	 */
+	public long getAntsKilledByWarehouse();
+
+	/**
+	 * @return number of ants eaten by the antlions
+	 */
+	public long getAntsKilledByAntLion();
+
+	/**
+	 * @return number of ants eaten by the anteaters
+	 */
+	public long getAntsKilledByAntEater();
+
+	/**
+	 * @return number of poisoned ants
+	 */
+	public long getAntsKilledByPoison();
+
+	/**
+	 * @return number of ants which died of any other cause (e.g. they were stuck)
+	 */
+	public long getAntsKilledOther();
+
+	/**
+	 * @return food remaining in every warehouse of the map (0 for the emptied ones)
+	 */
+	public int[] getWarehouseFood();
+
+	/**
+	 * @return load of the AntKiller
+	 */
+	public int getAntKillerLoad();
+
+	/**
+	 * @return load of the AntOdourKiller
+	 */
+	public int getAntOdourKillerLoad();
+
+	/**
+	 * @return median time taken to build a snapshot for the view
+	 */
+	public double getSnapshotP50Micros();
+
+	/**
+	 * @return longest time taken to build a snapshot for the view
+	 */
+	public double getSnapshotMaxMicros();
+
+	/**
+	 * @return longest time taken to save the game, in milliseconds
+	 */
+	public double getSaveMaxMillis();
+}
@@ -4,11 +4,15 @@ import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 
+import org.nerdybeans.antfarm.model.modelelements.Ant;
 import org.nerdybeans.antfarm.model.modelelements.AntEaterSpawnPoint;
 import org.nerdybeans.antfarm.model.modelelements.AntHill;
 import org.nerdybeans.antfarm.model.modelelements.AntLion;
+import org.nerdybeans.antfarm.model.modelelements.AntOdour;
 import org.nerdybeans.antfarm.model.modelelements.Pebble;
+import org.nerdybeans.antfarm.model.modelelements.Poison;
 import org.nerdybeans.antfarm.model.modelelements.Puddle;
 import org.nerdybeans.antfarm.model.modelelements.Warehouse;
 
@@ -40,6 +44,21 @@ public class GameWorld implements Serializable {
 	 */
 	private ArrayList<Warehouse> ExitPoints;
 	
+	/**
+	 * Passability and occupancy bitsets of the map, kept up to date by the WorldFields.
+	 */
+	private OccupancyMap Occupancy;
+	
+	/**
+	 * Intensity of the ant odour of every field (decaying in time).
+	 */
+	private OdourChannel AntOdourChannel;
+	
+	/**
+	 * Intensity of the poison of every field (decaying in time).
+	 */
+	private OdourChannel PoisonChannel;
+	
 	/**
 	 * Number of Warehouses in the GameWorld, on the map.
 	 */
@@ -76,25 +95,141 @@ public class GameWorld implements Serializable {
 	**/
 	public static final int SIZE_W = 20;
 
+	/**
+	 * Default edge length of the (square) tiles the map is partitioned into.
+	 * @see WorldTile
+	**/
+	public static final int TILE_SIZE = 16;
+	
+	/**
+	 * Row offsets of the neighbours (indexed by neighbour index).
+	 */
+	private static final int[] NEIGHBOUR_ROW = { -1, -1, 0, 1, 1, 0 };
+	
+	/**
+	 * Column offsets of the neighbours in even rows (indexed by neighbour index).
+	 */
+	private static final int[] NEIGHBOUR_COL_EVEN = { -1, 0, 1, 0, -1, -1 };
+	
+	/**
+	 * Column offsets of the neighbours in odd rows (indexed by neighbour index).
+	 */
+	private static final int[] NEIGHBOUR_COL_ODD = { 0, 1, 1, 1, 0, -1 };
+	
+	/**
+	 * Height of this map (measured in # of fields)
+	 */
+	private int Height;
+	
+	/**
+	 * Width of this map (measured in # of fields)
+	 */
+	private int Width;
+	
+	/**
+	 * Edge length of the tiles of this map (measured in # of fields)
+	 */
+	private int TileSize;
+	
+	/**
+	 * The tiles the map is partitioned into, in row-major order.
+	 */
+	private transient WorldTile[] Tiles;
+	
+	/**
+	 * The tile index of each field (indexed by field index).
+	 */
+	private transient int[] TileOfField;
+	
+	/**
+	 * Moves the ants of the world tile by tile.
+	 */
+	private transient TileScheduler Scheduler;
+	
+	/**
+	 * Diffusion of the ant odour channel (disabled by default).
+	 */
+	private transient OdourDiffusion AntOdourDiffusion;
+	
+	/**
+	 * Diffusion of the poison channel (disabled by default).
+	 */
+	private transient OdourDiffusion PoisonDiffusion;
+	
+	/**
+	 * Shortest path trees to the warehouses (built on first use).
+	 */
+	private transient RoutingService Routing;
+	
+	/**
+	 * Number of ants on every field and in the blocks of the map.
+	 */
+	private transient AntDensity Density;
+	
+	/**
+	 * The dead ants, reused by the AntHill.
+	 */
+	private transient AntPool Pool;
+
+	/**
+	 * Counters of the spawned and killed ants, and of the snapshot and save times.
+	 */
+	private transient GameMetrics Metrics;
+	
+	/**
+	 * Seed of the random generators of the world (see setSeed()).
+	 */
+	private transient long Seed;
+	
+	/**
+	 * Random generator of the elements driven by the model thread (e.g. the AntHill, the AntEaters).
+	 */
+	private transient WorldRandom Generator;
+	
+	/**
+	 * Number of times the ants have been moved since the seed was set.
+	 */
+	private transient long Steps;
+
 	/**
 	 * Default constructor. 
-	 * Constructs and initializes the map.
+	 * Constructs and initializes the map with the standard size.
 	 * 
 	 * @author Horvath
 	 * @see paper documentation for details
 	 */
 	public GameWorld() {
+		this(SIZE_H, SIZE_W, TILE_SIZE);
+	}
+	
+	/**
+	 * Constructs and initializes a map of the given size.
+	 * 
+	 * @param height map height (measured in # of fields)
+	 * @param width map width (measured in # of fields)
+	 * @param tileSize edge length of the tiles the map is partitioned into
+	 * @see paper documentation for details
+	 */
+	public GameWorld(int height, int width, int tileSize) {
 		System.out.println("[DEBUG#GameWorld.ctor]");
-		this.Map = new WorldField[SIZE_H][SIZE_W];
+		assert height > 0 && width > 0 && tileSize > 0;
+		this.Height = height;
+		this.Width = width;
+		this.TileSize = tileSize;
+		this.Map = new WorldField[height][width];
+		this.Occupancy = new OccupancyMap(height * width);
+		this.AntOdourChannel = new OdourChannel(height * width, AntOdour.PERIOD, Ant.OdourIncr, AntOdour.LIMIT);
+		this.PoisonChannel = new OdourChannel(height * width, Poison.PERIOD, 1.0f, Float.MAX_VALUE);
 
-		for (int i = 0; i < SIZE_H; ++i) {
-			for (int j = 0; j < SIZE_W; ++j) {
+		for (int i = 0; i < height; ++i) {
+			for (int j = 0; j < width; ++j) {
 				this.Map[i][j] = new WorldField();
+				this.Map[i][j].attach(this, i * width + j);
 			}
 		}
 		
-		for (int i = 0; i < SIZE_H; ++i) {
-			for (int j = 0; j < SIZE_W; ++j) {
+		for (int i = 0; i < height; ++i) {
+			for (int j = 0; j < width; ++j) {
 
 				/**
 				 * Little map: Every second row is pushed one field right,
@@ -113,88 +248,258 @@ public class GameWorld implements Serializable {
 				 * 4 - 3;
 				 */
 
-				// add neighbour fields
+				// add neighbour fields (null, if the neighbour would be off the map)
+				int[] columnOffsets = (i % 2 == 0) ? NEIGHBOUR_COL_EVEN : NEIGHBOUR_COL_ODD;
 				for (int k = 0; k < 6; ++k) {
-					if (i == 0) {
-						if (k == 0 || k == 1) {
-							this.Map[i][j].addNeighbour(null);
-						} else if (j == 19 && k == 2) {
-							this.Map[i][j].addNeighbour(null);
-						} else if (j != 19 && k == 2) {
-							this.Map[i][j].addNeighbour(this.Map[i][j + 1]);
-						} else if (j == 0 && (k == 4 || k == 5)) {
-							this.Map[i][j].addNeighbour(null);
-						} else if (j != 0 && k == 5) {
-							this.Map[i][j].addNeighbour(this.Map[i][j - 1]);
-						} else if (j != 0 && k == 4) {
-							this.Map[i][j].addNeighbour(this.Map[i + 1][j - 1]);
-						} else if (k == 3) {
-							this.Map[i][j].addNeighbour(this.Map[i + 1][j]);
-						}
-					}
-					
-					else if (i%2 == 0) {
-						if (j == 0 && (k == 0 || k == 4 || k == 5)) {
-							this.Map[i][j].addNeighbour(null);
-						} else if (j != 0 && k == 0) {
-							this.Map[i][j].addNeighbour(this.Map[i - 1][j - 1]);
-						} else if (j != 0 && k == 4) {
-							this.Map[i][j].addNeighbour(this.Map[i + 1][j - 1]);
-						} else if (j != 0 && k == 5) {
-							this.Map[i][j].addNeighbour(this.Map[i][j - 1]);
-						} else if (j == 19 && k == 2) {
-							this.Map[i][j].addNeighbour(null);
-						} else if (j != 19 && k == 2) {
-							this.Map[i][j].addNeighbour(this.Map[i][j + 1]);
-						} else if (k == 1) {
-							this.Map[i][j].addNeighbour(this.Map[i - 1][j]);
-						} else if (k == 3) {
-							this.Map[i][j].addNeighbour(this.Map[i + 1][j]);
-						}
-					}
-					
-					else if (i == 19) {
-						if (k == 3 || k == 4) {
-							this.Map[i][j].addNeighbour(null);
-						} else if (j == 19 && (k == 1 || k == 2)) {
-							this.Map[i][j].addNeighbour(null);
-						} else if (j!= 19 && k == 1) {
-							this.Map[i][j].addNeighbour(this.Map[i - 1][j + 1]);
-						} else if(j!= 19 && k == 2) {
-							this.Map[i][j].addNeighbour(this.Map[i][j + 1]);
-						} else if (j == 0 && k == 5) {
-							this.Map[i][j].addNeighbour(null);
-						} else if (j != 0 && k == 5) {
-							this.Map[i][j].addNeighbour(this.Map[i][j - 1]);
-						} else if (k == 0) {
-							this.Map[i][j].addNeighbour(this.Map[i - 1][j]);
-						}
-					} 
+					int ni = i + NEIGHBOUR_ROW[k];
+					int nj = j + columnOffsets[k];
 					
-					else if (i%2 == 1) {
-						if (j == 0 && k == 5) {
-							this.Map[i][j].addNeighbour(null);
-						} else if (j != 0 && k == 5) {
-							this.Map[i][j].addNeighbour(this.Map[i][j - 1]);
-						} else if (j == 19 && (k == 1 || k == 2 || k == 3)) {
-							this.Map[i][j].addNeighbour(null);
-						} else if (j != 19 && k == 1) {
-							this.Map[i][j].addNeighbour(this.Map[i - 1][j + 1]);
-						} else if (j != 19 && k == 2) {
-							this.Map[i][j].addNeighbour(this.Map[i][j + 1]);
-						} else if (j != 19 && k == 3) {
-							this.Map[i][j].addNeighbour(this.Map[i + 1][j + 1]);
-						} else if (k == 4) {
-							this.Map[i][j].addNeighbour(this.Map[i + 1][j]);
-						} else if (k == 0) {
-							this.Map[i][j].addNeighbour(this.Map[i - 1][j]);
-						}
+					if (ni >= 0 && ni < height && nj >= 0 && nj < width) {
+						this.Map[i][j].addNeighbour(this.Map[ni][nj]);
+					} else {
+						this.Map[i][j].addNeighbour(null);
 					}
 				}
 			}
 		}
 		
+		// mirror the neighbour lists into the OccupancyMap
+		for (int i = 0; i < height; ++i) {
+			for (int j = 0; j < width; ++j) {
+				WorldField field = this.Map[i][j];
+				for (int k = 0; k < 6; ++k) {
+					WorldField neighbour = field.getNeighbours().get(k);
+					this.Occupancy.setNeighbour(field.getIndex(), k, (neighbour != null) ? neighbour.getIndex() : -1);
+				}
+			}
+		}
+		
 		this.ExitPoints = new ArrayList<Warehouse>();
+		this.buildTiles();
+	}
+	
+	/**
+	 * Partitions the map into tiles of TileSize x TileSize fields (the tiles on
+	 * the bottom and right edges may be smaller) and creates the TileScheduler
+	 * that moves the ants of the world.
+	 */
+	private void buildTiles() {
+		int tileRows = (this.Height + this.TileSize - 1) / this.TileSize;
+		int tileCols = (this.Width + this.TileSize - 1) / this.TileSize;
+		
+		this.Tiles = new WorldTile[tileRows * tileCols];
+		this.TileOfField = new int[this.Height * this.Width];
+		
+		for (int tr = 0; tr < tileRows; ++tr) {
+			for (int tc = 0; tc < tileCols; ++tc) {
+				int id = tr * tileCols + tc;
+				int row0 = tr * this.TileSize;
+				int col0 = tc * this.TileSize;
+				int rows = Math.min(this.TileSize, this.Height - row0);
+				int cols = Math.min(this.TileSize, this.Width - col0);
+				this.Tiles[id] = new WorldTile(this, id, row0, col0, rows, cols);
+				
+				for (int i = row0; i < row0 + rows; ++i) {
+					for (int j = col0; j < col0 + cols; ++j) {
+						this.TileOfField[i * this.Width + j] = id;
+					}
+				}
+			}
+		}
+		
+		for (WorldTile tile : this.Tiles) {
+			tile.linkNeighbours(this.Tiles, tileRows, tileCols);
+		}
+		
+		this.Scheduler = new TileScheduler(this);
+		this.AntOdourDiffusion = new OdourDiffusion(this, this.AntOdourChannel);
+		this.PoisonDiffusion = new OdourDiffusion(this, this.PoisonChannel);
+		this.Routing = new RoutingService(this);
+		this.Pool = new AntPool();
+		this.Metrics = new GameMetrics();
+		this.setSeed(new Random().nextLong());
+		
+		// count the ants already on the map (after loading)
+		AntDensity density = new AntDensity(this.Height, this.Width);
+		for (int i = 0; i < this.Height; ++i) {
+			for (int j = 0; j < this.Width; ++j) {
+				density.add(i * this.Width + j, this.Map[i][j].getAntList().size());
+			}
+		}
+		this.Density = density;
+	}
+	
+	/**
+	 * Returns the index offsets of the neighbours of the fields in a row.
+	 * 
+	 * @param row the row (only its parity matters)
+	 * @param width width of the map
+	 * @return the offsets, indexed by neighbour index
+	 */
+	static int[] neighbourOffsets(int row, int width) {
+		int[] columnOffsets = (row % 2 == 0) ? NEIGHBOUR_COL_EVEN : NEIGHBOUR_COL_ODD;
+		int[] offsets = new int[6];
+		for (int k = 0; k < 6; ++k) {
+			offsets[k] = NEIGHBOUR_ROW[k] * width + columnOffsets[k];
+		}
+		return offsets;
+	}
+	
+	/**
+	 * Sets the seed of the random generators of the world, and restarts them.
+	 * 
+	 * The elements driven by the model thread draw from getRandom(), the ants draw
+	 * from the generator of their tile, which is reseeded from the seed, the number
+	 * of steps and the index of the tile before every step. So a world created with
+	 * the same seed goes through the same states, whether its tiles are stepped in
+	 * parallel or not (see ReplayJournal).
+	 * 
+	 * @param seed the seed
+	 */
+	public void setSeed(long seed) {
+		this.Seed = seed;
+		this.Generator = new WorldRandom(seed);
+		this.Steps = 0;
+	}
+	
+	/**
+	 * Restores the random generators of the world to their state after the given
+	 * number of steps (see CheckpointStream). The seed should be set first.
+	 * 
+	 * @param steps the number of steps, see getSteps()
+	 * @param state the state of the generator of the model thread, see getRandomState()
+	 */
+	void restoreRandom(long steps, long state) {
+		this.Steps = steps;
+		this.Generator.setState(state);
+	}
+	
+	/**
+	 * Returns the state of the generator of the model thread (see getRandom()).
+	 * 
+	 * @return the 48 bits of the generator
+	 */
+	long getRandomState() {
+		return this.Generator.getState();
+	}
+	
+	/**
+	 * Returns the seed of the random generators of the world.
+	 * 
+	 * @return Seed the seed
+	 */
+	public long getSeed() {
+		return this.Seed;
+	}
+	
+	/**
+	 * Returns the random generator of the elements driven by the model thread.
+	 * Should be called by the model thread only.
+	 * 
+	 * @return the generator
+	 */
+	public Random getRandom() {
+		return this.Generator;
+	}
+	
+	/**
+	 * Returns the number of times the ants have been moved since the seed was set.
+	 * 
+	 * @return Steps the number of steps
+	 */
+	long getSteps() {
+		return this.Steps;
+	}
+	
+	/**
+	 * Counts a step of the ants (called by the TileScheduler after the tiles have been drained).
+	 */
+	void countStep() {
+		this.Steps++;
+	}
+	
+	/**
+	 * Re-creates the transient parts of the world (tiles and scheduler) after
+	 * the world has been loaded from a saved game.
+	 * 
+	 * @see Game.load()
+	 */
+	public void onLoad() {
+		this.AntOdourChannel.restamp();
+		this.PoisonChannel.restamp();
+		this.buildTiles();
+	}
+	
+	/**
+	 * Stops the simulation of the world: its TileScheduler and its elements are
+	 * unsubscribed from the Timer, and the worker threads are stopped. Called when
+	 * the world is replaced.
+	 * 
+	 * @see Game.initNew()
+	 */
+	public void dispose() {
+		if (this.Scheduler != null) {
+			this.Scheduler.dispose();
+		}
+		for (WorldField[] row : this.Map) {
+			for (WorldField field : row) {
+				if (field.getPermanentElement() != null) {
+					field.getPermanentElement().onDispose();
+				}
+				if (field.getDynamicElement() != null) {
+					field.getDynamicElement().onDispose();
+				}
+				if (field.getAntEater() != null) {
+					field.getAntEater().onDispose();
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Drops the fields whose odours have decayed to zero from the active sets of the channels.
+	 * 
+	 * @see TileScheduler.stepAll()
+	 */
+	public void sweepOdours() {
+		this.AntOdourChannel.sweep();
+		this.PoisonChannel.sweep();
+	}
+	
+	/**
+	 * Diffuses the odour channels whose diffusion is enabled.
+	 * 
+	 * @param pool the pool to process the rows on, null to process them on the calling thread
+	 * @see TileScheduler.stepAll()
+	 */
+	public void diffuseOdours(ForkJoinPool pool) {
+		this.AntOdourDiffusion.step(pool);
+		this.PoisonDiffusion.step(pool);
+	}
+	
+	/**
+	 * Updates the data derived from the passability of the fields (open masks of the
+	 * diffusions, shortest path trees) after a field has become passable or impassable,
+	 * or a trap has been placed onto it or removed from it.
+	 * The trees are repaired after the ants have been moved.
+	 * 
+	 * @param index index of the field
+	 * @see WorldField.setPassable()
+	 * @see WorldField.setPermanentElement()
+	 */
+	void onPassabilityChanged(final int index) {
+		if (this.Scheduler == null) {
+			// the world is being constructed
+			return;
+		}
+		this.AntOdourDiffusion.invalidate();
+		this.PoisonDiffusion.invalidate();
+		this.Scheduler.runAfterStep(this.Map[index / this.Width][index % this.Width], new Runnable() {
+			@Override
+			public void run() {
+				Routing.onPassabilityChanged(index);
+			}
+		});
 	}
 
 	/**
@@ -204,21 +509,31 @@ public class GameWorld implements Serializable {
 	 * @see paper documentation for details
 	 */
 	public void doGenesis() {		
-		// It is better to make the random object placements outside of the i,j loop.
-		
 		// random generator for random / uniform distribution.
-		Random randomGenerator = new Random();
+		this.doGenesis(new Random());
+	}
+	
+	/**
+	 * Initializes and places the elements onto the newly created map, using the
+	 * given random generator: a generator with a fixed seed gives the same map
+	 * every time (e.g. for benchmarks).
+	 * 
+	 * @param randomGenerator the random generator of the placements
+	 * @see doGenesis()
+	 */
+	public void doGenesis(Random randomGenerator) {
+		// It is better to make the random object placements outside of the i,j loop.
 		
 		// AntLion
 		int antlion_number = 0;
 		
 		while (antlion_number < NUM_OF_ANTLIONS) {
-			int i = randomGenerator.nextInt(GameWorld.SIZE_H);
-			int j = randomGenerator.nextInt(GameWorld.SIZE_W);
+			int i = randomGenerator.nextInt(this.Height);
+			int j = randomGenerator.nextInt(this.Width);
 			
 			AntLion al = new AntLion();
 			
-			if (this.Map[i][j].isPassable() == true){
+			if (this.Occupancy.get(OccupancyMap.PASSABLE, i * this.Width + j)){
 				this.Map[i][j].setPermanentElement(al);
 				this.Map[i][j].setPassable(true);
 				antlion_number += 1;
@@ -230,12 +545,12 @@ public class GameWorld implements Serializable {
 		int anthill_number = 0;
 		
 		while (anthill_number < 1) {
-			int i = randomGenerator.nextInt(GameWorld.SIZE_H);
-			int j = randomGenerator.nextInt(GameWorld.SIZE_W);
+			int i = randomGenerator.nextInt(this.Height);
+			int j = randomGenerator.nextInt(this.Width);
 			
 			AntHill ah = new AntHill();
 		
-			if (this.Map[i][j].isPassable() == true){
+			if (this.Occupancy.get(OccupancyMap.PASSABLE, i * this.Width + j)){
 				this.Map[i][j].setPermanentElement(ah);
 				this.Map[i][j].setPassable(false);
 				
@@ -253,15 +568,12 @@ public class GameWorld implements Serializable {
 		this.ExitPoints = new ArrayList<Warehouse>();
 		
 		while (warehouse_number < NUM_OF_WAREHOUSES) {
-			int i = randomGenerator.nextInt(GameWorld.SIZE_H);
-			int j = randomGenerator.nextInt(GameWorld.SIZE_W);
+			int i = randomGenerator.nextInt(this.Height);
+			int j = randomGenerator.nextInt(this.Width);
 			
 			Warehouse wh = new Warehouse();
 			
-			boolean passable = this.Map[i][j].isPassable();
-			Irreplaceable whoIsThere = this.Map[i][j].getPermanentElement();
-			
-			if ((passable == true) && (whoIsThere == null)){
+			if (this.Occupancy.isFree(i * this.Width + j)){
 				this.Map[i][j].setPermanentElement(wh);
 				this.Map[i][j].setPassable(true);
 				
@@ -278,15 +590,12 @@ public class GameWorld implements Serializable {
 		int puddle_number = 0;
 		
 		while (puddle_number < NUM_OF_PUDDLES) {
-			int i = randomGenerator.nextInt(GameWorld.SIZE_H);
-			int j = randomGenerator.nextInt(GameWorld.SIZE_W);
+			int i = randomGenerator.nextInt(this.Height);
+			int j = randomGenerator.nextInt(this.Width);
 		
 			Puddle pu = new Puddle();
 		
-			boolean passable = this.Map[i][j].isPassable();
-			Irreplaceable whoIsThere = this.Map[i][j].getPermanentElement();
-			
-			if ((passable == true) && (whoIsThere == null)){
+			if (this.Occupancy.isFree(i * this.Width + j)){
 				this.Map[i][j].setPermanentElement(pu);
 				this.Map[i][j].setPassable(false);
 				puddle_number += 1;
@@ -298,15 +607,12 @@ public class GameWorld implements Serializable {
 		int pebble_number = 0;
 		
 		while (pebble_number < NUM_OF_PEBBLES) {
-			int i = randomGenerator.nextInt(SIZE_H);
-			int j = randomGenerator.nextInt(SIZE_W);
+			int i = randomGenerator.nextInt(this.Height);
+			int j = randomGenerator.nextInt(this.Width);
 		
 			Pebble pe = new Pebble();
 			
-			boolean passable = this.Map[i][j].isPassable();
-			Irreplaceable whoIsThere = this.Map[i][j].getPermanentElement();
-			
-			if ((passable == true) && (whoIsThere == null)){
+			if (this.Occupancy.isFree(i * this.Width + j)){
 				this.Map[i][j].setDynamicElement(pe);
 				pebble_number += 1;
 			}
@@ -317,9 +623,9 @@ public class GameWorld implements Serializable {
 		while(num_ae_sp != NUM_OF_AE_SPAWNPOINTS) {
 			boolean success = false;
 			while(!success) {
-				int i = randomGenerator.nextInt(SIZE_H);
-				int j = randomGenerator.nextInt(SIZE_W);
-				if(this.Map[i][j].getPermanentElement() == null) {
+				int i = randomGenerator.nextInt(this.Height);
+				int j = randomGenerator.nextInt(this.Width);
+				if(!this.Occupancy.get(OccupancyMap.PERMANENT, i * this.Width + j)) {
 					this.Map[i][j].setPassable(true);
 					this.Map[i][j].setPermanentElement( new AntEaterSpawnPoint() );
 					success = true;
@@ -327,6 +633,9 @@ public class GameWorld implements Serializable {
 				}
 			}
 		}
+		
+		// the trees are built for the new warehouses on first use
+		this.Routing.invalidate();
 	}
 
 	/**
@@ -339,6 +648,106 @@ public class GameWorld implements Serializable {
 		return this.Map;
 	}
 
+	/**
+	 * Returns the height of the map
+	 * 
+	 * @return Height the number of rows of the map
+	 */
+	public int getHeight() {
+		return this.Height;
+	}
+	
+	/**
+	 * Returns the width of the map
+	 * 
+	 * @return Width the number of columns of the map
+	 */
+	public int getWidth() {
+		return this.Width;
+	}
+	
+	/**
+	 * Retrieves the tiles the map is partitioned into
+	 * 
+	 * @return the tiles in row-major order
+	 */
+	public WorldTile[] getTiles() {
+		return this.Tiles;
+	}
+	
+	/**
+	 * Retrieves the tile which contains a field
+	 * 
+	 * @param field the field in question (it must belong to this world)
+	 * @return the tile of the field
+	 */
+	public WorldTile getTileOf(WorldField field) {
+		return this.Tiles[this.TileOfField[field.getIndex()]];
+	}
+	
+	/**
+	 * Retrieves the scheduler that moves the ants of the world
+	 * 
+	 * @return the TileScheduler of the world
+	 */
+	public TileScheduler getScheduler() {
+		return this.Scheduler;
+	}
+	
+	/**
+	 * Retrieves the diffusion settings of the ant odour
+	 * 
+	 * @return the OdourDiffusion of the ant odour channel
+	 */
+	public OdourDiffusion getAntOdourDiffusion() {
+		return this.AntOdourDiffusion;
+	}
+	
+	/**
+	 * Retrieves the diffusion settings of the poison
+	 * 
+	 * @return the OdourDiffusion of the poison channel
+	 */
+	public OdourDiffusion getPoisonDiffusion() {
+		return this.PoisonDiffusion;
+	}
+	
+	/**
+	 * Retrieves the shortest path trees to the warehouses
+	 * 
+	 * @return the RoutingService of the world
+	 */
+	public RoutingService getRouting() {
+		return this.Routing;
+	}
+	
+	/**
+	 * Retrieves the ant counts of the map
+	 * 
+	 * @return the AntDensity of the world
+	 */
+	public AntDensity getDensity() {
+		return this.Density;
+	}
+	
+	/**
+	 * Retrieves the recycled ants of the world
+	 * 
+	 * @return the AntPool of the world
+	 */
+	public AntPool getAntPool() {
+		return this.Pool;
+	}
+	
+	/**
+	 * Retrieves the event counters of the world
+	 * 
+	 * @return the GameMetrics of the world
+	 */
+	public GameMetrics getMetrics() {
+		return this.Metrics;
+	}
+	
 	/**
 	 * Retrieves the AntHill
 	 * 
@@ -359,6 +768,33 @@ public class GameWorld implements Serializable {
 		return this.ExitPoints;
 	}
 	
+	/**
+	 * Retrieves the passability and occupancy bitsets of the map
+	 * 
+	 * @return A reference to the OccupancyMap of the world
+	 */
+	public OccupancyMap getOccupancy() {
+		return this.Occupancy;
+	}
+	
+	/**
+	 * Retrieves the ant odour intensities of the map
+	 * 
+	 * @return A reference to the ant odour channel of the world
+	 */
+	public OdourChannel getAntOdourChannel() {
+		return this.AntOdourChannel;
+	}
+	
+	/**
+	 * Retrieves the poison intensities of the map
+	 * 
+	 * @return A reference to the poison channel of the world
+	 */
+	public OdourChannel getPoisonChannel() {
+		return this.PoisonChannel;
+	}
+	
 	/**
 	 * Replace the EntryPoint AntHill.
 	 * 
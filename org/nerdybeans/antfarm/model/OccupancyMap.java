@@ -0,0 +1,257 @@
+package org.nerdybeans.antfarm.model;
+
+import java.io.Serializable;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * Stores the passability and occupancy state of every WorldField of a GameWorld
+ * as bitsets (one long[] per layer, one bit per field).
+ *
+ * The bits are kept up to date by the setters of WorldField, so the moving
+ * algorithms can decide which neighbours can be entered with a few bit operations,
+ * without calling the (partly synchronized) getters of the neighbour fields.
+ *
+ * The bits are updated atomically, because the ants of different tiles are moved
+ * in parallel and the fields of two tiles may share a word of the bitsets.
+ *
+ * Fields are indexed in row-major order (index = row * width + column).
+ * Neighbour masks use the neighbour indexing of WorldField: bit k of a mask
+ * belongs to the neighbour in direction k (WorldField.NEIGHBOUR_UP_LEFT, ...).
+ *
+ * @version 1.0
+ **/
+public class OccupancyMap implements Serializable {
+	/**
+	 * Layer of passable fields.
+	 */
+	public static final int PASSABLE = 0;
+
+	/**
+	 * Layer of fields holding a PermanentElement (Irreplaceable).
+	 */
+	public static final int PERMANENT = 1;
+
+	/**
+	 * Layer of fields holding a Pebble (DynamicElement).
+	 */
+	public static final int PEBBLE = 2;
+
+	/**
+	 * Layer of fields holding at least one Ant.
+	 */
+	public static final int ANTS = 3;
+
+	/**
+	 * Layer of fields holding an AntEater.
+	 */
+	public static final int ANTEATER = 4;
+
+	/**
+	 * Layer of fields whose elements, passability or food odour have changed since
+	 * the bit was last cleared (by the checkpoints, see CheckpointStream).
+	 */
+	public static final int CHANGED = 5;
+
+	/**
+	 * Number of layers.
+	 */
+	private static final int NUM_OF_LAYERS = 6;
+
+	/**
+	 * Number of neighbours of a (hexagonal) field.
+	 */
+	private static final int NUM_OF_NEIGHBOURS = 6;
+
+	/**
+	 * Atomic access to the words of the bitsets.
+	 */
+	private static final VarHandle WORD = MethodHandles.arrayElementVarHandle(long[].class);
+
+	/**
+	 * The bitsets, indexed by layer.
+	 */
+	private final long[][] Bits;
+
+	/**
+	 * Neighbour field indexes, NUM_OF_NEIGHBOURS entries per field (-1 if the neighbour does not exist).
+	 */
+	private final int[] Neighbours;
+
+	/**
+	 * Number of fields covered by the map.
+	 */
+	private final int Size;
+
+	/**
+	 * Constructor, every bit is cleared and no neighbours are set.
+	 *
+	 * @param size number of fields to cover
+	 */
+	public OccupancyMap(int size) {
+		this.Size = size;
+		this.Bits = new long[NUM_OF_LAYERS][(size + 63) >>> 6];
+		this.Neighbours = new int[size * NUM_OF_NEIGHBOURS];
+		java.util.Arrays.fill(this.Neighbours, -1);
+	}
+
+	/**
+	 * Returns the number of fields covered by the map.
+	 *
+	 * @return number of fields
+	 */
+	public int getSize() {
+		return this.Size;
+	}
+
+	/**
+	 * Registers a neighbour relation (used while the GameWorld is being built).
+	 *
+	 * @param index index of the field
+	 * @param direction neighbour index [0,5]
+	 * @param neighbourIndex index of the neighbour field, -1 if it does not exist
+	 */
+	public void setNeighbour(int index, int direction, int neighbourIndex) {
+		this.Neighbours[index * NUM_OF_NEIGHBOURS + direction] = neighbourIndex;
+	}
+
+	/**
+	 * Returns the index of the neighbour of a field.
+	 *
+	 * @param index index of the field
+	 * @param direction neighbour index [0,5]
+	 * @return index of the neighbour field, -1 if it does not exist
+	 */
+	public int getNeighbour(int index, int direction) {
+		return this.Neighbours[index * NUM_OF_NEIGHBOURS + direction];
+	}
+
+	/**
+	 * Sets or clears the bit of a field on a layer.
+	 *
+	 * @param layer PASSABLE, PERMANENT, PEBBLE, ANTS or ANTEATER
+	 * @param index index of the field
+	 * @param value the new value of the bit
+	 */
+	public void set(int layer, int index, boolean value) {
+		if (value) {
+			WORD.getAndBitwiseOr(this.Bits[layer], index >>> 6, 1L << index);
+		} else {
+			WORD.getAndBitwiseAnd(this.Bits[layer], index >>> 6, ~(1L << index));
+		}
+	}
+
+	/**
+	 * Returns the bit of a field on a layer.
+	 *
+	 * @param layer PASSABLE, PERMANENT, PEBBLE, ANTS or ANTEATER
+	 * @param index index of the field
+	 * @return true if the bit is set
+	 */
+	public boolean get(int layer, int index) {
+		return (this.Bits[layer][index >>> 6] & (1L << index)) != 0;
+	}
+
+	/**
+	 * Clears every bit of a layer. Must not be called while the fields are being changed
+	 * (e.g. while the tiles are being stepped).
+	 *
+	 * @param layer PASSABLE, PERMANENT, PEBBLE, ANTS, ANTEATER or CHANGED
+	 */
+	public void clear(int layer) {
+		java.util.Arrays.fill(this.Bits[layer], 0L);
+	}
+
+	/**
+	 * Finds the first field with its bit set on a layer in a range of field indexes.
+	 *
+	 * @param layer PASSABLE, PERMANENT, PEBBLE, ANTS or ANTEATER
+	 * @param from first index of the range (inclusive)
+	 * @param to last index of the range (exclusive)
+	 * @return the index of the first field with its bit set, -1 if there is none
+	 */
+	public int nextSetBit(int layer, int from, int to) {
+		if (from >= to) {
+			return -1;
+		}
+
+		long[] bits = this.Bits[layer];
+		int word = from >>> 6;
+		long w = bits[word] & (-1L << from);
+
+		while (true) {
+			if (w != 0) {
+				int index = (word << 6) + Long.numberOfTrailingZeros(w);
+				return (index < to) ? index : -1;
+			}
+			if (++word > ((to - 1) >>> 6)) {
+				return -1;
+			}
+			w = bits[word];
+		}
+	}
+
+	/**
+	 * Tells whether a field is passable and holds no PermanentElement, so a new
+	 * element can be placed onto it.
+	 *
+	 * @param index index of the field
+	 * @return true if the field is free
+	 */
+	public boolean isFree(int index) {
+		long bit = 1L << index;
+		int word = index >>> 6;
+		return (this.Bits[PASSABLE][word] & ~this.Bits[PERMANENT][word] & bit) != 0;
+	}
+
+	/**
+	 * Collects the bits of the neighbours of a field on a layer.
+	 *
+	 * @param layer PASSABLE, PERMANENT, PEBBLE, ANTS or ANTEATER
+	 * @param index index of the field
+	 * @return bit k is set if the neighbour in direction k exists and its bit is set
+	 */
+	public int neighbourMask(int layer, int index) {
+		long[] bits = this.Bits[layer];
+		int base = index * NUM_OF_NEIGHBOURS;
+		int mask = 0;
+		for (int k = 0; k < NUM_OF_NEIGHBOURS; ++k) {
+			int n = this.Neighbours[base + k];
+			if (n >= 0 && (bits[n >>> 6] & (1L << n)) != 0) {
+				mask |= (1 << k);
+			}
+		}
+		return mask;
+	}
+
+	/**
+	 * Returns the neighbours of a field that an Ant can enter (passable fields).
+	 *
+	 * @param index index of the field
+	 * @return bit k is set if the neighbour in direction k can be entered
+	 */
+	public int passableNeighbours(int index) {
+		return this.neighbourMask(PASSABLE, index);
+	}
+
+	/**
+	 * Returns the neighbours of a field that are free, meaning passable and
+	 * holding no PermanentElement (where an AntEater can step or a Pebble can be pushed).
+	 *
+	 * @param index index of the field
+	 * @return bit k is set if the neighbour in direction k is free
+	 */
+	public int freeNeighbours(int index) {
+		long[] passable = this.Bits[PASSABLE];
+		long[] permanent = this.Bits[PERMANENT];
+		int base = index * NUM_OF_NEIGHBOURS;
+		int mask = 0;
+		for (int k = 0; k < NUM_OF_NEIGHBOURS; ++k) {
+			int n = this.Neighbours[base + k];
+			if (n >= 0 && (passable[n >>> 6] & ~permanent[n >>> 6] & (1L << n)) != 0) {
+				mask |= (1 << k);
+			}
+		}
+		return mask;
+	}
+}
@@ -3,8 +3,12 @@ package org.nerdybeans.antfarm.model;
 /**
  * This class represents the odour as a WorldElement on certain WorldFields.
  * 
+ * The odours are not subscribed to the Timer. The intensity of the odours which
+ * decay in time is stored in an OdourChannel of the GameWorld, and the decay is
+ * computed there when the intensity is read.
+ * 
  * @author Demarcsek, Szabo
- * @version 1.0
+ * @version 1.1
  **/
 public abstract class Odour extends WorldElement {
 	/**
@@ -62,7 +66,12 @@ public abstract class Odour extends WorldElement {
 		//if(value != 0)
 		//	System.out.println(Thread.currentThread().getStackTrace());
 		
-		this.intensity = value;
+		OdourChannel channel = this.getChannel();
+		if (channel != null) {
+			channel.set(this.getField().getIndex(), value);
+		} else {
+			this.intensity = value;
+		}
 	}
 	
 	/**
@@ -72,9 +81,32 @@ public abstract class Odour extends WorldElement {
 	 * @return intensity the intensity value of the odour.
 	 */
 	public float getIntensity() {
+		OdourChannel channel = this.getChannel();
+		if (channel != null) {
+			return channel.get(this.getField().getIndex());
+		}
 		return this.intensity;
 	}
 	
+	/**
+	 * Returns the channel which stores the intensity of this kind of odour.
+	 * 
+	 * @return the channel of the world of the field, null if the intensity is stored in this object
+	 */
+	protected OdourChannel getChannel() {
+		return null;
+	}
+	
+	/**
+	 * Odours are never subscribed to the Timer.
+	 * 
+	 * @return false
+	 */
+	@Override
+	protected boolean isSelfScheduled() {
+		return false;
+	}
+	
 	/**
 	 * What should the odour do, when a tick event arises?
 	 * @author Szabo
@@ -0,0 +1,421 @@
+package org.nerdybeans.antfarm.model;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+import org.nerdybeans.antfarm.auxiliary.Timer;
+
+/**
+ * Stores one kind of odour (e.g. ant odour or poison) of every WorldField of a GameWorld.
+ *
+ * The odours are not subscribed to the Timer. Instead the channel stores the intensity
+ * of every field together with the tick count of its last update, and the decay that
+ * would have happened since then is computed when the intensity is read. So the cost of
+ * the decay is proportional to the reads and writes, not to the size of the map.
+ *
+ * The decay follows the old per-tick behaviour of the odours: whenever a subscriber
+ * with the period of the channel would have responded, an intensity above the limit
+ * drops to zero, otherwise the intensity decreases by the step until it reaches zero.
+ *
+ * The channel also keeps the set of the fields with non-zero intensity (the active
+ * set), so the passes over the whole channel (settle(), sweep()) visit only the trails
+ * instead of the whole map. A field is added to the set when a non-zero intensity is
+ * written, and dropped by sweep() when its intensity has decayed to zero. The sweep
+ * must not run while the tiles are being stepped, it is called by the TileScheduler
+ * after the ants have moved.
+ *
+ * Fields are indexed the same way as in the OccupancyMap.
+ *
+ * @version 1.0
+ * @see Timer.countFirings
+ **/
+public class OdourChannel implements Serializable {
+	/**
+	 * Intensity of every field at its last update.
+	 */
+	private float[] Values;
+
+	/**
+	 * Second buffer for the kernels which compute every intensity from the old ones
+	 * (allocated on first use).
+	 */
+	private transient float[] Back;
+
+	/**
+	 * Tick count of the last full update (e.g. diffusion): the stamps older than it count as Epoch.
+	 */
+	private long Epoch;
+
+	/**
+	 * If true, the stored intensities are returned as they are: the decay is applied
+	 * by a pass over the whole channel (see OdourDiffusion).
+	 */
+	private volatile boolean Eager = false;
+
+	/**
+	 * Tick count of the last update of every field.
+	 */
+	private final long[] Stamps;
+
+	/**
+	 * The period of the decay (in ticks, as for the subscribers of the Timer).
+	 */
+	private final int Period;
+
+	/**
+	 * The intensity lost per period.
+	 */
+	private final float Step;
+
+	/**
+	 * Intensities above the limit drop to zero at the next period.
+	 */
+	private final float Limit;
+
+	/**
+	 * Indexes of the fields in the active set (the first ActiveCount elements are used).
+	 */
+	private int[] Active;
+
+	/**
+	 * Number of fields in the active set.
+	 */
+	private int ActiveCount;
+
+	/**
+	 * Position of every field in Active, -1 if the field is not in the active set.
+	 */
+	private final int[] Slot;
+
+	/**
+	 * Constructor, every intensity is zero.
+	 *
+	 * @param size number of fields
+	 * @param period the period of the decay
+	 * @param step the intensity lost per period
+	 * @param limit intensities above it drop to zero (Float.MAX_VALUE for no limit)
+	 */
+	public OdourChannel(int size, int period, float step, float limit) {
+		this.Values = new float[size];
+		this.Stamps = new long[size];
+		this.Period = period;
+		this.Step = step;
+		this.Limit = limit;
+		this.Active = new int[16];
+		this.ActiveCount = 0;
+		this.Slot = new int[size];
+		this.Epoch = now();
+		Arrays.fill(this.Stamps, this.Epoch);
+		Arrays.fill(this.Slot, -1);
+	}
+
+	/**
+	 * Returns the current tick count of the Timer.
+	 *
+	 * @return the tick count, 0 if there is no Timer
+	 */
+	private static long now() {
+		Timer timer = Timer.getInstance();
+		return (timer != null) ? timer.getTickCount() : 0;
+	}
+
+	/**
+	 * Applies the decay of the given number of periods to an intensity.
+	 *
+	 * @param value the intensity
+	 * @param periods number of periods
+	 * @return the decayed intensity
+	 */
+	private float decay(float value, long periods) {
+		if (periods == 0) {
+			return value;
+		}
+		if (value > this.Limit) {
+			return 0.0f;
+		}
+		float decayed = value - periods * this.Step;
+		return (decayed > 0.0f) ? decayed : 0.0f;
+	}
+
+	/**
+	 * Returns the current intensity of a field. The stored state is not modified,
+	 * so fields of other tiles can be read safely while the tiles are being stepped.
+	 *
+	 * @param index index of the field
+	 * @return the intensity
+	 */
+	public float get(int index) {
+		float value = this.Values[index];
+		if ((value == 0.0f) || this.Eager) {
+			return value;
+		}
+		Timer timer = Timer.getInstance();
+		if (timer == null) {
+			return value;
+		}
+		long stamp = Math.max(this.Stamps[index], this.Epoch);
+		return this.decay(value, timer.countFirings(this.Period, stamp, timer.getTickCount()));
+	}
+
+	/**
+	 * Sets the intensity of a field.
+	 *
+	 * @param index index of the field
+	 * @param value the new intensity
+	 */
+	public void set(int index, float value) {
+		this.Stamps[index] = now();
+		this.Values[index] = value;
+		if ((value != 0.0f) && (this.Slot[index] < 0)) {
+			this.activate(index);
+		}
+	}
+
+	/**
+	 * Returns the stored intensity of a field: the intensity at its last update, the
+	 * decay of the ticks since then (see getAge()) is not applied to it.
+	 *
+	 * @param index index of the field
+	 * @return the stored intensity
+	 */
+	float getStored(int index) {
+		return this.Values[index];
+	}
+
+	/**
+	 * Returns the number of ticks whose decay is not applied to the stored intensity
+	 * of a field: the ticks since its last update, or since the last full update if
+	 * that is later.
+	 *
+	 * @param index index of the field
+	 * @return number of ticks
+	 */
+	long getAge(int index) {
+		return now() - Math.max(this.Stamps[index], this.Epoch);
+	}
+
+	/**
+	 * Returns the number of ticks since the last full update of the channel.
+	 *
+	 * @return number of ticks
+	 */
+	long getEpochAge() {
+		return now() - this.Epoch;
+	}
+
+	/**
+	 * Restores the stored intensity of a field as it was age ticks ago (e.g. a saved
+	 * game is restored), so it decays as the saved one would have. The epoch should
+	 * be restored first.
+	 *
+	 * @param index index of the field
+	 * @param value the stored intensity, see getStored()
+	 * @param age number of ticks since its last update, see getAge()
+	 */
+	void restore(int index, float value, long age) {
+		this.set(index, value);
+		this.Stamps[index] = now() - age;
+	}
+
+	/**
+	 * Restores the tick of the last full update of the channel.
+	 *
+	 * @param age number of ticks since the last full update, see getEpochAge()
+	 */
+	void restoreEpoch(long age) {
+		this.Epoch = now() - age;
+	}
+
+	/**
+	 * Adds a field to the active set.
+	 *
+	 * @param index index of the field
+	 */
+	private synchronized void activate(int index) {
+		if (this.Slot[index] >= 0) {
+			return;
+		}
+		if (this.ActiveCount == this.Active.length) {
+			this.Active = Arrays.copyOf(this.Active, this.Active.length * 2);
+		}
+		this.Active[this.ActiveCount] = index;
+		this.Slot[index] = this.ActiveCount;
+		this.ActiveCount++;
+	}
+
+	/**
+	 * Drops the fields whose intensity has decayed to zero from the active set.
+	 */
+	public synchronized void sweep() {
+		int k = 0;
+		while (k < this.ActiveCount) {
+			int index = this.Active[k];
+			if (this.get(index) != 0.0f) {
+				++k;
+				continue;
+			}
+			// move the last element into the slot of the removed one
+			this.Values[index] = 0.0f;
+			this.Slot[index] = -1;
+			int last = this.Active[--this.ActiveCount];
+			if (last != index) {
+				this.Active[k] = last;
+				this.Slot[last] = k;
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of fields in the active set (some of them may have
+	 * decayed to zero since the last sweep).
+	 *
+	 * @return size of the active set
+	 */
+	public int getActiveCount() {
+		return this.ActiveCount;
+	}
+
+	/**
+	 * Returns a field of the active set.
+	 *
+	 * @param k position in the active set [0, getActiveCount())
+	 * @return index of the field
+	 */
+	public int getActiveIndex(int k) {
+		return this.Active[k];
+	}
+
+	/**
+	 * Adds to the current intensity of a field (e.g. an ant deposits odour).
+	 *
+	 * @param index index of the field
+	 * @param amount the intensity to add
+	 */
+	public void add(int index, float amount) {
+		this.set(index, this.get(index) + amount);
+	}
+
+	/**
+	 * Switches between the lazy decay (computed on read) and the eager decay
+	 * (applied to the whole channel by the caller, with getPendingDecay()).
+	 *
+	 * @param eager true if the decay is applied by a pass over the whole channel
+	 */
+	public synchronized void setEager(boolean eager) {
+		if (eager && !this.Eager) {
+			this.settle();
+			this.Epoch = now();
+		} else if (!eager && this.Eager) {
+			// the stored intensities are current as of the last pass
+			this.Epoch = now();
+		}
+		this.Eager = eager;
+	}
+
+	/**
+	 * Tells whether the decay is applied by a pass over the whole channel.
+	 *
+	 * @return Eager true if get() returns the stored intensities
+	 */
+	public boolean isEager() {
+		return this.Eager;
+	}
+
+	/**
+	 * Returns the decrease of the intensities since the last full update (swapBuffers()),
+	 * for the passes which apply the decay eagerly.
+	 *
+	 * @return the decrease, 0 if no period has passed
+	 */
+	float getPendingDecay() {
+		Timer timer = Timer.getInstance();
+		if (timer == null) {
+			return 0.0f;
+		}
+		return timer.countFirings(this.Period, this.Epoch, timer.getTickCount()) * this.Step;
+	}
+
+	/**
+	 * Returns the limit of the channel.
+	 *
+	 * @return intensities above it drop to zero when they decay
+	 */
+	float getLimit() {
+		return this.Limit;
+	}
+
+	/**
+	 * Returns the stored intensities (for the kernels which update the whole channel).
+	 * The pending decay is not applied, call settle() first.
+	 *
+	 * @return the intensities, indexed by field
+	 */
+	float[] getValues() {
+		return this.Values;
+	}
+
+	/**
+	 * Returns the second buffer of the channel, which the kernels write the new intensities into.
+	 *
+	 * @return a buffer of getSize() elements
+	 */
+	float[] getBackBuffer() {
+		if ((this.Back == null) || (this.Back.length != this.Values.length)) {
+			this.Back = new float[this.Values.length];
+		}
+		return this.Back;
+	}
+
+	/**
+	 * Makes the back buffer the current intensities (after a kernel has filled it),
+	 * and rebuilds the active set. Every field counts as updated now.
+	 */
+	synchronized void swapBuffers() {
+		float[] old = this.Values;
+		this.Values = this.getBackBuffer();
+		this.Back = old;
+		this.Epoch = now();
+
+		Arrays.fill(this.Slot, -1);
+		this.ActiveCount = 0;
+		float[] values = this.Values;
+		for (int i = 0; i < values.length; ++i) {
+			if (values[i] != 0.0f) {
+				this.activate(i);
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of fields.
+	 *
+	 * @return number of fields
+	 */
+	public int getSize() {
+		return this.Values.length;
+	}
+
+	/**
+	 * Applies the pending decay of every field, so the stored intensities are
+	 * current (used before switching to the eager decay). Only the active set is visited,
+	 * the other fields are zero.
+	 */
+	public synchronized void settle() {
+		this.sweep();
+		long now = now();
+		for (int k = 0; k < this.ActiveCount; ++k) {
+			int index = this.Active[k];
+			this.Values[index] = this.get(index);
+			this.Stamps[index] = now;
+		}
+	}
+
+	/**
+	 * Sets the time of the last update of every field to the current tick count
+	 * (used after the world has been loaded, since the Timer counts from elsewhere).
+	 */
+	public void restamp() {
+		this.Epoch = now();
+		Arrays.fill(this.Stamps, this.Epoch);
+	}
+}
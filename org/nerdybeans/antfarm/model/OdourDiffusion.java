@@ -0,0 +1,293 @@
+package org.nerdybeans.antfarm.model;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Optional diffusion of an OdourChannel: the odour spreads to the neighbouring fields
+ * and evaporates, so the ants can follow a gradient instead of the exact fields
+ * other ants have stepped on.
+ *
+ * Every step computes the new intensity of each field from the old intensities of
+ * the field and its (hexagonal) neighbours:
+ *   new = (1 - evaporation) * ((1 - rate) * old + rate * (sum of the 6 neighbours) / 6)
+ * where a missing or impassable neighbour counts with the intensity of the field itself,
+ * so no odour flows out of the map or into puddles. Intensities below MIN_INTENSITY
+ * drop to zero, which keeps the active set of the channel small. While the diffusion
+ * is enabled the channel is eager: the decay of the channel since the previous step
+ * is applied by the same pass, instead of on read.
+ *
+ * The step reads one buffer of the channel and writes the other, so the rows are
+ * independent: they are processed in parallel (ROWS_PER_TASK rows per task) on the pool
+ * of the TileScheduler, with the OdourKernels in use. Diffusion is disabled by default.
+ *
+ * Which neighbours of a field are open is cached in an open mask, built from the
+ * OccupancyMap on the first step. Whenever a field becomes passable or impassable
+ * (e.g. a pebble is pushed), GameWorld.onPassabilityChanged() drops the mask with
+ * invalidate(), and the next step builds it again.
+ *
+ * @version 1.0
+ * @see OdourChannel
+ * @see OdourKernels
+ * @see TileScheduler
+ **/
+public class OdourDiffusion {
+	/**
+	 * Default fraction of the intensity exchanged with the neighbours per step.
+	 */
+	public static final float DEFAULT_RATE = 0.2f;
+
+	/**
+	 * Default fraction of the intensity lost per step.
+	 */
+	public static final float DEFAULT_EVAPORATION = 0.02f;
+
+	/**
+	 * Intensities below it are set to zero.
+	 */
+	public static final float MIN_INTENSITY = 0.001f;
+
+	/**
+	 * Number of rows processed by one task.
+	 */
+	public static final int ROWS_PER_TASK = 32;
+
+	/**
+	 * Bit of the open mask set if the field itself is passable.
+	 */
+	private static final int SELF = 1 << 6;
+
+	/**
+	 * Open mask of a field whose neighbours are all open.
+	 */
+	private static final int FULLY_OPEN = SELF | 0x3f;
+
+	/**
+	 * The world of the channel.
+	 */
+	private final GameWorld World;
+
+	/**
+	 * The diffused channel.
+	 */
+	private final OdourChannel Channel;
+
+	/**
+	 * Is the diffusion enabled?
+	 */
+	private volatile boolean Enabled = false;
+
+	/**
+	 * Fraction of the intensity exchanged with the neighbours per step [0, 1].
+	 */
+	private volatile float Rate = DEFAULT_RATE;
+
+	/**
+	 * Fraction of the intensity lost per step [0, 1].
+	 */
+	private volatile float Evaporation = DEFAULT_EVAPORATION;
+
+	/**
+	 * Bit k is set if the neighbour in direction k exists and is passable,
+	 * SELF is set if the field is passable (computed on first use).
+	 */
+	private byte[] Open;
+
+	/**
+	 * Number of fully open fields starting at each field within its row.
+	 */
+	private int[] OpenRun;
+
+	/**
+	 * Neighbour index offsets of the fields in even rows, by direction.
+	 */
+	private int[] EvenOffsets;
+
+	/**
+	 * Neighbour index offsets of the fields in odd rows, by direction.
+	 */
+	private int[] OddOffsets;
+
+	/**
+	 * Processes a range of rows, splitting the range until it is at most ROWS_PER_TASK long.
+	 */
+	private class RowTask extends RecursiveAction {
+		private final OdourKernels Kernels;
+		private final float[] Source;
+		private final float[] Target;
+		private final float Self;
+		private final float Share;
+		private final float Decay;
+		private final float Limit;
+		private final int From;
+		private final int To;
+
+		RowTask(OdourKernels kernels, float[] source, float[] target, float self, float share,
+				float decay, float limit, int from, int to) {
+			this.Kernels = kernels;
+			this.Source = source;
+			this.Target = target;
+			this.Self = self;
+			this.Share = share;
+			this.Decay = decay;
+			this.Limit = limit;
+			this.From = from;
+			this.To = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (this.To - this.From <= ROWS_PER_TASK) {
+				int width = World.getWidth();
+				for (int i = this.From; i < this.To; ++i) {
+					int[] offsets = (i % 2 == 0) ? EvenOffsets : OddOffsets;
+					this.Kernels.diffuseRow(this.Source, this.Target, Open, OpenRun, i * width, (i + 1) * width,
+							offsets, this.Self, this.Share, MIN_INTENSITY);
+					if (this.Decay > 0.0f) {
+						this.Kernels.decay(this.Target, i * width, (i + 1) * width, this.Decay, this.Limit);
+					}
+				}
+				return;
+			}
+
+			int middle = (this.From + this.To) >>> 1;
+			invokeAll(new RowTask(this.Kernels, this.Source, this.Target, this.Self, this.Share, this.Decay, this.Limit, this.From, middle),
+					new RowTask(this.Kernels, this.Source, this.Target, this.Self, this.Share, this.Decay, this.Limit, middle, this.To));
+		}
+	}
+
+	/**
+	 * Constructor, the diffusion is disabled.
+	 *
+	 * @param world the world of the channel
+	 * @param channel the channel to diffuse
+	 */
+	public OdourDiffusion(GameWorld world, OdourChannel channel) {
+		this.World = world;
+		this.Channel = channel;
+	}
+
+	/**
+	 * Enables or disables the diffusion.
+	 *
+	 * @param enabled true to diffuse the channel after each step of the ants
+	 */
+	public void setEnabled(boolean enabled) {
+		this.Channel.setEager(enabled);
+		this.Enabled = enabled;
+	}
+
+	/**
+	 * Is the diffusion enabled?
+	 *
+	 * @return Enabled true if the channel is diffused
+	 */
+	public boolean isEnabled() {
+		return this.Enabled;
+	}
+
+	/**
+	 * Sets the diffusion rate.
+	 *
+	 * @param rate fraction of the intensity exchanged with the neighbours per step [0, 1]
+	 */
+	public void setRate(float rate) {
+		assert rate >= 0.0f && rate <= 1.0f;
+		this.Rate = rate;
+	}
+
+	/**
+	 * Returns the diffusion rate.
+	 *
+	 * @return Rate fraction of the intensity exchanged with the neighbours per step
+	 */
+	public float getRate() {
+		return this.Rate;
+	}
+
+	/**
+	 * Sets the evaporation rate.
+	 *
+	 * @param evaporation fraction of the intensity lost per step [0, 1]
+	 */
+	public void setEvaporation(float evaporation) {
+		assert evaporation >= 0.0f && evaporation <= 1.0f;
+		this.Evaporation = evaporation;
+	}
+
+	/**
+	 * Returns the evaporation rate.
+	 *
+	 * @return Evaporation fraction of the intensity lost per step
+	 */
+	public float getEvaporation() {
+		return this.Evaporation;
+	}
+
+	/**
+	 * Diffuses the channel once if the diffusion is enabled. Must not be called
+	 * while the tiles are being stepped.
+	 *
+	 * @param pool the pool to process the rows on, null to process them on the calling thread
+	 */
+	public void step(ForkJoinPool pool) {
+		if (!this.Enabled) {
+			return;
+		}
+		if (this.Open == null) {
+			this.buildOpenMask();
+		}
+
+		float rate = this.Rate;
+		float keep = 1.0f - this.Evaporation;
+		RowTask task = new RowTask(OdourKernels.getInstance(), this.Channel.getValues(), this.Channel.getBackBuffer(),
+				keep * (1.0f - rate), keep * rate / 6.0f, this.Channel.getPendingDecay(), this.Channel.getLimit(),
+				0, this.World.getHeight());
+		if (pool != null) {
+			pool.invoke(task);
+		} else {
+			task.compute();
+		}
+
+		this.Channel.swapBuffers();
+	}
+
+	/**
+	 * Drops the open mask, it is recomputed on the next step (e.g. the passability of a field has changed).
+	 * May be called by the tile workers moving the ants, the step runs after they have joined.
+	 */
+	public void invalidate() {
+		this.Open = null;
+	}
+
+	/**
+	 * Computes the open mask, the open runs and the neighbour offsets from the OccupancyMap of the world.
+	 */
+	private void buildOpenMask() {
+		int width = this.World.getWidth();
+		OccupancyMap occupancy = this.World.getOccupancy();
+		byte[] open = new byte[occupancy.getSize()];
+		int[] openRun = new int[open.length];
+
+		for (int index = 0; index < open.length; ++index) {
+			int mask = occupancy.get(OccupancyMap.PASSABLE, index) ? SELF : 0;
+			mask |= occupancy.passableNeighbours(index);
+			open[index] = (byte)mask;
+		}
+
+		// count the runs backwards, they end at the end of the row
+		for (int index = open.length - 1; index >= 0; --index) {
+			if (open[index] != FULLY_OPEN) {
+				openRun[index] = 0;
+			} else {
+				boolean lastInRow = (index % width == width - 1);
+				openRun[index] = lastInRow ? 1 : openRun[index + 1] + 1;
+			}
+		}
+		this.OpenRun = openRun;
+
+		this.EvenOffsets = GameWorld.neighbourOffsets(0, width);
+		this.OddOffsets = GameWorld.neighbourOffsets(1, width);
+		this.Open = open;
+	}
+}
@@ -0,0 +1,133 @@
+package org.nerdybeans.antfarm.model;
+
+/**
+ * The dense passes over the flat intensity arrays of the odour channels
+ * (diffusion stencil, decay and limit), scalar implementation.
+ *
+ * A vectorized implementation (org.nerdybeans.antfarm.model.simd.VectorOdourKernels,
+ * using the jdk.incubator.vector module) can be switched on at runtime with
+ * setVectorized(true) or with the antfarm.vector system property. It is loaded
+ * reflectively, so the game runs without the incubator module, falling back to
+ * this implementation. Both implementations produce identical results: the vector
+ * code performs the same floating point operations in the same order (no fused
+ * multiply-add).
+ *
+ * @version 1.0
+ * @see OdourDiffusion
+ **/
+public class OdourKernels {
+	/**
+	 * Name of the vectorized implementation.
+	 */
+	public static final String VECTOR_KERNELS = "org.nerdybeans.antfarm.model.simd.VectorOdourKernels";
+
+	/**
+	 * The implementation in use.
+	 */
+	private static volatile OdourKernels Instance = new OdourKernels();
+
+	static {
+		if (Boolean.getBoolean("antfarm.vector")) {
+			setVectorized(true);
+		}
+	}
+
+	/**
+	 * Returns the implementation in use.
+	 *
+	 * @return the kernels
+	 */
+	public static OdourKernels getInstance() {
+		return Instance;
+	}
+
+	/**
+	 * Switches between the vectorized and the scalar implementation.
+	 *
+	 * @param vectorized true to use the vectorized implementation
+	 * @return true if the requested implementation is in use (false if the
+	 *         vectorized one could not be loaded)
+	 */
+	public static synchronized boolean setVectorized(boolean vectorized) {
+		if (!vectorized) {
+			Instance = new OdourKernels();
+			return true;
+		}
+
+		try {
+			Instance = (OdourKernels)Class.forName(VECTOR_KERNELS).getDeclaredConstructor().newInstance();
+			return true;
+		} catch (Exception e) {
+			System.out.println("[DEBUG#OdourKernels.setVectorized] Vector kernels are not available: " + e);
+		} catch (LinkageError e) {
+			// the jdk.incubator.vector module is missing (run with --add-modules jdk.incubator.vector)
+			System.out.println("[DEBUG#OdourKernels.setVectorized] Vector kernels are not available: " + e);
+		}
+		return false;
+	}
+
+	/**
+	 * Tells whether the vectorized implementation is in use.
+	 *
+	 * @return true if the kernels are vectorized
+	 */
+	public static boolean isVectorized() {
+		return !Instance.getClass().equals(OdourKernels.class);
+	}
+
+	/**
+	 * Computes the diffused intensities of a row (see OdourDiffusion).
+	 *
+	 * @param source the old intensities
+	 * @param target the new intensities
+	 * @param open bit k is set if the neighbour in direction k is open, bit 6 if the field is passable
+	 * @param openRun number of fully open fields (every bit set) starting at each field within its row
+	 * @param from index of the first field of the row
+	 * @param to index after the last field of the row
+	 * @param offsets index offsets of the neighbours of the row, by direction
+	 * @param self weight of the field itself
+	 * @param share weight of a neighbour
+	 * @param min intensities below it are set to zero
+	 */
+	public void diffuseRow(float[] source, float[] target, byte[] open, int[] openRun, int from, int to,
+			int[] offsets, float self, float share, float min) {
+		int o0 = offsets[0], o1 = offsets[1], o2 = offsets[2], o3 = offsets[3], o4 = offsets[4], o5 = offsets[5];
+
+		for (int index = from; index < to; ++index) {
+			int mask = open[index];
+			if ((mask & 0x40) == 0) {
+				target[index] = 0.0f;
+				continue;
+			}
+
+			float v = source[index];
+			float sum = (((mask & 1) != 0) ? source[index + o0] : v)
+					+ (((mask & 2) != 0) ? source[index + o1] : v)
+					+ (((mask & 4) != 0) ? source[index + o2] : v)
+					+ (((mask & 8) != 0) ? source[index + o3] : v)
+					+ (((mask & 16) != 0) ? source[index + o4] : v)
+					+ (((mask & 32) != 0) ? source[index + o5] : v);
+
+			float next = self * v + share * sum;
+			target[index] = (next >= min) ? next : 0.0f;
+		}
+	}
+
+	/**
+	 * Applies the decay of the odour in place: intensities above the limit drop to zero,
+	 * the others decrease by the amount, but not below zero.
+	 *
+	 * @param values the intensities
+	 * @param from first index
+	 * @param to index after the last one
+	 * @param amount the decrease (positive)
+	 * @param limit intensities above it drop to zero
+	 */
+	public void decay(float[] values, int from, int to, float amount, float limit) {
+		for (int i = from; i < to; ++i) {
+			float v = values[i];
+			float decayed = v - amount;
+			values[i] = (v > limit) ? 0.0f : ((decayed > 0.0f) ? decayed : 0.0f);
+		}
+	}
+}
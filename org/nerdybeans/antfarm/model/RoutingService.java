@@ -0,0 +1,415 @@
+package org.nerdybeans.antfarm.model;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.PriorityQueue;
+
+import org.nerdybeans.antfarm.model.modelelements.AntLion;
+import org.nerdybeans.antfarm.model.modelelements.Warehouse;
+
+/**
+ * Keeps a shortest path tree from every Warehouse of a GameWorld, so the ants
+ * can be routed to the warehouses with a few table lookups per move ("informed ants").
+ *
+ * The tree of a warehouse is stored as the hexagonal distance of every field from the
+ * field of the warehouse, counted over the routable fields: the passable fields without
+ * a trap (AntLion), so the informed ants go around the traps (UNREACHABLE if there is no path).
+ * The next step towards the warehouse is a neighbour whose distance is one less.
+ *
+ * The trees are built with a breadth-first search on first use, and then they are
+ * repaired incrementally when a field becomes routable or not (e.g. a pebble is
+ * pushed by an AntEater):
+ *  - a field became passable: the distances that decrease are propagated from the field,
+ *  - a field became impassable: the fields which lose their every shortest path (the
+ *    orphans) are collected level by level, then their distances are recomputed from
+ *    the unaffected fields around them, in increasing order.
+ * Only the affected region is visited in both cases. The tree of a warehouse is dropped
+ * when the warehouse becomes empty.
+ *
+ * The trees are modified only when the ants are not being moved (see TileScheduler.runAfterStep()),
+ * so the ants of the tiles read them in parallel without locking. Informed ants are disabled by default.
+ *
+ * Fields are indexed the same way as in the OccupancyMap.
+ *
+ * @version 1.0
+ * @see OccupancyMap
+ * @see GameWorld.getExitPoints()
+ **/
+public class RoutingService {
+	/**
+	 * Distance of the fields which can not reach the warehouse.
+	 */
+	public static final int UNREACHABLE = Integer.MAX_VALUE;
+
+	/**
+	 * The world of the warehouses.
+	 */
+	private final GameWorld World;
+
+	/**
+	 * The warehouses which have a tree.
+	 */
+	private final ArrayList<Warehouse> Targets = new ArrayList<Warehouse>();
+
+	/**
+	 * Distance of every field from the warehouse of the same position in Targets.
+	 */
+	private final ArrayList<int[]> Distances = new ArrayList<int[]>();
+
+	/**
+	 * Have the trees been built?
+	 */
+	private volatile boolean Built = false;
+
+	/**
+	 * Are the ants routed along the trees?
+	 */
+	private volatile boolean Informed = false;
+
+	/**
+	 * Constructor, the trees are built on first use.
+	 *
+	 * @param world the world whose warehouses should be routed to
+	 */
+	public RoutingService(GameWorld world) {
+		this.World = world;
+	}
+
+	/**
+	 * Enables or disables the informed ants.
+	 *
+	 * @param informed true if the ants should follow the shortest paths to the warehouses
+	 */
+	public void setInformed(boolean informed) {
+		this.Informed = informed;
+	}
+
+	/**
+	 * Are the ants routed along the trees?
+	 *
+	 * @return Informed true if the ants follow the shortest paths to the warehouses
+	 */
+	public boolean isInformed() {
+		return this.Informed;
+	}
+
+	/**
+	 * Returns the distance of a field from a warehouse.
+	 *
+	 * @param target the warehouse
+	 * @param index index of the field
+	 * @return the number of steps, UNREACHABLE if there is no path or the warehouse has no tree
+	 */
+	public int getDistance(Warehouse target, int index) {
+		int[] distance = this.getTree(target);
+		return (distance != null) ? distance[index] : UNREACHABLE;
+	}
+
+	/**
+	 * Returns the warehouse closest to a field.
+	 *
+	 * @param index index of the field
+	 * @return the closest warehouse, null if none of them can be reached
+	 */
+	public Warehouse getNearest(int index) {
+		this.ensureBuilt();
+		Warehouse nearest = null;
+		int best = UNREACHABLE;
+		for (int t = 0; t < this.Targets.size(); ++t) {
+			int d = this.Distances.get(t)[index];
+			if (d < best) {
+				best = d;
+				nearest = this.Targets.get(t);
+			}
+		}
+		return nearest;
+	}
+
+	/**
+	 * Returns the direction of the next step from a field towards a warehouse.
+	 *
+	 * @param target the warehouse
+	 * @param index index of the field
+	 * @return the neighbour index (direction) of the next field, -1 if there is no path
+	 *         (or the field is the field of the warehouse)
+	 */
+	public int getNextDirection(Warehouse target, int index) {
+		int[] distance = this.getTree(target);
+		if ((distance == null) || (distance[index] == UNREACHABLE) || (distance[index] == 0)) {
+			return -1;
+		}
+
+		OccupancyMap occupancy = this.World.getOccupancy();
+		int wanted = distance[index] - 1;
+		for (int k = 0; k < 6; ++k) {
+			int n = occupancy.getNeighbour(index, k);
+			if ((n >= 0) && (distance[n] == wanted)) {
+				return k;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the tree of a warehouse.
+	 *
+	 * @param target the warehouse
+	 * @return the distances of the fields, null if the warehouse has no tree
+	 */
+	private int[] getTree(Warehouse target) {
+		this.ensureBuilt();
+		int t = this.Targets.indexOf(target);
+		return (t >= 0) ? this.Distances.get(t) : null;
+	}
+
+	/**
+	 * Builds the tree of every warehouse of the world, if it has not been done yet.
+	 * Only the first use takes the lock, the built trees are read without locking.
+	 */
+	private void ensureBuilt() {
+		if (this.Built) {
+			return;
+		}
+		synchronized(this) {
+			if (!this.Built) {
+				this.build();
+			}
+		}
+	}
+
+	/**
+	 * Builds the tree of every warehouse of the world.
+	 */
+	private void build() {
+		ArrayList<Warehouse> warehouses = this.World.getExitPoints();
+		if (warehouses != null) {
+			for (Warehouse warehouse : warehouses) {
+				WorldField field = warehouse.getField();
+				// an emptied warehouse has already left its field
+				if ((field != null) && (field.getPermanentElement() == warehouse)) {
+					this.Targets.add(warehouse);
+					this.Distances.add(this.search(field.getIndex()));
+				}
+			}
+		}
+		this.Built = true;
+	}
+
+	/**
+	 * Drops the trees, they are rebuilt on next use (e.g. after the warehouses have been placed).
+	 */
+	public synchronized void invalidate() {
+		this.Targets.clear();
+		this.Distances.clear();
+		this.Built = false;
+	}
+
+	/**
+	 * Drops the tree of a warehouse (e.g. it has become empty).
+	 *
+	 * @param target the warehouse
+	 */
+	public synchronized void removeTarget(Warehouse target) {
+		int t = this.Targets.indexOf(target);
+		if (t >= 0) {
+			this.Targets.remove(t);
+			this.Distances.remove(t);
+		}
+	}
+
+	/**
+	 * Repairs the trees after the passability of a field has changed, or a trap
+	 * has been placed onto it or removed from it.
+	 *
+	 * @param index index of the field
+	 */
+	public synchronized void onPassabilityChanged(int index) {
+		if (!this.Built) {
+			return;
+		}
+		boolean routable = this.isRoutable(index);
+		for (int[] distance : this.Distances) {
+			if (routable) {
+				this.unblock(distance, index);
+			} else {
+				this.block(distance, index);
+			}
+		}
+	}
+
+	/**
+	 * Tells whether the paths may lead through a field: it is passable and it is not a trap.
+	 *
+	 * @param index index of the field
+	 * @return true if the field is routable
+	 */
+	private boolean isRoutable(int index) {
+		if (!this.World.getOccupancy().get(OccupancyMap.PASSABLE, index)) {
+			return false;
+		}
+		int width = this.World.getWidth();
+		return !(this.World.getMap()[index / width][index % width].getPermanentElement() instanceof AntLion);
+	}
+
+	/**
+	 * Computes the distances from a field with a breadth-first search.
+	 *
+	 * @param source index of the field of the warehouse
+	 * @return the distance of every field
+	 */
+	private int[] search(int source) {
+		OccupancyMap occupancy = this.World.getOccupancy();
+		int[] distance = new int[occupancy.getSize()];
+		Arrays.fill(distance, UNREACHABLE);
+
+		ArrayDeque<Integer> queue = new ArrayDeque<Integer>();
+		distance[source] = 0;
+		queue.add(source);
+		this.propagate(distance, queue);
+		return distance;
+	}
+
+	/**
+	 * Propagates decreasing distances breadth-first over the routable fields.
+	 *
+	 * @param distance the tree
+	 * @param queue the fields whose distance has decreased
+	 */
+	private void propagate(int[] distance, ArrayDeque<Integer> queue) {
+		OccupancyMap occupancy = this.World.getOccupancy();
+		while (!queue.isEmpty()) {
+			int u = queue.poll();
+			int next = distance[u] + 1;
+			for (int k = 0; k < 6; ++k) {
+				int v = occupancy.getNeighbour(u, k);
+				if ((v >= 0) && (next < distance[v]) && this.isRoutable(v)) {
+					distance[v] = next;
+					queue.add(v);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns one more than the smallest distance of the neighbours of a field.
+	 *
+	 * @param distance the tree
+	 * @param index index of the field
+	 * @return the distance the field would have, UNREACHABLE if none of its neighbours is reachable
+	 */
+	private int bestThroughNeighbours(int[] distance, int index) {
+		OccupancyMap occupancy = this.World.getOccupancy();
+		int best = UNREACHABLE;
+		for (int k = 0; k < 6; ++k) {
+			int n = occupancy.getNeighbour(index, k);
+			if ((n >= 0) && (distance[n] != UNREACHABLE) && (distance[n] + 1 < best)) {
+				best = distance[n] + 1;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Repairs a tree after a field has become routable: the distances which
+	 * decrease are propagated from the field.
+	 *
+	 * @param distance the tree
+	 * @param index index of the field
+	 */
+	private void unblock(int[] distance, int index) {
+		int best = this.bestThroughNeighbours(distance, index);
+		if (best >= distance[index]) {
+			return;
+		}
+		distance[index] = best;
+		ArrayDeque<Integer> queue = new ArrayDeque<Integer>();
+		queue.add(index);
+		this.propagate(distance, queue);
+	}
+
+	/**
+	 * Repairs a tree after a field has stopped being routable.
+	 *
+	 * The orphans are collected breadth-first from the field: a field is an orphan if
+	 * none of its neighbours (except for the orphans) is one step closer to the warehouse.
+	 * Processing the fields in the order of their old distances guarantees that every
+	 * orphan of the previous level is known when a field is checked. The distances of the
+	 * orphans are then recomputed from their neighbours, in increasing order.
+	 *
+	 * @param distance the tree
+	 * @param index index of the field
+	 */
+	private void block(int[] distance, int index) {
+		if ((distance[index] == UNREACHABLE) || (distance[index] == 0)) {
+			// nothing leads through the field (or it is the warehouse itself)
+			return;
+		}
+		OccupancyMap occupancy = this.World.getOccupancy();
+
+		ArrayList<Integer> orphans = new ArrayList<Integer>();
+		ArrayDeque<Integer> queue = new ArrayDeque<Integer>();
+		ArrayDeque<Integer> levels = new ArrayDeque<Integer>();
+		queue.add(index);
+		levels.add(distance[index]);
+		distance[index] = UNREACHABLE;
+
+		while (!queue.isEmpty()) {
+			int u = queue.poll();
+			int child = levels.poll() + 1;
+			for (int k = 0; k < 6; ++k) {
+				int v = occupancy.getNeighbour(u, k);
+				if ((v < 0) || (distance[v] != child) || this.hasParent(distance, v)) {
+					continue;
+				}
+				distance[v] = UNREACHABLE;
+				orphans.add(v);
+				queue.add(v);
+				levels.add(child);
+			}
+		}
+
+		// recompute the orphans from the fields around them, closest first
+		PriorityQueue<Long> pending = new PriorityQueue<Long>();
+		for (int orphan : orphans) {
+			int best = this.bestThroughNeighbours(distance, orphan);
+			if (best != UNREACHABLE) {
+				pending.add(((long)best << 32) | orphan);
+			}
+		}
+		while (!pending.isEmpty()) {
+			long entry = pending.poll();
+			int u = (int)entry;
+			int d = (int)(entry >>> 32);
+			if (d >= distance[u]) {
+				continue;
+			}
+			distance[u] = d;
+			for (int k = 0; k < 6; ++k) {
+				int v = occupancy.getNeighbour(u, k);
+				if ((v >= 0) && (d + 1 < distance[v]) && this.isRoutable(v)) {
+					pending.add(((long)(d + 1) << 32) | v);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Tells whether a field has a neighbour which is one step closer to the warehouse.
+	 *
+	 * @param distance the tree
+	 * @param index index of the field
+	 * @return true if the field still has a shortest path
+	 */
+	private boolean hasParent(int[] distance, int index) {
+		OccupancyMap occupancy = this.World.getOccupancy();
+		int wanted = distance[index] - 1;
+		for (int k = 0; k < 6; ++k) {
+			int n = occupancy.getNeighbour(index, k);
+			if ((n >= 0) && (distance[n] == wanted)) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,112 @@
+package org.nerdybeans.antfarm.model;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.nerdybeans.antfarm.auxiliary.TraceRecorder;
+
+/**
+ * Writes a saved game to its file on a background thread, so the model thread
+ * only pays for capturing the state (see Game.saveAsync()).
+ *
+ * The state is written to a temporary file first, which then replaces the save file,
+ * so a save interrupted half-way does not destroy the previous one.
+ *
+ * @version 1.0
+ * @see ChunkedWorldFile.write()
+ **/
+public class SaveWriter extends Thread {
+	/**
+	 * The captured state of the game.
+	 */
+	private final CheckpointStream.Frame Captured;
+
+	/**
+	 * Name of the save file.
+	 */
+	private final String Target;
+
+	/**
+	 * Has the file been written?
+	 */
+	private volatile boolean Succeeded = false;
+
+	/**
+	 * Why the file has not been written, null if it has been or it is still being written.
+	 */
+	private volatile IOException Failure;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param captured the captured state of the game
+	 * @param target name of the save file
+	 */
+	public SaveWriter(CheckpointStream.Frame captured, String target) {
+		super("SaveWriter");
+		this.Captured = captured;
+		this.Target = target;
+	}
+
+	/**
+	 * Writes the captured state.
+	 */
+	@Override
+	public void run() {
+		long span = TraceRecorder.begin();
+		long start = System.nanoTime();
+		File target = new File(this.Target);
+		File temporary = new File(this.Target + ".tmp");
+		try {
+			ChunkedWorldFile.write(this.Captured, temporary);
+			replace(temporary, target);
+			this.Succeeded = true;
+			System.out.println("[DEBUG#SaveWriter.run] Tick " + this.Captured.getTick() + " written to " + this.Target
+					+ " in " + ((System.nanoTime() - start) / 1000000) + " ms");
+		} catch (IOException e) {
+			// reported by the caller of await(), see getFailure()
+			this.Failure = e;
+			System.out.println("[DEBUG#SaveWriter.run] " + e);
+		}
+		TraceRecorder.end("save-write", span);
+	}
+
+	/**
+	 * Replaces a file with a completely written temporary one.
+	 *
+	 * @param temporary the temporary file
+	 * @param target the file to replace
+	 * @throws IOException if the file can not be replaced
+	 */
+	static void replace(File temporary, File target) throws IOException {
+		// File.renameTo() does not replace an existing file on every platform
+		if (!temporary.renameTo(target) && !(target.delete() && temporary.renameTo(target))) {
+			throw new IOException("Can not replace " + target);
+		}
+	}
+
+	/**
+	 * Waits until the file has been written.
+	 *
+	 * @param millis how long to wait at most (0: forever)
+	 * @return true if the file has been written
+	 */
+	public boolean await(long millis) {
+		try {
+			this.join(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		return this.Succeeded;
+	}
+
+	/**
+	 * Returns why the file has not been written (e.g. the previous save file could not be
+	 * replaced because another process holds it open).
+	 *
+	 * @return the error, null if the file has been written or it is still being written
+	 */
+	public IOException getFailure() {
+		return this.Failure;
+	}
+}
@@ -0,0 +1,310 @@
+package org.nerdybeans.antfarm.model;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.nerdybeans.antfarm.auxiliary.SimulationEvents;
+import org.nerdybeans.antfarm.auxiliary.TickObserver;
+import org.nerdybeans.antfarm.auxiliary.TickStatistics;
+import org.nerdybeans.antfarm.auxiliary.Timer;
+import org.nerdybeans.antfarm.model.modelelements.Ant;
+import org.nerdybeans.antfarm.model.modelelements.AntOdour;
+
+/**
+ * Moves the ants of a GameWorld tile by tile.
+ *
+ * Ants are not subscribed to the Timer on their own: the TileScheduler of their
+ * world is subscribed instead (with the period of the ants), and on each of its
+ * ticks it runs two phases over the tiles of the world:
+ *  1. step: every tile moves its own ants, handing the ants that leave the tile
+ *     over to the border queues,
+ *  2. drain: every tile adds the odour deposited by its ants during the step, and
+ *     puts the ants arriving from its neighbours onto their fields.
+ * Both phases modify only the fields of the tile being processed, so the tiles are
+ * processed in parallel on a work-stealing pool if the world has more than one tile.
+ * Every phase of a tick is recorded as a SimulationEvents.TickPhase event. The
+ * statistics of the Timer get the time of the phases as well, under the classes which
+ * were subscribed to the Timer before the scheduler took their work over: the moves
+ * (step, drain and the deferred actions) as Ant, the odour updates (diffuse, sweep) as AntOdour.
+ *
+ * @version 1.0
+ * @see WorldTile
+ **/
+public class TileScheduler extends TickObserver {
+	/**
+	 * Default number of worker threads.
+	 */
+	public static final int DEFAULT_PARALLELISM = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * The world whose ants are moved.
+	 */
+	private final GameWorld World;
+
+	/**
+	 * The Timer the scheduler is subscribed to.
+	 */
+	private final Timer Clock;
+
+	/**
+	 * Number of worker threads to use (1 means that the tiles are processed on the calling thread).
+	 */
+	private volatile int Parallelism;
+
+	/**
+	 * The worker pool (created on first use).
+	 */
+	private ForkJoinPool Pool;
+
+	/**
+	 * True while the tiles are being stepped or drained.
+	 */
+	private volatile boolean Running = false;
+
+	/**
+	 * The statistics of the Timer, and the timers the phases are recorded under
+	 * (null if the Timer does not measure its subscribers).
+	 */
+	private final TickStatistics Statistics;
+	private final TickStatistics.ClassTimer AntTimer, OdourTimer;
+
+	/**
+	 * Processes a range of tiles in one of the phases, splitting the range
+	 * until it contains a single tile.
+	 */
+	private static class PhaseTask extends RecursiveAction {
+		private final WorldTile[] Tiles;
+		private final boolean Drain;
+		private final int From;
+		private final int To;
+
+		PhaseTask(WorldTile[] tiles, boolean drain, int from, int to) {
+			this.Tiles = tiles;
+			this.Drain = drain;
+			this.From = from;
+			this.To = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (this.To - this.From == 1) {
+				if (this.Drain) {
+					this.Tiles[this.From].drain();
+				} else {
+					this.Tiles[this.From].step();
+				}
+				return;
+			}
+
+			int middle = (this.From + this.To) >>> 1;
+			invokeAll(new PhaseTask(this.Tiles, this.Drain, this.From, middle),
+					new PhaseTask(this.Tiles, this.Drain, middle, this.To));
+		}
+	}
+
+	/**
+	 * Constructor, subscribes the scheduler to the Timer.
+	 *
+	 * @param world the world whose ants should be moved
+	 */
+	public TileScheduler(GameWorld world) {
+		this.World = world;
+		this.Parallelism = DEFAULT_PARALLELISM;
+		this.Clock = Timer.getInstance();
+		this.Statistics = this.Clock.getStatistics();
+		this.AntTimer = (this.Statistics != null) ? this.Statistics.forClass(Ant.class) : null;
+		this.OdourTimer = (this.Statistics != null) ? this.Statistics.forClass(AntOdour.class) : null;
+		this.Clock.addSubscriber(this);
+	}
+
+	/**
+	 * Unsubscribes the scheduler from its Timer and shuts the worker pool down
+	 * (the world has been replaced). stepAll() still works, on the calling thread.
+	 */
+	public void dispose() {
+		this.Clock.removeSubscriber(this);
+		this.setParallelism(1);
+	}
+
+	/**
+	 * Sets the number of worker threads.
+	 *
+	 * @param parallelism the number of threads, 1 to process the tiles on the Timer thread
+	 */
+	public synchronized void setParallelism(int parallelism) {
+		assert parallelism >= 1;
+		this.Parallelism = parallelism;
+		if (this.Pool != null) {
+			this.Pool.shutdown();
+			this.Pool = null;
+		}
+	}
+
+	/**
+	 * Returns the number of worker threads.
+	 *
+	 * @return Parallelism the number of threads
+	 */
+	public int getParallelism() {
+		return this.Parallelism;
+	}
+
+	/**
+	 * Moves every ant of the world once, then runs the actions requested
+	 * via runAfterStep() in the meantime, diffuses the odours (if enabled),
+	 * and finally drops the decayed fields from the active sets of the odour channels.
+	 */
+	public void stepAll() {
+		WorldTile[] tiles = this.World.getTiles();
+		int fields = this.World.getHeight() * this.World.getWidth();
+		SimulationEvents.TickPhase event;
+		boolean profiling = (this.Statistics != null) && this.Statistics.isEnabled();
+		long start = profiling ? System.nanoTime() : 0;
+
+		this.Running = true;
+		try {
+			event = beginPhase();
+			this.runPhase(tiles, false);
+			this.endPhase(event, "step", fields);
+
+			event = beginPhase();
+			this.runPhase(tiles, true);
+			this.endPhase(event, "drain", fields);
+		} finally {
+			this.Running = false;
+		}
+
+		// tile by tile, so the order does not depend on the threads
+		event = beginPhase();
+		int deferred = 0;
+		for (WorldTile tile : tiles) {
+			deferred += tile.runDeferred();
+		}
+		this.World.countStep();
+		if (deferred > 0) {
+			this.endPhase(event, "deferred", 0);
+		}
+		long moved = profiling ? System.nanoTime() : 0;
+
+		boolean parallel = (this.Parallelism > 1) && (this.World.getHeight() > OdourDiffusion.ROWS_PER_TASK);
+		event = beginPhase();
+		this.World.diffuseOdours(parallel ? this.getPool() : null);
+		this.endPhase(event, "diffuse", fields);
+
+		event = beginPhase();
+		int active = this.activeOdourFields();
+		this.World.sweepOdours();
+		this.endPhase(event, "sweep", active);
+
+		if (profiling) {
+			this.Statistics.addSubscriberTime(this.AntTimer, moved - start);
+			this.Statistics.addSubscriberTime(this.OdourTimer, System.nanoTime() - moved);
+		}
+	}
+
+	/**
+	 * Starts timing a phase of the tick.
+	 *
+	 * @return the event of the phase
+	 */
+	private static SimulationEvents.TickPhase beginPhase() {
+		SimulationEvents.TickPhase event = new SimulationEvents.TickPhase();
+		event.begin();
+		return event;
+	}
+
+	/**
+	 * Records a phase of the tick, if the flight recorder is recording it.
+	 *
+	 * @param event the event returned by beginPhase()
+	 * @param phase name of the phase
+	 * @param fields number of fields processed by the phase
+	 */
+	private void endPhase(SimulationEvents.TickPhase event, String phase, int fields) {
+		if (event.shouldCommit()) {
+			event.tick = Timer.getInstance().getTick();
+			event.phase = phase;
+			event.ants = this.World.getDensity().getTotal();
+			event.fields = fields;
+			event.commit();
+		}
+	}
+
+	/**
+	 * Returns the number of fields in the active sets of the odour channels.
+	 *
+	 * @return number of fields
+	 */
+	private int activeOdourFields() {
+		return this.World.getAntOdourChannel().getActiveCount() + this.World.getPoisonChannel().getActiveCount();
+	}
+
+	/**
+	 * Runs an action which may modify any part of the world (e.g. spreading odour over the map).
+	 * If the tiles are being processed, the action is queued by the tile of the requesting
+	 * field and run on the calling thread after the drain phase, otherwise it is run immediately.
+	 *
+	 * @param origin the field requesting the action (its tile should be the one being processed)
+	 * @param action the action to run
+	 */
+	public void runAfterStep(WorldField origin, Runnable action) {
+		if (this.Running) {
+			this.World.getTileOf(origin).defer(action);
+		} else {
+			action.run();
+		}
+	}
+
+	/**
+	 * Runs the step or the drain phase over the tiles.
+	 *
+	 * @param tiles the tiles of the world
+	 * @param drain true for the drain phase, false for the step phase
+	 */
+	private void runPhase(WorldTile[] tiles, boolean drain) {
+		if (tiles.length == 1 || this.Parallelism <= 1) {
+			for (WorldTile tile : tiles) {
+				if (drain) {
+					tile.drain();
+				} else {
+					tile.step();
+				}
+			}
+			return;
+		}
+
+		this.getPool().invoke(new PhaseTask(tiles, drain, 0, tiles.length));
+	}
+
+	/**
+	 * Returns the worker pool, creating it if needed.
+	 *
+	 * @return the pool
+	 */
+	private synchronized ForkJoinPool getPool() {
+		if (this.Pool == null) {
+			this.Pool = new ForkJoinPool(this.Parallelism);
+		}
+		return this.Pool;
+	}
+
+	/**
+	 * Moving the ants of the world.
+	 *
+	 * @param TickEventArgs the event arguments of the tick
+	 */
+	@Override
+	public void onTick(Object TickEventArgs) {
+		this.stepAll();
+	}
+
+	/**
+	 * The scheduler responds with the period of the ants.
+	 *
+	 * @return how often should the object respond
+	 */
+	@Override
+	public int getPeriod() {
+		return Ant.PERIOD;
+	}
+}
@@ -40,12 +40,12 @@ public abstract class WeaponBase implements Serializable {
 	/**
 	 * Sets the load level of the weapon
 	 * 
-	 * This method is thread-safe, due to possible multiple access. (by the View and the Model as well)
+	 * Modified by the model thread only (see Timer.submit()), the view reads the published snapshot.
 	 * 
 	 * @author Demarcsek
 	 * @param newLoad The desired value of the load level in the weapon.
 	 */
-	public synchronized void setLoad(int newLoad) {
+	public void setLoad(int newLoad) {
 		assert (newLoad >= 0);
 		//System.out.println("setLoad("+newLoad+") call from" + Thread.currentThread().getStackTrace()[2].getClassName() + "." + Thread.currentThread().getStackTrace()[2].getMethodName() );
 		this.load = newLoad;
@@ -54,12 +54,12 @@ public abstract class WeaponBase implements Serializable {
 	/**
 	 * Retrieves the load level of the weapon
 	 * 
-	 * This method is thread-safe, due to possible multiple access. (by the View and the Model as well)
+	 * Modified by the model thread only (see Timer.submit()), the view reads the published snapshot.
 	 * 
 	 * @author Demarcsek
 	 * @return load How many shots does the Weapon have yet?
 	 */
-	public synchronized int getLoad() {
+	public int getLoad() {
 		return this.load;
 	}
 }
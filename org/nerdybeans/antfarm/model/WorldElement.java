@@ -24,7 +24,8 @@ public abstract class WorldElement extends org.nerdybeans.antfarm.auxiliary.Tick
 	 * @author Demarcsek
 	 */
 	public WorldElement() {
-		Timer.getInstance().addSubscriber(this);
+		if (this.isSelfScheduled())
+			Timer.getInstance().addSubscriber(this);
 	}
 
 	/**
@@ -42,12 +43,12 @@ public abstract class WorldElement extends org.nerdybeans.antfarm.auxiliary.Tick
 	/**
 	 * Sets the value of the field attribute.
 	 * 
-	 * This method is thread-safe, due to possible multiple access. (by the View and the Model as well)
+	 * Called by the model thread only, the view reads the published snapshot instead (see Game.getSnapshot()).
 	 * 
 	 * @author Demarcsek
 	 * @param newField set which field stores the WorldElement now.
 	 */
-	public synchronized void setField(WorldField newField) {
+	public void setField(WorldField newField) {
 		/*if(newField == null) {
 			System.err.println("(newField == null) SHOULD NEVER BE");
 			throw new RuntimeException();
@@ -59,12 +60,12 @@ public abstract class WorldElement extends org.nerdybeans.antfarm.auxiliary.Tick
 	/**
 	 * Returns the value of the field attribute.
 	 *
-	 * This method is thread-safe, due to possible multiple access. (by the View and the Model as well)
+	 * Called by the model thread only, the view reads the published snapshot instead (see Game.getSnapshot()).
 	 * 
 	 * @author Demarcsek
 	 * @return field Which field stores the WorldElement at the moment?
 	 */
-	public synchronized WorldField getField() {
+	public WorldField getField() {
 		return this.field;
 	}
 	
@@ -75,23 +76,41 @@ public abstract class WorldElement extends org.nerdybeans.antfarm.auxiliary.Tick
 	 * @return void
 	 */
 	public void onLoad() {
-		Timer.getInstance().addSubscriber(this);
+		if (this.isSelfScheduled())
+			Timer.getInstance().addSubscriber(this);
 	}
 	
 	/**
-	 * Returns the View representation of each WorldElement.
+	 * Removes WorldElement from the list of Subscribers (its world has been replaced).
 	 * 
-	 * @return WorldElementView the graphical representation of the given WorldElement
+	 * @see GameWorld.dispose()
 	 */
-	public abstract WorldElementView getView();
+	public void onDispose() {
+		if (this.isSelfScheduled())
+			Timer.getInstance().removeSubscriber(this);
+	}
 	
 	/**
-	 * Removes the WorldElement from the Timer's subscriber list.
-	 * This should be done, because of the Observer design pattern we use in the AntFarm.
+	 * Tells whether the element should be subscribed to the Timer on its own.
+	 * Elements which are driven by someone else (e.g. the Ants are moved by the
+	 * TileScheduler of their GameWorld) or which are passive (they do nothing on
+	 * tick, e.g. Pebble) should override it to return false.
+	 * 
+	 * @return true if the element subscribes itself to the Timer
 	 */
-	@Override
-	public void finalize() {
-		Timer.getInstance().removeSubscriber(this);
+	protected boolean isSelfScheduled() {
+		return true;
 	}
 	
+	/**
+	 * Returns the View representation of each WorldElement.
+	 * 
+	 * @return WorldElementView the graphical representation of the given WorldElement
+	 */
+	public abstract WorldElementView getView();
+	
+	// No finalizer: an element subscribed to the Timer is referenced by it, so it can not
+	// be collected before it unsubscribes; the finalizer only slowed down the collection
+	// of every other element (ants, odours).
+	
 }
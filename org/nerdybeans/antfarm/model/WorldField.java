@@ -7,6 +7,7 @@ import java.util.ListIterator;
 
 import org.nerdybeans.antfarm.model.modelelements.Ant;
 import org.nerdybeans.antfarm.model.modelelements.AntEater;
+import org.nerdybeans.antfarm.model.modelelements.AntLion;
 import org.nerdybeans.antfarm.model.modelelements.AntOdour;
 import org.nerdybeans.antfarm.model.modelelements.FoodOdour;
 import org.nerdybeans.antfarm.model.modelelements.Poison;
@@ -14,6 +15,9 @@ import org.nerdybeans.antfarm.model.modelelements.Poison;
 /**
  * Represents a field (unit) of the map.
  * 
+ * No lock is taken by the methods of a field: it is modified by the model thread,
+ * or by the tile owning it while the ants are moved (see WorldTile).
+ * 
  * @author Horvath, Szabo
  * @version 1.5
 **/
@@ -75,13 +79,24 @@ public class WorldField implements Serializable {
 	/**
 	 * Stores the ants which are on the field.
 	 */
-	private volatile List<Ant> AntElements;
+	private List<Ant> AntElements;
 
 	/**
 	 * Stores the anteater if it is on this field.
 	 */
 	private volatile AntEater AntEaterObj;
 
+	/**
+	 * The GameWorld which contains this field (null while the field is not attached to a world).
+	 */
+	private GameWorld World;
+
+	/**
+	 * Row-major index of the field in its GameWorld.
+	 * @see OccupancyMap
+	 */
+	private int Index = -1;
+
 	/**
 	 * Default constructor, sets the default values of the attributes.
 	 * 
@@ -98,49 +113,201 @@ public class WorldField implements Serializable {
 		this.Neighbours = new ArrayList<WorldField>();
 		this.DynamicElement = null;
 		this.PermanentElement = null;
-		this.AntElements = java.util.Collections.synchronizedList(new ArrayList<Ant>());
+		this.AntElements = new ArrayList<Ant>();
 		this.AntEaterObj = null;
 	}
 
 	/**
-	 * Adds the ant to the AntElements list, which has moved to this field.
+	 * Attaches the field to its GameWorld and copies its current state into the
+	 * OccupancyMap and the odour channels of the world.
 	 * 
-     * This method is thread-safe, due to possible multiple access. (by the View and the Model as well)
+	 * @param world the GameWorld which contains this field
+	 * @param index row-major index of the field in the world
+	 * @see GameWorld.GameWorld()
+	 */
+	void attach(GameWorld world, int index) {
+		// the odours are moved into the channels of the world
+		float antOdour = this.AntOdour.getIntensity();
+		float poison = this.Poison.getIntensity();
+		
+		this.World = world;
+		this.Index = index;
+		this.AntOdour.setIntensity(antOdour);
+		this.Poison.setIntensity(poison);
+		this.updateOccupancy(OccupancyMap.PASSABLE, this.Passable);
+		this.updateOccupancy(OccupancyMap.PERMANENT, this.PermanentElement != null);
+		this.updateOccupancy(OccupancyMap.PEBBLE, this.DynamicElement != null);
+		this.updateOccupancy(OccupancyMap.ANTS, !this.AntElements.isEmpty());
+		this.updateOccupancy(OccupancyMap.ANTEATER, this.AntEaterObj != null);
+		this.updateOccupancy(OccupancyMap.CHANGED, true);
+	}
+
+	/**
+	 * Returns the GameWorld which contains this field.
+	 * 
+	 * @return World the GameWorld of the field, null if the field is not attached to a world
+	 */
+	public GameWorld getWorld() {
+		return this.World;
+	}
+
+	/**
+	 * Returns the row-major index of the field in its GameWorld.
+	 * 
+	 * @return Index the index of the field, -1 if the field is not attached to a world
+	 */
+	public int getIndex() {
+		return this.Index;
+	}
+
+	/**
+	 * Returns the OccupancyMap of the world which contains this field.
+	 * 
+	 * @return the OccupancyMap, null if the field is not attached to a world
+	 */
+	public OccupancyMap getOccupancy() {
+		return (this.World != null) ? this.World.getOccupancy() : null;
+	}
+
+	/**
+	 * Mirrors a change of the field into the OccupancyMap of its world.
+	 * 
+	 * @param layer the layer of the OccupancyMap to update
+	 * @param value the new value of the bit of this field
+	 */
+	private void updateOccupancy(int layer, boolean value) {
+		if (this.World != null) {
+			this.World.getOccupancy().set(layer, this.Index, value);
+		}
+	}
+
+	/**
+	 * Mirrors a change of the number of ants of the field into the AntDensity of its world.
+	 * 
+	 * @param delta the change of the number of ants
+	 */
+	private void updateDensity(int delta) {
+		if (this.World != null && this.World.getDensity() != null) {
+			this.World.getDensity().add(this.Index, delta);
+		}
+	}
+
+	/**
+	 * Adds the ant to the AntElements list, which has moved to this field.
+	 * The PermanentElement or the AntEater of the field is notified if it is an AntEnterListener.
 	 * 
 	 * @author Horvath
 	 * @param newAnt that should be stored on the WorldField
 	 */
-	public synchronized void addAnt(Ant newAnt) {
+	public void addAnt(Ant newAnt) {
 		//System.out.println("[DEBUG#WorldField.addAnt]");
 		if (newAnt != null) {
 			WorldField previousField = newAnt.getField();
 			newAnt.setCameFrom(previousField);
 			newAnt.setField(this);
-			synchronized(this.AntElements) {
-				this.AntElements.add(newAnt);
-			}
+			this.AntElements.add(newAnt);
+			this.updateOccupancy(OccupancyMap.ANTS, true);
+			this.updateDensity(1);
 			//this.setAntOdour(this.getAntOdour() + 1);
+			
+			// let the trap / warehouse / anteater of the field react
+			if (this.PermanentElement instanceof AntEnterListener) {
+				((AntEnterListener)this.PermanentElement).onAntEntered(newAnt);
+			} else if (this.AntEaterObj != null) {
+				this.AntEaterObj.onAntEntered(newAnt);
+			}
 		}
 		
 		//System.out.println("[DEBUG#WorldField.addAnt] Ant added to field: " + newAnt.getField());
 	}
 	
 
+	/**
+	 * Adds several ants to the field at once (e.g. ants spawned by the AntHill):
+	 * the list, the OccupancyMap and the AntDensity are updated once for all of them.
+	 * The PermanentElement or the AntEater of the field is notified of every ant,
+	 * as by addAnt().
+	 * 
+	 * @param newAnts the ants that should be stored on the WorldField
+	 * @param from index of the first ant to add
+	 * @param to index after the last ant to add
+	 */
+	public void addAnts(Ant[] newAnts, int from, int to) {
+		if (from >= to) {
+			return;
+		}
+		for (int i = from; i < to; ++i) {
+			Ant newAnt = newAnts[i];
+			newAnt.setCameFrom(newAnt.getField());
+			newAnt.setField(this);
+			this.AntElements.add(newAnt);
+		}
+		this.updateOccupancy(OccupancyMap.ANTS, true);
+		this.updateDensity(to - from);
+		
+		if (this.PermanentElement instanceof AntEnterListener) {
+			for (int i = from; i < to; ++i) {
+				((AntEnterListener)this.PermanentElement).onAntEntered(newAnts[i]);
+			}
+		} else if (this.AntEaterObj != null) {
+			for (int i = from; i < to; ++i) {
+				this.AntEaterObj.onAntEntered(newAnts[i]);
+			}
+		}
+	}
+
+	/**
+	 * Places restored ants on the field (see CheckpointStream.build()). They were
+	 * standing here already when the state was saved, so unlike addAnts() neither the
+	 * PermanentElement nor the AntEater of the field is notified, and the CameFrom
+	 * of the ants is left to the caller.
+	 * 
+	 * @param ants the ants
+	 * @param from index of the first ant to place
+	 * @param to index after the last ant to place
+	 */
+	void placeAnts(Ant[] ants, int from, int to) {
+		if (from >= to) {
+			return;
+		}
+		for (int i = from; i < to; ++i) {
+			ants[i].setField(this);
+			this.AntElements.add(ants[i]);
+		}
+		this.updateOccupancy(OccupancyMap.ANTS, true);
+		this.updateDensity(to - from);
+	}
+
+	/**
+	 * Places a restored anteater on the field, without eating the ants standing here.
+	 * 
+	 * @param antEater the anteater
+	 */
+	void placeAntEater(AntEater antEater) {
+		this.AntEaterObj = antEater;
+		antEater.setField(this);
+		this.updateOccupancy(OccupancyMap.ANTEATER, true);
+	}
+
 	/**
 	 * Adds the anteater to the StatElement, which has moved to this field.
 	 * 
-	 * This method is thread-safe, due to possible multiple access. (by the View and the Model as well)
-	 *
 	 * @author Horvath
 	 * @param newAntEater store the AntEater on this Field.
 	 */
-	public synchronized void addAntEater(AntEater newAntEater) {
+	public void addAntEater(AntEater newAntEater) {
 		
 		if (newAntEater != null) {
 			WorldField previousField = newAntEater.getField();
 			this.AntEaterObj = newAntEater;
 			this.AntEaterObj.setCameFrom(previousField);
 			this.AntEaterObj.setField(this);
+			this.updateOccupancy(OccupancyMap.ANTEATER, true);
+			
+			// the ants already standing here are eaten on arrival
+			if (!this.AntElements.isEmpty()) {
+				this.AntEaterObj.eatAnts();
+			}
 		}
 	}
 
@@ -202,12 +369,10 @@ public class WorldField implements Serializable {
 	/**
 	 * Returns the value of the Poison attribute.
 	 * 
-	 * This method is thread-safe, due to possible multiple access. (by the View and the Model as well)
-	 * 
 	 * @author Szabo
 	 * @return Poison.intensity how intense is the poison on this field?
 	 */
-	public synchronized float getPoison() {
+	public float getPoison() {
 		return this.Poison.getIntensity();
 	}
 	
@@ -224,24 +389,20 @@ public class WorldField implements Serializable {
 	/**
 	 * Returns the AntEater object of this field.
 	 * 
-	 * This method is thread-safe, due to possible multiple access. (by the View and the Model as well)
-	 * 
 	 * @author Horvath
 	 * @return AntEaterObj the AntEater object of this field.
 	 */
-	public synchronized AntEater getAntEater() {
+	public AntEater getAntEater() {
 		return this.AntEaterObj;
 	}
 
 	/**
 	 * Returns the Replaceable object of this field.
 	 * 
-	 * This method is thread-safe, due to possible multiple access. (by the View and the Model as well)
-	 * 
 	 * @author Horvath
 	 * @return DynamicElement a reference for the DyanmicElement of this field
 	 */
-	public synchronized Replaceable getDynamicElement() {
+	public Replaceable getDynamicElement() {
 		return this.DynamicElement;
 	}
 
@@ -309,15 +470,29 @@ public class WorldField implements Serializable {
 		this.AntOdour.setIntensity(newOdour);
 	}
 
+	/**
+	 * Adds to the AntOdour of the field (an ant leaves its trail). While the ants
+	 * are moved, the odour is queued by the tile of the field and added at the end
+	 * of the step (see WorldTile.deposit()), so the parallel moves neither lock nor
+	 * lose deposits.
+	 * 
+	 * @param amount the intensity to add
+	 */
+	public void depositAntOdour(float amount) {
+		if (this.World != null && this.World.getAntOdourChannel() != null) {
+			this.World.getTileOf(this).deposit(this.World.getAntOdourChannel(), this.Index, amount);
+		} else {
+			this.setAntOdour(this.getAntOdour() + amount);
+		}
+	}
+
 	/** 
 	 * Sets the DynamicElement of this field.
 	 * 
-	 * This method is thread-safe, due to possible multiple access. (by the View and the Model as well)
-	 *
 	 * @author Horvath
 	 * @param element the new DynamicElement that should be stored on this field. If it is null, then it should remove the old one from the field.
 	 */
-	public synchronized void setDynamicElement(Replaceable element) {
+	public void setDynamicElement(Replaceable element) {
 		if (element != null) {
 			// add to this field and remove from the previous one
 			WorldField previousField = element.getField();
@@ -325,6 +500,8 @@ public class WorldField implements Serializable {
 			this.DynamicElement = element;
 			this.DynamicElement.setField(this);
 			this.setPassable(false);
+			this.updateOccupancy(OccupancyMap.PEBBLE, true);
+			this.updateOccupancy(OccupancyMap.CHANGED, true);
 			
 			if (previousField != null) {
 				previousField.setDynamicElement(null);
@@ -333,24 +510,32 @@ public class WorldField implements Serializable {
 		} else {
 			this.DynamicElement = null;
 			this.setPassable(true);
+			this.updateOccupancy(OccupancyMap.PEBBLE, false);
+			this.updateOccupancy(OccupancyMap.CHANGED, true);
 		}
 	}
 
 	/**
 	 * Sets the PermanentElement of this field.
 	 * 
-	 * This method is thread-safe, due to possible multiple access. (by the View and the Model as well)
-	 * 
 	 * @author Horvath
 	 * @param element the new PermanentElement that should be stored on this field. If it is null, then it should remove the old one from the field.
 	 */
-	public synchronized void setPermanentElement(Irreplaceable element) {
+	public void setPermanentElement(Irreplaceable element) {
+		boolean trap = (this.PermanentElement instanceof AntLion);
 		if (element != null) {
 			this.PermanentElement = element;
 			this.PermanentElement.setField(this);
+			this.updateOccupancy(OccupancyMap.PERMANENT, true);
 		} else {
 			this.PermanentElement = null;
 			this.setPassable(true);
+			this.updateOccupancy(OccupancyMap.PERMANENT, false);
+		}
+		this.updateOccupancy(OccupancyMap.CHANGED, true);
+		// the shortest paths avoid the traps
+		if ((trap != (this.PermanentElement instanceof AntLion)) && (this.World != null)) {
+			this.World.onPassabilityChanged(this.Index);
 		}
 	}
 
@@ -362,6 +547,7 @@ public class WorldField implements Serializable {
 	 */
 	public void setFoodOdour(float newOdour) {
 		this.FoodOdour.setIntensity(newOdour);
+		this.updateOccupancy(OccupancyMap.CHANGED, true);
 	}
 
 	/**
@@ -381,32 +567,99 @@ public class WorldField implements Serializable {
 	 * @param Passable set the Passable attribute for this value. 
 	 */
 	public void setPassable(boolean Passable) {
+		boolean changed = (this.Passable != Passable);
 		this.Passable = Passable;
+		this.updateOccupancy(OccupancyMap.PASSABLE, Passable);
+		if (changed && (this.World != null)) {
+			this.updateOccupancy(OccupancyMap.CHANGED, true);
+			this.World.onPassabilityChanged(this.Index);
+		}
 	}
 
 	/**
 	 * Removes the ant from the list, which has left this field.
 	 * 
-	 * This method is thread-safe, due to possible multiple access. (by the View and the Model as well)
-	 * 
 	 * @author Horvath
 	 * @param existingAnt the Ant that should be removed from the field.
 	 * @deprecated
 	 */
-	public synchronized void removeAnt(Ant existingAnt) {
+	public void removeAnt(Ant existingAnt) {
 		//System.out.println("[DEBUG#WorldField.removeAnt] Removing ant " + existingAnt.hashCode());
-		this.AntElements.remove(existingAnt);
+		if (this.AntElements.remove(existingAnt)) {
+			this.updateDensity(-1);
+		}
+		this.updateOccupancy(OccupancyMap.ANTS, !this.AntElements.isEmpty());
 	}
 
 	/**
-	 * Removes the AntEater from the field.
+	 * Removes a dead ant (eaten, poisoned, taken in by a warehouse) from the field,
+	 * and returns it to the AntPool of the world.
+	 * 
+	 * @param deadAnt the Ant that has died on the field
+	 * @param cause the cause of death (GameMetrics.KILLED_BY_WAREHOUSE, ...)
+	 */
+	public void killAnt(Ant deadAnt, int cause) {
+		if (!this.AntElements.remove(deadAnt)) {
+			return;
+		}
+		this.updateDensity(-1);
+		this.countKilled(cause, 1);
+		this.updateOccupancy(OccupancyMap.ANTS, !this.AntElements.isEmpty());
+		this.releaseAnt(deadAnt);
+	}
+
+	/**
+	 * Records killed ants in the GameMetrics of the world.
+	 * 
+	 * @param cause the cause of death
+	 * @param count number of ants
+	 */
+	private void countKilled(int cause, int count) {
+		if (count > 0 && this.World != null && this.World.getMetrics() != null) {
+			this.World.getMetrics().antsKilled(cause, count);
+		}
+	}
+
+	/**
+	 * Returns a dead ant to the AntPool of the world (if the field is attached to a world).
+	 * 
+	 * @param deadAnt the Ant that has been removed from the field
+	 */
+	private void releaseAnt(Ant deadAnt) {
+		if (this.World != null && this.World.getAntPool() != null) {
+			this.World.getAntPool().release(deadAnt);
+		} else {
+			deadAnt.setField(null);
+		}
+	}
+
+	/**
+	 * Removes every ant from the field: they have died (eaten, taken in by a warehouse),
+	 * so they are returned to the AntPool of the world.
+	 * 
+	 * This method should be used instead of clearing the list returned by getAntList(),
+	 * so the OccupancyMap and the AntDensity of the world stay consistent.
 	 * 
-	 * This method is thread-safe, due to possible multiple access. (by the View and the Model as well)
+	 * @param cause the cause of death (GameMetrics.KILLED_BY_WAREHOUSE, ...)
+	 */
+	public void clearAnts(int cause) {
+		this.updateDensity(-this.AntElements.size());
+		this.countKilled(cause, this.AntElements.size());
+		for (int i = 0; i < this.AntElements.size(); ++i) {
+			this.releaseAnt(this.AntElements.get(i));
+		}
+		this.AntElements.clear();
+		this.updateOccupancy(OccupancyMap.ANTS, false);
+	}
+
+	/**
+	 * Removes the AntEater from the field.
 	 * 
 	 * @author Horvath
 	 */
-	public synchronized void removeAntEater() {
+	public void removeAntEater() {
 		this.AntEaterObj = null;
+		this.updateOccupancy(OccupancyMap.ANTEATER, false);
 	}
 
 	/**
@@ -424,12 +677,10 @@ public class WorldField implements Serializable {
 	/**
 	 * Returns a List of containing ants on the given WorldField.
 	 * 
-	 * This method is thread-safe, due to possible multiple access. (by the View and the Model as well)
-	 * 
 	 * @author Demarcsek
 	 * @return this.AntElements an ArrayList containing the Ants of the field.
 	 */
-	public synchronized List<Ant> getAntList() {
+	public List<Ant> getAntList() {
 		return this.AntElements;
 	}
 
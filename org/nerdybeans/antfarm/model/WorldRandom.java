@@ -0,0 +1,80 @@
+package org.nerdybeans.antfarm.model;
+
+import java.util.Random;
+
+/**
+ * The random generator of the elements of a GameWorld driven by the model thread.
+ * It draws the same numbers as a java.util.Random with the same seed (it is the same
+ * linear congruential generator), but its state can be read and set, so a restored
+ * game draws the numbers the saved one would have drawn (see CheckpointStream).
+ *
+ * Not synchronized: it is used by the model thread only.
+ *
+ * @version 1.0
+ * @see GameWorld.getRandom()
+ **/
+class WorldRandom extends Random {
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The constants of java.util.Random.
+	 */
+	private static final long MULTIPLIER = 0x5DEECE66DL;
+	private static final long ADDEND = 0xBL;
+	private static final long MASK = (1L << 48) - 1;
+
+	/**
+	 * The 48 bits of the generator (set by setSeed(), called by the constructor of Random).
+	 */
+	private long State;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param seed the seed
+	 */
+	WorldRandom(long seed) {
+		super(seed);
+	}
+
+	/**
+	 * Restarts the generator from a seed, the same way as java.util.Random does.
+	 *
+	 * @param seed the seed
+	 */
+	@Override
+	public synchronized void setSeed(long seed) {
+		super.setSeed(seed);
+		this.State = (seed ^ MULTIPLIER) & MASK;
+	}
+
+	/**
+	 * Steps the generator and returns its upper bits, all the other methods draw from it.
+	 *
+	 * @param bits number of random bits needed
+	 * @return the random bits
+	 */
+	@Override
+	protected int next(int bits) {
+		this.State = (this.State * MULTIPLIER + ADDEND) & MASK;
+		return (int)(this.State >>> (48 - bits));
+	}
+
+	/**
+	 * Returns the state of the generator.
+	 *
+	 * @return State the 48 bits of the generator
+	 */
+	long getState() {
+		return this.State;
+	}
+
+	/**
+	 * Sets the state of the generator (e.g. a value returned by getState()).
+	 *
+	 * @param state the 48 bits of the generator
+	 */
+	void setState(long state) {
+		this.State = state & MASK;
+	}
+}
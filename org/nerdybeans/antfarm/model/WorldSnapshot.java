@@ -0,0 +1,229 @@
+package org.nerdybeans.antfarm.model;
+
+import org.nerdybeans.antfarm.auxiliary.Timer;
+import org.nerdybeans.antfarm.model.modelelements.Warehouse;
+import org.nerdybeans.antfarm.view.WorldElementView;
+
+/**
+ * An immutable copy of what the view shows of a Game: the topmost element, the ants,
+ * the anteater, the odours and the poison of every field, the loads of the weapons
+ * and the number of warehouses.
+ *
+ * The model is modified by the model thread only (see Timer.submit()). After a tick,
+ * it takes a snapshot and publishes it if the previous one has been read (see
+ * Game.publishSnapshot()), so the GUI reads a consistent state without locking the
+ * model, and the model does not wait for the GUI.
+ *
+ * Fields are indexed the same way as in the OccupancyMap.
+ *
+ * @version 1.0
+ * @see Game.getSnapshot()
+ **/
+public class WorldSnapshot {
+	/**
+	 * Map height (measured in # of fields).
+	 */
+	private final int Height;
+
+	/**
+	 * Map width (measured in # of fields).
+	 */
+	private final int Width;
+
+	/**
+	 * Tick count of the Timer when the snapshot was taken.
+	 */
+	private final long Tick;
+
+	/**
+	 * View of the permanent element of every field, or of its dynamic element if it has none.
+	 */
+	private final WorldElementView[] Elements;
+
+	/**
+	 * Number of ants on every field.
+	 */
+	private final int[] Ants;
+
+	/**
+	 * Is there an anteater on the field?
+	 */
+	private final boolean[] AntEaters;
+
+	/**
+	 * Intensities of the odours and of the poison of every field.
+	 */
+	private final float[] AntOdours, FoodOdours, Poisons;
+
+	/**
+	 * Loads of the weapons.
+	 */
+	private final int AntKillerLoad, AntOdourKillerLoad;
+
+	/**
+	 * Number of warehouses remaining.
+	 */
+	private final int Warehouses;
+
+	/**
+	 * Constructor, copies the state of a game. Should be called by the model thread only.
+	 *
+	 * @param game the game
+	 */
+	public WorldSnapshot(Game game) {
+		GameWorld world = game.getMap();
+		WorldField[][] map = world.getMap();
+		OccupancyMap occupancy = world.getOccupancy();
+		AntDensity density = world.getDensity();
+
+		this.Height = world.getHeight();
+		this.Width = world.getWidth();
+		this.Tick = (Timer.getInstance() != null) ? Timer.getInstance().getTickCount() : 0;
+
+		int size = this.Height * this.Width;
+		this.Elements = new WorldElementView[size];
+		this.Ants = new int[size];
+		this.AntEaters = new boolean[size];
+		this.AntOdours = new float[size];
+		this.FoodOdours = new float[size];
+		this.Poisons = new float[size];
+
+		for (int i = 0; i < this.Height; ++i) {
+			for (int j = 0; j < this.Width; ++j) {
+				WorldField field = map[i][j];
+				int index = i * this.Width + j;
+
+				if (field.getPermanentElement() != null) {
+					this.Elements[index] = field.getPermanentElement().getView();
+				} else if (field.getDynamicElement() != null) {
+					this.Elements[index] = field.getDynamicElement().getView();
+				}
+				if (occupancy.get(OccupancyMap.ANTS, index)) {
+					this.Ants[index] = (density != null) ? density.getCount(index) : field.getAntList().size();
+				}
+				this.AntEaters[index] = occupancy.get(OccupancyMap.ANTEATER, index);
+				this.AntOdours[index] = field.getAntOdour();
+				this.FoodOdours[index] = field.getFoodOdour();
+				this.Poisons[index] = field.getPoison();
+			}
+		}
+
+		this.AntKillerLoad = game.getAntKiller().getLoad();
+		this.AntOdourKillerLoad = game.getAntOdourKiller().getLoad();
+		this.Warehouses = Warehouse.NUM_OF_WAREHOUSES;
+	}
+
+	/**
+	 * Returns the map height.
+	 *
+	 * @return Height (measured in # of fields)
+	 */
+	public int getHeight() {
+		return this.Height;
+	}
+
+	/**
+	 * Returns the map width.
+	 *
+	 * @return Width (measured in # of fields)
+	 */
+	public int getWidth() {
+		return this.Width;
+	}
+
+	/**
+	 * Returns the tick count of the Timer when the snapshot was taken.
+	 *
+	 * @return Tick the tick count
+	 */
+	public long getTick() {
+		return this.Tick;
+	}
+
+	/**
+	 * Returns the view of the topmost element of a field (permanent, else dynamic).
+	 *
+	 * @param index index of the field
+	 * @return the view, null if the field is empty
+	 */
+	public WorldElementView getElement(int index) {
+		return this.Elements[index];
+	}
+
+	/**
+	 * Returns the number of ants on a field.
+	 *
+	 * @param index index of the field
+	 * @return the number of ants
+	 */
+	public int getAnts(int index) {
+		return this.Ants[index];
+	}
+
+	/**
+	 * Is there an anteater on a field?
+	 *
+	 * @param index index of the field
+	 * @return true if there is an anteater
+	 */
+	public boolean hasAntEater(int index) {
+		return this.AntEaters[index];
+	}
+
+	/**
+	 * Returns the intensity of the ant odour of a field.
+	 *
+	 * @param index index of the field
+	 * @return the intensity
+	 */
+	public float getAntOdour(int index) {
+		return this.AntOdours[index];
+	}
+
+	/**
+	 * Returns the intensity of the food odour of a field.
+	 *
+	 * @param index index of the field
+	 * @return the intensity
+	 */
+	public float getFoodOdour(int index) {
+		return this.FoodOdours[index];
+	}
+
+	/**
+	 * Returns the intensity of the poison of a field.
+	 *
+	 * @param index index of the field
+	 * @return the intensity
+	 */
+	public float getPoison(int index) {
+		return this.Poisons[index];
+	}
+
+	/**
+	 * Returns the load of the AntKiller.
+	 *
+	 * @return AntKillerLoad the load
+	 */
+	public int getAntKillerLoad() {
+		return this.AntKillerLoad;
+	}
+
+	/**
+	 * Returns the load of the AntOdourKiller.
+	 *
+	 * @return AntOdourKillerLoad the load
+	 */
+	public int getAntOdourKillerLoad() {
+		return this.AntOdourKillerLoad;
+	}
+
+	/**
+	 * Returns the number of warehouses remaining.
+	 *
+	 * @return Warehouses the number of warehouses
+	 */
+	public int getWarehouses() {
+		return this.Warehouses;
+	}
+}
@@ -0,0 +1,338 @@
+package org.nerdybeans.antfarm.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.nerdybeans.antfarm.model.modelelements.Ant;
+
+/**
+ * A rectangular block of WorldFields of a GameWorld.
+ *
+ * The map is partitioned into tiles, so the ants of different tiles can be moved
+ * in parallel by the TileScheduler. During a step each tile modifies only its own
+ * fields: an ant leaving the tile is removed from its field immediately, but it is
+ * put onto the target field (owned by a neighbouring tile) only when the target
+ * tile drains its border queues at the end of the tick.
+ *
+ * The odour deposited by the ants during a step is collected in the deposit queue
+ * of the tile, and it is added to the odour channels when the tile is drained, in
+ * the order of the moves. The ants of a tile are collected in a fixed order and they
+ * deposit onto the fields of their own tile, so the intensities are the same whether
+ * the tiles are stepped in parallel or one after the other, and no ant sees the
+ * deposits of the other ants of the same step.
+ *
+ * For the same reason every tile has its own random generator for its ants,
+ * reseeded before every step, and its own list of the actions to run after the step.
+ *
+ * @version 1.0
+ * @see TileScheduler
+ **/
+public class WorldTile {
+	/**
+	 * Queue of the ants handed over to a neighbouring tile.
+	 */
+	private static class BorderQueue {
+		private final ArrayList<Ant> Ants = new ArrayList<Ant>();
+		private final ArrayList<WorldField> Targets = new ArrayList<WorldField>();
+	}
+
+	/**
+	 * Queue of the odour deposited onto the fields of the tile during a step.
+	 */
+	private static class DepositQueue {
+		private OdourChannel[] Channels = new OdourChannel[64];
+		private int[] Indexes = new int[64];
+		private float[] Amounts = new float[64];
+		private int Count = 0;
+	}
+
+	/**
+	 * The world which contains this tile.
+	 */
+	private final GameWorld World;
+
+	/**
+	 * Index of the tile in GameWorld.getTiles().
+	 */
+	private final int Id;
+
+	/**
+	 * First row of the tile.
+	 */
+	private final int Row0;
+
+	/**
+	 * First column of the tile.
+	 */
+	private final int Col0;
+
+	/**
+	 * Number of rows of the tile.
+	 */
+	private final int Rows;
+
+	/**
+	 * Number of columns of the tile.
+	 */
+	private final int Cols;
+
+	/**
+	 * The neighbouring tiles, indexed by border ((row offset + 1) * 3 + column offset + 1).
+	 * Index 4 is the tile itself, missing neighbours are null.
+	 */
+	private final WorldTile[] Neighbours = new WorldTile[9];
+
+	/**
+	 * Outgoing border queues, indexed the same way as Neighbours.
+	 */
+	private final BorderQueue[] Outbox = new BorderQueue[9];
+
+	/**
+	 * The odour deposited during the current step.
+	 */
+	private final DepositQueue Deposits = new DepositQueue();
+
+	/**
+	 * The ants to be moved during the current step.
+	 */
+	private final ArrayList<Ant> Snapshot = new ArrayList<Ant>();
+
+	/**
+	 * True while the tile is moving its ants.
+	 */
+	private volatile boolean Stepping = false;
+
+	/**
+	 * Random generator of the ants of the tile (reseeded before every step).
+	 */
+	private final Random Generator = new Random();
+
+	/**
+	 * Actions requested by the fields of the tile during the phases (see TileScheduler.runAfterStep()).
+	 */
+	private final ArrayList<Runnable> Deferred = new ArrayList<Runnable>();
+
+	/**
+	 * Constructor.
+	 *
+	 * @param world the world which contains the tile
+	 * @param id index of the tile in the tile array of the world
+	 * @param row0 first row of the tile
+	 * @param col0 first column of the tile
+	 * @param rows number of rows
+	 * @param cols number of columns
+	 */
+	WorldTile(GameWorld world, int id, int row0, int col0, int rows, int cols) {
+		this.World = world;
+		this.Id = id;
+		this.Row0 = row0;
+		this.Col0 = col0;
+		this.Rows = rows;
+		this.Cols = cols;
+
+		for (int b = 0; b < 9; ++b) {
+			this.Outbox[b] = new BorderQueue();
+		}
+	}
+
+	/**
+	 * Sets the references to the neighbouring tiles.
+	 *
+	 * @param tiles every tile of the world in row-major order
+	 * @param tileRows number of tile rows
+	 * @param tileCols number of tile columns
+	 */
+	void linkNeighbours(WorldTile[] tiles, int tileRows, int tileCols) {
+		int tr = this.Id / tileCols;
+		int tc = this.Id % tileCols;
+
+		for (int dr = -1; dr <= 1; ++dr) {
+			for (int dc = -1; dc <= 1; ++dc) {
+				int r = tr + dr;
+				int c = tc + dc;
+				if (r >= 0 && r < tileRows && c >= 0 && c < tileCols) {
+					this.Neighbours[(dr + 1) * 3 + (dc + 1)] = tiles[r * tileCols + c];
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the index of the tile in GameWorld.getTiles().
+	 *
+	 * @return Id the index of the tile
+	 */
+	public int getId() {
+		return this.Id;
+	}
+
+	/**
+	 * Returns the random generator of the ants of the tile. Its sequence depends only on
+	 * the seed of the world, the number of steps and the tile, not on the thread.
+	 *
+	 * @return the generator
+	 */
+	public Random getRandom() {
+		return this.Generator;
+	}
+
+	/**
+	 * Queues an action to be run after the drain phase.
+	 *
+	 * @param action the action
+	 */
+	void defer(Runnable action) {
+		this.Deferred.add(action);
+	}
+
+	/**
+	 * Runs the queued actions, in the order they were queued.
+	 *
+	 * @return the number of actions run
+	 */
+	int runDeferred() {
+		int count = this.Deferred.size();
+		for (int k = 0; k < this.Deferred.size(); ++k) {
+			this.Deferred.get(k).run();
+		}
+		this.Deferred.clear();
+		return count;
+	}
+
+	/**
+	 * Collects the ants of the tile and moves each of them once.
+	 * Only the fields of this tile are modified, the ants leaving the tile are
+	 * put into the border queues.
+	 */
+	void step() {
+		this.Generator.setSeed(this.World.getSeed() ^ (this.World.getSteps() * 0x9E3779B97F4A7C15L) ^ (this.Id * 0xC2B2AE3D27D4EB4FL));
+		WorldField[][] map = this.World.getMap();
+		OccupancyMap occupancy = this.World.getOccupancy();
+		int width = this.World.getWidth();
+
+		// collect first: an ant should not be moved twice if it steps onto a field visited later
+		for (int i = this.Row0; i < this.Row0 + this.Rows; ++i) {
+			int from = i * width + this.Col0;
+			int to = from + this.Cols;
+
+			for (int index = occupancy.nextSetBit(OccupancyMap.ANTS, from, to); index >= 0;
+					index = occupancy.nextSetBit(OccupancyMap.ANTS, index + 1, to)) {
+				List<Ant> ants = map[i][index - i * width].getAntList();
+				// not addAll(): it would copy the list into a new array
+				for (int k = 0; k < ants.size(); ++k) {
+					this.Snapshot.add(ants.get(k));
+				}
+			}
+		}
+
+		this.Stepping = true;
+		try {
+			for (int k = 0; k < this.Snapshot.size(); ++k) {
+				this.Snapshot.get(k).makeNextMove();
+			}
+		} finally {
+			this.Stepping = false;
+			this.Snapshot.clear();
+		}
+	}
+
+	/**
+	 * Moves an ant from one of the fields of this tile to a neighbouring field.
+	 *
+	 * If the target field belongs to another tile and the tile is being stepped, the
+	 * ant is removed from its field now, and it is put onto the target field when the
+	 * target tile drains its border queues.
+	 *
+	 * @param ant the moving ant
+	 * @param from the current field of the ant (it belongs to this tile)
+	 * @param to the target field
+	 */
+	public void moveAnt(Ant ant, WorldField from, WorldField to) {
+		WorldTile target = this.World.getTileOf(to);
+
+		if ((target == this) || !this.Stepping) {
+			to.addAnt(ant);
+			from.removeAnt(ant);
+			return;
+		}
+
+		from.removeAnt(ant);
+
+		for (int b = 0; b < 9; ++b) {
+			if (this.Neighbours[b] == target) {
+				this.Outbox[b].Ants.add(ant);
+				this.Outbox[b].Targets.add(to);
+				return;
+			}
+		}
+
+		// should never happen: the neighbours of a field are always in a neighbouring tile
+		to.addAnt(ant);
+	}
+
+	/**
+	 * Adds odour to a field of this tile (e.g. an ant leaves its trail).
+	 *
+	 * If the tile is being stepped, the odour is queued and added when the tile is
+	 * drained, otherwise it is added immediately.
+	 *
+	 * @param channel the odour channel
+	 * @param index index of the field (it belongs to this tile)
+	 * @param amount the intensity to add
+	 */
+	public void deposit(OdourChannel channel, int index, float amount) {
+		if (!this.Stepping) {
+			channel.add(index, amount);
+			return;
+		}
+		DepositQueue queue = this.Deposits;
+		if (queue.Count == queue.Indexes.length) {
+			int length = queue.Count * 2;
+			queue.Channels = Arrays.copyOf(queue.Channels, length);
+			queue.Indexes = Arrays.copyOf(queue.Indexes, length);
+			queue.Amounts = Arrays.copyOf(queue.Amounts, length);
+		}
+		queue.Channels[queue.Count] = channel;
+		queue.Indexes[queue.Count] = index;
+		queue.Amounts[queue.Count] = amount;
+		queue.Count++;
+	}
+
+	/**
+	 * Adds the queued odour to the channels, in the order of the deposits.
+	 */
+	private void flushDeposits() {
+		DepositQueue queue = this.Deposits;
+		for (int k = 0; k < queue.Count; ++k) {
+			queue.Channels[k].add(queue.Indexes[k], queue.Amounts[k]);
+			queue.Channels[k] = null;
+		}
+		queue.Count = 0;
+	}
+
+	/**
+	 * Adds the odour deposited during the step to the fields of the tile, then puts
+	 * the ants handed over by the neighbouring tiles onto their target fields.
+	 * The border queues are processed in a fixed order, so the result does not depend
+	 * on the order in which the tiles were stepped.
+	 */
+	void drain() {
+		this.flushDeposits();
+		for (int b = 0; b < 9; ++b) {
+			WorldTile source = this.Neighbours[b];
+			if ((source == null) || (source == this)) {
+				continue;
+			}
+
+			// the queue of the source tile that faces this tile
+			BorderQueue queue = source.Outbox[8 - b];
+			for (int k = 0; k < queue.Ants.size(); ++k) {
+				queue.Targets.get(k).addAnt(queue.Ants.get(k));
+			}
+			queue.Ants.clear();
+			queue.Targets.clear();
+		}
+	}
+}
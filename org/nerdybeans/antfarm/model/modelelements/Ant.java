@@ -3,8 +3,10 @@ package org.nerdybeans.antfarm.model.modelelements;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Random;
-import org.nerdybeans.antfarm.auxiliary.Timer;
+import java.util.concurrent.ThreadLocalRandom;
+import org.nerdybeans.antfarm.model.GameMetrics;
 import org.nerdybeans.antfarm.model.Movable;
+import org.nerdybeans.antfarm.model.RoutingService;
 import org.nerdybeans.antfarm.model.WorldField;
 import org.nerdybeans.antfarm.view.WorldElementView;
 import org.nerdybeans.antfarm.view.WorldFieldView;
@@ -30,6 +32,18 @@ public class Ant extends Movable implements Serializable {
 	 */
 	public static final float OdourIncr = 0.1f;
 	
+	/**
+	 * Ants move at every PERIOD-th tick.
+	 * @see TileScheduler
+	 */
+	public static final int PERIOD = 5;
+	
+	/**
+	 * The warehouse an informed ant is heading to (chosen when it is needed).
+	 * @see RoutingService
+	 */
+	private transient Warehouse Target = null;
+	
 	/**
 	 * Returns the graphical representation of an Ant.
 	 * 
@@ -51,6 +65,17 @@ public class Ant extends Movable implements Serializable {
 		//System.err.println("[DEBUG#Ant.Ant()]");
 	}
 
+	/**
+	 * Ants are not subscribed to the Timer, they are moved by the TileScheduler
+	 * of their GameWorld.
+	 * 
+	 * @return false
+	 */
+	@Override
+	protected boolean isSelfScheduled() {
+		return false;
+	}
+
 	/**
 	 * 
 	 * This method defines the moving algorithm of the movable object, so it
@@ -142,51 +167,63 @@ public class Ant extends Movable implements Serializable {
 	}*/
 	
 	/**
-	 * This method defines the thread-safe moving algorithm of the movable object, so it
+	 * This method defines the moving algorithm of the movable object, so it
 	 * decides the very next position of the object in question.
 	 * 
-	 * This method is thread-safe, due to possible multiple access. (by the View and the Model as well)
+	 * No lock is taken: an ant is moved only by the tile owning its field (see WorldTile).
 	 * 
 	 * @author Demarcsek
 	 * @return The next position of the object on the game map
 	 */
-	protected synchronized WorldField getNextMove() {
-		Random r = new Random();
+	protected WorldField getNextMove() {
+		WorldField here = this.getField();
 		
+		// generator of the tile: the ants of different tiles are moved in parallel,
+		// and the moves should be reproducible (see GameWorld.setSeed())
+		Random r = (here.getWorld() != null) ? here.getWorld().getTileOf(here).getRandom() : ThreadLocalRandom.current();
+		ArrayList<WorldField> neighbours = here.getNeighbours();
 		WorldField next = null;
 		
-		// Weights to decide by
-		float weights[] = new float[] {		// 6 directions
-			0.0f, 0.0f, 0.0f,
-			0.0f, 0.0f, 0.0f
-		};
+		// Informed ants follow the shortest path to a warehouse, if there is one
+		if(here.getWorld() != null && here.getWorld().getRouting().isInformed()) {
+			int direction = this.getInformedDirection(here);
+			if(direction >= 0) {
+				this.nextField = neighbours.get(direction);
+				return this.nextField;
+			}
+		}
 		
-		// Array of indexes pointing to 'valid' (passable, not null) adjs
-		ArrayList<Integer> valids = new ArrayList<Integer>();
+		// Bit i is set if the neighbour in direction i is 'valid' (passable, not null)
+		int valids = here.getOccupancy().passableNeighbours(here.getIndex());
+		int numOfValids = Integer.bitCount(valids);
 		
-		// Calculating weights and filling valids
+		// Calculating weights, keeping track of the maximal one
+		// (no array: this runs for every ant on every step)
 		final float max_w = 10000f;
 		boolean no_random = false;
+		int maxindex = 0;
+		float maxweight = 0.0f;
 		for(int i = 0; i < 6; ++i) {
-			WorldField n = this.getField().getNeighbours().get(i);
-			weights[i] = -1.0f;
-			if(n != null)
-				if(n.isPassable()) {
-					valids.add(i);
-					if(n.getFoodOdour() >= Warehouse.MAX_FOOD_AMOUNT-0.001f) {	// if a warehouse is close, do not hesitate
-						weights[i] = max_w; no_random = true;
-					} else if(this.getCameFrom() == n) {						// avoid going back
-						weights[i] = -2f*max_w;				
-					} else													// consider fo and ao
-						weights[i] = r.nextFloat()*10f*(n.getAntOdour()*20f + n.getFoodOdour()*100f);
-				}
-			
+			float weight = -1.0f;
+			if((valids & (1 << i)) != 0) {
+				WorldField n = neighbours.get(i);
+				if(n.getFoodOdour() >= Warehouse.MAX_FOOD_AMOUNT-0.001f) {	// if a warehouse is close, do not hesitate
+					weight = max_w; no_random = true;
+				} else if(this.getCameFrom() == n) {						// avoid going back
+					weight = -2f*max_w;				
+				} else													// consider fo and ao
+					weight = r.nextFloat()*10f*(n.getAntOdour()*20f + n.getFoodOdour()*100f);
+			}
+			if(i == 0 || weight > maxweight) {
+				maxindex = i;
+				maxweight = weight;
+			}
 		}
 		
 		// If AO is quite small, just pick a random valid neighbour ... maybe :)
-		if((!no_random) && this.getField().getAntOdour() <= Ant.OdourIncr) {
+		if((!no_random) && here.getAntOdour() <= Ant.OdourIncr) {
 			if(r.nextInt(10)==0) {
-				this.nextField = this.getField().getNeighbours().get(valids.get(r.nextInt(valids.size())));
+				this.nextField = neighbours.get(nthDirection(valids, r.nextInt(numOfValids)));
 				return this.nextField;
 			}
 		}
@@ -195,22 +232,80 @@ public class Ant extends Movable implements Serializable {
 		
 		// In rare cases (10%), still pick randomly
 		if((!no_random) && r.nextInt(10)==1) {
-			this.nextField = this.getField().getNeighbours().get(valids.get(r.nextInt(valids.size())));
+			this.nextField = neighbours.get(nthDirection(valids, r.nextInt(numOfValids)));
 			return this.nextField;
 		}
 		
 		// Otherwise choose the maximal weighted neighbour
-		int maxindex = 0;
-		for(int i = 1; i < 6; ++i) {
-			if(weights[i] > weights[maxindex]) {
-				maxindex = i;
-			}
-		}
-		next = this.getField().getNeighbours().get(maxindex);
+		next = neighbours.get(maxindex);
 		this.nextField = next;
 		return this.nextField;
 		
 	}
+	
+	/**
+	 * Prepares a dead ant for reuse: it is detached from the map and forgets its moves.
+	 * 
+	 * @see AntPool
+	 */
+	public void reset() {
+		this.setField(null);
+		this.cameFrom = null;
+		this.nextField = null;
+		this.ForcedDirection = -1;
+		this.Target = null;
+	}
+	
+	/**
+	 * Returns the warehouse the ant is heading to, if it is informed.
+	 * 
+	 * @return Target the warehouse, null if it has none yet
+	 */
+	public Warehouse getTarget() {
+		return this.Target;
+	}
+	
+	/**
+	 * Sets the warehouse the ant is heading to (e.g. a saved game is restored).
+	 * 
+	 * @param target the warehouse, null: the nearest one is chosen when it is needed
+	 */
+	public void setTarget(Warehouse target) {
+		this.Target = target;
+	}
+	
+	/**
+	 * Looks up the next step towards the target warehouse of the ant in the shortest
+	 * path trees of the world, choosing the nearest warehouse as the target if the ant
+	 * has none yet (or its target has been emptied).
+	 * 
+	 * @param here the field of the ant
+	 * @return the direction of the next field, -1 if no warehouse can be reached
+	 */
+	private int getInformedDirection(WorldField here) {
+		RoutingService routing = here.getWorld().getRouting();
+		int direction = (this.Target != null) ? routing.getNextDirection(this.Target, here.getIndex()) : -1;
+		if(direction < 0) {
+			this.Target = routing.getNearest(here.getIndex());
+			if(this.Target != null)
+				direction = routing.getNextDirection(this.Target, here.getIndex());
+		}
+		return direction;
+	}
+	
+	/**
+	 * Returns the direction belonging to the n-th set bit of a neighbour mask.
+	 * 
+	 * @param mask neighbour mask (bit i belongs to the neighbour in direction i)
+	 * @param n which set bit is needed (counted from 0)
+	 * @return the direction (neighbour index) of the n-th set bit
+	 * @see OccupancyMap
+	 */
+	private static int nthDirection(int mask, int n) {
+		for(int i = 0; i < n; ++i)
+			mask &= mask - 1;		// drop the lowest set bit
+		return Integer.numberOfTrailingZeros(mask);
+	}
 
 	/**
 	 * Calls getNextMove() and conducts the actual move by deleting the object
@@ -218,26 +313,23 @@ public class Ant extends Movable implements Serializable {
 	 * getNextMove()). It is also responsible for keeping references consistent
 	 * between the concerned WorldField and WorldElement objects.
 	 * 
-	 * This method is thread-safe, due to possible multiple access. (by the View and the Model as well)
+	 * No lock is taken: an ant is moved only by the tile owning its field (see WorldTile).
 	 *
 	 * @author Horvath, Demarcsek
 	 */
 	@Override
-	public synchronized void makeNextMove() {		
+	public void makeNextMove() {		
 		/**
 		 * Check whether it is a poisoned field. If so then remove himself.
 		**/
 		if(this.getField() == null) {
-			Timer.getInstance().removeSubscriber(this);
 			return;
 		}
 		
 		float poison = this.getField().getPoison();
 		if (poison > 0) {
 			//System.err.println("POSION DETECTED");
-			this.getField().removeAnt(this);
-			this.setField(null);
-			Timer.getInstance().removeSubscriber(this);
+			this.getField().killAnt(this, GameMetrics.KILLED_BY_POISON);
 			return;
 		}
 		
@@ -265,17 +357,15 @@ public class Ant extends Movable implements Serializable {
 			
 		
 		// if we stay on this field, do not move!
-		synchronized(this.getField().getAntList()) {
-			if(next == null) {
-				this.getField().removeAnt(this);
-				//this.setField(null);
-				//Timer.getInstance().removeSubscriber(this);
-			} else if ((next != this.getField())) {
-				this.getField().setAntOdour(this.getField().getAntOdour() + Ant.OdourIncr);
-				next.addAnt(this);
-				WorldField previousField = this.getCameFrom();
-				previousField.removeAnt(this);
-			}
+		if(next == null) {
+			this.getField().killAnt(this, GameMetrics.KILLED_OTHER);
+			//this.setField(null);
+			//Timer.getInstance().removeSubscriber(this);
+		} else if ((next != this.getField())) {
+			WorldField here = this.getField();
+			here.depositAntOdour(Ant.OdourIncr);
+			// the tile hands the ant over if it leaves the tile
+			here.getWorld().getTileOf(here).moveAnt(this, here, next);
 		}
 	}
 
@@ -305,7 +395,7 @@ public class Ant extends Movable implements Serializable {
 	}
 
 	/**
-	 * Respond to every 2nd Tick.
+	 * Respond to every PERIOD-th Tick.
 	 * 
 	 * @author Demarcsek
 	 * @return how often should the object respond
@@ -313,7 +403,7 @@ public class Ant extends Movable implements Serializable {
 	@Override
 	public int getPeriod() {
 		//System.out.println("[DEBUG#Ant.getPeriod()] tick = " + Timer.getInstance().getTick());
-		return 5;
+		return PERIOD;
 	}
 
 }
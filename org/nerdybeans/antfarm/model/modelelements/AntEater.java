@@ -2,14 +2,16 @@ package org.nerdybeans.antfarm.model.modelelements;
 
 import java.io.Serializable;
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.Iterator;
 import java.util.ListIterator;
 import java.util.Random;
-import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
 import org.nerdybeans.antfarm.auxiliary.Timer;
-import org.nerdybeans.antfarm.model.Irreplaceable;
+import org.nerdybeans.antfarm.model.AntDensity;
+import org.nerdybeans.antfarm.model.AntEnterListener;
+import org.nerdybeans.antfarm.model.GameMetrics;
 import org.nerdybeans.antfarm.model.Movable;
+import org.nerdybeans.antfarm.model.OccupancyMap;
 import org.nerdybeans.antfarm.model.Replaceable;
 import org.nerdybeans.antfarm.model.WorldField;
 import org.nerdybeans.antfarm.view.WorldElementView;
@@ -18,10 +20,18 @@ import org.nerdybeans.antfarm.view.viewelements.AntEaterView;
 /**
  * Represents an ant eater in the game model.
  * 
+ * The ants are eaten when the AntEater arrives at their field, or when they
+ * enter the field of the AntEater. The AntEater heads to the densest region
+ * around it, looked up in the AntDensity of the world.
+ * 
+ * No lock is taken: the AntEater is moved by the model thread (it is subscribed to
+ * the Timer), while the ants entering its field are eaten by the tile owning the
+ * field, and the tiles are never stepped at the same time as the subscribers.
+ * 
  * @author Demarcsek, Horvath
- * @version 1.5
+ * @version 1.6
  **/
-public class AntEater extends Movable implements Serializable {
+public class AntEater extends Movable implements Serializable, AntEnterListener {
 	/**
 	 * The graphical representation of an AntEater on the WorldField in the View section of MVC.
 	 */
@@ -67,25 +77,42 @@ public class AntEater extends Movable implements Serializable {
 	/**
 	 * Consumes the given Target ant, if the AntEater is hungry.
 	 * 
-	 * This method is thread-safe, due to possible multiple access. (by the View and the Model as well)
+	 * Called by the tile owning the field of the AntEater, when an ant moves onto it
+	 * (see Ant.makeNextMove()) or is handed over to it by a neighbouring tile (see WorldTile.drain()).
 	 * 
 	 * @author Demarcsek
 	 * @param Target the ant that should be consumed.
 	 * @see AntLion.interact().
 	 */
-	public synchronized void eatAnt(Ant Target) {
+	public void eatAnt(Ant Target) {
 		boolean hungry = this.isHungry();
 		if (hungry == false) {
 			return;
 		}
 
-		this.getField().removeAnt(Target);
-		Timer.getInstance().removeSubscriber(Target);
-		//Timer.getInstance().removeSubscriber(Target);
+		this.getField().killAnt(Target, GameMetrics.KILLED_BY_ANTEATER);
 
 		this.consumed += 1;
 	}
 
+	/**
+	 * Eats every ant on the field of the AntEater (called by WorldField.addAntEater()).
+	 */
+	public void eatAnts() {
+		this.consumed += this.getField().getAntList().size();
+		this.getField().clearAnts(GameMetrics.KILLED_BY_ANTEATER);
+	}
+
+	/**
+	 * Eats the ant which has just entered the field of the AntEater.
+	 * 
+	 * @param ant the ant which has entered the field
+	 */
+	@Override
+	public void onAntEntered(Ant ant) {
+		this.eatAnt(ant);
+	}
+
 	/**
 	 * Tells whether the AntEater is hungry or not.
 	 * 
@@ -114,60 +141,62 @@ public class AntEater extends Movable implements Serializable {
 	 * This method defines the moving algorithm of the movable object, so it
 	 * decides the very next position of the object in question.
 	 * 
-	 * This method is thread-safe, due to possible multiple access. (by the View and the Model as well)
+	 * The first try is the direction towards the most ants (if there are any around),
+	 * the further tries are random.
 	 * 
 	 * @author Horvath
 	 * @return The next position of the object on the game map
 	 */
 	@Override
-	public synchronized WorldField getNextMove() {
-		Random randomGenerator = new Random(); // for deciding the direction
+	public WorldField getNextMove() {
+		WorldField here = this.getField();
+		// for deciding the direction
+		Random randomGenerator = (here.getWorld() != null) ? here.getWorld().getRandom() : ThreadLocalRandom.current();
 		boolean successMove = false; // check whether the movement was successful
 
-		ArrayList<WorldField> neighbours = this.getField().getNeighbours();
-		Set<Integer> triedNeighbours = new HashSet<Integer>(); // set of the tried neigbour indexes.
-		int triedSize = triedNeighbours.size();
+		ArrayList<WorldField> neighbours = here.getNeighbours();
+		OccupancyMap occupancy = here.getOccupancy();
+		int free = occupancy.freeNeighbours(here.getIndex()); // passable and there is no (warehouse or antlion) there
+		int pebbles = occupancy.neighbourMask(OccupancyMap.PEBBLE, here.getIndex());
+		int tried = 0; // bit i is set if the neighbour in direction i has been tried
 		int numberOfTries = 0;
+		int hunting = this.getHuntingDirection(here, free | pebbles);
 
 		WorldField previousField = this.cameFrom;
 		this.nextField = null;
 
-		while ((triedSize < 6) && (numberOfTries != MAX_TRIES)
+		while ((Integer.bitCount(tried) < 6) && (numberOfTries != MAX_TRIES)
 				&& (successMove == false)) {
 			int i = randomGenerator.nextInt(6); // generate a random index:
 												// [0,6)
+			if ((numberOfTries == 0) && (hunting >= 0))
+				i = hunting;
 			if (this.ForcedDirection >= 0)
 				i = this.ForcedDirection;
 
 			nextField = neighbours.get(i);
-			triedNeighbours.add(i); // add to the tried neighbour indexes
+			tried |= 1 << i; // add to the tried neighbour indexes
 			++numberOfTries; // for security reasons, not to get into an endless loop
 
 			if ((nextField != null) && (nextField != previousField)) {
-				boolean passable = nextField.isPassable();
-				Irreplaceable stationary = nextField.getPermanentElement();
-
-				// passable and there is no (warehouse or antlion) there
-				if ((passable == true) && (stationary == null)) {
+				if ((free & (1 << i)) != 0) {
 					successMove = true;
-				} else {
+				} else if ((pebbles & (1 << i)) != 0) {
 					Replaceable pebble = nextField.getDynamicElement();
+					pebble.interact();
 
-					if (pebble != null) {
-						pebble.interact();
-
-						// check whether the pebble could move forward
-						pebble = nextField.getDynamicElement();
-						if (pebble == null) {
-							successMove = true;
-						}
+					// check whether the pebble could move forward
+					free = occupancy.freeNeighbours(here.getIndex());
+					pebbles = occupancy.neighbourMask(OccupancyMap.PEBBLE, here.getIndex());
+					if ((pebbles & (1 << i)) == 0) {
+						successMove = true;
 					}
 				}
 			}
 		}
 
 		// could not move forward, so move back.
-		if ((triedSize == 6) && (successMove == false)) {
+		if ((Integer.bitCount(tried) == 6) && (successMove == false)) {
 			nextField = this.cameFrom; // AntEater moves back.
 		} else if (numberOfTries == MAX_TRIES) {
 			nextField = this.getField(); // if an AntEater was created surrounded by a lots of unmovable elements, or a loads of pebbles.
@@ -176,18 +205,69 @@ public class AntEater extends Movable implements Serializable {
 		return nextField;
 	}
 
+	/**
+	 * Picks the direction that leads closest to the densest block of ants
+	 * around the AntEater, in constant time.
+	 * 
+	 * @param here the field of the AntEater
+	 * @param allowed bit i is set if the AntEater may try to move in direction i
+	 * @return the direction, -1 if there are no ants around
+	 */
+	private int getHuntingDirection(WorldField here, int allowed) {
+		AntDensity density = here.getWorld().getDensity();
+		int target = (density != null) ? density.findDensest(here.getIndex()) : -1;
+		if (target < 0) {
+			return -1;
+		}
+
+		int width = here.getWorld().getWidth();
+		OccupancyMap occupancy = here.getOccupancy();
+		int best = -1;
+		int bestDistance = Integer.MAX_VALUE;
+		for (int i = 0; i < 6; ++i) {
+			int n = occupancy.getNeighbour(here.getIndex(), i);
+			if (((allowed & (1 << i)) == 0) || (n < 0) || (here.getNeighbours().get(i) == this.cameFrom)) {
+				continue;
+			}
+			int distance = hexDistance(n / width, n % width, target / width, target % width);
+			if (distance < bestDistance) {
+				bestDistance = distance;
+				best = i;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Returns the number of steps between two fields of the map
+	 * (the odd rows are pushed half a field right).
+	 * 
+	 * @param r1 row of the first field
+	 * @param c1 column of the first field
+	 * @param r2 row of the second field
+	 * @param c2 column of the second field
+	 * @return the distance of the fields in steps, ignoring the obstacles
+	 */
+	private static int hexDistance(int r1, int c1, int r2, int c2) {
+		// convert to cube coordinates
+		int x1 = c1 - (r1 - (r1 & 1)) / 2;
+		int x2 = c2 - (r2 - (r2 & 1)) / 2;
+		int dx = x1 - x2;
+		int dz = r1 - r2;
+		int dy = -dx - dz;
+		return Math.max(Math.abs(dx), Math.max(Math.abs(dy), Math.abs(dz)));
+	}
+
 	/**
 	 * Calls getNextMove() and conducts the actual move by deleting the object
 	 * from its current position and adding it to the next one (returned by
 	 * getNextMove()). It is also responsible for keeping references consistent
 	 * between the concerned WorldField and WorldElement objects.
 	 * 
-	 * This method is thread-safe, due to possible multiple access. (by the View and the Model as well)
-	 * 
 	 * @author Demarcsek, Horvath
 	 */
 	@Override
-	public synchronized void makeNextMove() {
+	public void makeNextMove() {
 		// decide whether it is hungry
 		if (this.isHungry() == false) {
 			AntEaterSpawnPoint.decreaseAe();
@@ -198,19 +278,8 @@ public class AntEater extends Movable implements Serializable {
 			return;
 		}
 
-		// eat ants, it works just in this way: Iterator.remove();
-		// @see Java docs about Iterator & remove.
-		
-		synchronized(this.getField().getAntList()) {
-			/*Iterator<Ant> iter = this.getField().getAntList().iterator();
-			while ((iter.hasNext()) && (this.isHungry())) {
-				Ant CurrEnt = iter.next();
-				//System.out.println("[DEBUG#AntEater.makeNextMove] Ant detected, killing him softly...");
-				this.eatAnt(CurrEnt);
-			}*/
-			this.consumed += this.getField().getAntList().size();
-			this.getField().getAntList().clear();
-		}
+		// the ants of the field have already been eaten: on arrival (eatAnts())
+		// or when they entered (onAntEntered())
 
 		// move to next field and remove itself from the field it was on
 		// if(this.ForcedDirection >= 0) {
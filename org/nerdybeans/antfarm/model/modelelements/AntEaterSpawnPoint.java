@@ -50,6 +50,32 @@ public class AntEaterSpawnPoint extends Irreplaceable implements Serializable {
 			aes_created--;
 	}
 	
+	/**
+	 * Forgets the AntEaters of the previous game (e.g. a new game has been started).
+	 */
+	public static void reset() {
+		aes_created = 0;
+	}
+	
+	/**
+	 * Returns the number of AntEaters on the map, as counted by the spawn points.
+	 * 
+	 * @return aes_created the number of AntEaters
+	 */
+	public static int getAntEaters() {
+		return aes_created;
+	}
+	
+	/**
+	 * Sets the number of AntEaters on the map (e.g. a saved game is restored).
+	 * 
+	 * @param antEaters the number of AntEaters
+	 */
+	public static void setAntEaters(int antEaters) {
+		assert antEaters >= 0;
+		aes_created = antEaters;
+	}
+	
 	
 	/**
 	 * Returns the graphical representation of an AntEaterSpawnPoint.
@@ -85,7 +111,7 @@ public class AntEaterSpawnPoint extends Irreplaceable implements Serializable {
 		if(aes_created >= MAX_ANTEATERS)
 			return;
 		
-		Random randomGenerator = new Random();
+		Random randomGenerator = this.getField().getWorld().getRandom();
 		if(randomGenerator.nextInt(50) == 42) { // not too often :)
 			AntEater newAntEater = new AntEater();
 			this.getField().addAntEater(newAntEater);
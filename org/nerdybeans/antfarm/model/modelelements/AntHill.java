@@ -2,13 +2,12 @@ package org.nerdybeans.antfarm.model.modelelements;
 
 import java.io.Serializable;
 import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.Random;
-import java.util.Set;
+import java.util.Arrays;
 
 import org.nerdybeans.antfarm.auxiliary.Timer;
 import org.nerdybeans.antfarm.model.GameWorld;
 import org.nerdybeans.antfarm.model.Irreplaceable;
+import org.nerdybeans.antfarm.model.OccupancyMap;
 import org.nerdybeans.antfarm.model.WorldField;
 import org.nerdybeans.antfarm.view.WorldElementView;
 import org.nerdybeans.antfarm.view.viewelements.AntHillView;
@@ -17,10 +16,12 @@ import org.nerdybeans.antfarm.view.viewelements.AntHillView;
  * Represents an ant hill in the game model
  * 
  * AntHill is the spawn point of the ants, they come from the AntHill and move
- * towards warehouses.
+ * towards warehouses. The number of ants spawned at once (the spawn rate) and
+ * the number of ants the AntHill may create are set per AntHill, and they are
+ * saved with it (see CheckpointStream), as is the number of ants created so far.
  * 
  * @author Demarcsek, Horvath, Szabo
- * @version 1.2
+ * @version 1.3
  **/
 public class AntHill extends Irreplaceable implements Serializable {
 	/**
@@ -31,18 +32,90 @@ public class AntHill extends Irreplaceable implements Serializable {
 	/**
 	 * How many Ants have been created by the AntHill?
 	 */
-	private static int ants_created = 0;
+	private int ants_created = 0;
 	
 	/**
-	 * The maximal number of Ants can be created by the AntHill.
+	 * The default maximal number of Ants can be created by the AntHill.
 	 */
 	public static final int MAX_ANTS = 1200;
 	
 	/**
-	 * Resets the number of Ants have been created by the AntHill.
+	 * The default number of Ants created at once.
+	 */
+	public static final int DEFAULT_SPAWN_RATE = 1;
+	
+	/**
+	 * The maximal number of Ants can be created by the AntHill.
+	 */
+	private volatile int max_ants = MAX_ANTS;
+	
+	/**
+	 * The number of Ants created at once.
+	 */
+	private volatile int spawn_rate = DEFAULT_SPAWN_RATE;
+	
+	/**
+	 * Sets the maximal number of Ants can be created by the AntHill (e.g. for large colonies).
+	 * 
+	 * @param maxAnts the maximal number of Ants
+	 */
+	public void setMaxAnts(int maxAnts) {
+		assert maxAnts >= 0;
+		this.max_ants = maxAnts;
+	}
+	
+	/**
+	 * Returns the maximal number of Ants can be created by the AntHill.
+	 * 
+	 * @return max_ants the maximal number of Ants
+	 */
+	public int getMaxAnts() {
+		return this.max_ants;
+	}
+	
+	/**
+	 * Sets the number of Ants created at once.
+	 * 
+	 * @param spawnRate the number of Ants created by one interaction
+	 */
+	public void setSpawnRate(int spawnRate) {
+		assert spawnRate >= 1;
+		this.spawn_rate = spawnRate;
+	}
+	
+	/**
+	 * Returns the number of Ants created at once.
+	 * 
+	 * @return spawn_rate the number of Ants created by one interaction
+	 */
+	public int getSpawnRate() {
+		return this.spawn_rate;
+	}
+	
+	/**
+	 * Resets the number of Ants have been created by the AntHill (e.g. a warehouse has been emptied).
+	 */
+	public void reset() {
+		this.ants_created = 0;
+	}
+	
+	/**
+	 * Returns the number of Ants have been created by the AntHill (since the last reset).
+	 * 
+	 * @return ants_created the number of Ants
 	 */
-	public static void reset() {
-		ants_created = 0;
+	public int getAntsCreated() {
+		return this.ants_created;
+	}
+	
+	/**
+	 * Sets the number of Ants have been created by the AntHill (e.g. a saved game is restored).
+	 * 
+	 * @param antsCreated the number of Ants
+	 */
+	public void setAntsCreated(int antsCreated) {
+		assert antsCreated >= 0;
+		this.ants_created = antsCreated;
 	}
 	
 	/**
@@ -56,11 +129,6 @@ public class AntHill extends Irreplaceable implements Serializable {
 		return AntHill.View;
 	}
 	
-	/**
-	 * The maximal number of tries for placing the ant on a neighbouring field.
-	 */
-	private static final int MAX_TRIES = 42;
-	
 	/**
 	 * Default constructor
 	 * @author Szabo
@@ -70,77 +138,82 @@ public class AntHill extends Irreplaceable implements Serializable {
 	}
 
 	/**
-	 * Creates a new Ant object and returns it.
+	 * The Ants of the current spawn (reused between the spawns).
+	 */
+	private transient Ant[] batch;
+
+	/**
+	 * Creates Ant objects: the dead Ants of the AntPool of the world are reused,
+	 * new ones are created only if the pool is empty.
 	 * 
 	 * @author Horvath
-	 * @return The brand new Ant object
+	 * @param count number of Ants needed
+	 * @return an array whose first count elements are the Ants
+	 * @see AntPool
 	 */
-	private Ant createAnt() {
-		Ant tmp = new Ant();
-
-		return tmp;
+	private Ant[] createAnts(int count) {
+		if (this.batch == null || this.batch.length < count) {
+			this.batch = new Ant[count];
+		}
+		this.getField().getWorld().getAntPool().acquire(this.batch, count);
+		return this.batch;
 	}
-
-	
 	
 	/**
 	 * Conducts proper interactions with the neighboring elements on the map.
 	 * 
-	 * In this case, the proper interaction means creating a new Ant object by
-	 * calling createAnt and placing it onto a neighbouring field. That
-	 * particular field is selected in a random manner.
+	 * In this case, the proper interaction means creating spawn_rate new Ant objects
+	 * (at most up to max_ants) and placing them onto the passable neighbouring fields.
+	 * The free neighbours are looked up once, the ants are dealt out evenly among
+	 * them starting at a random one, and each field takes its ants in one step.
 	 * 
-	 * The crucial part of this method is thread-safe, due to possible multiple access. 
-	 * (by the View and the Model as well)
+	 * Called by onTick() only: the AntHill subscribes itself to the Timer (period 10),
+	 * so it runs on the thread which ticks the Timer, the model thread (or a headless
+	 * driver ticking the Timer instead of it, e.g. the Prototype or a benchmark). The
+	 * subscribers of a tick are notified one after the other, so it never runs while the
+	 * TileScheduler of the world moves the ants, and it may draw from the generator of the world.
 	 * 
 	 * @author Horvath
 	 */
 	@Override
 	public void interact() {
-		Random randomGenerator = new Random(); // randomGenerator to decide the direction
-		/*if(randomGenerator.nextInt(7) % 2 != 0)
-			return;*/
+		int count = Math.min(this.spawn_rate, this.max_ants - this.ants_created);
+		if (count <= 0) {
+			return;
+		}
 		
-		if(ants_created < MAX_ANTS) {		
-			Ant ant = this.createAnt();
-	
-			ArrayList<WorldField> neighbours = this.getField().getNeighbours();
-			Set<Integer> triedNeighbours = new HashSet<Integer>(); // set of the tried neigbour indexes.
-			int triedSize = triedNeighbours.size();
-			int numberOfTries = 0;
-	
-			
-			boolean successPlace = false; // check whether the placement was successful
-	
-			while ((triedSize < 6) && (numberOfTries != MAX_TRIES) && (successPlace == false)) {
-				int i = randomGenerator.nextInt(6); // generate a random index: [0,6)
-	
-				WorldField nextField = neighbours.get(i);
-				triedNeighbours.add(i); // add to the tried neighbour indexes
-				++numberOfTries; // for security reasons, not to get into an endless loop
-				
-				// if the nextField exists and passable
-				if (nextField != null) {
-	
-					boolean passable = nextField.isPassable();
-	
-					if (passable == true) {
-						// ant cannot move back to the anthill, so its cameFrom
-						// field = nextField also.
-						// ant.setField(nextField); // already in WorldField.addAnt
-						synchronized(nextField.getAntList()) {
-							nextField.addAnt(ant);
-						}
-						// end the loop
-						successPlace = true;
-						ants_created++;
-					} else {
-						ant = null;
-					}
-					
-				}
+		WorldField here = this.getField();
+		ArrayList<WorldField> neighbours = here.getNeighbours();
+		OccupancyMap occupancy = here.getOccupancy();
+		int free = occupancy.passableNeighbours(here.getIndex()); // bit i is set if the neighbour in direction i is passable
+		int directions = Integer.bitCount(free);
+		if (directions == 0) {
+			return;
+		}
+		
+		Ant[] ants = this.createAnts(count);
+		
+		// deal the ants out, starting at a random free direction
+		int start = here.getWorld().getRandom().nextInt(directions);
+		int remaining = free;
+		for (int s = 0; s < start; ++s) {
+			remaining &= remaining - 1;		// drop the lowest set bit
+		}
+		int offset = 0;
+		for (int s = 0; s < directions && offset < count; ++s) {
+			if (remaining == 0) {
+				remaining = free;		// wrap around
 			}
+			int direction = Integer.numberOfTrailingZeros(remaining);
+			remaining &= remaining - 1;
+			
+			int share = count / directions + ((s < count % directions) ? 1 : 0);
+			neighbours.get(direction).addAnts(ants, offset, offset + share);
+			offset += share;
 		}
+		Arrays.fill(ants, 0, count, null);
+		this.ants_created += count;
+		here.getWorld().getMetrics().antsSpawned(count);
 	}
 
 	/**
@@ -1,10 +1,10 @@
 package org.nerdybeans.antfarm.model.modelelements;
 
 import java.io.Serializable;
-import java.util.Iterator;
 import java.util.ListIterator;
 
-import org.nerdybeans.antfarm.auxiliary.Timer;
+import org.nerdybeans.antfarm.model.AntEnterListener;
+import org.nerdybeans.antfarm.model.GameMetrics;
 import org.nerdybeans.antfarm.model.Irreplaceable;
 import org.nerdybeans.antfarm.view.WorldElementView;
 import org.nerdybeans.antfarm.view.viewelements.AntLionView;
@@ -15,10 +15,12 @@ import org.nerdybeans.antfarm.view.viewelements.AntLionView;
  * extends the Irreplaceable class) which can eat the ant if they are on the
  * same field.
  * 
+ * The antlion is not subscribed to the Timer: it eats the ants when they enter its field.
+ * 
  * @author Demarcsek, Horvath, Szabo
- * @version 1.2
+ * @version 1.3
  **/
-public class AntLion extends Irreplaceable implements Serializable {
+public class AntLion extends Irreplaceable implements Serializable, AntEnterListener {
 	/**
 	 * The graphical representation of an AntLion on the WorldField in the View section of MVC.
 	 */
@@ -47,20 +49,38 @@ public class AntLion extends Irreplaceable implements Serializable {
 	 * Removes the ant from the field.
 	 * 
 	 * @author Horvath
-	 * @see AntLion.interact().
+	 * @see AntLion.onAntEntered().
 	 * @param Target which ant should be removed.
 	 */
-	@Deprecated
 	private void eatAnt(Ant Target) {
-		this.getField().removeAnt(Target);
+		this.getField().killAnt(Target, GameMetrics.KILLED_BY_ANTLION);
+	}
+
+	/**
+	 * Eats the ant which has just entered the field of the antlion.
+	 * 
+	 * @param ant the ant which has entered the field
+	 */
+	@Override
+	public void onAntEntered(Ant ant) {
+		this.eatAnt(ant);
+	}
+
+	/**
+	 * The antlion is driven by the ants entering its field, not by the Timer.
+	 * 
+	 * @return false
+	 */
+	@Override
+	protected boolean isSelfScheduled() {
+		return false;
 	}
 
 	/**
 	 * Conducts the antlion's standard interaction that includes eating ants on
 	 * its field.
 	 * 
-	 * The critical part of this method is thread-safe, due to possible multiple access. 
-	 * (by the View and the Model as well)
+	 * Called by the tile owning the field of the antlion, no lock is taken.
 	 * 
 	 * @author Demarcsek, Horvath, Szabo
 	 */
@@ -72,14 +92,8 @@ public class AntLion extends Irreplaceable implements Serializable {
 			this.eatAnt(iterator);
 		}*/
 				
-		synchronized(this.getField().getAntList()) {
-			Iterator<Ant> iter = this.getField().getAntList().iterator();
-			while (iter.hasNext()) {
-				Ant CurrEnt = iter.next();
-				Timer.getInstance().removeSubscriber(CurrEnt);
-			}
-			this.getField().getAntList().clear();
-		}
+		// the ants are not subscribed to the Timer, removing them from the field is enough
+		this.getField().clearAnts(GameMetrics.KILLED_BY_ANTLION);
 		
 	}
 
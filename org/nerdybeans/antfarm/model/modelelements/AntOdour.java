@@ -1,6 +1,7 @@
 package org.nerdybeans.antfarm.model.modelelements;
 
 import org.nerdybeans.antfarm.model.Odour;
+import org.nerdybeans.antfarm.model.OdourChannel;
 import org.nerdybeans.antfarm.model.WorldField;
 import org.nerdybeans.antfarm.view.WorldElementView;
 
@@ -8,8 +9,11 @@ import org.nerdybeans.antfarm.view.WorldElementView;
 /**
  * This class represents the Odour of the Ant that is left behind.
  * 
+ * The intensity is stored in the ant odour channel of the GameWorld, which
+ * decreases it by Ant.OdourIncr in every PERIOD ticks.
+ * 
  * @author Demarcsek, Horvath, Szabo
- * @version 1.2
+ * @version 1.3
  **/
 public class AntOdour extends Odour {
 	/**
@@ -17,6 +21,11 @@ public class AntOdour extends Odour {
 	 */
 	public static int LIMIT = 20;
 	
+	/**
+	 * The period of the decay.
+	 */
+	public static final int PERIOD = 16;
+	
 	/**
 	 * The graphical representation of an AntOdour on the WorldField in the View section of MVC.
 	 * However AntOdour does not have any graphical representation at the moment in the game.
@@ -55,23 +64,17 @@ public class AntOdour extends Odour {
 	}
 	
 	/**
-	 * Reduces the Intensity by one, in case the Period is correct.
+	 * Returns the ant odour channel of the world.
 	 * 
-	 * @author Szabo
-	 * @Param TickEventArgs Current timer tick value;
+	 * @return the channel, null if the field is not part of a world
 	 */
-	public void onTick(Object TickEventArgs) {
-		if(this.intensity > LIMIT) {
-			this.intensity = 0.0f;
-			return;
+	@Override
+	protected OdourChannel getChannel() {
+		WorldField field = this.getField();
+		if ((field == null) || (field.getWorld() == null)) {
+			return null;
 		}
-		// Real-world behaviour
-		 if(this.intensity > 0.0f)
-		 	this.intensity -= Ant.OdourIncr;
-		 else
-			 this.intensity = 0.0f;
-		// Ignored in 'Prototype test environment'
-		
+		return field.getWorld().getAntOdourChannel();
 	}
 	
 	/**
@@ -80,6 +83,6 @@ public class AntOdour extends Odour {
 	 * @return how often should the object respond
 	 */
 	public int getPeriod() {
-		return 16;
+		return AntOdour.PERIOD;
 	}
 }
@@ -3,7 +3,7 @@ package org.nerdybeans.antfarm.model.modelelements;
 import java.io.Serializable;
 import java.util.ArrayList;
 
-import org.nerdybeans.antfarm.model.Irreplaceable;
+import org.nerdybeans.antfarm.model.OccupancyMap;
 import org.nerdybeans.antfarm.model.Replaceable;
 import org.nerdybeans.antfarm.model.WorldField;
 import org.nerdybeans.antfarm.view.WorldElementView;
@@ -50,35 +50,21 @@ public class Pebble extends Replaceable implements Serializable {
 	@Override
 	public void interact() {
 		// find out where the AntEater is
-		ArrayList<WorldField> neighbours = this.getField().getNeighbours();
-		//ListIterator<WorldField> iterator = neighbours.listIterator();
-		boolean found = false; // Have we found the AntEater?
-		int index = 0; // direction of the AntEater
+		WorldField here = this.getField();
+		ArrayList<WorldField> neighbours = here.getNeighbours();
+		OccupancyMap occupancy = here.getOccupancy();
 		
-		for (index = 0; index < 6; ++index) {
-			WorldField next = neighbours.get(index);
-			
-			if (next != null) {
-				boolean passable = next.isPassable();
-				
-				// if the field is passable
-				if (passable == true){
-					AntEater ae = next.getAntEater();
-					
-					// there may be an anteater there
-					if (ae != null){
-						found = true;
-						break;
-					}
-				}
-			}
-		}
+		// there may be an anteater on the passable neighbours
+		int anteaters = occupancy.neighbourMask(OccupancyMap.ANTEATER, here.getIndex())
+				& occupancy.passableNeighbours(here.getIndex());
 		
 		// if we could not find the anteater on the neigbouring fields.   
-		if (found == false){
+		if (anteaters == 0){
 			return;
 		}
 		
+		int index = Integer.numberOfTrailingZeros(anteaters); // direction of the AntEater
+		
 		/** 
 		 * set the direction of the pebble check
 		 * @see GameWorld.GameWorld() -> neighbour indexing
@@ -96,39 +82,21 @@ public class Pebble extends Replaceable implements Serializable {
 		// if the field exists
 		if (nextField != null){
 			// check forward, looking for pebble or something on nextField
-			boolean passable = nextField.isPassable();
+			int nextIndex = nextField.getIndex();
 			
-			if (passable == true){
-				Irreplaceable stationary = nextField.getPermanentElement();
-				
+			if (occupancy.get(OccupancyMap.PASSABLE, nextIndex)){
 				// nobody was there, so move.
-				if (stationary == null){
+				if (!occupancy.get(OccupancyMap.PERMANENT, nextIndex)){
 					nextField.setDynamicElement(this);
 				}
-			} else {
-				// if the field was reserved, check whether it is a pebble
-				Replaceable pebble = nextField.getDynamicElement();
+			} else if (occupancy.get(OccupancyMap.PEBBLE, nextIndex)){
+				// if the field was reserved by a pebble, check the neighbour field in that direction
+				WorldField nextNextField = nextField.getNeighbours().get(index);
 				
-				// if there is a pebble
-				if (pebble != null){
-					// check the neighbour field in that direction
-					ArrayList<WorldField> nextNeighbours = nextField.getNeighbours();
-					WorldField nextNextField = nextNeighbours.get(index);
-					
-					// if the field exists next to nextField
-					if (nextNextField != null){
-						boolean nextPassable = nextNextField.isPassable();
-						
-						if (nextPassable == true){
-							Irreplaceable nextStationary = nextNextField.getPermanentElement();
-							
-							// if no one lives there
-							if (nextStationary == null){
-								nextNextField.setDynamicElement(this);
-							}	
-						}
-					}
-				}	
+				// if the field exists next to nextField and no one lives there
+				if ((nextNextField != null) && occupancy.isFree(nextNextField.getIndex())){
+					nextNextField.setDynamicElement(this);
+				}
 			}
 		}
 	
@@ -167,4 +135,14 @@ public class Pebble extends Replaceable implements Serializable {
 	public int getPeriod() {
 		return 1;
 	}
+
+	/**
+	 * Pebble is passive: it is never scheduled, it moves only when an AntEater pushes it.
+	 * 
+	 * @return false
+	 */
+	@Override
+	protected boolean isSelfScheduled() {
+		return false;
+	}
 }
@@ -1,16 +1,25 @@
 package org.nerdybeans.antfarm.model.modelelements;
 
 import org.nerdybeans.antfarm.model.Odour;
+import org.nerdybeans.antfarm.model.OdourChannel;
 import org.nerdybeans.antfarm.model.WorldField;
 import org.nerdybeans.antfarm.view.WorldElementView;
 
 /**
  * This class represents the poisonous odour of the AntKiller.
  * 
+ * The intensity is stored in the poison channel of the GameWorld, which
+ * decreases it by one in every PERIOD ticks.
+ * 
  * @author Demarcsek, Horvath, Szabo
- * @version 1.1
+ * @version 1.2
  **/
 public class Poison extends Odour {
+	/**
+	 * The period of the decay.
+	 */
+	public static final int PERIOD = 9999;
+	
 	/**
 	 * The graphical representation of a Poison on the WorldField in the View section of MVC.
 	 * However Poison does not have any graphical representation at the moment in the game.
@@ -48,16 +57,17 @@ public class Poison extends Odour {
 	}
 	
 	/**
-	 * Reduces the Intensity by one, in case the Period is correct.
+	 * Returns the poison channel of the world.
 	 * 
-	 * @author Szabo
-	 * @Param TickEventArgs Current timer tick value;
+	 * @return the channel, null if the field is not part of a world
 	 */
-	public void onTick(Object TickEventArgs) {
-		// Real-world behaviour:
-		 if(this.intensity > 0)
-			this.intensity--;
-		// Ignored in 'Prototype test environment'
+	@Override
+	protected OdourChannel getChannel() {
+		WorldField field = this.getField();
+		if ((field == null) || (field.getWorld() == null)) {
+			return null;
+		}
+		return field.getWorld().getPoisonChannel();
 	}
 	
 	/**
@@ -68,7 +78,7 @@ public class Poison extends Odour {
 	 */
 	@Override
 	public int getPeriod() {
-		return 9999;
+		return Poison.PERIOD;
 	}
 	
 }
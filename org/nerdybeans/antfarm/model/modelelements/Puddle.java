@@ -82,4 +82,14 @@ public class Puddle extends Irreplaceable implements Serializable {
 		return 1;
 	}
 	
+	/**
+	 * Puddle does nothing on tick, so it is not subscribed to the Timer at all.
+	 * 
+	 * @return false
+	 */
+	@Override
+	protected boolean isSelfScheduled() {
+		return false;
+	}
+	
 }
@@ -2,9 +2,12 @@ package org.nerdybeans.antfarm.model.modelelements;
 
 import java.io.Serializable;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.LinkedList;
+import org.nerdybeans.antfarm.auxiliary.SimulationEvents;
 import org.nerdybeans.antfarm.auxiliary.Timer;
+import org.nerdybeans.antfarm.model.AntEnterListener;
+import org.nerdybeans.antfarm.model.GameMetrics;
+import org.nerdybeans.antfarm.model.GameWorld;
 import org.nerdybeans.antfarm.model.Irreplaceable;
 import org.nerdybeans.antfarm.model.WorldField;
 import org.nerdybeans.antfarm.view.WorldElementView;
@@ -16,10 +19,14 @@ import org.nerdybeans.antfarm.view.viewelements.WarehouseView;
  * The class also extends Irreplaceable, since warehouse objects shouldn't be
  * capable of moving on the game map.
  * 
+ * The warehouse is not subscribed to the Timer: the ants are taken in when
+ * they enter its field. It is modified by the model thread, or by the tile owning
+ * its field, no lock is taken.
+ * 
  * @author Demarcsek, Horvath, Szabo
- * @version 1.5
+ * @version 1.6
  **/
-public class Warehouse extends Irreplaceable implements Serializable {
+public class Warehouse extends Irreplaceable implements Serializable, AntEnterListener {
 	/**
 	 * The graphical representation of a Warehouse on the WorldField in the View section of MVC.
 	 */
@@ -84,12 +91,10 @@ public class Warehouse extends Irreplaceable implements Serializable {
 	/**
 	 * Sets the foodAmount in the Warehouse for the given value.
 	 * 
-	 * This method is thread-safe, due to possible multiple access. (by the View and the Model as well)
-	 *
 	 * @author Demarcsek
 	 * @param newAmount the new food amount value
 	*/
-	public synchronized void setFoodAmount(int newAmount) {
+	public void setFoodAmount(int newAmount) {
 		if(newAmount >= 0)
 			this.food_amount = newAmount;
 	}
@@ -97,23 +102,19 @@ public class Warehouse extends Irreplaceable implements Serializable {
 	/**
 	 * Returns the amount of food (which is equal with food_amount attribute)
 	 * 
-	 * This method is thread-safe, due to possible multiple access. (by the View and the Model as well)
-	 * 
 	 * @author Horvath
 	 * @return food_amount how much food is stored in the warehouse yet
 	 */
-	public synchronized int getFoodAmount() {
+	public int getFoodAmount() {
 		return this.food_amount;
 	}
 
 	/**
 	 * Decrease the value of food_amount with one.
 	 *
-	 * This method is thread-safe, due to possible multiple access. (by the View and the Model as well)
-	 * 
 	 * @author Horvath
 	 */
-	public synchronized void decreaseFoodAmount() {
+	public void decreaseFoodAmount() {
 		//System.out.println("[DEBUG#Warehouse.decreaseFoodAmount]");
 		if(this.food_amount > 0)
 			this.food_amount--;
@@ -123,11 +124,9 @@ public class Warehouse extends Irreplaceable implements Serializable {
 	 * When the food_amount is equal to zero (when the ants eat all of the
 	 * food), it decreases the food odour of the nearest fields.	
 	 *  
-	 * This method is thread-safe, due to possible multiple access. (by the View and the Model as well)
-	 *  
 	 * @author Horvath, Szabo, Demarcsek
 	 */
-	public synchronized void onEmpty() {
+	public void onEmpty() {
 		if(this.emptied)
 			return;
 		NUM_OF_WAREHOUSES--;
@@ -135,6 +134,8 @@ public class Warehouse extends Irreplaceable implements Serializable {
 			END_OF_GAME_SIGNAL = true;
 		}
 		Timer.getInstance().removeSubscriber(this);
+		if(this.getField().getWorld() != null)
+			this.getField().getWorld().getRouting().removeTarget(this);
 		this.getField().setPermanentElement(null);
 		
 		/*if((NUM_OF_WAREHOUSES--) == 0) {
@@ -147,7 +148,10 @@ public class Warehouse extends Irreplaceable implements Serializable {
 		
 		this.emptied = true;
 		this.spreadFoodOdour(Warehouse.NUM_OF_WAREHOUSES, true);
-		AntHill.reset();
+		// the AntHill of the world starts counting its ants again
+		GameWorld world = this.getField().getWorld();
+		if(world != null && world.getEntryPoint() != null)
+			world.getEntryPoint().reset();
 	}
 	
 	/**
@@ -155,7 +159,7 @@ public class Warehouse extends Irreplaceable implements Serializable {
 	 * @author Demarcsek
 	 * @return END_OF_GAME_SIGNAL which indicated whether the game has come to an end?
 	 */
-	public synchronized static boolean isEndOfGame() {
+	public static boolean isEndOfGame() {
 		return Warehouse.END_OF_GAME_SIGNAL;
 	}
 
@@ -166,13 +170,10 @@ public class Warehouse extends Irreplaceable implements Serializable {
 	 * on the field. Otherwise it can be called by an Ant, then it removes the
 	 * ant living on the field.
 	 * 
-	 * The crucial part of this method is thread-safe, due to possible multiple access. 
-	 * (by the View and the Model as well)
-	 * 
 	 * @author Demarcsek, Horvath
 	 */
 	@Override
-	public synchronized void interact() {
+	public void interact() {
 		if(this.getField() == null) {
 			System.out.println("[Warehouse.getField==null] removing from timer");
 			Timer.getInstance().removeSubscriber(this);
@@ -185,17 +186,8 @@ public class Warehouse extends Irreplaceable implements Serializable {
 		
 		this.getField().setFoodOdour(Warehouse.MAX_FOOD_AMOUNT);
 		
-		// minimize the number of instructions in the critical section
-		int times = 0;
-		synchronized(this.getField().getAntList()) {
-			times = this.getField().getAntList().size();
-			//this.getField().getAntList().clear();
-			Iterator<Ant> it = this.getField().getAntList().iterator();
-			while(it.hasNext()) {
-				Timer.getInstance().removeSubscriber(it.next());
-			}
-			this.getField().getAntList().clear();
-		}
+		int times = this.getField().getAntList().size();
+		this.getField().clearAnts(GameMetrics.KILLED_BY_WAREHOUSE);
 		
 		for(int i = 0; i < times; ++i)
 			this.decreaseFoodAmount();
@@ -206,6 +198,39 @@ public class Warehouse extends Irreplaceable implements Serializable {
 		}
 	}
 
+	/**
+	 * Takes in the ant which has just entered the field of the warehouse.
+	 * 
+	 * If the warehouse becomes empty, onEmpty() is run after the ants of the world
+	 * have been moved, because it modifies the food odour of the whole map.
+	 * 
+	 * @param ant the ant which has entered the field
+	 */
+	@Override
+	public void onAntEntered(Ant ant) {
+		this.getField().killAnt(ant, GameMetrics.KILLED_BY_WAREHOUSE);
+		this.decreaseFoodAmount();
+		
+		if (this.food_amount <= 0) {
+			this.getField().getWorld().getScheduler().runAfterStep(this.getField(), new Runnable() {
+				@Override
+				public void run() {
+					onEmpty();
+				}
+			});
+		}
+	}
+	
+	/**
+	 * The warehouse is driven by the ants entering its field, not by the Timer.
+	 * 
+	 * @return false
+	 */
+	@Override
+	protected boolean isSelfScheduled() {
+		return false;
+	}
+
 	/**
 	 * Converts a Warehouse object to String (supports custom serialization)
 	 * 
@@ -235,6 +260,9 @@ public class Warehouse extends Irreplaceable implements Serializable {
 	 * @author Demarcsek
 	**/
 	public void spreadFoodOdour(int num_of_sources, boolean inverted) {		
+		SimulationEvents.FoodOdourSpread event = new SimulationEvents.FoodOdourSpread();
+		event.begin();
+		
 		// Algorithm setup (constants)
 		final float MAX_VAL = Warehouse.MAX_FOOD_AMOUNT; // The max. food odour of the Warehouse.
 		final float EPSILON = 0.942f;
@@ -269,7 +297,8 @@ public class Warehouse extends Irreplaceable implements Serializable {
 			
 			Visited.put(c, true);
 			
-			if(c != this.getField()) {
+			// the field of another warehouse keeps the odour of its source
+			if((c != this.getField()) && !(c.getPermanentElement() instanceof Warehouse)) {
 				if(!Distances.containsKey(c))
 					System.err.println("(1) !!! CRITICAL ERROR: The execution should never reach this branch !!!!");
 				
@@ -322,6 +351,14 @@ public class Warehouse extends Irreplaceable implements Serializable {
 			}
 
 		}
+		
+		if(event.shouldCommit()) {
+			event.tick = Timer.getInstance().getTick();
+			event.inverted = inverted;
+			event.sources = num_of_sources;
+			event.fields = Visited.size();
+			event.commit();
+		}
 	}
 	
 	
@@ -329,9 +366,6 @@ public class Warehouse extends Irreplaceable implements Serializable {
 	/**
 	 * Warehouse should interact when a tick arises.
 	 * 
-	 * The crucial part of this method is thread-safe, due to possible multiple access. 
-	 * (by the View and the Model as well)
-	 * 
 	 * @author Demarcsek
 	 * @param TickEventArgs the event arguments of the tick
 	 */
@@ -339,10 +373,8 @@ public class Warehouse extends Irreplaceable implements Serializable {
 	public void onTick(Object TickEventArgs) {
 		if(!this.broadcast_done) {
 			System.err.println("broadcasting");
-			synchronized(this) {
-				this.broadcast_done = true;
-				Warehouse.NUM_OF_WAREHOUSES++;
-			}
+			this.broadcast_done = true;
+			Warehouse.NUM_OF_WAREHOUSES++;
 			
 		}
 		
@@ -359,7 +391,7 @@ public class Warehouse extends Irreplaceable implements Serializable {
 		return 2;
 	}
 	
-	public synchronized static void reset() {
+	public static void reset() {
 		//synchronized(Warehouse.END_OF_GAME_SIGNAL) {
 			Warehouse.END_OF_GAME_SIGNAL = false;
 		//}
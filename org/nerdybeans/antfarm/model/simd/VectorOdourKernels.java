@@ -0,0 +1,86 @@
+package org.nerdybeans.antfarm.model.simd;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import org.nerdybeans.antfarm.model.OdourKernels;
+
+/**
+ * Vectorized implementation of the OdourKernels, using the jdk.incubator.vector module.
+ *
+ * It has to be compiled and run with --add-modules jdk.incubator.vector, and it is
+ * loaded only if the vector kernels are switched on (see OdourKernels.setVectorized()).
+ * The lanes perform the same operations in the same order as the scalar code, so the
+ * results are identical. The fields which are not fully open (at the border of the
+ * map or next to an impassable field) and the remainders of the rows are left to
+ * the scalar code.
+ *
+ * @version 1.0
+ * @see OdourKernels
+ **/
+public class VectorOdourKernels extends OdourKernels {
+	/**
+	 * The preferred vector shape of the platform.
+	 */
+	private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+
+	/**
+	 * Number of lanes.
+	 */
+	private static final int LANES = SPECIES.length();
+
+	/**
+	 * Computes the diffused intensities of a row, LANES fully open fields at a time.
+	 */
+	@Override
+	public void diffuseRow(float[] source, float[] target, byte[] open, int[] openRun, int from, int to,
+			int[] offsets, float self, float share, float min) {
+		int o0 = offsets[0], o1 = offsets[1], o2 = offsets[2], o3 = offsets[3], o4 = offsets[4], o5 = offsets[5];
+		FloatVector zero = FloatVector.zero(SPECIES);
+
+		int index = from;
+		while (index < to) {
+			if (openRun[index] < LANES) {
+				// not enough fully open fields ahead
+				super.diffuseRow(source, target, open, openRun, index, index + 1, offsets, self, share, min);
+				++index;
+				continue;
+			}
+
+			FloatVector v = FloatVector.fromArray(SPECIES, source, index);
+			FloatVector sum = FloatVector.fromArray(SPECIES, source, index + o0)
+					.add(FloatVector.fromArray(SPECIES, source, index + o1))
+					.add(FloatVector.fromArray(SPECIES, source, index + o2))
+					.add(FloatVector.fromArray(SPECIES, source, index + o3))
+					.add(FloatVector.fromArray(SPECIES, source, index + o4))
+					.add(FloatVector.fromArray(SPECIES, source, index + o5));
+
+			FloatVector next = v.mul(self).add(sum.mul(share));
+			VectorMask<Float> low = next.compare(VectorOperators.GE, min).not();
+			next.blend(zero, low).intoArray(target, index);
+			index += LANES;
+		}
+	}
+
+	/**
+	 * Applies the decay of the odour in place, LANES fields at a time.
+	 */
+	@Override
+	public void decay(float[] values, int from, int to, float amount, float limit) {
+		FloatVector zero = FloatVector.zero(SPECIES);
+		int upper = from + SPECIES.loopBound(to - from);
+
+		int i = from;
+		for (; i < upper; i += LANES) {
+			FloatVector v = FloatVector.fromArray(SPECIES, values, i);
+			FloatVector decayed = v.sub(amount);
+			VectorMask<Float> gone = decayed.compare(VectorOperators.GT, 0.0f).not()
+					.or(v.compare(VectorOperators.GT, limit));
+			decayed.blend(zero, gone).intoArray(values, i);
+		}
+
+		super.decay(values, i, to, amount, limit);
+	}
+}
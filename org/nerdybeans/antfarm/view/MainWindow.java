@@ -5,13 +5,14 @@ package org.nerdybeans.antfarm.view;
 
 import javax.swing.*;
 
+import org.nerdybeans.antfarm.auxiliary.SimulationEvents;
+import org.nerdybeans.antfarm.auxiliary.TraceRecorder;
 import org.nerdybeans.antfarm.controller.ModelController;
 import org.nerdybeans.antfarm.model.GameWorld;
-import org.nerdybeans.antfarm.model.WorldField;
+import org.nerdybeans.antfarm.model.WorldSnapshot;
 import org.nerdybeans.antfarm.model.modelelements.Ant;
 import org.nerdybeans.antfarm.model.modelelements.AntEater;
 import org.nerdybeans.antfarm.model.modelelements.FoodOdour;
-import org.nerdybeans.antfarm.model.modelelements.Warehouse;
 
 import java.awt.*;
 import java.awt.event.*;
@@ -24,6 +25,7 @@ import java.lang.reflect.InvocationTargetException;
 public class MainWindow extends JFrame implements ActionListener {
 	private JButton btnNewGame;  // new game button
 	private JButton btnLoadGame; // load game button
+	private JButton btnRestore; // restore autosave button
 	private JButton btnHelp;	 // help button
 	private JButton btnSaveExit; //save & exit button
 	
@@ -50,6 +52,7 @@ public class MainWindow extends JFrame implements ActionListener {
 			// windowClosed() -> dispose() callback
 			ModelController.getInstance().userCommand("saveGame", null);
 			ModelController.getInstance().userCommand("killTimer", null);
+			ModelController.getInstance().userCommand("awaitSave", null);
 			System.gc(); System.exit(0);
 		}
 		
@@ -136,11 +139,13 @@ public class MainWindow extends JFrame implements ActionListener {
 		// the buttons in the upper bar (mentioned above)
 		btnNewGame = new JButton("New Game");
 		btnLoadGame = new JButton("Load Game");
+		btnRestore = new JButton("Restore Autosave");
 		btnHelp = new JButton("Help");
 		btnSaveExit = new JButton("Save & Exit");
 		
 		btnNewGame.addActionListener(this);
 		btnLoadGame.addActionListener(this);
+		btnRestore.addActionListener(this);
 		btnHelp.addActionListener(this);
 		btnSaveExit.addActionListener(this);
 	
@@ -148,6 +153,7 @@ public class MainWindow extends JFrame implements ActionListener {
 		// adding buttons to the upper bar
 		menuBar.add(btnNewGame);
 		menuBar.add(btnLoadGame);
+		menuBar.add(btnRestore);
 		menuBar.add(btnHelp);
 		menuBar.add(btnSaveExit);		
 		
@@ -180,6 +186,7 @@ public class MainWindow extends JFrame implements ActionListener {
 		// changes between MainPage and Gamepage
 		this.getContentPane().remove(centerPanel);
 		btnLoadGame.setEnabled(true);
+		btnRestore.setEnabled(true);
 		btnHelp.setEnabled(true);
 		
 		// Adds the grid to the center part 
@@ -241,36 +248,42 @@ public class MainWindow extends JFrame implements ActionListener {
 	 * @author Demarcsek, Szabo
 	 */
 	public void updateGraphics() {
+		// the model is not touched here: the view is rebuilt from the state published by the model thread
+		final WorldSnapshot snapshot = ModelController.getInstance().getSnapshot();
+		if(snapshot == null)
+			return;
+		SimulationEvents.Frame frame = new SimulationEvents.Frame();
+		frame.begin();
+		long span = TraceRecorder.begin();
 		this.setStatusText(
-				"AntKiller load: " + ModelController.getInstance().getAntKillerLoad() 
-			+   " AntOdourKiller load:" + ModelController.getInstance().getAntOdourKillerLoad() 
-			+   " Warehouses remaining: " + Warehouse.NUM_OF_WAREHOUSES	 
+				"AntKiller load: " + snapshot.getAntKillerLoad() 
+			+   " AntOdourKiller load:" + snapshot.getAntOdourKillerLoad() 
+			+   " Warehouses remaining: " + snapshot.getWarehouses()	 
 		);
 		//System.out.println("[DEBUG#MainWindow.updateGraphics] Redrawing...");
 		try {
 			SwingUtilities.invokeAndWait(new Runnable() {
 				public void run() {
+					long repaint = TraceRecorder.begin();
 					for(int i = 0; i < GameWorld.SIZE_H; ++i) {
 						for(int j = 0; j < GameWorld.SIZE_W; ++j) {
 							//System.out.println("[DEBUG#MainWindow.updateGraphics] Rebuilding view stack...");
 							WorldFieldView fieldView = MapView[i][j];
-							WorldField field = ModelController.getInstance().getModel(fieldView);
+							int index = i * snapshot.getWidth() + j;
 							fieldView.clearElements();
 							
 							fieldView.addElement(FoodOdour.View);
 							
-							if(field.getPermanentElement() != null) {
-								fieldView.addElement(field.getPermanentElement().getView());
-							} else if(field.getDynamicElement() != null) {
-								fieldView.addElement(field.getDynamicElement().getView());
+							if(snapshot.getElement(index) != null) {
+								fieldView.addElement(snapshot.getElement(index));
 							}
 								
 								
-							if(field.getAntIterator().hasNext()) {
+							if(snapshot.getAnts(index) > 0) {
 								fieldView.addElement(Ant.View);
 							}
 								
-							if(field.getAntEater() != null) {
+							if(snapshot.hasAntEater(index)) {
 								fieldView.addElement(AntEater.View);
 							}
 							
@@ -281,6 +294,7 @@ public class MainWindow extends JFrame implements ActionListener {
 							
 						}
 					}
+					TraceRecorder.end("repaint", repaint);
 				}
 			});
 		} catch (InterruptedException e) {
@@ -291,6 +305,17 @@ public class MainWindow extends JFrame implements ActionListener {
 			e.printStackTrace();
 		}
 		
+		TraceRecorder.end("frame", span);
+		if(frame.shouldCommit()) {
+			int ants = 0;
+			for(int index = 0; index < snapshot.getHeight() * snapshot.getWidth(); ++index) {
+				ants += snapshot.getAnts(index);
+			}
+			frame.tick = snapshot.getTick();
+			frame.ants = ants;
+			frame.fields = GameWorld.SIZE_H * GameWorld.SIZE_W;
+			frame.commit();
+		}
 		//System.out.println("[DEBUG#MainWindow.updateGraphics] Done");
 	}
 	
@@ -337,7 +362,7 @@ public class MainWindow extends JFrame implements ActionListener {
 			game_created = true;
 			ModelController.getInstance().userCommand("newGame", null);
 			this.setStatusText("(Re)starting game...");
-		} else if(emitterComponent == this.btnLoadGame) {
+		} else if(emitterComponent == this.btnLoadGame || emitterComponent == this.btnRestore) {
 			System.out.println("[DEBUG#btnLoadGame actionPerformed]");
 			
 			int h = org.nerdybeans.antfarm.model.GameWorld.SIZE_H;  //map size horizontal
@@ -353,8 +378,13 @@ public class MainWindow extends JFrame implements ActionListener {
 			this.pack();
 			
 			game_created = true;
-			ModelController.getInstance().userCommand("loadGame", null);
-			this.setStatusText("Loading game...");
+			if(emitterComponent == this.btnRestore) {
+				ModelController.getInstance().userCommand("restoreGame", null);
+				this.setStatusText("Restoring autosave...");
+			} else {
+				ModelController.getInstance().userCommand("loadGame", null);
+				this.setStatusText("Loading game...");
+			}
 		} else if(emitterComponent == this.btnHelp) {
 			System.out.println("[DEBUG#btnHelp actionPerformed]");
 			//HelpWindow helpWin = new HelpWindow(); //displays help in new window			
@@ -6,6 +6,7 @@ import javax.swing.JPanel;
 import org.nerdybeans.antfarm.auxiliary.Timer;
 import org.nerdybeans.antfarm.controller.ModelController;
 import org.nerdybeans.antfarm.model.WorldField;
+import org.nerdybeans.antfarm.model.WorldSnapshot;
 
 import java.awt.Color;
 import java.awt.Font;
@@ -124,7 +125,14 @@ public class WorldFieldView extends JPanel implements MouseListener {
 				g2.drawImage(Img, null, 0, 0);
 		}
 		
+		// read from the state published by the model thread, not from the model itself
 		WorldField Me = ModelController.getInstance().getModel(this);
+		WorldSnapshot snapshot = ModelController.getInstance().getSnapshot();
+		if((Me == null) || (snapshot == null)) {
+			g2.dispose();
+			return;
+		}
+		int index = Me.getIndex();
 		/*if(!Me.getAntList().isEmpty()) {
 			String A = Integer.toString(Me.getAntList().size());
 			g2.setColor(Color.white);
@@ -133,15 +141,16 @@ public class WorldFieldView extends JPanel implements MouseListener {
 		//g2.setColor(Color.white);
 		//g2.setFont(new java.awt.Font("Arial", Font.PLAIN, 10));
 		this.setToolTipText(
-			"AntOdour:" + Float.toString(Me.getAntOdour()) + "\r\n" +
-			"FoodOdour: " + Float.toString(Me.getFoodOdour()) + "\r\n" +
-			"Poison: " + Float.toString(Me.getPoison())
+			"AntOdour:" + Float.toString(snapshot.getAntOdour(index)) + "\r\n" +
+			"FoodOdour: " + Float.toString(snapshot.getFoodOdour(index)) + "\r\n" +
+			"Poison: " + Float.toString(snapshot.getPoison(index)) + "\r\n" +
+			"Ants: " + Integer.toString(snapshot.getAnts(index))
 		);
 		
 		//g2.setColor(Color.black);
 		//g2.drawRect(0, 0, this.getWidth()-1, this.getHeight()-1);
 		
-		if(Me.getPoison() > 0) {
+		if(snapshot.getPoison(index) > 0) {
 			g2.setColor(new Color(0.0f, 1.0f, 1.0f, 0.33f));
 			g2.fillRect(0, 0, this.getWidth()-1, this.getHeight()-1);
 			//g2.fillRect(x, y, width, height)